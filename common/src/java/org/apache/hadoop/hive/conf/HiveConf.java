@@ -140,6 +140,8 @@ public class HiveConf extends Configuration {
       HiveConf.ConfVars.METASTORE_EVENT_CLEAN_FREQ,
       HiveConf.ConfVars.METASTORE_EVENT_EXPIRY_DURATION,
       HiveConf.ConfVars.METASTORE_RAW_STORE_IMPL,
+      HiveConf.ConfVars.METASTORE_CACHED_OBJECTS_MAX,
+      HiveConf.ConfVars.METASTORE_CACHED_OBJECTS_TTL,
       HiveConf.ConfVars.METASTORE_END_FUNCTION_LISTENERS,
       HiveConf.ConfVars.METASTORE_PART_INHERIT_TBL_PROPS,
       HiveConf.ConfVars.METASTORE_BATCH_RETRIEVE_TABLE_PARTITION_MAX,
@@ -459,7 +461,9 @@ public static enum ConfVars {
         "but it may also cause higher memory requirement at the client side."),
     METASTORE_BATCH_RETRIEVE_TABLE_PARTITION_MAX(
         "hive.metastore.batch.retrieve.table.partition.max", 1000,
-        "Maximum number of table partitions that metastore internally retrieves in one batch."),
+        "Maximum number of table partitions that metastore internally retrieves in one batch. \n" +
+        "Queries that read all the partitions of a table with more partitions than this get them \n" +
+        "from the metastore in batches of hive.metastore.batch.retrieve.max."),
 
     METASTORE_INIT_HOOKS("hive.metastore.init.hooks", "",
         "A comma separated list of hooks to be invoked at the beginning of HMSHandler initialization. \n" +
@@ -516,6 +520,14 @@ public static enum ConfVars {
     METASTORE_RAW_STORE_IMPL("hive.metastore.rawstore.impl", "org.apache.hadoop.hive.metastore.ObjectStore",
         "Name of the class that implements org.apache.hadoop.hive.metastore.rawstore interface. \n" +
         "This class is used to store and retrieval of raw metadata objects such as table, database"),
+    METASTORE_CACHED_OBJECTS_MAX("hive.metastore.cached.objects.max", 100000,
+        "Maximum number of tables and partitions that org.apache.hadoop.hive.metastore.CachedStore\n" +
+        "keeps in memory. The least recently used entries are evicted first."),
+    METASTORE_CACHED_OBJECTS_TTL("hive.metastore.cached.objects.ttl", "600s",
+        new TimeValidator(TimeUnit.SECONDS),
+        "How long CachedStore keeps a table or partition after reading it. A metastore drops the\n" +
+        "entries of a table when it changes the table, but it doesn't hear of the changes made\n" +
+        "through other metastores that share the database, so this bounds how stale they can be."),
     METASTORE_CONNECTION_DRIVER("javax.jdo.option.ConnectionDriverName", "org.apache.derby.jdbc.EmbeddedDriver",
         "Driver class name for a JDBC metastore"),
     METASTORE_MANAGER_FACTORY_CLASS("javax.jdo.PersistenceManagerFactoryClass",
@@ -661,6 +673,21 @@ public static enum ConfVars {
         "Optimized hashtable (see hive.mapjoin.optimized.hashtable) uses a chain of buffers to\n" +
         "store data. This is one buffer size. HT may be slightly faster if this is larger, but for small\n" +
         "joins unnecessary memory will be allocated and then trimmed."),
+    HIVEMAPJOINUSEHYBRIDGRACE("hive.mapjoin.hybridgrace.hashtable", false,
+        "Whether to use hybrid grace hash join for MapJoin on Tez. The optimized hashtable is split\n" +
+        "into partitions; the partitions that don't fit in memory are spilled to local disk together\n" +
+        "with the matching big table rows, and joined after the big table input is exhausted.\n" +
+        "Only used with hive.mapjoin.optimized.hashtable, for joins with one small table."),
+    HIVEHYBRIDGRACEHASHJOINPARTITIONS("hive.mapjoin.hybridgrace.partitions", 16,
+        "Number of hashtable partitions for hybrid grace hash join. Rounded down to a power of 2."),
+    HIVEHYBRIDGRACEHASHJOINMEMORY("hive.mapjoin.hybridgrace.memory", 0L,
+        "Memory in bytes the hybrid grace hashtable can use before spilling partitions to disk.\n" +
+        "If 0, hive.auto.convert.join.noconditionaltask.size is used."),
+    HIVEHYBRIDGRACEHASHJOINMAXSIZEFACTOR("hive.mapjoin.hybridgrace.maxsize.factor", 4.0f,
+        "When hybrid grace hash join is enabled, joins with one small table are converted to MapJoin\n" +
+        "if the small table is up to this many times hive.auto.convert.join.noconditionaltask.size,\n" +
+        "since the partitions that don't fit are spilled instead of failing the task. It is not applied\n" +
+        "when vectorization is enabled, because the vectorized map join doesn't spill."),
 
     HIVESMBJOINCACHEROWS("hive.smbjoin.cache.rows", 10000,
         "How many rows with the same key value should be cached in memory per smb joined table."),
@@ -676,6 +703,15 @@ public static enum ConfVars {
     HIVEMAPAGGRHASHMINREDUCTION("hive.map.aggr.hash.min.reduction", (float) 0.5,
         "Hash aggregation will be turned off if the ratio between hash  table size and input rows is bigger than this number. \n" +
         "Set to 1 to make sure hash aggregation is never turned off."),
+    HIVEGROUPBYHASHSPILL("hive.groupby.hash.spill.enabled", false,
+        "Whether hash aggregation spills sorted runs of partial aggregates to local disk when the\n" +
+        "hash table is full, instead of forwarding a part of it. The runs are merged when the operator\n" +
+        "closes, so every group is forwarded only once. Only applies to group bys producing partial\n" +
+        "aggregates without distinct aggregations."),
+    HIVEGROUPBYHASHSPILLMERGEFACTOR("hive.groupby.hash.spill.merge.factor", 100,
+        "The largest number of spilled runs of hash aggregation that are merged at once. If there\n" +
+        "are more, they are first merged into larger runs, so that the number of open files and\n" +
+        "read buffers stays bounded."),
     HIVEMULTIGROUPBYSINGLEREDUCER("hive.multigroupby.singlereducer", true,
         "Whether to optimize multi group by query to generate single M/R  job plan. If the multi group by query has \n" +
         "common group by keys, it will be optimized to generate single M/R job."),
@@ -867,13 +903,45 @@ public static enum ConfVars {
         "data is read remotely (from the client or HS2 machine) and sent to all the tasks."),
     HIVE_ORC_CACHE_STRIPE_DETAILS_SIZE("hive.orc.cache.stripe.details.size", 10000,
         "Cache size for keeping meta info about orc splits cached in the client."),
+    HIVE_ORC_CACHE_STRIPE_DETAILS_MEMORY_SIZE("hive.orc.cache.stripe.details.mem.size",
+        256L * 1024 * 1024,
+        "Maximum size in bytes of the serialized ORC footers kept in the split generation cache.\n" +
+        "The least recently used footers are evicted first."),
+    HIVE_ORC_CACHE_STRIPE_DETAILS_DIR("hive.orc.cache.stripe.details.dir", "",
+        "Local directory where the footers of the split generation cache are also written, so that\n" +
+        "they survive evictions and restarts of the client or HiveServer2. Empty to only cache in memory."),
     HIVE_ORC_COMPUTE_SPLITS_NUM_THREADS("hive.orc.compute.splits.num.threads", 10,
         "How many threads orc should use to create splits in parallel."),
     HIVE_ORC_SKIP_CORRUPT_DATA("hive.exec.orc.skip.corrupt.data", false,
         "If ORC reader encounters corrupt data, this value will be used to determine\n" +
         "whether to skip the corrupt data or throw exception. The default behavior is to throw exception."),
 
-    HIVE_ORC_ZEROCOPY("hive.exec.orc.zerocopy", false, "Use zerocopy reads with ORC."),
+    HIVE_ORC_ZEROCOPY("hive.exec.orc.zerocopy", false,
+        "Use zerocopy reads with ORC. Stripes are read into direct buffers through the HDFS\n" +
+        "short-circuit reads, or memory mapped for files on the local file system, and are\n" +
+        "decompressed from buffer to buffer when the native zlib or snappy libraries are available."),
+    HIVE_ORC_COLUMN_CACHE_SIZE("hive.exec.orc.column.cache.size", 0L,
+        "Maximum size in bytes of the off-heap cache of decompressed ORC column streams that is\n" +
+        "shared by all the readers in a task JVM, so that reused containers do not read and\n" +
+        "decompress the same stripes again. Entries are keyed on the file, its modification time,\n" +
+        "the stripe and the column. Set to 0 to disable the cache."),
+    HIVE_ORC_LAZY_MATERIALIZATION("hive.exec.orc.lazy.materialization", false,
+        "Whether the vectorized ORC reader decodes the columns of the pushed down predicate first\n" +
+        "and evaluates it on each row, before it decodes the other columns. Batches where no row\n" +
+        "passes are skipped without decoding the other columns, and the remaining rows are marked\n" +
+        "as selected. Only used when hive.optimize.index.filter pushes a predicate to the reader."),
+    HIVE_ORC_WRITER_COMPRESSION_THREADS("hive.exec.orc.writer.compression.threads", 0,
+        "Number of threads that the ORC writers in a task JVM share to compress the column streams\n" +
+        "in parallel and to write each stripe to the file in the background while the next stripe\n" +
+        "is buffered. Each writer may hold one more stripe in memory while it is being written.\n" +
+        "The first writer that uses the threads sets their number. Set to 0 to compress and write\n" +
+        "in the writer's thread. Not used for LZO compression."),
+
+    HIVE_PARQUET_VECTORIZED_COLUMN_READER("hive.parquet.vectorized.column.reader", true,
+        "Whether vectorized queries read Parquet files with a reader that decodes the pages of the\n" +
+        "projected columns directly into column vectors and skips the row groups that the pushed down\n" +
+        "predicate rules out with the column statistics. Files with nested, repeated or decimal\n" +
+        "columns in the projection are read through the row reader."),
 
     HIVE_LAZYSIMPLE_EXTENDED_BOOLEAN_LITERAL("hive.lazysimple.extended_boolean_literal", false,
         "LazySimpleSerde uses this property to determine if it treats 'T', 't', 'F', 'f',\n" +
@@ -955,6 +1023,10 @@ public static enum ConfVars {
         "The default input format. Set this to HiveInputFormat if you encounter problems with CombineHiveInputFormat."),
     HIVETEZINPUTFORMAT("hive.tez.input.format", "org.apache.hadoop.hive.ql.io.HiveInputFormat",
         "The default input format for tez. Tez groups splits in the AM."),
+    HIVE_SPLIT_GENERATION_THREADS("hive.exec.input.split.threads", 10,
+        "How many threads HiveInputFormat and CombineHiveInputFormat use to list the input\n" +
+        "directories and compute their splits. The splits of the partitions are still returned\n" +
+        "in the order of the input paths. Set this to 1 to generate the splits serially."),
 
     HIVETEZCONTAINERSIZE("hive.tez.container.size", -1,
         "By default Tez will spawn containers of the size of a mapper. This can be used to overwrite."),
@@ -1200,6 +1272,17 @@ public static enum ConfVars {
         "and will estimate the number of rows from row schema."),
     // statistics annotation fetches column statistics for all required columns which can
     // be very expensive sometimes
+    HIVE_METADATA_CACHE_SCOPE("hive.metadata.cache.scope", "query",
+        new StringSet("none", "query", "session"),
+        "Whether the tables, partitions and column statistics that the compiler fetches from the\n" +
+        "metastore are kept to answer the same calls again.\n" +
+        "  none: every call goes to the metastore,\n" +
+        "  query: the objects are kept while a query compiles,\n" +
+        "  session: the objects are kept until the session changes the metadata. The changes that\n" +
+        "  other sessions make are not seen until then."),
+    HIVE_METADATA_CACHE_MAX_ENTRIES("hive.metadata.cache.max.entries", 1000,
+        "Maximum number of metastore calls whose results the metadata cache of a session keeps.\n" +
+        "The least recently used results are dropped first."),
     HIVE_STATS_FETCH_COLUMN_STATS("hive.stats.fetch.column.stats", false,
         "Annotation of operator tree with statistics information requires column statistics.\n" +
         "Column statistics are fetched from metastore. Fetching column statistics for each needed column\n" +
@@ -1713,6 +1796,24 @@ public static enum ConfVars {
     HIVE_VECTORIZATION_REDUCE_GROUPBY_ENABLED("hive.vectorized.execution.reduce.groupby.enabled", true,
             "This flag should be set to true to enable vectorized mode of the reduce-side GROUP BY query execution.\n" +
             "The default value is true."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_ENABLED("hive.vectorized.execution.mapjoin.native.enabled", true,
+        "This flag should be set to true to enable the batch-at-a-time vectorized map join for\n" +
+        "inner, left outer and left semi joins against the optimized hashtable.\n" +
+        "Other map joins keep converting the batch to rows. The default value is true."),
+    HIVE_VECTORIZATION_REDUCESINK_NATIVE_ENABLED("hive.vectorized.execution.reducesink.native.enabled", true,
+        "This flag should be set to true to enable the vectorized reduce sink to serialize keys and\n" +
+        "values directly from the column vectors. Reduce sinks with distinct keys, bucketing, ACID\n" +
+        "operations, top-n or unsupported types keep converting the batch to rows. The default value is true."),
+    HIVE_VECTORIZATION_PTF_ENABLED("hive.vectorized.execution.ptf.enabled", true,
+        "This flag should be set to true to enable vectorized windowing on the reduce side for\n" +
+        "row_number, rank, dense_rank, lag and running count/sum/avg/min/max over\n" +
+        "ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW. Other windowing functions keep using\n" +
+        "the row mode operator. The default value is true."),
+    HIVE_VECTORIZATION_TEXT_AVRO_ENABLED("hive.vectorized.execution.text.avro.enabled", false,
+        "This flag should be set to true to vectorize the map side of queries that read text tables\n" +
+        "of LazySimpleSerDe without header or footer lines, and Avro tables. The delimited fields of\n" +
+        "numeric, boolean and string columns are parsed directly into the column vectors; the other\n" +
+        "columns are deserialized a row at a time. The default value is false."),
     HIVE_VECTORIZATION_GROUPBY_CHECKINTERVAL("hive.vectorized.groupby.checkinterval", 100000,
         "Number of entries added to the group by aggregation hash before a recomputation of average entry size is performed."),
     HIVE_VECTORIZATION_GROUPBY_MAXENTRIES("hive.vectorized.groupby.maxentries", 1000000,
@@ -1796,7 +1897,12 @@ public static enum ConfVars {
     TEZ_DYNAMIC_PARTITION_PRUNING_MAX_EVENT_SIZE("hive.tez.dynamic.partition.pruning.max.event.size", 1*1024*1024L,
         "Maximum size of events sent by processors in dynamic pruning. If this size is crossed no pruning will take place."),
     TEZ_DYNAMIC_PARTITION_PRUNING_MAX_DATA_SIZE("hive.tez.dynamic.partition.pruning.max.data.size", 100*1024*1024L,
-        "Maximum total data size of events in dynamic pruning.")
+        "Maximum total data size of events in dynamic pruning."),
+    TEZ_DYNAMIC_SEMIJOIN_REDUCTION("hive.tez.dynamic.semijoin.reduction", false,
+        "When dynamic pruning is enabled, also use joins on non-partition columns: the vertex producing the other\n" +
+        "side of the join sends the min and max of its join keys to the tez application master, which adds the\n" +
+        "range to the table scan predicate before generating splits. With hive.optimize.index.filter, this lets\n" +
+        "ORC skip the stripes whose key range doesn't overlap. The scan will wait for the other side to finish.")
     ;
 
     public final String varname;
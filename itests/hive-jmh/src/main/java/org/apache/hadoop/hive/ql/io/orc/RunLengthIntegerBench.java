@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io.orc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hive.benchmark.RandomData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Encodes and decodes integer streams with the run length encoding of ORC
+ * version 2. The benchmark is in the package of ORC because the readers
+ * and writers of the streams are package private.
+ *
+ * Run with: java -jar benchmarks.jar RunLengthIntegerBench
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RunLengthIntegerBench {
+  private static final int VALUES = 100 * VectorizedRowBatch.DEFAULT_SIZE;
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  @Param({"1", "100", "1000000"})
+  public int cardinality;
+
+  // sorted values are written as deltas, the others are bit packed
+  @Param({"false", "true"})
+  public boolean sorted;
+
+  private final Configuration conf = new Configuration();
+  private long[] values;
+  private byte[] encoded;
+  private LongColumnVector vector;
+
+  private static class Collector implements OutStream.OutputReceiver {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    @Override
+    public void output(ByteBuffer buffer) throws IOException {
+      bytes.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    values = new RandomData(12345).longs(VALUES, cardinality);
+    if (sorted) {
+      Arrays.sort(values);
+    }
+    encoded = encode();
+    vector = new LongColumnVector(VectorizedRowBatch.DEFAULT_SIZE);
+  }
+
+  private byte[] encode() throws IOException {
+    Collector collector = new Collector();
+    RunLengthIntegerWriterV2 writer = new RunLengthIntegerWriterV2(
+        new OutStream("bench", BUFFER_SIZE, null, collector), true);
+    for (long value : values) {
+      writer.write(value);
+    }
+    writer.flush();
+    return collector.bytes.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] write() throws IOException {
+    return encode();
+  }
+
+  @Benchmark
+  public void read(Blackhole bh) throws IOException {
+    InStream in = InStream.create("bench", new ByteBuffer[] { ByteBuffer.wrap(encoded) },
+        new long[] { 0 }, encoded.length, null, BUFFER_SIZE);
+    RunLengthIntegerReaderV2 reader = new RunLengthIntegerReaderV2(in, true, conf);
+    for (int i = 0; i < VALUES; i += VectorizedRowBatch.DEFAULT_SIZE) {
+      reader.nextVector(vector, VectorizedRowBatch.DEFAULT_SIZE);
+      bh.consume(vector.vector[0]);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + RunLengthIntegerBench.class.getSimpleName() + ".*")
+        .build();
+    new Runner(opt).run();
+  }
+}
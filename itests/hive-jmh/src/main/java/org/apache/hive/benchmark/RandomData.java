@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates the data of the benchmarks from a fixed seed, so the runs can
+ * be repeated offline and compared. The shape of the data is set by the
+ * number of distinct values and the fraction of nulls.
+ */
+public final class RandomData {
+  private final Random random;
+
+  public RandomData(long seed) {
+    random = new Random(seed);
+  }
+
+  public Random getRandom() {
+    return random;
+  }
+
+  /**
+   * Pick a value out of cardinality distinct longs, which are spread over
+   * the positive and negative range.
+   */
+  public long nextLong(int cardinality) {
+    long value = random.nextInt(cardinality);
+    return (value & 1) == 0 ? value * 7919 : -value * 7919;
+  }
+
+  public long[] longs(int count, int cardinality) {
+    long[] result = new long[count];
+    for (int i = 0; i < count; ++i) {
+      result[i] = nextLong(cardinality);
+    }
+    return result;
+  }
+
+  public double nextDouble(int cardinality) {
+    return nextLong(cardinality) / 100.0;
+  }
+
+  public String nextString(int cardinality) {
+    return "value_" + random.nextInt(cardinality);
+  }
+
+  /**
+   * Decide which of count values are null.
+   *
+   * @param nullRatio the fraction of the values that are null
+   */
+  public boolean[] nulls(int count, double nullRatio) {
+    boolean[] result = new boolean[count];
+    for (int i = 0; i < count; ++i) {
+      result[i] = random.nextDouble() < nullRatio;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.benchmark.mapjoin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.ql.exec.persistence.BytesBytesMultiHashMap;
+import org.apache.hadoop.hive.serde2.ByteStream.RandomAccessOutput;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.WriteBuffers;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinaryUtils;
+import org.apache.hive.benchmark.RandomData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Builds and probes the hashtable of the optimized map join. The keys are
+ * variable length longs, as LazyBinary writes them, and the cardinality
+ * sets how many rows share a key.
+ *
+ * Run with: java -jar benchmarks.jar BytesBytesMultiHashMapBench
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BytesBytesMultiHashMapBench {
+  private static final int ROWS = 100000;
+  private static final int PROBES = 100000;
+  private static final float LOAD_FACTOR = 0.75f;
+  private static final int WB_SIZE = 8 * 1024 * 1024;
+
+  @Param({"1000", "100000"})
+  public int cardinality;
+
+  @Param({"8", "64"})
+  public int valueLength;
+
+  private byte[][] keys;
+  private byte[] value;
+  private byte[][] probes;
+  private BytesBytesMultiHashMap map;
+  private final List<WriteBuffers.ByteSegmentRef> result =
+      new ArrayList<WriteBuffers.ByteSegmentRef>();
+
+  private class RowSource implements BytesBytesMultiHashMap.KvSource {
+    private byte[] key;
+
+    @Override
+    public void writeKey(RandomAccessOutput dest) throws SerDeException {
+      dest.write(key, 0, key.length);
+    }
+
+    @Override
+    public void writeValue(RandomAccessOutput dest) throws SerDeException {
+      dest.write(value, 0, value.length);
+    }
+
+    @Override
+    public byte updateStateByte(Byte previousValue) {
+      return 0;
+    }
+  }
+
+  private static byte[] toKey(long value) {
+    byte[] buffer = new byte[9];
+    int length = LazyBinaryUtils.writeVLongToByteArray(buffer, value);
+    byte[] key = new byte[length];
+    System.arraycopy(buffer, 0, key, 0, length);
+    return key;
+  }
+
+  @Setup
+  public void setup() throws SerDeException {
+    RandomData data = new RandomData(12345);
+    keys = new byte[ROWS][];
+    for (int i = 0; i < ROWS; ++i) {
+      keys[i] = toKey(data.nextLong(cardinality));
+    }
+    value = new byte[valueLength];
+    data.getRandom().nextBytes(value);
+    // half of the probes miss the table
+    probes = new byte[PROBES][];
+    for (int i = 0; i < PROBES; ++i) {
+      probes[i] = i % 2 == 0 ? keys[data.getRandom().nextInt(ROWS)]
+          : toKey(data.nextLong(cardinality) + 1);
+    }
+    map = build();
+  }
+
+  private BytesBytesMultiHashMap build() throws SerDeException {
+    BytesBytesMultiHashMap table = new BytesBytesMultiHashMap(cardinality, LOAD_FACTOR, WB_SIZE);
+    RowSource source = new RowSource();
+    for (byte[] key : keys) {
+      source.key = key;
+      table.put(source);
+    }
+    return table;
+  }
+
+  @Benchmark
+  public BytesBytesMultiHashMap put() throws SerDeException {
+    return build();
+  }
+
+  @Benchmark
+  public void getValueRefs(Blackhole bh) {
+    for (byte[] probe : probes) {
+      bh.consume(map.getValueRefs(probe, probe.length, result));
+      bh.consume(result.size());
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + BytesBytesMultiHashMapBench.class.getSimpleName() + ".*")
+        .build();
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.benchmark.serde;
+
+import java.nio.charset.CharacterCodingException;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.SerDeUtils;
+import org.apache.hadoop.hive.serde2.lazy.LazyDouble;
+import org.apache.hadoop.hive.serde2.lazy.LazyFieldScanner;
+import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the field scanning and the double parsing of LazySimpleSerDe
+ * with the byte at a time parser that LazyStruct used before, on rows of
+ * int, double and string columns.
+ *
+ * Run with: java -jar benchmarks.jar LazySimpleSerDeBench
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LazySimpleSerDeBench {
+  private static final int ROWS = 1024;
+  private static final byte SEPARATOR = 1;
+
+  @Param({"16", "128", "1024"})
+  public int columns;
+
+  private Text[] rows;
+  private int[] positions;
+  private LazySimpleSerDe serde;
+  private StructObjectInspector rowOI;
+  private List<? extends StructField> fields;
+
+  @Setup
+  public void setup() throws Exception {
+    Random random = new Random(12345);
+    StringBuilder names = new StringBuilder();
+    StringBuilder types = new StringBuilder();
+    for (int c = 0; c < columns; ++c) {
+      names.append(c == 0 ? "" : ",").append("c").append(c);
+      types.append(c == 0 ? "" : ":").append(getType(c));
+    }
+    rows = new Text[ROWS];
+    StringBuilder row = new StringBuilder();
+    for (int r = 0; r < ROWS; ++r) {
+      row.setLength(0);
+      for (int c = 0; c < columns; ++c) {
+        if (c > 0) {
+          row.append((char) SEPARATOR);
+        }
+        switch (c % 3) {
+        case 0:
+          row.append(random.nextInt());
+          break;
+        case 1:
+          row.append(random.nextInt(1000000) / 100.0);
+          break;
+        default:
+          for (int i = random.nextInt(20); i > 0; --i) {
+            row.append((char) ('a' + random.nextInt(26)));
+          }
+        }
+      }
+      rows[r] = new Text(row.toString());
+    }
+    positions = new int[columns + 1];
+
+    Properties props = new Properties();
+    props.setProperty(serdeConstants.LIST_COLUMNS, names.toString());
+    props.setProperty(serdeConstants.LIST_COLUMN_TYPES, types.toString());
+    serde = new LazySimpleSerDe();
+    SerDeUtils.initializeSerDe(serde, new Configuration(), props, null);
+    rowOI = (StructObjectInspector) serde.getObjectInspector();
+    fields = rowOI.getAllStructFieldRefs();
+  }
+
+  private static String getType(int column) {
+    switch (column % 3) {
+    case 0:
+      return serdeConstants.INT_TYPE_NAME;
+    case 1:
+      return serdeConstants.DOUBLE_TYPE_NAME;
+    default:
+      return serdeConstants.STRING_TYPE_NAME;
+    }
+  }
+
+  /**
+   * The loop of LazyStruct.parse before LazyFieldScanner.
+   */
+  private static int scanByteAtATime(byte[] bytes, int start, int length,
+      byte separator, boolean isEscaped, byte escapeChar, int[] startPosition, int fields) {
+    int structByteEnd = start + length;
+    int fieldId = 0;
+    int fieldByteBegin = start;
+    int fieldByteEnd = start;
+    while (fieldByteEnd <= structByteEnd) {
+      if (fieldByteEnd == structByteEnd || bytes[fieldByteEnd] == separator) {
+        startPosition[fieldId] = fieldByteBegin;
+        fieldId++;
+        if (fieldId == fields || fieldByteEnd == structByteEnd) {
+          for (int i = fieldId; i <= fields; i++) {
+            startPosition[i] = fieldByteEnd + 1;
+          }
+          break;
+        }
+        fieldByteBegin = fieldByteEnd + 1;
+        fieldByteEnd++;
+      } else {
+        if (isEscaped && bytes[fieldByteEnd] == escapeChar
+            && fieldByteEnd + 1 < structByteEnd) {
+          fieldByteEnd += 2;
+        } else {
+          fieldByteEnd++;
+        }
+      }
+    }
+    return fieldId;
+  }
+
+  @Benchmark
+  public void findFieldsByteAtATime(Blackhole bh) {
+    for (Text row : rows) {
+      bh.consume(scanByteAtATime(row.getBytes(), 0, row.getLength(), SEPARATOR,
+          false, (byte) 0, positions, columns));
+    }
+  }
+
+  @Benchmark
+  public void findFieldsScanner(Blackhole bh) {
+    for (Text row : rows) {
+      bh.consume(LazyFieldScanner.findFields(row.getBytes(), 0, row.getLength(), SEPARATOR,
+          false, (byte) 0, false, positions, columns));
+    }
+  }
+
+  @Benchmark
+  public void parseDoublesDecoded(Blackhole bh) throws CharacterCodingException {
+    for (Text row : rows) {
+      byte[] bytes = row.getBytes();
+      LazyFieldScanner.findFields(bytes, 0, row.getLength(), SEPARATOR, false, (byte) 0,
+          false, positions, columns);
+      for (int c = 1; c < columns; c += 3) {
+        bh.consume(Double.parseDouble(Text.decode(bytes, positions[c],
+            positions[c + 1] - positions[c] - 1)));
+      }
+    }
+  }
+
+  @Benchmark
+  public void parseDoublesBytes(Blackhole bh) {
+    for (Text row : rows) {
+      byte[] bytes = row.getBytes();
+      LazyFieldScanner.findFields(bytes, 0, row.getLength(), SEPARATOR, false, (byte) 0,
+          false, positions, columns);
+      for (int c = 1; c < columns; c += 3) {
+        bh.consume(LazyDouble.parseDouble(bytes, positions[c],
+            positions[c + 1] - positions[c] - 1));
+      }
+    }
+  }
+
+  @Benchmark
+  public void deserializeAllFields(Blackhole bh) throws Exception {
+    for (Text row : rows) {
+      Object struct = serde.deserialize(row);
+      for (StructField field : fields) {
+        Object value = rowOI.getStructFieldData(struct, field);
+        bh.consume(((PrimitiveObjectInspector) field.getFieldObjectInspector())
+            .getPrimitiveWritableObject(value));
+      }
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + LazySimpleSerDeBench.class.getSimpleName() + ".*")
+        .build();
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.benchmark.serde;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.AbstractSerDe;
+import org.apache.hadoop.hive.serde2.SerDeUtils;
+import org.apache.hadoop.hive.serde2.binarysortable.BinarySortableSerDe;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinarySerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hive.benchmark.RandomData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Serializes and deserializes rows of bigint, double and string columns with
+ * LazyBinarySerDe, which carries rows between map and reduce, and
+ * BinarySortableSerDe, which writes the sort keys.
+ *
+ * Run with: java -jar benchmarks.jar RowSerDeBench
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RowSerDeBench {
+  private static final int ROWS = 1024;
+
+  @Param({"lazybinary", "binarysortable"})
+  public String serdeName;
+
+  @Param({"4", "64"})
+  public int width;
+
+  @Param({"100", "1000000"})
+  public int cardinality;
+
+  @Param({"0.0", "0.2"})
+  public double nullRatio;
+
+  private AbstractSerDe serde;
+  private StructObjectInspector rowOI;
+  private List<List<Object>> rows;
+  private BytesWritable[] serialized;
+  private StructObjectInspector serdeOI;
+  private List<? extends StructField> serdeFields;
+
+  @Setup
+  public void setup() throws Exception {
+    RandomData data = new RandomData(12345);
+    List<String> names = new ArrayList<String>(width);
+    List<ObjectInspector> inspectors = new ArrayList<ObjectInspector>(width);
+    String[] types = new String[width];
+    for (int c = 0; c < width; ++c) {
+      names.add("c" + c);
+      switch (c % 3) {
+      case 0:
+        types[c] = serdeConstants.BIGINT_TYPE_NAME;
+        inspectors.add(PrimitiveObjectInspectorFactory.javaLongObjectInspector);
+        break;
+      case 1:
+        types[c] = serdeConstants.DOUBLE_TYPE_NAME;
+        inspectors.add(PrimitiveObjectInspectorFactory.javaDoubleObjectInspector);
+        break;
+      default:
+        types[c] = serdeConstants.STRING_TYPE_NAME;
+        inspectors.add(PrimitiveObjectInspectorFactory.javaStringObjectInspector);
+      }
+    }
+    rowOI = ObjectInspectorFactory.getStandardStructObjectInspector(names, inspectors);
+
+    rows = new ArrayList<List<Object>>(ROWS);
+    for (int r = 0; r < ROWS; ++r) {
+      boolean[] nulls = data.nulls(width, nullRatio);
+      Object[] row = new Object[width];
+      for (int c = 0; c < width; ++c) {
+        if (nulls[c]) {
+          continue;
+        }
+        switch (c % 3) {
+        case 0:
+          row[c] = data.nextLong(cardinality);
+          break;
+        case 1:
+          row[c] = data.nextDouble(cardinality);
+          break;
+        default:
+          row[c] = data.nextString(cardinality);
+        }
+      }
+      rows.add(Arrays.asList(row));
+    }
+
+    Properties props = new Properties();
+    props.setProperty(serdeConstants.LIST_COLUMNS, join(names, ","));
+    props.setProperty(serdeConstants.LIST_COLUMN_TYPES, join(Arrays.asList(types), ":"));
+    serde = "lazybinary".equals(serdeName) ? new LazyBinarySerDe() : new BinarySortableSerDe();
+    SerDeUtils.initializeSerDe(serde, new Configuration(), props, null);
+    serdeOI = (StructObjectInspector) serde.getObjectInspector();
+    serdeFields = serdeOI.getAllStructFieldRefs();
+
+    serialized = new BytesWritable[ROWS];
+    for (int r = 0; r < ROWS; ++r) {
+      BytesWritable bytes = (BytesWritable) serde.serialize(rows.get(r), rowOI);
+      serialized[r] = new BytesWritable();
+      serialized[r].set(bytes);
+    }
+  }
+
+  private static String join(List<String> values, String separator) {
+    StringBuilder result = new StringBuilder();
+    for (String value : values) {
+      if (result.length() > 0) {
+        result.append(separator);
+      }
+      result.append(value);
+    }
+    return result.toString();
+  }
+
+  @Benchmark
+  public void serialize(Blackhole bh) throws Exception {
+    for (List<Object> row : rows) {
+      Writable bytes = serde.serialize(row, rowOI);
+      bh.consume(bytes);
+    }
+  }
+
+  @Benchmark
+  public void deserializeAllFields(Blackhole bh) throws Exception {
+    for (BytesWritable bytes : serialized) {
+      Object row = serde.deserialize(bytes);
+      for (StructField field : serdeFields) {
+        bh.consume(serdeOI.getStructFieldData(row, field));
+      }
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + RowSerDeBench.class.getSimpleName() + ".*")
+        .build();
+    new Runner(opt).run();
+  }
+}
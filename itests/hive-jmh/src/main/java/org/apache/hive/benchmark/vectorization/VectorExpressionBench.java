@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.benchmark.vectorization;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.gen.DoubleColMultiplyDoubleColumn;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.gen.FilterLongColGreaterLongScalar;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.gen.FilterStringGroupColEqualStringScalar;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.gen.LongColAddLongColumn;
+import org.apache.hive.benchmark.RandomData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Evaluates arithmetic and filter expressions on a batch of long, double
+ * and string columns. The filters select rows in place, so the batch is
+ * restored before each evaluation.
+ *
+ * Run with: java -jar benchmarks.jar VectorExpressionBench
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VectorExpressionBench {
+  private static final int SIZE = VectorizedRowBatch.DEFAULT_SIZE;
+
+  @Param({"10", "1000000"})
+  public int cardinality;
+
+  @Param({"0.0", "0.2"})
+  public double nullRatio;
+
+  private VectorizedRowBatch batch;
+  private VectorExpression addLongs;
+  private VectorExpression multiplyDoubles;
+  private VectorExpression filterLong;
+  private VectorExpression filterString;
+
+  @Setup
+  public void setup() {
+    RandomData data = new RandomData(12345);
+    // columns: long, long, double, double, string, long output, double output
+    batch = new VectorizedRowBatch(7, SIZE);
+    for (int c = 0; c < 2; ++c) {
+      LongColumnVector longs = new LongColumnVector(SIZE);
+      System.arraycopy(data.longs(SIZE, cardinality), 0, longs.vector, 0, SIZE);
+      setNulls(data, longs.isNull);
+      longs.noNulls = nullRatio == 0;
+      batch.cols[c] = longs;
+    }
+    for (int c = 2; c < 4; ++c) {
+      DoubleColumnVector doubles = new DoubleColumnVector(SIZE);
+      for (int i = 0; i < SIZE; ++i) {
+        doubles.vector[i] = data.nextDouble(cardinality);
+      }
+      setNulls(data, doubles.isNull);
+      doubles.noNulls = nullRatio == 0;
+      batch.cols[c] = doubles;
+    }
+    BytesColumnVector strings = new BytesColumnVector(SIZE);
+    for (int i = 0; i < SIZE; ++i) {
+      byte[] bytes = data.nextString(cardinality).getBytes();
+      strings.setRef(i, bytes, 0, bytes.length);
+    }
+    setNulls(data, strings.isNull);
+    strings.noNulls = nullRatio == 0;
+    batch.cols[4] = strings;
+    batch.cols[5] = new LongColumnVector(SIZE);
+    batch.cols[6] = new DoubleColumnVector(SIZE);
+    batch.size = SIZE;
+
+    addLongs = new LongColAddLongColumn(0, 1, 5);
+    multiplyDoubles = new DoubleColMultiplyDoubleColumn(2, 3, 6);
+    filterLong = new FilterLongColGreaterLongScalar(0, 0);
+    filterString = new FilterStringGroupColEqualStringScalar(4, "value_1".getBytes());
+  }
+
+  private void setNulls(RandomData data, boolean[] isNull) {
+    boolean[] nulls = data.nulls(SIZE, nullRatio);
+    System.arraycopy(nulls, 0, isNull, 0, SIZE);
+  }
+
+  private int evaluate(VectorExpression expression) {
+    batch.size = SIZE;
+    batch.selectedInUse = false;
+    expression.evaluate(batch);
+    return batch.size;
+  }
+
+  @Benchmark
+  public int longColAddLongColumn() {
+    return evaluate(addLongs);
+  }
+
+  @Benchmark
+  public int doubleColMultiplyDoubleColumn() {
+    return evaluate(multiplyDoubles);
+  }
+
+  @Benchmark
+  public int filterLongColGreaterLongScalar() {
+    return evaluate(filterLong);
+  }
+
+  @Benchmark
+  public int filterStringColEqualStringScalar() {
+    return evaluate(filterString);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + VectorExpressionBench.class.getSimpleName() + ".*")
+        .build();
+    new Runner(opt).run();
+  }
+}
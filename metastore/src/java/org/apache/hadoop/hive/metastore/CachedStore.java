@@ -0,0 +1,633 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.hadoop.hive.metastore;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.AggrStats;
+import org.apache.hadoop.hive.metastore.api.ColumnStatistics;
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsObj;
+import org.apache.hadoop.hive.metastore.api.InvalidInputException;
+import org.apache.hadoop.hive.metastore.api.InvalidObjectException;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.partition.spec.PartitionSpecProxy;
+import org.apache.thrift.TException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * An ObjectStore that keeps the tables and partitions it reads in a memory
+ * cache that all the metastore threads share. Set hive.metastore.rawstore.impl
+ * to this class to use it.
+ *
+ * The cache is write-through: every method of the store that changes a
+ * table or its partitions drops the cached entries of the table, and drops
+ * them again when the transaction of the change commits or rolls back, so
+ * that no other thread keeps an entry that it read before the commit. The
+ * entries of a table are keyed by its version, which each change increments,
+ * so an entry that a thread puts after a change can't be found by anyone.
+ * The entries of the older versions stay until they are evicted.
+ *
+ * The column statistics that are aggregated over partitions for the optimizer
+ * are kept apart from the other entries of their table, under a version of
+ * the table's statistics. A change of the statistics of some partitions only
+ * drops the aggregates that include one of the partitions and one of the
+ * changed columns; the others are moved to the next version. Adding
+ * partitions doesn't change any aggregate, so it keeps them all.
+ *
+ * The cache is only read and filled outside of transactions, because a
+ * transaction must see its own changes. The objects are copied in and out of
+ * the cache, since the callers change the objects they get.
+ */
+public class CachedStore extends ObjectStore {
+  private static final Log LOG = LogFactory.getLog(CachedStore.class);
+
+  private static ObjectCache cache = null;
+
+  // the tables that were changed by the current transaction
+  private final Set<String> changedTables = new HashSet<String>();
+  // the statistics that were changed by the current transaction
+  private final List<StatsChange> changedStats = new ArrayList<StatsChange>();
+
+  /**
+   * The cache of the metastore, which holds tables, partitions, lists of
+   * partitions and aggregated column statistics. An entry weighs as many
+   * objects as it holds and the least recently used entries are evicted first.
+   */
+  static class ObjectCache {
+    private static final String AGGR_STATS = "aggrStats";
+
+    private final Cache<Key, Object> entries;
+    private final ConcurrentMap<String, AtomicLong> versions =
+        new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, AtomicLong> statsVersions =
+        new ConcurrentHashMap<String, AtomicLong>();
+    // the keys of the aggregated column statistics in the cache by table, so
+    // that a change of the statistics only visits the aggregates of its table
+    private final ConcurrentMap<String, Set<Key>> statsKeys =
+        new ConcurrentHashMap<String, Set<Key>>();
+
+    ObjectCache(long maxObjects, long ttlSeconds) {
+      entries = CacheBuilder.newBuilder()
+          .maximumWeight(maxObjects)
+          .weigher(new Weigher<Key, Object>() {
+            @Override
+            public int weigh(Key key, Object value) {
+              if (value instanceof List) {
+                return ((List<?>) value).size() + 1;
+              }
+              if (value instanceof PartitionsByExpr) {
+                return ((PartitionsByExpr) value).partitions.size() + 1;
+              }
+              if (value instanceof AggrStats) {
+                return ((AggrStats) value).getColStatsSize() + 1;
+              }
+              return 1;
+            }
+          })
+          .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+          .removalListener(new RemovalListener<Key, Object>() {
+            @Override
+            public void onRemoval(RemovalNotification<Key, Object> notification) {
+              Key key = notification.getKey();
+              if (notification.getCause() != RemovalCause.REPLACED && isStats(key)) {
+                Set<Key> keys = statsKeys.get(key.table);
+                if (keys != null) {
+                  keys.remove(key);
+                }
+              }
+            }
+          })
+          .build();
+    }
+
+    static String getTableName(String dbName, String tableName) {
+      return dbName.toLowerCase() + "." + tableName.toLowerCase();
+    }
+
+    /**
+     * Make the key of an entry of the current version of a table.
+     *
+     * @param table the name of the table from {@link #getTableName}
+     * @param args the kind of the entry and the arguments that it was read with
+     */
+    Key getKey(String table, Object... args) {
+      AtomicLong version = versions.get(table);
+      return new Key(table, version == null ? 0 : version.get(), Arrays.asList(args));
+    }
+
+    /**
+     * Make the key of the column statistics of some partitions of a table,
+     * aggregated over the partitions, for the current version of the
+     * statistics of the table. The order of the partitions doesn't matter.
+     */
+    Key getStatsKey(String table, List<String> partNames, List<String> colNames) {
+      AtomicLong version = statsVersions.get(table);
+      List<String> parts = new ArrayList<String>(partNames.size());
+      for (String partName : partNames) {
+        parts.add(partName.toLowerCase());
+      }
+      Collections.sort(parts);
+      List<String> cols = new ArrayList<String>(colNames.size());
+      for (String colName : colNames) {
+        cols.add(colName.toLowerCase());
+      }
+      return new Key(table, version == null ? 0 : version.get(),
+          Arrays.<Object>asList(AGGR_STATS, parts, cols));
+    }
+
+    Object get(Key key) {
+      return entries.getIfPresent(key);
+    }
+
+    void put(Key key, Object value) {
+      if (isStats(key)) {
+        getStatsKeys(key.table).add(key);
+      }
+      entries.put(key, value);
+    }
+
+    private Set<Key> getStatsKeys(String table) {
+      Set<Key> keys = statsKeys.get(table);
+      if (keys == null) {
+        statsKeys.putIfAbsent(table,
+            Collections.newSetFromMap(new ConcurrentHashMap<Key, Boolean>()));
+        keys = statsKeys.get(table);
+      }
+      return keys;
+    }
+
+    private static AtomicLong getVersion(ConcurrentMap<String, AtomicLong> versions,
+        String table) {
+      AtomicLong version = versions.get(table);
+      if (version == null) {
+        versions.putIfAbsent(table, new AtomicLong());
+        version = versions.get(table);
+      }
+      return version;
+    }
+
+    private static boolean isStats(Key key) {
+      return AGGR_STATS.equals(key.args.get(0));
+    }
+
+    /**
+     * Drop the entries of a table, except for its aggregated column statistics.
+     * The entries of the older versions can't be found any more and are left
+     * to the eviction, so that a change doesn't have to scan the cache.
+     */
+    void invalidate(String table) {
+      getVersion(versions, table).incrementAndGet();
+    }
+
+    /**
+     * Drop the aggregated column statistics of a table that include one of
+     * some partitions and one of some columns. Only the aggregates of the
+     * table are visited, and the changes of different tables don't wait for
+     * each other.
+     *
+     * @param table the name of the table from {@link #getTableName}
+     * @param partNames the names of the partitions or null for all of them
+     * @param colNames the names of the columns or null for all of them
+     */
+    void invalidateStats(String table, Collection<String> partNames,
+        Collection<String> colNames) {
+      Set<Key> keys = getStatsKeys(table);
+      synchronized (keys) {
+        long version = getVersion(statsVersions, table).incrementAndGet();
+        Set<String> parts = toLowerCase(partNames);
+        Set<String> cols = toLowerCase(colNames);
+        for (Key key : new ArrayList<Key>(keys)) {
+          Object value = entries.asMap().remove(key);
+          keys.remove(key);
+          // an entry of an older version was put by a thread that read the
+          // statistics before an earlier change, so it isn't kept
+          if (value != null && key.version == version - 1
+              && (parts != null && Collections.disjoint((List<?>) key.args.get(1), parts)
+                  || cols != null && Collections.disjoint((List<?>) key.args.get(2), cols))) {
+            put(new Key(table, version, key.args), value);
+          }
+        }
+      }
+    }
+
+    private static Set<String> toLowerCase(Collection<String> names) {
+      if (names == null) {
+        return null;
+      }
+      Set<String> result = new HashSet<String>();
+      for (String name : names) {
+        result.add(name.toLowerCase());
+      }
+      return result;
+    }
+
+    synchronized void invalidateAll() {
+      for (AtomicLong version : versions.values()) {
+        version.incrementAndGet();
+      }
+      for (AtomicLong version : statsVersions.values()) {
+        version.incrementAndGet();
+      }
+      entries.invalidateAll();
+    }
+
+    long size() {
+      return entries.size();
+    }
+  }
+
+  static final class Key {
+    private final String table;
+    private final long version;
+    private final List<Object> args;
+
+    Key(String table, long version, List<Object> args) {
+      this.table = table;
+      this.version = version;
+      this.args = args;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return version == key.version && table.equals(key.table) && args.equals(key.args);
+    }
+
+    @Override
+    public int hashCode() {
+      return (table.hashCode() * 31 + (int) version) * 31 + args.hashCode();
+    }
+  }
+
+  private static final class StatsChange {
+    private final String table;
+    private final Collection<String> partNames;
+    private final Collection<String> colNames;
+
+    private StatsChange(String table, Collection<String> partNames,
+        Collection<String> colNames) {
+      this.table = table;
+      this.partNames = partNames;
+      this.colNames = colNames;
+    }
+  }
+
+  private static final class PartitionsByExpr {
+    private final List<Partition> partitions;
+    private final boolean hasUnknownPartitions;
+
+    private PartitionsByExpr(List<Partition> partitions, boolean hasUnknownPartitions) {
+      this.partitions = partitions;
+      this.hasUnknownPartitions = hasUnknownPartitions;
+    }
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    super.setConf(conf);
+    synchronized (CachedStore.class) {
+      if (cache == null) {
+        long maxObjects = HiveConf.getIntVar(conf, HiveConf.ConfVars.METASTORE_CACHED_OBJECTS_MAX);
+        long ttl = HiveConf.getTimeVar(conf, HiveConf.ConfVars.METASTORE_CACHED_OBJECTS_TTL,
+            TimeUnit.SECONDS);
+        LOG.info("Caching up to " + maxObjects + " tables and partitions for " + ttl + "s");
+        cache = new ObjectCache(maxObjects, ttl);
+      }
+    }
+  }
+
+  private static List<Partition> copyPartitions(List<Partition> partitions) {
+    List<Partition> result = new ArrayList<Partition>(partitions.size());
+    for (Partition partition : partitions) {
+      result.add(new Partition(partition));
+    }
+    return result;
+  }
+
+  /**
+   * Drop the entries of a table, including all its aggregated statistics.
+   */
+  private void invalidate(String dbName, String tableName) {
+    invalidateTable(dbName, tableName);
+    invalidateStats(dbName, tableName, null, null);
+  }
+
+  private void invalidateTable(String dbName, String tableName) {
+    String table = ObjectCache.getTableName(dbName, tableName);
+    cache.invalidate(table);
+    if (isActiveTransaction()) {
+      changedTables.add(table);
+    }
+  }
+
+  private void invalidateStats(String dbName, String tableName, Collection<String> partNames,
+      Collection<String> colNames) {
+    String table = ObjectCache.getTableName(dbName, tableName);
+    cache.invalidateStats(table, partNames, colNames);
+    if (isActiveTransaction()) {
+      changedStats.add(new StatsChange(table, partNames, colNames));
+    }
+  }
+
+  private void invalidateChanges() {
+    for (String table : changedTables) {
+      cache.invalidate(table);
+    }
+    changedTables.clear();
+    for (StatsChange change : changedStats) {
+      cache.invalidateStats(change.table, change.partNames, change.colNames);
+    }
+    changedStats.clear();
+  }
+
+  @Override
+  public boolean commitTransaction() {
+    boolean result = super.commitTransaction();
+    if (!isActiveTransaction()) {
+      invalidateChanges();
+    }
+    return result;
+  }
+
+  @Override
+  public void rollbackTransaction() {
+    super.rollbackTransaction();
+    invalidateChanges();
+  }
+
+  @Override
+  public Table getTable(String dbName, String tableName) throws MetaException {
+    if (isActiveTransaction()) {
+      return super.getTable(dbName, tableName);
+    }
+    Key key = cache.getKey(ObjectCache.getTableName(dbName, tableName), "table");
+    Table table = (Table) cache.get(key);
+    if (table != null) {
+      return new Table(table);
+    }
+    table = super.getTable(dbName, tableName);
+    if (table != null) {
+      cache.put(key, new Table(table));
+    }
+    return table;
+  }
+
+  @Override
+  public Partition getPartition(String dbName, String tableName, List<String> partVals)
+      throws NoSuchObjectException, MetaException {
+    if (isActiveTransaction()) {
+      return super.getPartition(dbName, tableName, partVals);
+    }
+    Key key = cache.getKey(ObjectCache.getTableName(dbName, tableName), "partition",
+        new ArrayList<String>(partVals));
+    Partition partition = (Partition) cache.get(key);
+    if (partition != null) {
+      return new Partition(partition);
+    }
+    partition = super.getPartition(dbName, tableName, partVals);
+    cache.put(key, new Partition(partition));
+    return partition;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public List<Partition> getPartitionsByNames(String dbName, String tblName,
+      List<String> partNames) throws MetaException, NoSuchObjectException {
+    if (isActiveTransaction()) {
+      return super.getPartitionsByNames(dbName, tblName, partNames);
+    }
+    Key key = cache.getKey(ObjectCache.getTableName(dbName, tblName), "partitionsByNames",
+        new ArrayList<String>(partNames));
+    List<Partition> partitions = (List<Partition>) cache.get(key);
+    if (partitions != null) {
+      return copyPartitions(partitions);
+    }
+    partitions = super.getPartitionsByNames(dbName, tblName, partNames);
+    cache.put(key, copyPartitions(partitions));
+    return partitions;
+  }
+
+  @Override
+  public boolean getPartitionsByExpr(String dbName, String tblName, byte[] expr,
+      String defaultPartitionName, short maxParts, List<Partition> result) throws TException {
+    if (isActiveTransaction()) {
+      return super.getPartitionsByExpr(dbName, tblName, expr, defaultPartitionName, maxParts,
+          result);
+    }
+    Key key = cache.getKey(ObjectCache.getTableName(dbName, tblName), "partitionsByExpr",
+        ByteBuffer.wrap(expr.clone()), defaultPartitionName, maxParts);
+    PartitionsByExpr partitions = (PartitionsByExpr) cache.get(key);
+    if (partitions != null) {
+      result.addAll(copyPartitions(partitions.partitions));
+      return partitions.hasUnknownPartitions;
+    }
+    List<Partition> parts = new ArrayList<Partition>();
+    boolean hasUnknownPartitions = super.getPartitionsByExpr(dbName, tblName, expr,
+        defaultPartitionName, maxParts, parts);
+    cache.put(key, new PartitionsByExpr(copyPartitions(parts), hasUnknownPartitions));
+    result.addAll(parts);
+    return hasUnknownPartitions;
+  }
+
+  @Override
+  public AggrStats get_aggr_stats_for(String dbName, String tblName, List<String> partNames,
+      List<String> colNames) throws MetaException, NoSuchObjectException {
+    if (isActiveTransaction()) {
+      return super.get_aggr_stats_for(dbName, tblName, partNames, colNames);
+    }
+    Key key = cache.getStatsKey(ObjectCache.getTableName(dbName, tblName), partNames, colNames);
+    AggrStats stats = (AggrStats) cache.get(key);
+    if (stats != null) {
+      return new AggrStats(stats);
+    }
+    stats = super.get_aggr_stats_for(dbName, tblName, partNames, colNames);
+    if (stats != null) {
+      cache.put(key, new AggrStats(stats));
+    }
+    return stats;
+  }
+
+  @Override
+  public boolean updatePartitionColumnStatistics(ColumnStatistics colStats,
+      List<String> partVals) throws NoSuchObjectException, MetaException, InvalidObjectException,
+      InvalidInputException {
+    try {
+      return super.updatePartitionColumnStatistics(colStats, partVals);
+    } finally {
+      String partName = colStats.getStatsDesc().getPartName();
+      List<String> colNames = new ArrayList<String>();
+      for (ColumnStatisticsObj statsObj : colStats.getStatsObj()) {
+        colNames.add(statsObj.getColName());
+      }
+      invalidateStats(colStats.getStatsDesc().getDbName(), colStats.getStatsDesc().getTableName(),
+          partName == null ? null : Collections.singletonList(partName), colNames);
+    }
+  }
+
+  @Override
+  public boolean deletePartitionColumnStatistics(String dbName, String tableName,
+      String partName, List<String> partVals, String colName) throws NoSuchObjectException,
+      MetaException, InvalidObjectException, InvalidInputException {
+    try {
+      return super.deletePartitionColumnStatistics(dbName, tableName, partName, partVals,
+          colName);
+    } finally {
+      invalidateStats(dbName, tableName,
+          partName == null ? null : Collections.singletonList(partName),
+          colName == null ? null : Collections.singletonList(colName));
+    }
+  }
+
+  @Override
+  public boolean dropDatabase(String dbname) throws NoSuchObjectException, MetaException {
+    try {
+      return super.dropDatabase(dbname);
+    } finally {
+      cache.invalidateAll();
+    }
+  }
+
+  @Override
+  public void createTable(Table tbl) throws InvalidObjectException, MetaException {
+    try {
+      super.createTable(tbl);
+    } finally {
+      invalidate(tbl.getDbName(), tbl.getTableName());
+    }
+  }
+
+  @Override
+  public boolean dropTable(String dbName, String tableName) throws MetaException,
+      NoSuchObjectException, InvalidObjectException, InvalidInputException {
+    try {
+      return super.dropTable(dbName, tableName);
+    } finally {
+      invalidate(dbName, tableName);
+    }
+  }
+
+  @Override
+  public void alterTable(String dbname, String name, Table newTable)
+      throws InvalidObjectException, MetaException {
+    try {
+      super.alterTable(dbname, name, newTable);
+    } finally {
+      invalidate(dbname, name);
+      invalidate(newTable.getDbName(), newTable.getTableName());
+    }
+  }
+
+  @Override
+  public boolean addPartition(Partition part) throws InvalidObjectException, MetaException {
+    try {
+      return super.addPartition(part);
+    } finally {
+      invalidateTable(part.getDbName(), part.getTableName());
+    }
+  }
+
+  @Override
+  public boolean addPartitions(String dbName, String tblName, List<Partition> parts)
+      throws InvalidObjectException, MetaException {
+    try {
+      return super.addPartitions(dbName, tblName, parts);
+    } finally {
+      invalidateTable(dbName, tblName);
+    }
+  }
+
+  @Override
+  public boolean addPartitions(String dbName, String tblName, PartitionSpecProxy partitionSpec,
+      boolean ifNotExists) throws InvalidObjectException, MetaException {
+    try {
+      return super.addPartitions(dbName, tblName, partitionSpec, ifNotExists);
+    } finally {
+      invalidateTable(dbName, tblName);
+    }
+  }
+
+  @Override
+  public boolean dropPartition(String dbName, String tableName, List<String> partVals)
+      throws MetaException, NoSuchObjectException, InvalidObjectException, InvalidInputException {
+    try {
+      return super.dropPartition(dbName, tableName, partVals);
+    } finally {
+      invalidate(dbName, tableName);
+    }
+  }
+
+  @Override
+  public void dropPartitions(String dbName, String tblName, List<String> partNames)
+      throws MetaException, NoSuchObjectException {
+    try {
+      super.dropPartitions(dbName, tblName, partNames);
+    } finally {
+      invalidateTable(dbName, tblName);
+      invalidateStats(dbName, tblName, new ArrayList<String>(partNames), null);
+    }
+  }
+
+  @Override
+  public void alterPartition(String dbname, String name, List<String> partVals,
+      Partition newPart) throws InvalidObjectException, MetaException {
+    try {
+      super.alterPartition(dbname, name, partVals, newPart);
+    } finally {
+      invalidate(dbname, name);
+    }
+  }
+
+  @Override
+  public void alterPartitions(String dbname, String name, List<List<String>> partVals,
+      List<Partition> newParts) throws InvalidObjectException, MetaException {
+    try {
+      super.alterPartitions(dbname, name, partVals, newParts);
+    } finally {
+      invalidate(dbname, name);
+    }
+  }
+}
@@ -22,7 +22,12 @@
 import static org.apache.commons.lang.StringUtils.repeat;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Types;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -40,6 +45,8 @@
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.api.AggrStats;
 import org.apache.hadoop.hive.metastore.api.ColumnStatistics;
 import org.apache.hadoop.hive.metastore.api.ColumnStatisticsData;
@@ -53,8 +60,12 @@
 import org.apache.hadoop.hive.metastore.api.SkewedInfo;
 import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
 import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.model.MColumnDescriptor;
 import org.apache.hadoop.hive.metastore.model.MDatabase;
+import org.apache.hadoop.hive.metastore.model.MPartition;
 import org.apache.hadoop.hive.metastore.model.MPartitionColumnStatistics;
+import org.apache.hadoop.hive.metastore.model.MSerDeInfo;
+import org.apache.hadoop.hive.metastore.model.MStorageDescriptor;
 import org.apache.hadoop.hive.metastore.model.MTableColumnStatistics;
 import org.apache.hadoop.hive.metastore.parser.ExpressionTree;
 import org.apache.hadoop.hive.metastore.parser.ExpressionTree.FilterBuilder;
@@ -94,9 +105,16 @@ class MetaStoreDirectSql {
    * Whether direct SQL can be used with the current datastore backing {@link #pm}.
    */
   private final boolean isCompatibleDatastore;
-  
-  public MetaStoreDirectSql(PersistenceManager pm) {
+
+  /**
+   * The number of partitions whose details are retrieved and assembled at once.
+   */
+  private final int partitionBatchSize;
+
+  public MetaStoreDirectSql(PersistenceManager pm, Configuration conf) {
     this.pm = pm;
+    this.partitionBatchSize =
+        HiveConf.getIntVar(conf, HiveConf.ConfVars.METASTORE_BATCH_RETRIEVE_TABLE_PARTITION_MAX);
     Transaction tx = pm.currentTransaction();
     tx.begin();
     boolean isMySql = false;
@@ -258,8 +276,9 @@ private List<Partition> getPartitionsViaSqlFilterInternal(String dbName, String
     boolean doTrace = LOG.isDebugEnabled();
     dbName = dbName.toLowerCase();
     tblName = tblName.toLowerCase();
-    // We have to be mindful of order during filtering if we are not returning all partitions.
-    String orderForFilter = (max != null) ? " order by \"PART_NAME\" asc" : "";
+    // The partitions are returned in name order. The IDs are ordered too, because both the
+    // limit and the batches below must follow that order.
+    String orderForFilter = " order by \"PART_NAME\" asc";
     if (isMySql) {
       assert pm.currentTransaction().isActive();
       setAnsiQuotesForMysql(); // must be inside tx together with queries
@@ -300,19 +319,47 @@ private List<Partition> getPartitionsViaSqlFilterInternal(String dbName, String
       timingTrace(doTrace, queryText, start, queryTime);
       return new ArrayList<Partition>(); // no partitions, bail early.
     }
+    timingTrace(doTrace, queryText, start, queryTime);
+
+    // Get the details of the partitions in batches, so that the rows of the detail queries
+    // and the intermediate maps for all the partitions of a large table are never in memory
+    // at once. The strings that repeat across partitions are shared by all the batches.
+    int batchSize = partitionBatchSize > 0 ? partitionBatchSize : sqlResult.size();
+    Map<String, String> strings = new HashMap<String, String>();
+    List<Partition> result = new ArrayList<Partition>(sqlResult.size());
+    for (int from = 0; from < sqlResult.size(); from += batchSize) {
+      List<Object> partIdBatch =
+          sqlResult.subList(from, Math.min(from + batchSize, sqlResult.size()));
+      result.addAll(getPartitionsFromPartitionIds(dbName, tblName, isView, partIdBatch, strings));
+    }
+    query.closeAll();
+    return result;
+  }
 
+  /**
+   * Get the partition objects for a batch of partition IDs.
+   * @param dbName Metastore db name.
+   * @param tblName Metastore table name.
+   * @param isView Whether table is a view, or null if not known.
+   * @param partIdList The IDs of the partitions, in the order of their names.
+   * @param strings The strings that were already read, to share them between partitions.
+   * @return List of partition objects, in the order of their names.
+   */
+  private List<Partition> getPartitionsFromPartitionIds(String dbName, String tblName,
+      Boolean isView, List<Object> partIdList, final Map<String, String> strings)
+      throws MetaException {
+    boolean doTrace = LOG.isDebugEnabled();
     // Prepare StringBuilder for "PART_ID in (...)" to use in future queries.
-    int sbCapacity = sqlResult.size() * 7; // if there are 100k things => 6 chars, plus comma
+    int sbCapacity = partIdList.size() * 7; // if there are 100k things => 6 chars, plus comma
     StringBuilder partSb = new StringBuilder(sbCapacity);
     // Assume db and table names are the same for all partition, that's what we're selecting for.
-    for (Object partitionId : sqlResult) {
+    for (Object partitionId : partIdList) {
       partSb.append(StatObjectConverter.extractSqlLong(partitionId)).append(",");
     }
     String partIds = trimCommaList(partSb);
-    timingTrace(doTrace, queryText, start, queryTime);
 
     // Now get most of the other fields.
-    queryText =
+    String queryText =
       "select \"PARTITIONS\".\"PART_ID\", \"SDS\".\"SD_ID\", \"SDS\".\"CD_ID\","
     + " \"SERDES\".\"SERDE_ID\", \"PARTITIONS\".\"CREATE_TIME\","
     + " \"PARTITIONS\".\"LAST_ACCESS_TIME\", \"SDS\".\"INPUT_FORMAT\", \"SDS\".\"IS_COMPRESSED\","
@@ -322,11 +369,11 @@ private List<Partition> getPartitionsViaSqlFilterInternal(String dbName, String
     + "  left outer join \"SDS\" on \"PARTITIONS\".\"SD_ID\" = \"SDS\".\"SD_ID\" "
     + "  left outer join \"SERDES\" on \"SDS\".\"SERDE_ID\" = \"SERDES\".\"SERDE_ID\" "
     + "where \"PART_ID\" in (" + partIds + ") order by \"PART_NAME\" asc";
-    start = doTrace ? System.nanoTime() : 0;
-    query = pm.newQuery("javax.jdo.query.SQL", queryText);
+    long start = doTrace ? System.nanoTime() : 0;
+    Query query = pm.newQuery("javax.jdo.query.SQL", queryText);
     @SuppressWarnings("unchecked")
-    List<Object[]> sqlResult2 = (List<Object[]>)query.executeWithArray(params);
-    queryTime = doTrace ? System.nanoTime() : 0;
+    List<Object[]> sqlResult = (List<Object[]>)query.execute();
+    long queryTime = doTrace ? System.nanoTime() : 0;
 
     // Read all the fields and create partitions, SDs and serdes.
     TreeMap<Long, Partition> partitions = new TreeMap<Long, Partition>();
@@ -334,14 +381,12 @@ private List<Partition> getPartitionsViaSqlFilterInternal(String dbName, String
     TreeMap<Long, SerDeInfo> serdes = new TreeMap<Long, SerDeInfo>();
     TreeMap<Long, List<FieldSchema>> colss = new TreeMap<Long, List<FieldSchema>>();
     // Keep order by name, consistent with JDO.
-    ArrayList<Partition> orderedResult = new ArrayList<Partition>(sqlResult.size());
+    ArrayList<Partition> orderedResult = new ArrayList<Partition>(partIdList.size());
 
     // Prepare StringBuilder-s for "in (...)" lists to use in one-to-many queries.
     StringBuilder sdSb = new StringBuilder(sbCapacity), serdeSb = new StringBuilder(sbCapacity);
     StringBuilder colsSb = new StringBuilder(7); // We expect that there's only one field schema.
-    tblName = tblName.toLowerCase();
-    dbName = dbName.toLowerCase();
-    for (Object[] fields : sqlResult2) {
+    for (Object[] fields : sqlResult) {
       // Here comes the ugly part...
       long partitionId = StatObjectConverter.extractSqlLong(fields[0]);
       Long sdId = StatObjectConverter.extractSqlLong(fields[1]);
@@ -384,14 +429,14 @@ private List<Partition> getPartitionsViaSqlFilterInternal(String dbName, String
       sd.setParameters(new HashMap<String, String>());
       sd.setSkewedInfo(new SkewedInfo(new ArrayList<String>(),
           new ArrayList<List<String>>(), new HashMap<List<String>, String>()));
-      sd.setInputFormat((String)fields[6]);
+      sd.setInputFormat(intern(strings, (String)fields[6]));
       Boolean tmpBoolean = extractSqlBoolean(fields[7]);
       if (tmpBoolean != null) sd.setCompressed(tmpBoolean);
       tmpBoolean = extractSqlBoolean(fields[8]);
       if (tmpBoolean != null) sd.setStoredAsSubDirectories(tmpBoolean);
       sd.setLocation((String)fields[9]);
       if (fields[10] != null) sd.setNumBuckets(extractSqlInt(fields[10]));
-      sd.setOutputFormat((String)fields[11]);
+      sd.setOutputFormat(intern(strings, (String)fields[11]));
       sdSb.append(sdId).append(",");
       part.setSd(sd);
 
@@ -411,8 +456,8 @@ private List<Partition> getPartitionsViaSqlFilterInternal(String dbName, String
         throw new MetaException("SDs reuse serdes; we don't expect that");
       }
       serde.setParameters(new HashMap<String, String>());
-      serde.setName((String)fields[12]);
-      serde.setSerializationLib((String)fields[13]);
+      serde.setName(intern(strings, (String)fields[12]));
+      serde.setSerializationLib(intern(strings, (String)fields[13]));
       serdeSb.append(serdeId).append(",");
       sd.setSerdeInfo(serde);
     }
@@ -426,7 +471,7 @@ private List<Partition> getPartitionsViaSqlFilterInternal(String dbName, String
     loopJoinOrderedResult(partitions, queryText, 0, new ApplyFunc<Partition>() {
       @Override
       public void apply(Partition t, Object[] fields) {
-        t.putToParameters((String)fields[1], (String)fields[2]);
+        t.putToParameters(intern(strings, (String)fields[1]), (String)fields[2]);
       }});
 
     queryText = "select \"PART_ID\", \"PART_KEY_VAL\" from \"PARTITION_KEY_VALS\""
@@ -453,7 +498,7 @@ public void apply(Partition t, Object[] fields) {
     loopJoinOrderedResult(sds, queryText, 0, new ApplyFunc<StorageDescriptor>() {
       @Override
       public void apply(StorageDescriptor t, Object[] fields) {
-        t.putToParameters((String)fields[1], (String)fields[2]);
+        t.putToParameters(intern(strings, (String)fields[1]), intern(strings, (String)fields[2]));
       }});
 
     queryText = "select \"SD_ID\", \"COLUMN_NAME\", \"SORT_COLS\".\"ORDER\" from \"SORT_COLS\""
@@ -590,12 +635,371 @@ public void apply(List<FieldSchema> t, Object[] fields) {
     loopJoinOrderedResult(serdes, queryText, 0, new ApplyFunc<SerDeInfo>() {
       @Override
       public void apply(SerDeInfo t, Object[] fields) {
-        t.putToParameters((String)fields[1], (String)fields[2]);
+        t.putToParameters(intern(strings, (String)fields[1]), intern(strings, (String)fields[2]));
       }});
 
     return orderedResult;
   }
 
+  /**
+   * Get the string that was already read and is equal to the value, so that the
+   * partitions whose formats, serdes and parameters are the same don't keep a
+   * copy of them each.
+   */
+  private static String intern(Map<String, String> strings, String value) {
+    if (value == null) {
+      return null;
+    }
+    String result = strings.get(value);
+    if (result == null) {
+      strings.put(value, value);
+      result = value;
+    }
+    return result;
+  }
+
+  /**
+   * Add the partitions of a table with batched JDBC inserts, instead of persisting the
+   * object graph of each partition separately. The IDs of the new rows are reserved from the
+   * sequences that DataNucleus allocates the IDs of the model objects from, so the rows are
+   * the same as if JDO wrote them. Must be called inside the transaction that adds the
+   * partitions; the reserved sequences stay locked until it ends. The partitions must have
+   * storage descriptors with columns and serdes, and no skewed info.
+   * @param dbName Metastore db name.
+   * @param tblName Metastore table name.
+   * @param partNames The names of the partitions, in the same order as the partitions.
+   * @param parts The partitions to add.
+   */
+  public void addPartitions(String dbName, String tblName, List<String> partNames,
+      List<Partition> parts) throws MetaException {
+    boolean doTrace = LOG.isDebugEnabled();
+    long start = doTrace ? System.nanoTime() : 0;
+    assert pm.currentTransaction().isActive();
+    if (isMySql) {
+      setAnsiQuotesForMysql(); // must be inside tx together with queries
+    }
+
+    // Get the table and its columns, which the partitions with the same columns share.
+    String queryText = "select \"TBLS\".\"TBL_ID\", \"SDS\".\"CD_ID\" from \"TBLS\""
+        + "  inner join \"DBS\" on \"TBLS\".\"DB_ID\" = \"DBS\".\"DB_ID\" "
+        + "  left outer join \"SDS\" on \"TBLS\".\"SD_ID\" = \"SDS\".\"SD_ID\" "
+        + "where \"TBLS\".\"TBL_NAME\" = ? and \"DBS\".\"NAME\" = ?";
+    Query query = pm.newQuery("javax.jdo.query.SQL", queryText);
+    query.setUnique(true);
+    Object[] fields = (Object[])query.executeWithArray(
+        new Object[] { tblName.toLowerCase(), dbName.toLowerCase() });
+    if (fields == null) {
+      throw new MetaException("Table " + dbName + "." + tblName + " doesn't exist");
+    }
+    long tableId = StatObjectConverter.extractSqlLong(fields[0]);
+    Long tableCdId = StatObjectConverter.extractSqlLong(fields[1]);
+    query.closeAll();
+    List<FieldSchema> tableCols = null;
+    if (tableCdId != null) {
+      queryText = "select \"COLUMN_NAME\", \"TYPE_NAME\", \"COMMENT\" from \"COLUMNS_V2\""
+          + " where \"CD_ID\" = ? and \"INTEGER_IDX\" >= 0 order by \"INTEGER_IDX\" asc";
+      query = pm.newQuery("javax.jdo.query.SQL", queryText);
+      @SuppressWarnings("unchecked")
+      List<Object[]> sqlResult = (List<Object[]>)query.executeWithArray(tableCdId);
+      tableCols = new ArrayList<FieldSchema>(sqlResult.size());
+      for (Object[] col : sqlResult) {
+        tableCols.add(new FieldSchema((String)col[0], (String)col[1], (String)col[2]));
+      }
+      query.closeAll();
+    }
+    int newCds = 0;
+    for (Partition part : parts) {
+      if (tableCols == null || !tableCols.equals(part.getSd().getCols())) {
+        ++newCds;
+      }
+    }
+
+    JDOConnection jdoConn = pm.getDataStoreConnection();
+    BatchInsert serdes = null, serdeParams = null, cds = null, columns = null, sds = null,
+        sdParams = null, bucketCols = null, sortCols = null, partitions = null,
+        partKeyVals = null, partParams = null;
+    try {
+      Connection conn = (Connection)jdoConn.getNativeConnection();
+      // Derby maps booleans to 'Y'/'N', the others have booleans or bits.
+      boolean isDerby =
+          conn.getMetaData().getDatabaseProductName().toLowerCase().contains("derby");
+      long partId = reserveIds(MPartition.class, parts.size());
+      long sdId = reserveIds(MStorageDescriptor.class, parts.size());
+      long serdeId = reserveIds(MSerDeInfo.class, parts.size());
+      long cdId = newCds == 0 ? 0 : reserveIds(MColumnDescriptor.class, newCds);
+
+      // Insert the rows in the order of the foreign keys between the tables.
+      serdes = new BatchInsert(conn, isDerby, "SERDES", "SERDE_ID", "NAME", "SLIB");
+      serdeParams = new BatchInsert(conn, isDerby, "SERDE_PARAMS",
+          "SERDE_ID", "PARAM_KEY", "PARAM_VALUE");
+      cds = new BatchInsert(conn, isDerby, "CDS", "CD_ID");
+      columns = new BatchInsert(conn, isDerby, "COLUMNS_V2",
+          "CD_ID", "COMMENT", "COLUMN_NAME", "TYPE_NAME", "INTEGER_IDX");
+      sds = new BatchInsert(conn, isDerby, "SDS", "SD_ID", "CD_ID", "INPUT_FORMAT",
+          "IS_COMPRESSED", "IS_STOREDASSUBDIRECTORIES", "LOCATION", "NUM_BUCKETS",
+          "OUTPUT_FORMAT", "SERDE_ID");
+      sdParams = new BatchInsert(conn, isDerby, "SD_PARAMS", "SD_ID", "PARAM_KEY", "PARAM_VALUE");
+      bucketCols = new BatchInsert(conn, isDerby, "BUCKETING_COLS",
+          "SD_ID", "BUCKET_COL_NAME", "INTEGER_IDX");
+      sortCols = new BatchInsert(conn, isDerby, "SORT_COLS",
+          "SD_ID", "COLUMN_NAME", "ORDER", "INTEGER_IDX");
+      partitions = new BatchInsert(conn, isDerby, "PARTITIONS", "PART_ID", "CREATE_TIME",
+          "LAST_ACCESS_TIME", "PART_NAME", "SD_ID", "TBL_ID");
+      partKeyVals = new BatchInsert(conn, isDerby, "PARTITION_KEY_VALS",
+          "PART_ID", "PART_KEY_VAL", "INTEGER_IDX");
+      partParams = new BatchInsert(conn, isDerby, "PARTITION_PARAMS",
+          "PART_ID", "PARAM_KEY", "PARAM_VALUE");
+      BatchInsert[] inserts = new BatchInsert[] { serdes, serdeParams, cds, columns, sds,
+          sdParams, bucketCols, sortCols, partitions, partKeyVals, partParams };
+
+      int batchSize = partitionBatchSize > 0 ? partitionBatchSize : parts.size();
+      for (int i = 0; i < parts.size(); ++i) {
+        Partition part = parts.get(i);
+        StorageDescriptor sd = part.getSd();
+        SerDeInfo serde = sd.getSerdeInfo();
+        serdes.add(serdeId, serde.getName(), serde.getSerializationLib());
+        addParams(serdeParams, serdeId, serde.getParameters());
+
+        long partCdId;
+        if (tableCols == null || !tableCols.equals(sd.getCols())) {
+          partCdId = cdId++;
+          cds.add(partCdId);
+          for (int col = 0; col < sd.getColsSize(); ++col) {
+            FieldSchema schema = sd.getCols().get(col);
+            columns.add(partCdId, schema.getComment(), schema.getName().toLowerCase(),
+                schema.getType(), col);
+          }
+        } else {
+          partCdId = tableCdId;
+        }
+
+        sds.add(sdId, partCdId, sd.getInputFormat(), sd.isCompressed(),
+            sd.isStoredAsSubDirectories(), sd.getLocation(), sd.getNumBuckets(),
+            sd.getOutputFormat(), serdeId);
+        addParams(sdParams, sdId, sd.getParameters());
+        for (int col = 0; col < sd.getBucketColsSize(); ++col) {
+          bucketCols.add(sdId, sd.getBucketCols().get(col), col);
+        }
+        for (int col = 0; col < sd.getSortColsSize(); ++col) {
+          Order order = sd.getSortCols().get(col);
+          sortCols.add(sdId, order.getCol().toLowerCase(), order.getOrder(), col);
+        }
+
+        partitions.add(partId, part.getCreateTime(), part.getLastAccessTime(),
+            partNames.get(i), sdId, tableId);
+        for (int value = 0; value < part.getValuesSize(); ++value) {
+          partKeyVals.add(partId, part.getValues().get(value), value);
+        }
+        addParams(partParams, partId, part.getParameters());
+        ++partId;
+        ++sdId;
+        ++serdeId;
+
+        if ((i + 1) % batchSize == 0 || i + 1 == parts.size()) {
+          for (BatchInsert insert : inserts) {
+            insert.execute();
+          }
+        }
+      }
+    } catch (SQLException ex) {
+      throw new MetaException("Cannot add partitions of " + dbName + "." + tblName + ": "
+          + ex.getMessage());
+    } finally {
+      for (BatchInsert insert : new BatchInsert[] { serdes, serdeParams, cds, columns, sds,
+          sdParams, bucketCols, sortCols, partitions, partKeyVals, partParams }) {
+        if (insert != null) {
+          insert.close();
+        }
+      }
+      jdoConn.close(); // We must release the connection before we call other pm methods.
+    }
+    timingTrace(doTrace, "insert " + parts.size() + " partitions", start, System.nanoTime());
+  }
+
+  private static void addParams(BatchInsert insert, long id, Map<String, String> params)
+      throws SQLException {
+    if (params == null) {
+      return;
+    }
+    for (Map.Entry<String, String> param : params.entrySet()) {
+      if (param.getKey() != null) {
+        insert.add(id, param.getKey(), param.getValue());
+      }
+    }
+  }
+
+  /**
+   * Reserve a range of IDs of a model class from the SEQUENCE_TABLE, which DataNucleus
+   * allocates them from. Like DataNucleus, the range is reserved in a short transaction
+   * on a connection of its own, so the sequence isn't locked until the partitions are
+   * committed. The IDs are lost if the partitions are rolled back.
+   * @param modelClass The model class whose objects are stored in the rows.
+   * @param count The number of IDs.
+   * @return The first ID of the range.
+   */
+  private long reserveIds(Class<?> modelClass, int count) throws SQLException, MetaException {
+    PersistenceManager sequencePm = pm.getPersistenceManagerFactory().getPersistenceManager();
+    Transaction tx = sequencePm.currentTransaction();
+    try {
+      tx.begin();
+      JDOConnection jdoConn = sequencePm.getDataStoreConnection();
+      long firstId;
+      try {
+        firstId = reserveIds((Connection)jdoConn.getNativeConnection(), isMySql,
+            modelClass.getName(), count);
+      } finally {
+        jdoConn.close();
+      }
+      tx.commit();
+      return firstId;
+    } finally {
+      if (tx.isActive()) {
+        tx.rollback();
+      }
+      sequencePm.close();
+    }
+  }
+
+  /**
+   * Reserve a range of IDs from a sequence on a connection whose transaction is committed
+   * by the caller.
+   * @param conn The connection of the sequence transaction.
+   * @param isMySql Whether the ANSI quotes mode has to be set on the connection first,
+   *                which the pooled connection may not have.
+   * @param sequenceName The name of the sequence.
+   * @param count The number of IDs.
+   * @return The first ID of the range.
+   */
+  static long reserveIds(Connection conn, boolean isMySql, String sequenceName, int count)
+      throws SQLException, MetaException {
+    if (isMySql) {
+      Statement statement = conn.createStatement();
+      try {
+        statement.execute("SET @@session.sql_mode=ANSI_QUOTES");
+      } finally {
+        statement.close();
+      }
+    }
+    PreparedStatement update = conn.prepareStatement("update \"SEQUENCE_TABLE\""
+        + " set \"NEXT_VAL\" = \"NEXT_VAL\" + ? where \"SEQUENCE_NAME\" = ?");
+    try {
+      update.setLong(1, count);
+      update.setString(2, sequenceName);
+      if (update.executeUpdate() == 0) {
+        // No object of the class was persisted yet; start where DataNucleus would.
+        if (insertSequence(conn, sequenceName, 1 + count)) {
+          return 1;
+        }
+        // Another metastore inserted the row first; the update finds it now.
+        if (update.executeUpdate() == 0) {
+          throw new MetaException("Sequence " + sequenceName + " disappeared");
+        }
+      }
+    } finally {
+      update.close();
+    }
+    PreparedStatement select = conn.prepareStatement("select \"NEXT_VAL\" from"
+        + " \"SEQUENCE_TABLE\" where \"SEQUENCE_NAME\" = ?");
+    try {
+      select.setString(1, sequenceName);
+      ResultSet result = select.executeQuery();
+      if (!result.next()) {
+        throw new MetaException("Sequence " + sequenceName + " disappeared");
+      }
+      return result.getLong(1) - count;
+    } finally {
+      select.close();
+    }
+  }
+
+  /**
+   * Insert the row of a sequence.
+   * @return Whether the row was inserted, or another transaction inserted it first.
+   */
+  private static boolean insertSequence(Connection conn, String sequenceName, long nextVal)
+      throws SQLException {
+    PreparedStatement insert = conn.prepareStatement("insert into \"SEQUENCE_TABLE\""
+        + " (\"SEQUENCE_NAME\", \"NEXT_VAL\") values (?, ?)");
+    try {
+      insert.setString(1, sequenceName);
+      insert.setLong(2, nextVal);
+      // Some databases abort the whole transaction on an error; only undo the insert.
+      Savepoint savepoint = conn.setSavepoint();
+      try {
+        insert.executeUpdate();
+      } catch (SQLException ex) {
+        // SQL state class 23 is an integrity constraint violation, i.e. a duplicate key.
+        if (ex.getSQLState() == null || !ex.getSQLState().startsWith("23")) {
+          throw ex;
+        }
+        conn.rollback(savepoint);
+        return false;
+      }
+      return true;
+    } finally {
+      insert.close();
+    }
+  }
+
+  /**
+   * The rows that are inserted into a table with a batched prepared statement.
+   */
+  private static class BatchInsert {
+    private final PreparedStatement statement;
+    private final boolean isDerby;
+    private int rows = 0;
+
+    BatchInsert(Connection conn, boolean isDerby, String table, String... columns)
+        throws SQLException {
+      StringBuilder sb = new StringBuilder("insert into \"").append(table).append("\" (");
+      for (String column : columns) {
+        sb.append('"').append(column).append("\",");
+      }
+      sb.setLength(sb.length() - 1);
+      sb.append(") values (").append(makeParams(columns.length)).append(')');
+      this.statement = conn.prepareStatement(sb.toString());
+      this.isDerby = isDerby;
+    }
+
+    void add(Object... values) throws SQLException {
+      for (int i = 0; i < values.length; ++i) {
+        Object value = values[i];
+        if (value == null) {
+          statement.setNull(i + 1, Types.VARCHAR);
+        } else if (value instanceof Boolean) {
+          if (isDerby) {
+            statement.setString(i + 1, (Boolean)value ? "Y" : "N");
+          } else {
+            statement.setBoolean(i + 1, (Boolean)value);
+          }
+        } else if (value instanceof Integer) {
+          statement.setInt(i + 1, (Integer)value);
+        } else if (value instanceof Long) {
+          statement.setLong(i + 1, (Long)value);
+        } else {
+          statement.setString(i + 1, (String)value);
+        }
+      }
+      statement.addBatch();
+      ++rows;
+    }
+
+    void execute() throws SQLException {
+      if (rows > 0) {
+        statement.executeBatch();
+        rows = 0;
+      }
+    }
+
+    void close() {
+      try {
+        statement.close();
+      } catch (SQLException ex) {
+        LOG.warn("Cannot close the statement", ex);
+      }
+    }
+  }
+
   private void timingTrace(boolean doTrace, String queryText, long start, long queryTime) {
     if (!doTrace) return;
     LOG.debug("Direct SQL query in " + (queryTime - start) / 1000000.0 + "ms + " +
@@ -1237,7 +1641,7 @@ private List<Object[]> ensureList(Object result) throws MetaException {
     return (List<Object[]>)result;
   }
 
-  private String makeParams(int size) {
+  private static String makeParams(int size) {
     // W/ size 0, query will fail, but at least we'd get to see the query in debug output.
     return (size == 0) ? "" : repeat(",?", size).substring(1);
   }
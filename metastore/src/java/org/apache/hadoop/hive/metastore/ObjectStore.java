@@ -267,7 +267,7 @@ private void initialize(Properties dsProps) {
     isInitialized = pm != null;
     if (isInitialized) {
       expressionProxy = createExpressionProxy(hiveConf);
-      directSql = new MetaStoreDirectSql(pm);
+      directSql = new MetaStoreDirectSql(pm, hiveConf);
     }
     LOG.debug("RawStore: " + this + ", with PersistenceManager: " + pm +
         " created in the thread with id: " + Thread.currentThread().getId());
@@ -1270,34 +1270,13 @@ public boolean addPartitions(String dbName, String tblName, List<Partition> part
         tabGrants = this.listAllTableGrants(dbName, tblName);
         tabColumnGrants = this.listTableAllColumnGrants(dbName, tblName);
       }
-      List<Object> toPersist = new ArrayList<Object>();
       for (Partition part : parts) {
         if (!part.getTableName().equals(tblName) || !part.getDbName().equals(dbName)) {
           throw new MetaException("Partition does not belong to target table "
               + dbName + "." + tblName + ": " + part);
         }
-        MPartition mpart = convertToMPart(part, true);
-        toPersist.add(mpart);
-        int now = (int)(System.currentTimeMillis()/1000);
-        if (tabGrants != null) {
-          for (MTablePrivilege tab: tabGrants) {
-            toPersist.add(new MPartitionPrivilege(tab.getPrincipalName(),
-                tab.getPrincipalType(), mpart, tab.getPrivilege(), now,
-                tab.getGrantor(), tab.getGrantorType(), tab.getGrantOption()));
-          }
-        }
-
-        if (tabColumnGrants != null) {
-          for (MTableColumnPrivilege col : tabColumnGrants) {
-            toPersist.add(new MPartitionColumnPrivilege(col.getPrincipalName(),
-                col.getPrincipalType(), mpart, col.getColumnName(), col.getPrivilege(),
-                now, col.getGrantor(), col.getGrantorType(), col.getGrantOption()));
-          }
-        }
-      }
-      if (toPersist.size() > 0) {
-        pm.makePersistentAll(toPersist);
       }
+      addPartitionsNoTxn(table, parts, tabGrants, tabColumnGrants);
 
       success = commitTransaction();
     } finally {
@@ -1320,6 +1299,76 @@ private boolean isValidPartition(
     return !doesExist;
   }
 
+  /**
+   * Persist the partitions of a table. Without partition level privileges, the partitions
+   * are inserted with batched direct SQL if it is enabled, because persisting the object
+   * graphs of thousands of partitions one at a time is slow.
+   */
+  private void addPartitionsNoTxn(MTable table, List<Partition> parts,
+      List<MTablePrivilege> tabGrants, List<MTableColumnPrivilege> tabColumnGrants)
+      throws InvalidObjectException, MetaException {
+    if (parts.isEmpty()) {
+      return;
+    }
+    if (tabGrants == null && tabColumnGrants == null && canAddPartitionsViaSql(parts)) {
+      List<FieldSchema> partKeys = convertToFieldSchemas(table.getPartitionKeys());
+      List<String> partNames = new ArrayList<String>(parts.size());
+      for (Partition part : parts) {
+        partNames.add(Warehouse.makePartName(partKeys, part.getValues()));
+      }
+      directSql.addPartitions(table.getDatabase().getName(), table.getTableName(),
+          partNames, parts);
+      return;
+    }
+    List<Object> toPersist = new ArrayList<Object>();
+    int now = (int)(System.currentTimeMillis()/1000);
+    for (Partition part : parts) {
+      MPartition mpart = convertToMPart(table, part, true);
+      toPersist.add(mpart);
+      if (tabGrants != null) {
+        for (MTablePrivilege tab: tabGrants) {
+          toPersist.add(new MPartitionPrivilege(tab.getPrincipalName(),
+              tab.getPrincipalType(), mpart, tab.getPrivilege(), now,
+              tab.getGrantor(), tab.getGrantorType(), tab.getGrantOption()));
+        }
+      }
+
+      if (tabColumnGrants != null) {
+        for (MTableColumnPrivilege col : tabColumnGrants) {
+          toPersist.add(new MPartitionColumnPrivilege(col.getPrincipalName(),
+              col.getPrincipalType(), mpart, col.getColumnName(), col.getPrivilege(),
+              now, col.getGrantor(), col.getGrantorType(), col.getGrantOption()));
+        }
+      }
+    }
+    pm.makePersistentAll(toPersist);
+  }
+
+  /**
+   * Can the partitions be inserted with direct SQL? It writes the storage descriptors of
+   * regular partitions, but not skewed info.
+   */
+  private boolean canAddPartitionsViaSql(List<Partition> parts) {
+    if (!HiveConf.getBoolVar(getConf(), ConfVars.METASTORE_TRY_DIRECT_SQL)
+        || !HiveConf.getBoolVar(getConf(), ConfVars.METASTORE_TRY_DIRECT_SQL_DDL)
+        || !directSql.isCompatibleDatastore()) {
+      return false;
+    }
+    for (Partition part : parts) {
+      StorageDescriptor sd = part.getSd();
+      if (sd == null || sd.getCols() == null || sd.getSerdeInfo() == null) {
+        return false;
+      }
+      SkewedInfo skewedInfo = sd.getSkewedInfo();
+      if (skewedInfo != null && (skewedInfo.getSkewedColNamesSize() > 0
+          || skewedInfo.getSkewedColValuesSize() > 0
+          || skewedInfo.getSkewedColValueLocationMapsSize() > 0)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
 
   @Override
   public boolean addPartitions(String dbName, String tblName,
@@ -1343,31 +1392,15 @@ public boolean addPartitions(String dbName, String tblName,
 
       PartitionSpecProxy.PartitionIterator iterator = partitionSpec.getPartitionIterator();
 
-      int now = (int)(System.currentTimeMillis()/1000);
-
+      List<Partition> parts = new ArrayList<Partition>();
       while (iterator.hasNext()) {
         Partition part = iterator.next();
 
         if (isValidPartition(part, ifNotExists)) {
-          MPartition mpart = convertToMPart(part, true);
-          pm.makePersistent(mpart);
-          if (tabGrants != null) {
-            for (MTablePrivilege tab : tabGrants) {
-              pm.makePersistent(new MPartitionPrivilege(tab.getPrincipalName(),
-                  tab.getPrincipalType(), mpart, tab.getPrivilege(), now,
-                  tab.getGrantor(), tab.getGrantorType(), tab.getGrantOption()));
-            }
-          }
-
-          if (tabColumnGrants != null) {
-            for (MTableColumnPrivilege col : tabColumnGrants) {
-              pm.makePersistent(new MPartitionColumnPrivilege(col.getPrincipalName(),
-                  col.getPrincipalType(), mpart, col.getColumnName(), col.getPrivilege(),
-                  now, col.getGrantor(), col.getGrantorType(), col.getGrantOption()));
-            }
-          }
+          parts.add(part);
         }
       }
+      addPartitionsNoTxn(table, parts, tabGrants, tabColumnGrants);
 
       success = commitTransaction();
     } finally {
@@ -1500,6 +1533,18 @@ private MPartition convertToMPart(Partition part, boolean useTableCD)
       throw new InvalidObjectException(
           "Partition doesn't have a valid table or database name");
     }
+    return convertToMPart(mt, part, useTableCD);
+  }
+
+  /**
+   * Convert a Partition object of a table that was already fetched into an MPartition.
+   * @see #convertToMPart(Partition, boolean)
+   */
+  private MPartition convertToMPart(MTable mt, Partition part, boolean useTableCD)
+      throws MetaException {
+    if (part == null) {
+      return null;
+    }
 
     // If this partition's set of columns is the same as the parent table's,
     // use the parent table's, so we do not create a duplicate column descriptor,
@@ -2726,6 +2771,11 @@ private void alterPartitionNoTxn(String dbname, String name, List<String> part_v
     dbname = dbname.toLowerCase();
     MPartition oldp = getMPartition(dbname, name, part_vals);
     MPartition newp = convertToMPart(newPart, false);
+    alterPartitionNoTxn(oldp, newp, newPart);
+  }
+
+  private void alterPartitionNoTxn(MPartition oldp, MPartition newp, Partition newPart)
+      throws InvalidObjectException, MetaException {
     if (oldp == null || newp == null) {
       throw new InvalidObjectException("partition does not exist.");
     }
@@ -2775,10 +2825,41 @@ public void alterPartitions(String dbname, String name, List<List<String>> part_
     Exception e = null;
     try {
       openTransaction();
-      Iterator<List<String>> part_val_itr = part_vals.iterator();
-      for (Partition tmpPart: newParts) {
-        List<String> tmpPartVals = part_val_itr.next();
-        alterPartitionNoTxn(dbname, name, tmpPartVals, tmpPart);
+      name = name.toLowerCase();
+      dbname = dbname.toLowerCase();
+      MTable table = getMTable(dbname, name);
+      if (table == null) {
+        throw new InvalidObjectException("table " + dbname + "." + name + " does not exist.");
+      }
+      // Look the old partitions up in batches, instead of one query per partition.
+      List<FieldSchema> partKeys = convertToFieldSchemas(table.getPartitionKeys());
+      int batchSize = HiveConf.getIntVar(getConf(),
+          ConfVars.METASTORE_BATCH_RETRIEVE_TABLE_PARTITION_MAX);
+      if (batchSize <= 0) {
+        batchSize = Math.max(newParts.size(), 1);
+      }
+      for (int from = 0; from < newParts.size(); from += batchSize) {
+        int to = Math.min(from + batchSize, newParts.size());
+        List<String> partNames = new ArrayList<String>(to - from);
+        for (List<String> tmpPartVals : part_vals.subList(from, to)) {
+          partNames.add(Warehouse.makePartName(partKeys, tmpPartVals));
+        }
+        Map<String, MPartition> oldParts = new HashMap<String, MPartition>();
+        Out<Query> query = new Out<Query>();
+        try {
+          for (MPartition oldp : getMPartitionsViaOrmFilter(dbname, name, partNames, query)) {
+            oldParts.put(oldp.getPartitionName(), oldp);
+          }
+        } finally {
+          if (query.val != null) {
+            query.val.closeAll();
+          }
+        }
+        for (int i = from; i < to; ++i) {
+          Partition tmpPart = newParts.get(i);
+          alterPartitionNoTxn(oldParts.get(partNames.get(i - from)),
+              convertToMPart(table, tmpPart, false), tmpPart);
+        }
       }
       // commit the changes
       success = commitTransaction();
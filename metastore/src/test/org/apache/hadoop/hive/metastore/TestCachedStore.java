@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hive.metastore.CachedStore.Key;
+import org.apache.hadoop.hive.metastore.CachedStore.ObjectCache;
+import org.apache.hadoop.hive.metastore.api.AggrStats;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.junit.Test;
+
+/**
+ * Tests for the cache of CachedStore.
+ */
+public class TestCachedStore {
+
+  @Test
+  public void testInvalidate() {
+    ObjectCache cache = new ObjectCache(100, 600);
+    String table = ObjectCache.getTableName("Default", "T1");
+    assertEquals("default.t1", table);
+    Table t1 = new Table();
+    Key key = cache.getKey(table, "table");
+    cache.put(key, t1);
+    assertSame(t1, cache.get(cache.getKey(table, "table")));
+
+    String other = ObjectCache.getTableName("default", "t2");
+    Table t2 = new Table();
+    cache.put(cache.getKey(other, "table"), t2);
+
+    cache.invalidate(table);
+    assertNull(cache.get(cache.getKey(table, "table")));
+    assertSame(t2, cache.get(cache.getKey(other, "table")));
+
+    // a thread that read the table before the change can't put it back
+    cache.put(key, t1);
+    assertNull(cache.get(cache.getKey(table, "table")));
+
+    cache.invalidateAll();
+    assertNull(cache.get(cache.getKey(other, "table")));
+  }
+
+  @Test
+  public void testKeys() {
+    ObjectCache cache = new ObjectCache(100, 600);
+    String table = ObjectCache.getTableName("default", "t1");
+    List<Partition> partitions = new ArrayList<Partition>();
+    partitions.add(new Partition());
+    cache.put(cache.getKey(table, "partitionsByNames", Arrays.asList("p=1")), partitions);
+    assertSame(partitions,
+        cache.get(cache.getKey(table, "partitionsByNames", new ArrayList<String>(
+            Arrays.asList("p=1")))));
+    assertNull(cache.get(cache.getKey(table, "partitionsByNames", Arrays.asList("p=2"))));
+    assertNull(cache.get(cache.getKey(table, "partition", Arrays.asList("p=1"))));
+  }
+
+  @Test
+  public void testEviction() {
+    ObjectCache cache = new ObjectCache(10, 600);
+    String table = ObjectCache.getTableName("default", "t1");
+    for (int i = 0; i < 20; ++i) {
+      List<Partition> partitions = new ArrayList<Partition>();
+      partitions.add(new Partition());
+      partitions.add(new Partition());
+      cache.put(cache.getKey(table, "partitionsByNames", Arrays.asList("p=" + i)), partitions);
+    }
+    // each list weighs three objects
+    assertTrue(cache.size() <= 3);
+  }
+
+  @Test
+  public void testInvalidateStats() {
+    ObjectCache cache = new ObjectCache(100, 600);
+    String table = ObjectCache.getTableName("default", "t1");
+    List<String> cols = Arrays.asList("a", "b");
+    AggrStats p1 = new AggrStats();
+    cache.put(cache.getStatsKey(table, Arrays.asList("p=1"), cols), p1);
+    AggrStats p12 = new AggrStats();
+    Key p12Key = cache.getStatsKey(table, Arrays.asList("p=1", "p=2"), cols);
+    cache.put(p12Key, p12);
+    AggrStats p23 = new AggrStats();
+    cache.put(cache.getStatsKey(table, Arrays.asList("p=2", "p=3"), Arrays.asList("a")), p23);
+    // the order of the partitions doesn't matter
+    assertSame(p12, cache.get(cache.getStatsKey(table, Arrays.asList("p=2", "p=1"), cols)));
+
+    // changing the other entries of the table keeps the statistics
+    cache.invalidate(table);
+    assertSame(p1, cache.get(cache.getStatsKey(table, Arrays.asList("p=1"), cols)));
+
+    // only the aggregates of the changed column of the changed partition are dropped
+    cache.invalidateStats(table, Collections.singletonList("p=2"), Collections.singletonList("b"));
+    assertSame(p1, cache.get(cache.getStatsKey(table, Arrays.asList("p=1"), cols)));
+    assertNull(cache.get(cache.getStatsKey(table, Arrays.asList("p=1", "p=2"), cols)));
+    assertSame(p23,
+        cache.get(cache.getStatsKey(table, Arrays.asList("p=2", "p=3"), Arrays.asList("a"))));
+
+    // a thread that read the statistics before the change can't put them back
+    cache.put(p12Key, p12);
+    assertNull(cache.get(cache.getStatsKey(table, Arrays.asList("p=1", "p=2"), cols)));
+
+    cache.invalidateStats(table, Collections.singletonList("p=3"), null);
+    assertNull(cache.get(cache.getStatsKey(table, Arrays.asList("p=2", "p=3"),
+        Arrays.asList("a"))));
+    assertSame(p1, cache.get(cache.getStatsKey(table, Arrays.asList("p=1"), cols)));
+    assertEquals(1, cache.size());
+
+    cache.invalidateStats(table, null, null);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testInvalidateStatsOfOneTable() {
+    ObjectCache cache = new ObjectCache(100, 600);
+    String t1 = ObjectCache.getTableName("default", "t1");
+    String t2 = ObjectCache.getTableName("default", "t2");
+    List<String> parts = Arrays.asList("p=1");
+    List<String> cols = Arrays.asList("a");
+    AggrStats stats1 = new AggrStats();
+    cache.put(cache.getStatsKey(t1, parts, cols), stats1);
+    AggrStats stats2 = new AggrStats();
+    cache.put(cache.getStatsKey(t2, parts, cols), stats2);
+
+    // the statistics of the other table are neither dropped nor moved
+    Key t2Key = cache.getStatsKey(t2, parts, cols);
+    cache.invalidateStats(t1, null, null);
+    assertNull(cache.get(cache.getStatsKey(t1, parts, cols)));
+    assertEquals(t2Key, cache.getStatsKey(t2, parts, cols));
+    assertSame(stats2, cache.get(t2Key));
+
+    // the aggregates that are moved can be moved again
+    cache.put(cache.getStatsKey(t1, parts, cols), stats1);
+    for (int i = 0; i < 3; ++i) {
+      cache.invalidateStats(t1, Collections.singletonList("p=2"), null);
+      assertSame(stats1, cache.get(cache.getStatsKey(t1, parts, cols)));
+    }
+    assertEquals(2, cache.size());
+  }
+}
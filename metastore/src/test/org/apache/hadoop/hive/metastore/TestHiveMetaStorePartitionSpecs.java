@@ -3,6 +3,7 @@
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.api.Database;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Order;
 import org.apache.hadoop.hive.metastore.api.Partition;
 import org.apache.hadoop.hive.metastore.api.PartitionSpec;
 import org.apache.hadoop.hive.metastore.api.SerDeInfo;
@@ -395,4 +396,68 @@ public void testFetchingPartitionsWithDifferentSchemas() {
     }
   }
 
+  /**
+   * Test that the partitions that are added in bulk, which direct SQL inserts, read back the
+   * same, can be altered in bulk, and don't collide with the partitions that JDO adds later.
+   */
+  @Test
+  public void testAddAndAlterPartitionsInBulk() throws Exception {
+    HiveMetaStoreClient hmsc = new HiveMetaStoreClient(hiveConf);
+    clearAndRecreateDB(hmsc);
+    createTable(hmsc, false);
+    Table table = hmsc.getTable(dbName, tableName);
+
+    List<Partition> partitions = new ArrayList<Partition>();
+    List<String> partNames = new ArrayList<String>();
+    for (int i = 0; i < nDates; ++i) {
+      StorageDescriptor sd = new StorageDescriptor(table.getSd());
+      sd.setLocation(null);
+      sd.setBucketCols(Arrays.asList("foo"));
+      sd.setSortCols(Arrays.asList(new Order("foo", 1)));
+      sd.setNumBuckets(4);
+      if (i % 2 == 1) {
+        // a partition whose columns differ from the table's gets a column descriptor
+        List<FieldSchema> cols = new ArrayList<FieldSchema>(sd.getCols());
+        cols.add(new FieldSchema("goo", "string", "new column"));
+        sd.setCols(cols);
+      }
+      Map<String, String> parameters = new HashMap<String, String>();
+      parameters.put("numRows", Integer.toString(i));
+      partitions.add(new Partition(Arrays.asList(datePrefix + i, "bulk"), dbName, tableName,
+          0, 0, sd, parameters));
+      partNames.add("dt=" + datePrefix + i + "/blurb=bulk");
+    }
+    Assert.assertEquals(nDates, hmsc.add_partitions(partitions));
+
+    List<Partition> added = hmsc.getPartitionsByNames(dbName, tableName, partNames);
+    Assert.assertEquals(nDates, added.size());
+    for (int i = 0; i < nDates; ++i) {
+      Partition partition = added.get(i);
+      Assert.assertEquals(Arrays.asList(datePrefix + i, "bulk"), partition.getValues());
+      Assert.assertEquals(Integer.toString(i), partition.getParameters().get("numRows"));
+      Assert.assertEquals(partitions.get(i).getSd().getCols(), partition.getSd().getCols());
+      Assert.assertEquals(Arrays.asList("foo"), partition.getSd().getBucketCols());
+      Assert.assertEquals(Arrays.asList(new Order("foo", 1)), partition.getSd().getSortCols());
+      Assert.assertEquals(4, partition.getSd().getNumBuckets());
+      Assert.assertEquals(LazyBinaryColumnarSerDe.class.getCanonicalName(),
+          partition.getSd().getSerdeInfo().getSerializationLib());
+      Assert.assertTrue(partition.getSd().getLocation().endsWith(partNames.get(i)));
+      partition.getParameters().put("numRows", Integer.toString(10 * i));
+    }
+
+    hmsc.alter_partitions(dbName, tableName, added);
+    List<Partition> altered = hmsc.getPartitionsByNames(dbName, tableName, partNames);
+    for (int i = 0; i < nDates; ++i) {
+      Assert.assertEquals(Integer.toString(10 * i), altered.get(i).getParameters().get("numRows"));
+    }
+
+    // the IDs that JDO allocates next don't collide with the inserted rows
+    StorageDescriptor sd = new StorageDescriptor(table.getSd());
+    sd.setLocation(null);
+    hmsc.add_partition(new Partition(Arrays.asList(datePrefix + nDates, "single"), dbName,
+        tableName, 0, 0, sd, null));
+    Assert.assertEquals(nDates + 1, hmsc.listPartitionNames(dbName, tableName, (short)-1).size());
+    hmsc.dropTable(dbName, tableName);
+  }
+
 }
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.metastore;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the reservation of IDs from the SEQUENCE_TABLE on a fresh connection, which is how
+ * the batched partition inserts get their IDs.
+ */
+public class TestMetaStoreDirectSql {
+
+  private static final String URL = "jdbc:derby:memory:TestMetaStoreDirectSql";
+  private static final String SEQUENCE = "org.apache.hadoop.hive.metastore.model.MPartition";
+
+  private Connection conn;
+
+  @Before
+  public void setUp() throws Exception {
+    Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+    conn = DriverManager.getConnection(URL + ";create=true");
+    Statement statement = conn.createStatement();
+    statement.execute("create table \"SEQUENCE_TABLE\" (\"SEQUENCE_NAME\" varchar(255)"
+        + " not null primary key, \"NEXT_VAL\" bigint not null)");
+    statement.close();
+    conn.setAutoCommit(false);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    conn.rollback();
+    conn.setAutoCommit(true);
+    Statement statement = conn.createStatement();
+    statement.execute("drop table \"SEQUENCE_TABLE\"");
+    statement.close();
+    conn.close();
+  }
+
+  private long getNextVal() throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(
+        "select \"NEXT_VAL\" from \"SEQUENCE_TABLE\" where \"SEQUENCE_NAME\" = ?");
+    try {
+      statement.setString(1, SEQUENCE);
+      ResultSet result = statement.executeQuery();
+      result.next();
+      return result.getLong(1);
+    } finally {
+      statement.close();
+    }
+  }
+
+  @Test
+  public void testReserveIds() throws Exception {
+    // the first reservation creates the sequence
+    assertEquals(1, MetaStoreDirectSql.reserveIds(conn, false, SEQUENCE, 10));
+    conn.commit();
+    assertEquals(11, getNextVal());
+    assertEquals(11, MetaStoreDirectSql.reserveIds(conn, false, SEQUENCE, 5));
+    conn.commit();
+    assertEquals(16, getNextVal());
+  }
+
+  @Test
+  public void testConcurrentInsert() throws Exception {
+    // another metastore creates the sequence between the update and the insert
+    Connection racing = (Connection) Proxy.newProxyInstance(
+        Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("prepareStatement")
+                && ((String) args[0]).startsWith("insert")) {
+              PreparedStatement insert = conn.prepareStatement((String) args[0]);
+              insert.setString(1, SEQUENCE);
+              insert.setLong(2, 100);
+              insert.executeUpdate();
+              insert.close();
+            }
+            try {
+              return method.invoke(conn, args);
+            } catch (InvocationTargetException ex) {
+              throw ex.getCause();
+            }
+          }
+        });
+    assertEquals(100, MetaStoreDirectSql.reserveIds(racing, false, SEQUENCE, 10));
+    conn.commit();
+    assertEquals(110, getNextVal());
+  }
+}
@@ -8134,6 +8134,10 @@ public com.google.protobuf.Parser<Stream> getParserForType() {
        * <code>ROW_INDEX = 6;</code>
        */
       ROW_INDEX(6, 6),
+      /**
+       * <code>BLOOM_FILTER = 7;</code>
+       */
+      BLOOM_FILTER(7, 7),
       ;
 
       /**
@@ -8164,6 +8168,10 @@ public com.google.protobuf.Parser<Stream> getParserForType() {
        * <code>ROW_INDEX = 6;</code>
        */
       public static final int ROW_INDEX_VALUE = 6;
+      /**
+       * <code>BLOOM_FILTER = 7;</code>
+       */
+      public static final int BLOOM_FILTER_VALUE = 7;
 
 
       public final int getNumber() { return value; }
@@ -8177,6 +8185,7 @@ public static Kind valueOf(int value) {
           case 4: return DICTIONARY_COUNT;
           case 5: return SECONDARY;
           case 6: return ROW_INDEX;
+          case 7: return BLOOM_FILTER;
           default: return null;
         }
       }
@@ -17472,54 +17481,54 @@ public Builder setMagicBytes(
       "apache.hadoop.hive.ql.io.orc.ColumnStati" +
       "stics\"J\n\010RowIndex\022>\n\005entry\030\001 \003(\0132/.org.a" +
       "pache.hadoop.hive.ql.io.orc.RowIndexEntr" +
-      "y\"\331\001\n\006Stream\022;\n\004kind\030\001 \002(\0162-.org.apache." +
+      "y\"\354\001\n\006Stream\022;\n\004kind\030\001 \002(\0162-.org.apache." +
       "hadoop.hive.ql.io.orc.Stream.Kind\022\016\n\006col" +
-      "umn\030\002 \001(\r\022\016\n\006length\030\003 \001(\004\"r\n\004Kind\022\013\n\007PRE" +
-      "SENT\020\000\022\010\n\004DATA\020\001\022\n\n\006LENGTH\020\002\022\023\n\017DICTIONA" +
-      "RY_DATA\020\003\022\024\n\020DICTIONARY_COUNT\020\004\022\r\n\tSECON" +
-      "DARY\020\005\022\r\n\tROW_INDEX\020\006\"\263\001\n\016ColumnEncoding",
-      "\022C\n\004kind\030\001 \002(\01625.org.apache.hadoop.hive." +
-      "ql.io.orc.ColumnEncoding.Kind\022\026\n\016diction" +
-      "arySize\030\002 \001(\r\"D\n\004Kind\022\n\n\006DIRECT\020\000\022\016\n\nDIC" +
-      "TIONARY\020\001\022\r\n\tDIRECT_V2\020\002\022\021\n\rDICTIONARY_V" +
-      "2\020\003\"\214\001\n\014StripeFooter\0229\n\007streams\030\001 \003(\0132(." +
-      "org.apache.hadoop.hive.ql.io.orc.Stream\022" +
-      "A\n\007columns\030\002 \003(\01320.org.apache.hadoop.hiv" +
-      "e.ql.io.orc.ColumnEncoding\"\370\002\n\004Type\0229\n\004k" +
-      "ind\030\001 \002(\0162+.org.apache.hadoop.hive.ql.io" +
-      ".orc.Type.Kind\022\024\n\010subtypes\030\002 \003(\rB\002\020\001\022\022\n\n",
-      "fieldNames\030\003 \003(\t\022\025\n\rmaximumLength\030\004 \001(\r\022" +
-      "\021\n\tprecision\030\005 \001(\r\022\r\n\005scale\030\006 \001(\r\"\321\001\n\004Ki" +
-      "nd\022\013\n\007BOOLEAN\020\000\022\010\n\004BYTE\020\001\022\t\n\005SHORT\020\002\022\007\n\003" +
-      "INT\020\003\022\010\n\004LONG\020\004\022\t\n\005FLOAT\020\005\022\n\n\006DOUBLE\020\006\022\n" +
-      "\n\006STRING\020\007\022\n\n\006BINARY\020\010\022\r\n\tTIMESTAMP\020\t\022\010\n" +
-      "\004LIST\020\n\022\007\n\003MAP\020\013\022\n\n\006STRUCT\020\014\022\t\n\005UNION\020\r\022" +
-      "\013\n\007DECIMAL\020\016\022\010\n\004DATE\020\017\022\013\n\007VARCHAR\020\020\022\010\n\004C" +
-      "HAR\020\021\"x\n\021StripeInformation\022\016\n\006offset\030\001 \001" +
-      "(\004\022\023\n\013indexLength\030\002 \001(\004\022\022\n\ndataLength\030\003 " +
-      "\001(\004\022\024\n\014footerLength\030\004 \001(\004\022\024\n\014numberOfRow",
-      "s\030\005 \001(\004\"/\n\020UserMetadataItem\022\014\n\004name\030\001 \002(" +
-      "\t\022\r\n\005value\030\002 \002(\014\"X\n\020StripeStatistics\022D\n\010" +
-      "colStats\030\001 \003(\01322.org.apache.hadoop.hive." +
-      "ql.io.orc.ColumnStatistics\"S\n\010Metadata\022G" +
-      "\n\013stripeStats\030\001 \003(\01322.org.apache.hadoop." +
-      "hive.ql.io.orc.StripeStatistics\"\356\002\n\006Foot" +
-      "er\022\024\n\014headerLength\030\001 \001(\004\022\025\n\rcontentLengt" +
-      "h\030\002 \001(\004\022D\n\007stripes\030\003 \003(\01323.org.apache.ha" +
-      "doop.hive.ql.io.orc.StripeInformation\0225\n" +
-      "\005types\030\004 \003(\0132&.org.apache.hadoop.hive.ql",
-      ".io.orc.Type\022D\n\010metadata\030\005 \003(\01322.org.apa" +
-      "che.hadoop.hive.ql.io.orc.UserMetadataIt" +
-      "em\022\024\n\014numberOfRows\030\006 \001(\004\022F\n\nstatistics\030\007" +
-      " \003(\01322.org.apache.hadoop.hive.ql.io.orc." +
-      "ColumnStatistics\022\026\n\016rowIndexStride\030\010 \001(\r" +
-      "\"\305\001\n\nPostScript\022\024\n\014footerLength\030\001 \001(\004\022F\n" +
-      "\013compression\030\002 \001(\01621.org.apache.hadoop.h" +
-      "ive.ql.io.orc.CompressionKind\022\034\n\024compres" +
-      "sionBlockSize\030\003 \001(\004\022\023\n\007version\030\004 \003(\rB\002\020\001" +
-      "\022\026\n\016metadataLength\030\005 \001(\004\022\016\n\005magic\030\300> \001(\t",
-      "*:\n\017CompressionKind\022\010\n\004NONE\020\000\022\010\n\004ZLIB\020\001\022" +
-      "\n\n\006SNAPPY\020\002\022\007\n\003LZO\020\003"
+      "umn\030\002 \001(\r\022\016\n\006length\030\003 \001(\004\"\204\001\n\004Kind\022\013\n\007PR" +
+      "ESENT\020\000\022\010\n\004DATA\020\001\022\n\n\006LENGTH\020\002\022\023\n\017DICTION" +
+      "ARY_DATA\020\003\022\024\n\020DICTIONARY_COUNT\020\004\022\r\n\tSECO" +
+      "NDARY\020\005\022\r\n\tROW_INDEX\020\006\022\020\n\014BLOOM_FILTER\020\007",
+      "\"\263\001\n\016ColumnEncoding\022C\n\004kind\030\001 \002(\01625.org." +
+      "apache.hadoop.hive.ql.io.orc.ColumnEncod" +
+      "ing.Kind\022\026\n\016dictionarySize\030\002 \001(\r\"D\n\004Kind" +
+      "\022\n\n\006DIRECT\020\000\022\016\n\nDICTIONARY\020\001\022\r\n\tDIRECT_V" +
+      "2\020\002\022\021\n\rDICTIONARY_V2\020\003\"\214\001\n\014StripeFooter\022" +
+      "9\n\007streams\030\001 \003(\0132(.org.apache.hadoop.hiv" +
+      "e.ql.io.orc.Stream\022A\n\007columns\030\002 \003(\01320.or" +
+      "g.apache.hadoop.hive.ql.io.orc.ColumnEnc" +
+      "oding\"\370\002\n\004Type\0229\n\004kind\030\001 \002(\0162+.org.apach" +
+      "e.hadoop.hive.ql.io.orc.Type.Kind\022\024\n\010sub",
+      "types\030\002 \003(\rB\002\020\001\022\022\n\nfieldNames\030\003 \003(\t\022\025\n\rm" +
+      "aximumLength\030\004 \001(\r\022\021\n\tprecision\030\005 \001(\r\022\r\n" +
+      "\005scale\030\006 \001(\r\"\321\001\n\004Kind\022\013\n\007BOOLEAN\020\000\022\010\n\004BY" +
+      "TE\020\001\022\t\n\005SHORT\020\002\022\007\n\003INT\020\003\022\010\n\004LONG\020\004\022\t\n\005FL" +
+      "OAT\020\005\022\n\n\006DOUBLE\020\006\022\n\n\006STRING\020\007\022\n\n\006BINARY\020" +
+      "\010\022\r\n\tTIMESTAMP\020\t\022\010\n\004LIST\020\n\022\007\n\003MAP\020\013\022\n\n\006S" +
+      "TRUCT\020\014\022\t\n\005UNION\020\r\022\013\n\007DECIMAL\020\016\022\010\n\004DATE\020" +
+      "\017\022\013\n\007VARCHAR\020\020\022\010\n\004CHAR\020\021\"x\n\021StripeInform" +
+      "ation\022\016\n\006offset\030\001 \001(\004\022\023\n\013indexLength\030\002 \001" +
+      "(\004\022\022\n\ndataLength\030\003 \001(\004\022\024\n\014footerLength\030\004",
+      " \001(\004\022\024\n\014numberOfRows\030\005 \001(\004\"/\n\020UserMetada" +
+      "taItem\022\014\n\004name\030\001 \002(\t\022\r\n\005value\030\002 \002(\014\"X\n\020S" +
+      "tripeStatistics\022D\n\010colStats\030\001 \003(\01322.org." +
+      "apache.hadoop.hive.ql.io.orc.ColumnStati" +
+      "stics\"S\n\010Metadata\022G\n\013stripeStats\030\001 \003(\01322" +
+      ".org.apache.hadoop.hive.ql.io.orc.Stripe" +
+      "Statistics\"\356\002\n\006Footer\022\024\n\014headerLength\030\001 " +
+      "\001(\004\022\025\n\rcontentLength\030\002 \001(\004\022D\n\007stripes\030\003 " +
+      "\003(\01323.org.apache.hadoop.hive.ql.io.orc.S" +
+      "tripeInformation\0225\n\005types\030\004 \003(\0132&.org.ap",
+      "ache.hadoop.hive.ql.io.orc.Type\022D\n\010metad" +
+      "ata\030\005 \003(\01322.org.apache.hadoop.hive.ql.io" +
+      ".orc.UserMetadataItem\022\024\n\014numberOfRows\030\006 " +
+      "\001(\004\022F\n\nstatistics\030\007 \003(\01322.org.apache.had" +
+      "oop.hive.ql.io.orc.ColumnStatistics\022\026\n\016r" +
+      "owIndexStride\030\010 \001(\r\"\305\001\n\nPostScript\022\024\n\014fo" +
+      "oterLength\030\001 \001(\004\022F\n\013compression\030\002 \001(\01621." +
+      "org.apache.hadoop.hive.ql.io.orc.Compres" +
+      "sionKind\022\034\n\024compressionBlockSize\030\003 \001(\004\022\023" +
+      "\n\007version\030\004 \003(\rB\002\020\001\022\026\n\016metadataLength\030\005 ",
+      "\001(\004\022\016\n\005magic\030\300> \001(\t*:\n\017CompressionKind\022\010" +
+      "\n\004NONE\020\000\022\010\n\004ZLIB\020\001\022\n\n\006SNAPPY\020\002\022\007\n\003LZO\020\003"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
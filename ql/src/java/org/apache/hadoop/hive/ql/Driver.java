@@ -377,7 +377,12 @@ public int compile(String command, boolean resetTaskIds) {
     String queryId = QueryPlan.makeQueryId();
     conf.setVar(HiveConf.ConfVars.HIVEQUERYID, queryId);
 
+    Hive db = null;
     try {
+      // the analyzers and optimizers fetch the same tables and statistics many times
+      db = Hive.get(conf);
+      db.startMetaDataCache();
+
       command = new VariableSubstitution().substitute(conf,command);
       ctx = new Context(conf);
       ctx.setTryCount(getTryCount());
@@ -488,6 +493,9 @@ public int compile(String command, boolean resetTaskIds) {
           + org.apache.hadoop.util.StringUtils.stringifyException(e));
       return error.getErrorCode();
     } finally {
+      if (db != null) {
+        db.endMetaDataCache();
+      }
       perfLogger.PerfLogEnd(CLASS_NAME, PerfLogger.COMPILE);
       restoreSession(queryState);
     }
@@ -83,6 +83,7 @@
 import org.apache.hadoop.hive.ql.metadata.HiveUtils;
 import org.apache.hadoop.hive.ql.metadata.InvalidTableException;
 import org.apache.hadoop.hive.ql.metadata.Partition;
+import org.apache.hadoop.hive.ql.metadata.PartitionIterable;
 import org.apache.hadoop.hive.ql.metadata.Table;
 import org.apache.hadoop.hive.ql.metadata.formatting.MetaDataFormatUtils;
 import org.apache.hadoop.hive.ql.metadata.formatting.MetaDataFormatter;
@@ -951,7 +952,8 @@ private int alterTableAlterPart(Hive db, AlterTableAlterPartDesc alterPartitionD
     //Check if the existing partition values can be type casted to the new column type
     // with a non null value before trying to alter the partition column type.
     try {
-      Set<Partition> partitions = db.getAllPartitionsOf(tbl);
+      PartitionIterable partitions = new PartitionIterable(db, tbl,
+          conf.getIntVar(ConfVars.METASTORE_BATCH_RETRIEVE_MAX));
       int colIndex = -1;
       for(FieldSchema col : tbl.getTTable().getPartitionKeys()) {
         colIndex++;
@@ -3651,18 +3653,11 @@ private void dropTable(Hive db, Table tbl, DropTableDesc dropTbl) throws HiveExc
 
     // We should check that all the partitions of the table can be dropped
     if (tbl != null && tbl.isPartitioned()) {
-      List<String> partitionNames = db.getPartitionNames(tbl.getTableName(), (short)-1);
-
-      for(int i=0; i < partitionNames.size(); i+= partitionBatchSize) {
-        List<String> partNames = partitionNames.subList(i, Math.min(i+partitionBatchSize,
-            partitionNames.size()));
-        List<Partition> listPartitions = db.getPartitionsByNames(tbl, partNames);
-        for (Partition p: listPartitions) {
-          if (!p.canDrop()) {
-            throw new HiveException("Table " + tbl.getTableName() +
-                " Partition" + p.getName() +
-                " is protected from being dropped");
-          }
+      for (Partition p : new PartitionIterable(db, tbl, partitionBatchSize)) {
+        if (!p.canDrop()) {
+          throw new HiveException("Table " + tbl.getTableName() +
+              " Partition" + p.getName() +
+              " is protected from being dropped");
         }
       }
     }
@@ -4180,7 +4175,8 @@ private List<Path> getLocations(Hive db, Table table, Map<String, String> partSp
     List<Path> locations = new ArrayList<Path>();
     if (partSpec == null) {
       if (table.isPartitioned()) {
-        for (Partition partition : db.getPartitions(table)) {
+        for (Partition partition : new PartitionIterable(db, table,
+            conf.getIntVar(ConfVars.METASTORE_BATCH_RETRIEVE_MAX))) {
           locations.add(partition.getDataLocation());
           if (needToUpdateStats(partition.getParameters())) {
             db.alterPartition(table.getDbName(), table.getTableName(), partition);
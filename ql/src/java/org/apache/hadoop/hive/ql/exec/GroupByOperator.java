@@ -18,6 +18,10 @@
 
 package org.apache.hadoop.hive.ql.exec;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
@@ -25,11 +29,14 @@
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import javolution.util.FastBitSet;
@@ -56,6 +63,8 @@
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyBinaryObjectInspector;
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyStringObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters.Converter;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
@@ -68,6 +77,11 @@
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 
 /**
  * GroupBy operator implementation.
@@ -81,6 +95,9 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
   private static final long serialVersionUID = 1L;
   private static final int NUMROWSESTIMATESIZE = 1000;
 
+  public static final String HIVECOUNTERGROUPBYSPILLS = "GROUPBY_SPILLS";
+  public static final String HIVECOUNTERGROUPBYSPILLEDBYTES = "GROUPBY_SPILLED_BYTES";
+
   protected transient ExprNodeEvaluator[] keyFields;
   protected transient ObjectInspector[] keyObjectInspectors;
 
@@ -168,6 +185,21 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
 
   transient int fixedRowSize;
 
+  // Used by hash-based GroupBy when spilling is enabled: sorted runs of partial
+  // aggregates are spilled instead of flushing a part of the hash table, and are
+  // merged with evaluators in PARTIAL2 mode when the operator is closed.
+  transient boolean spillEnabled;
+  transient GenericUDAFEvaluator[] mergeEvaluators;
+  transient ObjectInspector[] partialObjectInspectors;
+  transient Converter[] mergeOutputConverters;
+  transient List<File> spillFiles;
+  transient List<Integer> spillFileRows;
+  transient int spillMergeFactor;
+  transient long numSpills;
+  transient long numIntermediateMerges;
+  transient long spilledBytes;
+  transient String counterGroup;
+
   /**
    * Max memory usable by the hashtable before it should flush.
    */
@@ -388,6 +420,9 @@ protected void initializeOp(Configuration hconf) throws HiveException {
       if (groupKeyIsNotReduceKey) {
         keysCurrentGroup = new HashSet<KeyWrapper>();
       }
+      if (HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVEGROUPBYHASHSPILL)) {
+        initializeSpill(hconf, context);
+      }
     }
 
     fieldNames = conf.getOutputColumnNames();
@@ -429,6 +464,48 @@ protected void initializeOp(Configuration hconf) throws HiveException {
     initializeChildren(hconf);
   }
 
+  /**
+   * Sets up spilling of the hash table, if this group by can merge its partial
+   * aggregates. Distinct aggregations are not merged, since they are only updated
+   * for the first row of each key.
+   */
+  private void initializeSpill(Configuration hconf, MapredContext context) throws HiveException {
+    if (groupKeyIsNotReduceKey || unionExprEval != null) {
+      return;
+    }
+    ArrayList<AggregationDesc> aggrs = conf.getAggregators();
+    for (int i = 0; i < aggrs.size(); i++) {
+      GenericUDAFEvaluator.Mode mode = aggrs.get(i).getMode();
+      if (aggregationIsDistinct[i] || aggrs.get(i).getGenericUDAFEvaluatorClassName() == null
+          || (mode != GenericUDAFEvaluator.Mode.PARTIAL1
+          && mode != GenericUDAFEvaluator.Mode.PARTIAL2)) {
+        LOG.info("Hash aggregation spilling is not supported for " + aggrs.get(i).getExprString());
+        return;
+      }
+    }
+
+    mergeEvaluators = new GenericUDAFEvaluator[aggregationEvaluators.length];
+    partialObjectInspectors = new ObjectInspector[aggregationEvaluators.length];
+    mergeOutputConverters = new Converter[aggregationEvaluators.length];
+    for (int i = 0; i < aggregationEvaluators.length; i++) {
+      ObjectInspector partialOI = objectInspectors.get(keyFields.length + i);
+      partialObjectInspectors[i] = ObjectInspectorUtils.getStandardObjectInspector(
+          partialOI, ObjectInspectorCopyOption.WRITABLE);
+      mergeEvaluators[i] = ReflectionUtils.newInstance(aggregationEvaluators[i].getClass(), null);
+      if (context != null) {
+        context.setup(mergeEvaluators[i]);
+      }
+      ObjectInspector mergeOI = mergeEvaluators[i].init(GenericUDAFEvaluator.Mode.PARTIAL2,
+          new ObjectInspector[] { partialObjectInspectors[i] });
+      mergeOutputConverters[i] = ObjectInspectorConverters.getConverter(mergeOI, partialOI);
+    }
+    counterGroup = HiveConf.getVar(hconf, HiveConf.ConfVars.HIVECOUNTERGROUP);
+    spillMergeFactor = Math.max(2,
+        HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEGROUPBYHASHSPILLMERGEFACTOR));
+    spillEnabled = true;
+    LOG.info("Hash aggregation will spill to disk when the hash table is full");
+  }
+
   /**
    * Estimate the number of entries in map-side hash table. The user can specify
    * the total amount of memory to be used by the map-side hash. By default, all
@@ -853,7 +930,11 @@ private void processHashAggr(Object row, ObjectInspector rowInspector,
     // happen at boundaries
     if ((!groupKeyIsNotReduceKey || firstRowInGroup)
         && shouldBeFlushed(newKeys)) {
-      flushHashTable(false);
+      if (spillEnabled) {
+        spillHashTable();
+      } else {
+        flushHashTable(false);
+      }
     }
   }
 
@@ -1016,6 +1097,9 @@ private void flushHashTable(boolean complete) throws HiveException {
     // changed in the future
 
     if (complete) {
+      if (spillFiles != null) {
+        mergeSpilledRuns();
+      }
       Iterator<Map.Entry<KeyWrapper, AggregationBuffer[]>> iter = hashAggregations
           .entrySet().iterator();
       while (iter.hasNext()) {
@@ -1045,8 +1129,277 @@ private void flushHashTable(boolean complete) throws HiveException {
     }
   }
 
+  /**
+   * Spills the hash table to local disk as a run of partial aggregates sorted by
+   * the keys, and empties it.
+   */
+  private void spillHashTable() throws HiveException {
+    countAfterReport = 0;
+
+    List<Map.Entry<KeyWrapper, AggregationBuffer[]>> entries =
+        new ArrayList<Map.Entry<KeyWrapper, AggregationBuffer[]>>(hashAggregations.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<KeyWrapper, AggregationBuffer[]>>() {
+      @Override
+      public int compare(Map.Entry<KeyWrapper, AggregationBuffer[]> e1,
+          Map.Entry<KeyWrapper, AggregationBuffer[]> e2) {
+        return compareKeys(e1.getKey().getKeyArray(), e2.getKey().getKeyArray());
+      }
+    });
+
+    File file;
+    try {
+      file = File.createTempFile("hive-groupby-spill", ".tmp");
+      file.deleteOnExit();
+      Output out = new Output(new FileOutputStream(file));
+      try {
+        Kryo kryo = Utilities.runtimeSerializationKryo.get();
+        Object[] partials = new Object[aggregationEvaluators.length];
+        for (Map.Entry<KeyWrapper, AggregationBuffer[]> entry : entries) {
+          AggregationBuffer[] aggs = entry.getValue();
+          for (int i = 0; i < aggs.length; i++) {
+            partials[i] = ObjectInspectorUtils.copyToStandardObject(
+                aggregationEvaluators[i].terminatePartial(aggs[i]),
+                objectInspectors.get(keyFields.length + i), ObjectInspectorCopyOption.WRITABLE);
+          }
+          kryo.writeClassAndObject(out, entry.getKey().getKeyArray());
+          kryo.writeClassAndObject(out, partials);
+        }
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      throw new HiveException(e);
+    }
+
+    if (spillFiles == null) {
+      spillFiles = new ArrayList<File>();
+      spillFileRows = new ArrayList<Integer>();
+    }
+    spillFiles.add(file);
+    spillFileRows.add(entries.size());
+    hashAggregations.clear();
+
+    long bytes = file.length();
+    numSpills++;
+    spilledBytes += bytes;
+    if (reporter != null) {
+      reporter.incrCounter(counterGroup, HIVECOUNTERGROUPBYSPILLS, 1);
+      reporter.incrCounter(counterGroup, HIVECOUNTERGROUPBYSPILLEDBYTES, bytes);
+    }
+    LOG.info("Hash Tbl spill: #hash table = " + entries.size() + " bytes = " + bytes
+        + " file = " + file);
+  }
+
+  /**
+   * Merges the spilled runs, and whatever is left in the hash table, forwarding one
+   * row per key. At most hive.groupby.hash.spill.merge.factor runs are read at once:
+   * while there are more, the oldest ones are merged into a new run. The runs are
+   * deleted afterwards.
+   */
+  private void mergeSpilledRuns() throws HiveException {
+    if (!hashAggregations.isEmpty()) {
+      spillHashTable();
+    }
+    LOG.info("Merging " + spillFiles.size() + " spilled runs: " + numSpills + " spills, "
+        + spilledBytes + " bytes");
+
+    try {
+      while (spillFiles.size() > spillMergeFactor) {
+        mergeIntermediateRuns();
+      }
+      mergeRuns(spillFiles, spillFileRows, null);
+    } catch (IOException e) {
+      throw new HiveException(e);
+    } finally {
+      discardSpilledRuns();
+    }
+  }
+
+  /**
+   * Merges the oldest spilled runs into a new run, which is added after the others.
+   */
+  private void mergeIntermediateRuns() throws IOException, HiveException {
+    List<File> files = new ArrayList<File>(spillFiles.subList(0, spillMergeFactor));
+    List<Integer> rows = new ArrayList<Integer>(spillFileRows.subList(0, spillMergeFactor));
+    File file = File.createTempFile("hive-groupby-spill", ".tmp");
+    file.deleteOnExit();
+    // the new run is deleted with the others if the merge fails
+    spillFiles.add(file);
+    spillFileRows.add(0);
+
+    Output out = new Output(new FileOutputStream(file));
+    int merged;
+    try {
+      merged = mergeRuns(files, rows, out);
+    } finally {
+      out.close();
+    }
+    spillFileRows.set(spillFileRows.size() - 1, merged);
+    spillFiles.subList(0, spillMergeFactor).clear();
+    spillFileRows.subList(0, spillMergeFactor).clear();
+    for (File f : files) {
+      if (!f.delete()) {
+        LOG.warn("Failed to delete " + f);
+      }
+    }
+    numIntermediateMerges++;
+    LOG.info("Merged " + files.size() + " spilled runs into " + merged + " rows in " + file);
+  }
+
+  /**
+   * Merges sorted runs and, for each key, either forwards the merged aggregations or,
+   * if out is given, writes them to a new run.
+   *
+   * @return the number of keys
+   */
+  private int mergeRuns(List<File> files, List<Integer> rows, Output out)
+      throws IOException, HiveException {
+    Kryo kryo = Utilities.runtimeSerializationKryo.get();
+    List<SpillRun> runs = new ArrayList<SpillRun>(files.size());
+    PriorityQueue<SpillRun> queue = new PriorityQueue<SpillRun>(files.size(),
+        new Comparator<SpillRun>() {
+          @Override
+          public int compare(SpillRun r1, SpillRun r2) {
+            return compareKeys(r1.keys, r2.keys);
+          }
+        });
+    AggregationBuffer[] aggs = new AggregationBuffer[mergeEvaluators.length];
+    for (int i = 0; i < mergeEvaluators.length; i++) {
+      aggs[i] = mergeEvaluators[i].getNewAggregationBuffer();
+    }
+
+    int numKeys = 0;
+    try {
+      for (int i = 0; i < files.size(); i++) {
+        SpillRun run = new SpillRun(files.get(i), rows.get(i));
+        runs.add(run);
+        if (run.next(kryo)) {
+          queue.add(run);
+        }
+      }
+
+      while (!queue.isEmpty()) {
+        SpillRun run = queue.poll();
+        Object[] keys = run.keys;
+        for (int i = 0; i < mergeEvaluators.length; i++) {
+          mergeEvaluators[i].reset(aggs[i]);
+        }
+        while (true) {
+          for (int i = 0; i < mergeEvaluators.length; i++) {
+            mergeEvaluators[i].merge(aggs[i], run.partials[i]);
+          }
+          if (run.next(kryo)) {
+            queue.add(run);
+          }
+          if (queue.isEmpty() || compareKeys(queue.peek().keys, keys) != 0) {
+            break;
+          }
+          run = queue.poll();
+        }
+        if (out == null) {
+          forwardMerged(keys, aggs);
+        } else {
+          writeMerged(kryo, out, keys, aggs);
+        }
+        numKeys++;
+      }
+    } finally {
+      for (SpillRun run : runs) {
+        run.close();
+      }
+    }
+    return numKeys;
+  }
+
+  /**
+   * Write a record of keys and the aggregations merged from spilled runs, in the format
+   * of the spilled runs.
+   */
+  private void writeMerged(Kryo kryo, Output out, Object[] keys, AggregationBuffer[] aggs)
+      throws HiveException {
+    Object[] partials = new Object[aggs.length];
+    for (int i = 0; i < aggs.length; i++) {
+      partials[i] = ObjectInspectorUtils.copyToStandardObject(
+          mergeOutputConverters[i].convert(mergeEvaluators[i].terminatePartial(aggs[i])),
+          objectInspectors.get(keyFields.length + i), ObjectInspectorCopyOption.WRITABLE);
+    }
+    kryo.writeClassAndObject(out, keys);
+    kryo.writeClassAndObject(out, partials);
+  }
+
+  private void discardSpilledRuns() {
+    for (File file : spillFiles) {
+      if (!file.delete()) {
+        LOG.warn("Failed to delete " + file);
+      }
+    }
+    spillFiles = null;
+    spillFileRows = null;
+  }
+
+  private int compareKeys(Object[] keys1, Object[] keys2) {
+    for (int i = 0; i < currentKeyObjectInspectors.length; i++) {
+      int c = ObjectInspectorUtils.compare(keys1[i], currentKeyObjectInspectors[i],
+          keys2[i], currentKeyObjectInspectors[i]);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * A run of keys and partial aggregates spilled by the hash aggregation,
+   * read back in key order.
+   */
+  private static class SpillRun {
+    private final Input input;
+    private int remaining;
+    Object[] keys;
+    Object[] partials;
+
+    SpillRun(File file, int rows) throws IOException {
+      input = new Input(new FileInputStream(file));
+      remaining = rows;
+    }
+
+    boolean next(Kryo kryo) {
+      if (remaining == 0) {
+        return false;
+      }
+      keys = (Object[]) kryo.readClassAndObject(input);
+      partials = (Object[]) kryo.readClassAndObject(input);
+      --remaining;
+      return true;
+    }
+
+    void close() {
+      input.close();
+    }
+  }
+
   transient Object[] forwardCache;
 
+  /**
+   * Forward a record of keys and the aggregations merged from the spilled runs.
+   */
+  private void forwardMerged(Object[] keys, AggregationBuffer[] aggs) throws HiveException {
+    int totalFields = keys.length + aggs.length;
+    if (forwardCache == null) {
+      forwardCache = new Object[totalFields];
+    }
+
+    for (int i = 0; i < keys.length; i++) {
+      forwardCache[i] = keys[i];
+    }
+    for (int i = 0; i < aggs.length; i++) {
+      forwardCache[keys.length + i] =
+          mergeOutputConverters[i].convert(mergeEvaluators[i].evaluate(aggs[i]));
+    }
+
+    forward(forwardCache, outputObjInspector);
+  }
+
   /**
    * Forward a record of keys and aggregation results.
    *
@@ -1080,6 +1433,9 @@ protected void forward(Object[] keys,
   public void flush() throws HiveException{
     try {
       if (hashAggregations != null) {
+        if (spillFiles != null) {
+          mergeSpilledRuns();
+        }
         LOG.info("Begin Hash Table flush: size = "
             + hashAggregations.size());
         Iterator iter = hashAggregations.entrySet().iterator();
@@ -1114,6 +1470,9 @@ public void flush() throws HiveException{
    */
   @Override
   public void closeOp(boolean abort) throws HiveException {
+    if (abort && spillFiles != null) {
+      discardSpilledRuns();
+    }
     if (!abort) {
       try {
         // If there is no grouping key and no row came to this operator
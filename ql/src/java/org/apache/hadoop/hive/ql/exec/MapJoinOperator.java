@@ -18,14 +18,21 @@
 
 package org.apache.hadoop.hive.ql.exec;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.ql.HashTableLoaderFactory;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinBytesTableContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinBytesTableContainer.PartitionedGetAdaptor;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinKey;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectSerDeContext;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinRowContainer;
@@ -41,9 +48,14 @@
 import org.apache.hadoop.hive.serde2.SerDe;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.SerDeUtils;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.util.ReflectionUtils;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
 /**
  * Map side Join operator implementation.
  */
@@ -67,6 +79,14 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
 
   private UnwrapRowContainer[] unwrapContainer;
 
+  /*
+   * Hybrid grace hash join: big table rows whose keys belong to spilled hashtable partitions
+   * are written to local files, one per partition, and joined after the input is exhausted.
+   */
+  private transient File[] bigTableSpillFiles;
+  private transient Output[] bigTableSpillOutputs;
+  private transient long[] bigTableSpilledRows;
+
   public MapJoinOperator() {
   }
 
@@ -183,7 +203,11 @@ private void loadHashTable() throws HiveException {
     perfLogger.PerfLogBegin(CLASS_NAME, PerfLogger.LOAD_HASHTABLE);
     loader.init(getExecContext(), hconf, this);
     loader.load(mapJoinTables, mapJoinTableSerdes);
-    if (!conf.isBucketMapJoin()) {
+    if (hasSpilledTables()) {
+      // The spilled partitions are reloaded and released while closing, so the tables
+      // can only be used once.
+      LOG.info("Some hashtable partitions were spilled to disk, so don't cache");
+    } else if (!conf.isBucketMapJoin()) {
       /*
        * The issue with caching in case of bucket map join is that different tasks
        * process different buckets and if the container is reused to join a different bucket,
@@ -199,6 +223,16 @@ private void loadHashTable() throws HiveException {
     perfLogger.PerfLogEnd(CLASS_NAME, PerfLogger.LOAD_HASHTABLE);
   }
 
+  private boolean hasSpilledTables() {
+    for (MapJoinTableContainer tableContainer : mapJoinTables) {
+      if (tableContainer instanceof MapJoinBytesTableContainer
+          && ((MapJoinBytesTableContainer) tableContainer).hasSpilledPartitions()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   // Load the hash table
   @Override
   public void cleanUpInputFileChangedOp() throws HiveException {
@@ -231,14 +265,21 @@ protected MapJoinKey getRefKey(byte alias) {
     return null; // All join tables have 0 keys, doesn't matter what we generate.
   }
 
+  /**
+   * Generates the map metadata and loads the small tables when the first row arrives.
+   */
+  protected void loadHashTablesOnFirstRow() throws HiveException, SerDeException {
+    if (firstRow) {
+      generateMapMetaData();
+      loadHashTable();
+      firstRow = false;
+    }
+  }
+
   @Override
   public void processOp(Object row, int tag) throws HiveException {
     try {
-      if (firstRow) {
-        generateMapMetaData();
-        loadHashTable();
-        firstRow = false;
-      }
+      loadHashTablesOnFirstRow();
 
       alias = (byte) tag;
       if (hashMapRowGetters == null) {
@@ -266,6 +307,18 @@ public void processOp(Object row, int tag) throws HiveException {
             adaptor = hashMapRowGetters[pos];
             adaptor.setFromOther(firstSetKey);
           }
+          if (adaptor instanceof PartitionedGetAdaptor
+              && !firstSetKey.hasAnyNulls(fieldCount, nullsafes)) {
+            int partitionId = ((PartitionedGetAdaptor) adaptor).getSpilledPartitionId();
+            if (partitionId >= 0) {
+              // The matching rows are on disk; join this row once the partition is reloaded.
+              spillBigTableRow((PartitionedGetAdaptor) adaptor, partitionId,
+                  getFilteredValue(alias, row));
+              Arrays.fill(aliasFilterTags, (byte)0xff);
+              joinNeeded = false;
+              break;
+            }
+          }
           MapJoinRowContainer rowContainer = adaptor.getCurrentRows();
           if (rowContainer != null && unwrapContainer[pos] != null) {
             Object[] currentKey = firstSetKey.getCurrentKey();
@@ -307,8 +360,118 @@ public void processOp(Object row, int tag) throws HiveException {
     }
   }
 
+  private void spillBigTableRow(PartitionedGetAdaptor adaptor, int partitionId,
+      List<Object> value) throws IOException {
+    if (bigTableSpillFiles == null) {
+      int numPartitions = ((MapJoinBytesTableContainer) mapJoinTables[getSmallTablePos()])
+          .getNumPartitions();
+      bigTableSpillFiles = new File[numPartitions];
+      bigTableSpillOutputs = new Output[numPartitions];
+      bigTableSpilledRows = new long[numPartitions];
+    }
+    Output out = bigTableSpillOutputs[partitionId];
+    if (out == null) {
+      File file = File.createTempFile("hive-mapjoin-bigtable", ".tmp");
+      file.deleteOnExit();
+      LOG.info("Spilling big table rows for hashtable partition " + partitionId + " to " + file);
+      bigTableSpillFiles[partitionId] = file;
+      out = bigTableSpillOutputs[partitionId] = new Output(new FileOutputStream(file));
+    }
+    org.apache.hadoop.hive.serde2.ByteStream.Output key = adaptor.getSerializedKey();
+    out.writeInt(key.getLength());
+    out.writeBytes(key.getData(), 0, key.getLength());
+    Utilities.runtimeSerializationKryo.get().writeClassAndObject(out, value);
+    ++bigTableSpilledRows[partitionId];
+  }
+
+  private int getSmallTablePos() {
+    return posBigTable == 0 ? 1 : 0;
+  }
+
+  /**
+   * Second pass of hybrid grace hash join: reloads every spilled hashtable partition
+   * that has big table rows, and joins those rows against it.
+   */
+  @SuppressWarnings("unchecked")
+  private void joinSpilledRows() throws HiveException, IOException {
+    byte smallPos = (byte) getSmallTablePos();
+    byte bigPos = (byte) posBigTable;
+    MapJoinBytesTableContainer smallTable = (MapJoinBytesTableContainer) mapJoinTables[smallPos];
+    PartitionedGetAdaptor adaptor = (PartitionedGetAdaptor) hashMapRowGetters[smallPos];
+    Kryo kryo = Utilities.runtimeSerializationKryo.get();
+    boolean bigTableHasFilter = hasFilter(bigPos);
+    for (int partitionId = 0; partitionId < bigTableSpillFiles.length; ++partitionId) {
+      File file = bigTableSpillFiles[partitionId];
+      if (file == null) {
+        continue;
+      }
+      bigTableSpillOutputs[partitionId].close();
+      bigTableSpillOutputs[partitionId] = null;
+      smallTable.reloadPartition(partitionId);
+      LOG.info("Joining " + bigTableSpilledRows[partitionId]
+          + " spilled big table rows for hashtable partition " + partitionId);
+      Input in = new Input(new FileInputStream(file));
+      try {
+        for (long i = 0; i < bigTableSpilledRows[partitionId]; ++i) {
+          int keyLength = in.readInt();
+          byte[] key = in.readBytes(keyLength);
+          List<Object> value = (List<Object>) kryo.readClassAndObject(in);
+          adaptor.setFromSerializedKey(key, keyLength);
+          MapJoinRowContainer rowContainer = adaptor.getCurrentRows();
+          if (rowContainer == null) {
+            if (noOuterJoin) {
+              continue;
+            }
+            storage[smallPos] = dummyObjVectors[smallPos];
+          } else {
+            storage[smallPos] = rowContainer.copy();
+            aliasFilterTags[smallPos] = rowContainer.getAliasFilter();
+          }
+          if (bigTableHasFilter) {
+            aliasFilterTags[bigPos] &= ((ShortWritable) value.get(value.size() - 1)).get();
+          }
+          storage[bigPos].addRow(value);
+          checkAndGenObject();
+          storage[bigPos].clearRows();
+          storage[smallPos] = null;
+        }
+      } finally {
+        in.close();
+        smallTable.releasePartition(partitionId);
+        if (!file.delete()) {
+          LOG.warn("Failed to delete " + file);
+        }
+        bigTableSpillFiles[partitionId] = null;
+      }
+    }
+    bigTableSpillFiles = null;
+  }
+
+  private void discardSpilledRows() {
+    for (int partitionId = 0; partitionId < bigTableSpillFiles.length; ++partitionId) {
+      if (bigTableSpillOutputs[partitionId] != null) {
+        bigTableSpillOutputs[partitionId].close();
+      }
+      if (bigTableSpillFiles[partitionId] != null) {
+        bigTableSpillFiles[partitionId].delete();
+      }
+    }
+    bigTableSpillFiles = null;
+  }
+
   @Override
   public void closeOp(boolean abort) throws HiveException {
+    if (bigTableSpillFiles != null) {
+      if (abort) {
+        discardSpilledRows();
+      } else {
+        try {
+          joinSpilledRows();
+        } catch (IOException e) {
+          throw new HiveException(e);
+        }
+      }
+    }
     for (MapJoinTableContainer tableContainer : mapJoinTables) {
       if (tableContainer != null) {
         tableContainer.dumpMetrics();
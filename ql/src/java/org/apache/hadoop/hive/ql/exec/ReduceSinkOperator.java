@@ -484,12 +484,18 @@ private boolean partitionKeysAreNull(Object row) throws HiveException {
   // Serialize the keys and append the tag
   protected HiveKey toHiveKey(Object obj, int tag, Integer distLength) throws SerDeException {
     BinaryComparable key = (BinaryComparable)keySerializer.serialize(obj, keyObjectInspector);
-    int keyLength = key.getLength();
+    return toHiveKey(key.getBytes(), key.getLength(), tag, distLength);
+  }
+
+  /**
+   * Sets the serialized key, followed by the tag if needed, into keyWritable.
+   */
+  protected HiveKey toHiveKey(byte[] keyBytes, int keyLength, int tag, Integer distLength) {
     if (tag == -1 || skipTag) {
-      keyWritable.set(key.getBytes(), 0, keyLength);
+      keyWritable.set(keyBytes, 0, keyLength);
     } else {
       keyWritable.setSize(keyLength + 1);
-      System.arraycopy(key.getBytes(), 0, keyWritable.get(), 0, keyLength);
+      System.arraycopy(keyBytes, 0, keyWritable.get(), 0, keyLength);
       keyWritable.get()[keyLength] = tagByte[0];
     }
     keyWritable.setDistKeyLength((distLength == null) ? keyLength : distLength);
@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hive.ql.exec.persistence;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -286,6 +287,49 @@ public int size() {
     return keysAssigned;
   }
 
+  /** @return Estimated memory used by the hashtable, in bytes. */
+  public long getEstimatedMemorySize() {
+    return writeBuffers.getMemorySize() + ((long)refs.length * 8);
+  }
+
+  /** Receives the contents of the hashtable from {@link #visitAll(KvVisitor)}. */
+  public static interface KvVisitor {
+    /**
+     * Called once for every value in the hashtable. The arrays are only valid for the
+     * duration of the call.
+     */
+    public void visit(byte[] key, int keyLength, WriteBuffers.ByteSegmentRef value,
+        byte stateByte) throws IOException;
+  }
+
+  /**
+   * Passes every key and value in the hashtable to the visitor, e.g. to write them out.
+   * Value refs are populated (self-contained) before being passed.
+   */
+  public void visitAll(KvVisitor visitor) throws IOException {
+    List<WriteBuffers.ByteSegmentRef> values = new ArrayList<WriteBuffers.ByteSegmentRef>();
+    for (int slot = 0; slot < refs.length; ++slot) {
+      long ref = refs[slot];
+      if (ref == 0) {
+        continue;
+      }
+      writeBuffers.setReadPoint(getFirstRecordLengthsOffset(ref));
+      int valueLength = (int)writeBuffers.readVLong(), keyLength = (int)writeBuffers.readVLong();
+      long keyOffset = Ref.getOffset(ref) - valueLength - keyLength;
+      WriteBuffers.ByteSegmentRef keyRef = new WriteBuffers.ByteSegmentRef(keyOffset, keyLength);
+      writeBuffers.populateValue(keyRef);
+      byte[] key = new byte[keyLength];
+      System.arraycopy(keyRef.getBytes(), (int)keyRef.getOffset(), key, 0, keyLength);
+      byte stateByte = getValueRefs(key, keyLength, values);
+      for (WriteBuffers.ByteSegmentRef value : values) {
+        if (value.getBytes() == null) {
+          writeBuffers.populateValue(value);
+        }
+        visitor.visit(key, keyLength, value, stateByte);
+      }
+    }
+  }
+
   public void seal() {
     writeBuffers.seal();
   }
@@ -1,6 +1,14 @@
 package org.apache.hadoop.hive.ql.exec.persistence;
 
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -36,6 +44,7 @@
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 import org.apache.hadoop.io.BinaryComparable;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 
 /**
  * Table container that serializes keys and values using LazyBinarySerDe into
@@ -45,7 +54,27 @@
 public class MapJoinBytesTableContainer implements MapJoinTableContainer {
   private static final Log LOG = LogFactory.getLog(MapJoinTableContainer.class);
 
-  private final BytesBytesMultiHashMap hashMap;
+  /** How often (in rows) to check the memory usage when loading a partitioned table. */
+  private static final int MEMORY_CHECK_INTERVAL = 1024;
+  private static final int MIN_PARTITION_WB_SIZE = 64 * 1024;
+  private static final int MIN_PARTITION_CAPACITY = 1024;
+
+  /**
+   * The hashtable is split into partitions by the top bits of the key hash. Normally, there
+   * is just one partition. For hybrid grace hash join, there are several; whenever the table
+   * exceeds the memory threshold during load, the largest in-memory partition is spilled to
+   * local disk, and the rows for spilled partitions are written directly to disk. The join
+   * spills big table rows whose keys belong to spilled partitions, and processes them in a
+   * second pass after reloading each partition via {@link #reloadPartition(int)}.
+   */
+  private final HashPartition[] partitions;
+  private final int partitionBits;
+  private final long memoryThreshold;
+  private final float loadFactor;
+  private final int partitionWbSize;
+  private int rowsSinceMemoryCheck = 0;
+  private final Output keyScratch = new Output(), valueScratch = new Output();
+  private final PreSerializedKeyKvSource preSerializedKv = new PreSerializedKeyKvSource();
   /** The OI used to deserialize values. We never deserialize keys. */
   private LazyBinaryStructObjectInspector internalValueOi;
   /**
@@ -61,16 +90,52 @@ public class MapJoinBytesTableContainer implements MapJoinTableContainer {
 
   public MapJoinBytesTableContainer(Configuration hconf,
       MapJoinObjectSerDeContext valCtx, long keyCount) throws SerDeException {
+    this(hconf, valCtx, keyCount, 1, 0);
+  }
+
+  /**
+   * Creates the table for hybrid grace hash join.
+   * @param memoryThreshold Memory available to the table; partitions are spilled above it.
+   */
+  public MapJoinBytesTableContainer(Configuration hconf,
+      MapJoinObjectSerDeContext valCtx, long keyCount, long memoryThreshold)
+          throws SerDeException {
+    this(hconf, valCtx, keyCount,
+        HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEHYBRIDGRACEHASHJOINPARTITIONS),
+        memoryThreshold);
+  }
+
+  private MapJoinBytesTableContainer(Configuration hconf, MapJoinObjectSerDeContext valCtx,
+      long keyCount, int numPartitions, long memoryThreshold) throws SerDeException {
     this(HiveConf.getFloatVar(hconf, HiveConf.ConfVars.HIVEHASHTABLEKEYCOUNTADJUSTMENT),
         HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEHASHTABLETHRESHOLD),
         HiveConf.getFloatVar(hconf, HiveConf.ConfVars.HIVEHASHTABLELOADFACTOR),
-        HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEHASHTABLEWBSIZE), valCtx, keyCount);
+        HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEHASHTABLEWBSIZE), valCtx, keyCount,
+        numPartitions, memoryThreshold);
   }
 
   private MapJoinBytesTableContainer(float keyCountAdj, int threshold, float loadFactor,
-      int wbSize, MapJoinObjectSerDeContext valCtx, long keyCount) throws SerDeException {
+      int wbSize, MapJoinObjectSerDeContext valCtx, long keyCount, int numPartitions,
+      long memoryThreshold) throws SerDeException {
     threshold = HashMapWrapper.calculateTableSize(keyCountAdj, threshold, loadFactor, keyCount);
-    hashMap = new BytesBytesMultiHashMap(threshold, loadFactor, wbSize);
+    numPartitions = (numPartitions <= 1) ? 1 : Integer.highestOneBit(numPartitions);
+    this.partitionBits = Integer.numberOfTrailingZeros(numPartitions);
+    this.memoryThreshold = memoryThreshold;
+    this.loadFactor = loadFactor;
+    this.partitions = new HashPartition[numPartitions];
+    if (numPartitions == 1) {
+      this.partitionWbSize = wbSize;
+      partitions[0] = new HashPartition(new BytesBytesMultiHashMap(threshold, loadFactor, wbSize));
+      return;
+    }
+    this.partitionWbSize = Math.max(wbSize / numPartitions, MIN_PARTITION_WB_SIZE);
+    int partitionCapacity = Math.max(threshold / numPartitions, MIN_PARTITION_CAPACITY);
+    LOG.info("Creating " + numPartitions + " hashtable partitions with memory threshold "
+        + memoryThreshold);
+    for (int i = 0; i < numPartitions; ++i) {
+      partitions[i] = new HashPartition(
+          new BytesBytesMultiHashMap(partitionCapacity, loadFactor, partitionWbSize));
+    }
   }
 
   private LazyBinaryStructObjectInspector createInternalOi(
@@ -97,6 +162,168 @@ private static interface KeyValueHelper extends BytesBytesMultiHashMap.KvSource
     void setKeyValue(Writable key, Writable val) throws SerDeException;
   }
 
+  /** Writes the key that has already been serialized, and the value from another source. */
+  private static class PreSerializedKeyKvSource implements BytesBytesMultiHashMap.KvSource {
+    private Output key;
+    private KeyValueHelper valueSource;
+
+    public void set(Output key, KeyValueHelper valueSource) {
+      this.key = key;
+      this.valueSource = valueSource;
+    }
+
+    @Override
+    public void writeKey(RandomAccessOutput dest) throws SerDeException {
+      dest.write(key.getData(), 0, key.getLength());
+    }
+
+    @Override
+    public void writeValue(RandomAccessOutput dest) throws SerDeException {
+      valueSource.writeValue(dest);
+    }
+
+    @Override
+    public byte updateStateByte(Byte previousValue) {
+      return valueSource.updateStateByte(previousValue);
+    }
+  }
+
+  /** Reads key, value and state byte of the rows spilled to disk by {@link HashPartition}. */
+  private static class SpilledKvSource implements BytesBytesMultiHashMap.KvSource {
+    private byte[] key = new byte[0], value = new byte[0];
+    private int keyLength, valueLength;
+    private byte stateByte;
+
+    public void readRow(DataInputStream in) throws IOException {
+      keyLength = WritableUtils.readVInt(in);
+      if (key.length < keyLength) {
+        key = new byte[keyLength];
+      }
+      in.readFully(key, 0, keyLength);
+      valueLength = WritableUtils.readVInt(in);
+      if (value.length < valueLength) {
+        value = new byte[valueLength];
+      }
+      in.readFully(value, 0, valueLength);
+      stateByte = in.readByte();
+    }
+
+    @Override
+    public void writeKey(RandomAccessOutput dest) throws SerDeException {
+      dest.write(key, 0, keyLength);
+    }
+
+    @Override
+    public void writeValue(RandomAccessOutput dest) throws SerDeException {
+      dest.write(value, 0, valueLength);
+    }
+
+    @Override
+    public byte updateStateByte(Byte previousValue) {
+      return (previousValue == null) ? stateByte : (byte)(previousValue.byteValue() & stateByte);
+    }
+  }
+
+  /**
+   * A partition of the hashtable. It is either in memory (in hashMap), or spilled to a local
+   * file that contains [vint key length][key][vint value length][value][state byte] records.
+   * A spilled partition can be reloaded into memory for the second pass of the join.
+   */
+  private static class HashPartition implements BytesBytesMultiHashMap.KvVisitor {
+    private BytesBytesMultiHashMap hashMap;
+    private File spillFile;
+    private DataOutputStream spillOutput;
+    private long spilledRows = 0;
+
+    public HashPartition(BytesBytesMultiHashMap hashMap) {
+      this.hashMap = hashMap;
+    }
+
+    public boolean isSpilled() {
+      return hashMap == null;
+    }
+
+    public boolean hasSpillFile() {
+      return spillFile != null;
+    }
+
+    public void spill() throws IOException {
+      spillFile = File.createTempFile("hive-hashpartition", ".tmp");
+      spillFile.deleteOnExit();
+      spillOutput = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(spillFile)));
+      LOG.info("Spilling hashtable partition with " + hashMap.size() + " keys and "
+          + hashMap.getEstimatedMemorySize() + " bytes to " + spillFile);
+      BytesBytesMultiHashMap inMemory = hashMap;
+      hashMap = null;
+      inMemory.visitAll(this);
+      inMemory.clear();
+    }
+
+    @Override
+    public void visit(byte[] key, int keyLength, WriteBuffers.ByteSegmentRef value,
+        byte stateByte) throws IOException {
+      writeRow(key, keyLength, value.getBytes(), (int)value.getOffset(), value.getLength(),
+          stateByte);
+    }
+
+    public void writeRow(byte[] key, int keyLength, byte[] value, int valueOffset,
+        int valueLength, byte stateByte) throws IOException {
+      WritableUtils.writeVInt(spillOutput, keyLength);
+      spillOutput.write(key, 0, keyLength);
+      WritableUtils.writeVInt(spillOutput, valueLength);
+      spillOutput.write(value, valueOffset, valueLength);
+      spillOutput.writeByte(stateByte);
+      ++spilledRows;
+    }
+
+    public void finishSpill() throws IOException {
+      if (spillOutput != null) {
+        spillOutput.close();
+        spillOutput = null;
+      }
+    }
+
+    public void reload(float loadFactor, int wbSize) throws IOException, SerDeException {
+      finishSpill();
+      int capacity = (int)Math.min(Math.max(spilledRows / loadFactor, MIN_PARTITION_CAPACITY),
+          Integer.MAX_VALUE / 2);
+      BytesBytesMultiHashMap reloaded = new BytesBytesMultiHashMap(capacity, loadFactor, wbSize);
+      SpilledKvSource kv = new SpilledKvSource();
+      DataInputStream in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(spillFile)));
+      try {
+        for (long i = 0; i < spilledRows; ++i) {
+          kv.readRow(in);
+          reloaded.put(kv);
+        }
+      } finally {
+        in.close();
+      }
+      reloaded.seal();
+      LOG.info("Reloaded hashtable partition with " + reloaded.size() + " keys from " + spillFile);
+      hashMap = reloaded;
+    }
+
+    public void release() {
+      try {
+        finishSpill();
+      } catch (IOException e) {
+        LOG.warn("Failed to close " + spillFile, e);
+      }
+      if (hashMap != null) {
+        hashMap.clear();
+        hashMap = null;
+      }
+      if (spillFile != null) {
+        if (!spillFile.delete()) {
+          LOG.warn("Failed to delete " + spillFile);
+        }
+        spillFile = null;
+      }
+    }
+  }
+
   private static class KeyValueWriter implements KeyValueHelper {
     private final SerDe keySerDe, valSerDe;
     private final StructObjectInspector keySoi, valSoi;
@@ -264,13 +491,113 @@ public MapJoinKey putRow(MapJoinObjectSerDeContext keyContext, Writable currentK
       }
     }
     writeHelper.setKeyValue(currentKey, currentValue);
-    hashMap.put(writeHelper);
+    if (partitions.length == 1) {
+      partitions[0].hashMap.put(writeHelper);
+      return null; // there's no key to return
+    }
+    keyScratch.reset();
+    writeHelper.writeKey(keyScratch);
+    HashPartition partition =
+        partitions[getPartitionId(keyScratch.getData(), keyScratch.getLength())];
+    try {
+      if (partition.isSpilled()) {
+        valueScratch.reset();
+        writeHelper.writeValue(valueScratch);
+        partition.writeRow(keyScratch.getData(), keyScratch.getLength(),
+            valueScratch.getData(), 0, valueScratch.getLength(), writeHelper.updateStateByte(null));
+      } else {
+        preSerializedKv.set(keyScratch, writeHelper);
+        partition.hashMap.put(preSerializedKv);
+        if (++rowsSinceMemoryCheck >= MEMORY_CHECK_INTERVAL) {
+          rowsSinceMemoryCheck = 0;
+          spillPartitionsIfNeeded();
+        }
+      }
+    } catch (IOException e) {
+      throw new SerDeException(e);
+    }
     return null; // there's no key to return
   }
 
+  private int getPartitionId(byte[] key, int length) {
+    if (partitionBits == 0) {
+      return 0;
+    }
+    // The low bits are used by the partition hashtables, so use the high bits here.
+    return WriteBuffers.murmurHash(key, 0, length) >>> (32 - partitionBits);
+  }
+
+  /** Spills the largest in-memory partitions until the table fits in memory. */
+  private void spillPartitionsIfNeeded() throws IOException {
+    long memorySize = 0;
+    for (HashPartition partition : partitions) {
+      if (!partition.isSpilled()) {
+        memorySize += partition.hashMap.getEstimatedMemorySize();
+      }
+    }
+    while (memorySize > memoryThreshold) {
+      HashPartition largest = null;
+      for (HashPartition partition : partitions) {
+        if (!partition.isSpilled() && partition.hashMap.size() > 0 && (largest == null
+            || partition.hashMap.getEstimatedMemorySize()
+                > largest.hashMap.getEstimatedMemorySize())) {
+          largest = partition;
+        }
+      }
+      if (largest == null) {
+        break;
+      }
+      memorySize -= largest.hashMap.getEstimatedMemorySize();
+      largest.spill();
+    }
+  }
+
   @Override
   public void clear() {
-    hashMap.clear();
+    for (HashPartition partition : partitions) {
+      if (partition.hasSpillFile()) {
+        partition.release();
+      } else {
+        partition.hashMap.clear();
+      }
+    }
+  }
+
+  /** @return Whether some partitions of the table were spilled to disk during load. */
+  public boolean hasSpilledPartitions() {
+    for (HashPartition partition : partitions) {
+      if (partition.hasSpillFile()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public int getNumPartitions() {
+    return partitions.length;
+  }
+
+  public boolean isPartitionSpilled(int partitionId) {
+    return partitions[partitionId].isSpilled();
+  }
+
+  /**
+   * Loads a spilled partition back into memory, for the second pass of hybrid grace hash
+   * join. Getters return rows from the partition until it is released.
+   */
+  public void reloadPartition(int partitionId) throws HiveException {
+    try {
+      partitions[partitionId].reload(loadFactor, partitionWbSize);
+    } catch (IOException e) {
+      throw new HiveException(e);
+    } catch (SerDeException e) {
+      throw new HiveException(e);
+    }
+  }
+
+  /** Discards a partition after the second pass, deleting the spill file. */
+  public void releasePartition(int partitionId) {
+    partitions[partitionId].release();
   }
 
   @Override
@@ -288,12 +615,79 @@ public ReusableGetAdaptor createGetter(MapJoinKey keyTypeFromLoader) {
 
   @Override
   public void seal() {
-    hashMap.seal();
+    for (HashPartition partition : partitions) {
+      if (partition.isSpilled()) {
+        try {
+          partition.finishSpill();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      } else {
+        partition.hashMap.seal();
+      }
+    }
+  }
+
+  /**
+   * @return Sort orders of the BinarySortable-serialized keys in the hashtable; null if
+   *         the keys are serialized with LazyBinarySerDe, or if no rows were added.
+   */
+  public boolean[] getSortableSortOrders() {
+    return sortableSortOrders;
+  }
+
+  /** @return The OI for values, as serialized in the hashtable; null if no rows were added. */
+  public LazyBinaryStructObjectInspector getValueObjectInspector() {
+    return internalValueOi;
+  }
+
+  public boolean isEmpty() {
+    for (HashPartition partition : partitions) {
+      if (partition.hasSpillFile() || partition.hashMap.size() > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets value references for an already serialized key, bypassing ReusableGetAdaptor.
+   * Used by the vectorized map join, which serializes keys directly from column vectors.
+   * See {@link BytesBytesMultiHashMap#getValueRefs(byte[], int, List)}. The refs can only
+   * be populated via {@link #populateValue(byte[], int, WriteBuffers.ByteSegmentRef)}.
+   */
+  public byte getValueRefs(byte[] key, int length, List<WriteBuffers.ByteSegmentRef> result) {
+    return getInMemoryPartition(key, length).getValueRefs(key, length, result);
+  }
+
+  /** See {@link BytesBytesMultiHashMap#populateValue(WriteBuffers.ByteSegmentRef)}. */
+  public void populateValue(byte[] key, int length, WriteBuffers.ByteSegmentRef valueRef) {
+    getInMemoryPartition(key, length).populateValue(valueRef);
+  }
+
+  private BytesBytesMultiHashMap getInMemoryPartition(byte[] key, int length) {
+    HashPartition partition = partitions[getPartitionId(key, length)];
+    if (partition.isSpilled()) {
+      throw new IllegalStateException("Hashtable partition for the key is spilled");
+    }
+    return partition.hashMap;
+  }
+
+  /** Getter that can tell whether the current key belongs to a spilled partition. */
+  public interface PartitionedGetAdaptor extends ReusableGetAdaptor {
+    /** @return The partition of the current key if it is spilled; -1 otherwise. */
+    int getSpilledPartitionId();
+
+    /** @return The current key, serialized as it is stored in the hashtable. */
+    Output getSerializedKey();
+
+    /** Sets the current key from bytes previously returned by {@link #getSerializedKey()}. */
+    void setFromSerializedKey(byte[] key, int length);
   }
 
   /** Implementation of ReusableGetAdaptor that has Output for key serialization; row
    * container is also created once and reused for every row. */
-  private class GetAdaptor implements ReusableGetAdaptor {
+  private class GetAdaptor implements PartitionedGetAdaptor {
 
     private Object[] currentKey;
     private boolean[] nulls;
@@ -353,6 +747,29 @@ public void setFromOther(ReusableGetAdaptor other) {
       currentValue.setFromOutput(other2.output);
     }
 
+    @Override
+    public int getSpilledPartitionId() {
+      return currentValue.spilledPartitionId;
+    }
+
+    @Override
+    public Output getSerializedKey() {
+      return output;
+    }
+
+    @Override
+    public void setFromSerializedKey(byte[] key, int length) {
+      output.reset();
+      output.write(key, 0, length);
+      if (nulls != null) {
+        // Keys with nulls are never spilled.
+        for (int i = 0; i < nulls.length; ++i) {
+          nulls[i] = false;
+        }
+      }
+      currentValue.setFromOutput(output);
+    }
+
     @Override
     public boolean hasAnyNulls(int fieldCount, boolean[] nullsafes) {
       if (nulls == null || nulls.length == 0) return false;
@@ -381,6 +798,8 @@ public Object[] getCurrentKey() {
     private byte aliasFilter;
     private List<WriteBuffers.ByteSegmentRef> refs;
     private int currentRow;
+    private BytesBytesMultiHashMap currentHashMap;
+    private int spilledPartitionId = -1;
     /**
      * Sometimes, when container is empty in multi-table mapjoin, we need to add a dummy row.
      * This container does not normally support adding rows; this is for the dummy row.
@@ -405,9 +824,21 @@ public void setFromOutput(Output output) {
       if (refs == null) {
         refs = new ArrayList<WriteBuffers.ByteSegmentRef>(0);
       }
-      byte aliasFilter = hashMap.getValueRefs(output.getData(), output.getLength(), refs);
-      this.aliasFilter = refs.isEmpty() ? (byte) 0xff : aliasFilter;
+      int partitionId = getPartitionId(output.getData(), output.getLength());
+      HashPartition partition = partitions[partitionId];
       this.dummyRow = null;
+      if (partition.isSpilled()) {
+        // The rows for this key are on disk; the caller has to spill the row being joined.
+        refs.clear();
+        this.aliasFilter = (byte) 0xff;
+        this.currentHashMap = null;
+        this.spilledPartitionId = partitionId;
+        return;
+      }
+      this.spilledPartitionId = -1;
+      this.currentHashMap = partition.hashMap;
+      byte aliasFilter = currentHashMap.getValueRefs(output.getData(), output.getLength(), refs);
+      this.aliasFilter = refs.isEmpty() ? (byte) 0xff : aliasFilter;
     }
 
     public boolean isEmpty() {
@@ -469,7 +900,7 @@ public List<Object> next() throws HiveException {
         return EMPTY_LIST; // shortcut, 0 length means no fields
       }
       if (ref.getBytes() == null) {
-        hashMap.populateValue(ref);
+        currentHashMap.populateValue(ref);
       }
       uselessIndirection.setData(ref.getBytes());
       valueStruct.init(uselessIndirection, (int)ref.getOffset(), ref.getLength());
@@ -507,6 +938,10 @@ public static boolean isSupportedKey(ObjectInspector keyOi) {
 
   @Override
   public void dumpMetrics() {
-    hashMap.debugDumpMetrics();
+    for (HashPartition partition : partitions) {
+      if (!partition.isSpilled()) {
+        partition.hashMap.debugDumpMetrics();
+      }
+    }
   }
 }
@@ -23,6 +23,7 @@
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -41,11 +42,20 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluator;
 import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluatorFactory;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
 import org.apache.hadoop.hive.ql.plan.MapWork;
+import org.apache.hadoop.hive.ql.plan.OperatorDesc;
 import org.apache.hadoop.hive.ql.plan.PartitionDesc;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
 import org.apache.hadoop.hive.serde2.Deserializer;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
@@ -56,6 +66,7 @@
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.mapred.JobConf;
@@ -67,7 +78,9 @@
 /**
  * DynamicPartitionPruner takes a list of assigned partitions at runtime (split
  * generation) and prunes them using events generated during execution of the
- * dag.
+ * dag. Events for non-partition columns (semijoin reduction) carry the min and
+ * max of the join keys instead; the range is added to the filter expression of
+ * the table scan, so that the input format can skip data when generating splits.
  *
  */
 public class DynamicPartitionPruner {
@@ -138,14 +151,17 @@ public void initialize(MapWork work, JobConf jobConf) throws SerDeException {
       List<TableDesc> tables = work.getEventSourceTableDescMap().get(s);
       List<String> columnNames = work.getEventSourceColumnNameMap().get(s);
       List<ExprNodeDesc> partKeyExprs = work.getEventSourcePartKeyExprMap().get(s);
+      List<Boolean> rangeFilters = work.getEventSourceRangeFilterMap().get(s);
 
       Iterator<String> cit = columnNames.iterator();
       Iterator<ExprNodeDesc> pit = partKeyExprs.iterator();
+      Iterator<Boolean> rit = rangeFilters == null ? null : rangeFilters.iterator();
       for (TableDesc t : tables) {
         ++sourceInfoCount;
         String columnName = cit.next();
         ExprNodeDesc partKeyExpr = pit.next();
-        SourceInfo si = new SourceInfo(t, partKeyExpr, columnName, jobConf);
+        boolean rangeFilter = rit != null && rit.next();
+        SourceInfo si = new SourceInfo(t, partKeyExpr, columnName, rangeFilter, jobConf);
         if (!sourceInfoMap.containsKey(s)) {
           sourceInfoMap.put(s, new ArrayList<SourceInfo>());
         }
@@ -166,7 +182,11 @@ public void initialize(MapWork work, JobConf jobConf) throws SerDeException {
   private void prunePartitions(MapWork work) throws HiveException {
     for (String source : this.sourceInfoMap.keySet()) {
       for (SourceInfo si : this.sourceInfoMap.get(source)) {
-        prunePartitionSingleSource(source, si, work);
+        if (si.rangeFilter) {
+          applyRangeFilter(source, si, work);
+        } else {
+          prunePartitionSingleSource(source, si, work);
+        }
       }
     }
   }
@@ -214,6 +234,115 @@ private void prunePartitionSingleSource(String source, SourceInfo si, MapWork wo
     applyFilterToPartitions(work, converter, eval, columnName, values);
   }
 
+  private void applyRangeFilter(String source, SourceInfo si, MapWork work)
+      throws HiveException {
+
+    if (si.skipPruning.get()) {
+      LOG.info("Skip semijoin reduction on " + source + ", column " + si.columnName);
+      return;
+    }
+    applyRangeFilter(work, si.values, si.fieldInspector, si.partKey);
+  }
+
+  /**
+   * Adds "key BETWEEN min AND max" to the filter of the table scan of the work, for the
+   * smallest and largest of the values that the tasks on the other side of the join sent.
+   *
+   * @param values the min and max of the join keys of each task
+   * @param valueInspector the inspector of the values
+   * @param key the column of the table scan
+   * @return whether the filter was added
+   */
+  static boolean applyRangeFilter(MapWork work, Collection<Object> values,
+      ObjectInspector valueInspector, ExprNodeDesc key) throws HiveException {
+    ExprNodeGenericFuncDesc filter = makeRangeFilter(values, valueInspector, key);
+    if (filter == null) {
+      return false;
+    }
+
+    // the range applies to the whole scan, so there can't be anything else in the work.
+    if (work.getAliasToWork().size() != 1) {
+      LOG.info("Skip semijoin reduction, found " + work.getAliasToWork().size() + " aliases");
+      return false;
+    }
+    Operator<? extends OperatorDesc> op = work.getAliasToWork().values().iterator().next();
+    if (!(op instanceof TableScanOperator)) {
+      return false;
+    }
+    TableScanDesc scanDesc = ((TableScanOperator) op).getConf();
+    try {
+      if (scanDesc.getFilterExpr() != null) {
+        List<ExprNodeDesc> andArgs = new ArrayList<ExprNodeDesc>();
+        andArgs.add(scanDesc.getFilterExpr());
+        andArgs.add(filter);
+        filter = ExprNodeGenericFuncDesc.newInstance(new GenericUDFOPAnd(), andArgs);
+      }
+    } catch (UDFArgumentException e) {
+      throw new HiveException(e);
+    }
+    LOG.info("Semijoin reduction: " + filter.getExprString());
+    scanDesc.setFilterExpr(filter);
+    return true;
+  }
+
+  /**
+   * Makes "key BETWEEN min AND max" for the smallest and largest of the values. The
+   * values are converted to the type of the key, which can differ from the type of the
+   * join keys they come from.
+   *
+   * @return the filter, or null if there are no values but nulls, or if a value can't be
+   *         converted to the type of the key without changing it
+   */
+  static ExprNodeGenericFuncDesc makeRangeFilter(Collection<Object> values,
+      ObjectInspector valueInspector, ExprNodeDesc key) throws HiveException {
+    PrimitiveTypeInfo keyType = (PrimitiveTypeInfo) key.getTypeInfo();
+    ObjectInspector keyInspector =
+        PrimitiveObjectInspectorFactory.getPrimitiveJavaObjectInspector(keyType);
+    Converter toKey = ObjectInspectorConverters.getConverter(valueInspector, keyInspector);
+    Converter fromKey = ObjectInspectorConverters.getConverter(keyInspector, valueInspector);
+
+    // the values are compared as keys, the order of the join keys can be different.
+    Object keyMin = null;
+    Object keyMax = null;
+    for (Object value : values) {
+      // tasks that didn't see any rows send nulls
+      if (value == null) {
+        continue;
+      }
+      Object keyValue = toKey.convert(value);
+      Object back = keyValue == null ? null : fromKey.convert(keyValue);
+      if (back == null
+          || ObjectInspectorUtils.compare(back, valueInspector, value, valueInspector) != 0) {
+        LOG.info("Skip semijoin reduction, " + value + " doesn't convert to "
+            + keyType.getTypeName());
+        return null;
+      }
+      if (keyMin == null
+          || ObjectInspectorUtils.compare(keyValue, keyInspector, keyMin, keyInspector) < 0) {
+        keyMin = keyValue;
+      }
+      if (keyMax == null
+          || ObjectInspectorUtils.compare(keyValue, keyInspector, keyMax, keyInspector) > 0) {
+        keyMax = keyValue;
+      }
+    }
+    if (keyMin == null) {
+      LOG.info("No key range for " + key.getExprString());
+      return null;
+    }
+
+    List<ExprNodeDesc> betweenArgs = new ArrayList<ExprNodeDesc>();
+    betweenArgs.add(new ExprNodeConstantDesc(Boolean.FALSE));
+    betweenArgs.add(key.clone());
+    betweenArgs.add(new ExprNodeConstantDesc(keyType, keyMin));
+    betweenArgs.add(new ExprNodeConstantDesc(keyType, keyMax));
+    try {
+      return ExprNodeGenericFuncDesc.newInstance(new GenericUDFBetween(), betweenArgs);
+    } catch (UDFArgumentException e) {
+      throw new HiveException(e);
+    }
+  }
+
   @SuppressWarnings("rawtypes")
   private void applyFilterToPartitions(MapWork work, Converter converter, ExprNodeEvaluator eval,
       String columnName, Set<Object> values) throws HiveException {
@@ -265,9 +394,11 @@ private static class SourceInfo {
     public Set<Object> values = new HashSet<Object>();
     public AtomicBoolean skipPruning = new AtomicBoolean();
     public final String columnName;
+    // events carry (min, max) of the join key rather than partition values
+    public final boolean rangeFilter;
 
-    public SourceInfo(TableDesc table, ExprNodeDesc partKey, String columnName, JobConf jobConf)
-        throws SerDeException {
+    public SourceInfo(TableDesc table, ExprNodeDesc partKey, String columnName,
+        boolean rangeFilter, JobConf jobConf) throws SerDeException {
 
       this.skipPruning.set(false);
 
@@ -275,6 +406,8 @@ public SourceInfo(TableDesc table, ExprNodeDesc partKey, String columnName, JobC
 
       this.columnName = columnName;
 
+      this.rangeFilter = rangeFilter;
+
       deserializer = ReflectionUtils.newInstance(table.getDeserializerClass(), null);
       deserializer.initialize(jobConf, table.getProperties());
 
@@ -283,8 +416,8 @@ public SourceInfo(TableDesc table, ExprNodeDesc partKey, String columnName, JobC
 
       soi = (StructObjectInspector) inspector;
       List<? extends StructField> fields = soi.getAllStructFieldRefs();
-      if (fields.size() > 1) {
-        LOG.error("expecting single field in input");
+      if (fields.size() > (rangeFilter ? 2 : 1)) {
+        LOG.error("expecting " + (rangeFilter ? "two fields" : "single field") + " in input");
       }
 
       field = fields.get(0);
@@ -353,6 +486,16 @@ private String processPayload(ByteBuffer payload, String sourceName) throws SerD
 
       Object row = info.deserializer.deserialize(writable);
 
+      if (info.rangeFilter) {
+        // both min and max go into the values; the range is computed after all events
+        for (StructField field : info.soi.getAllStructFieldRefs()) {
+          Object value = info.soi.getStructFieldData(row, field);
+          info.values.add(ObjectInspectorUtils.copyToStandardObject(
+              value, field.getFieldObjectInspector()));
+        }
+        continue;
+      }
+
       Object value = info.soi.getStructFieldData(row, info.field);
       value = ObjectInspectorUtils.copyToStandardObject(value, info.fieldInspector);
 
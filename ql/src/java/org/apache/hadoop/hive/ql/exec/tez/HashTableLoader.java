@@ -33,6 +33,7 @@
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectSerDeContext;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainer;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainerSerDe;
+import org.apache.hadoop.hive.ql.exec.vector.VectorMapJoinOperator;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
 import org.apache.hadoop.hive.serde2.SerDeException;
@@ -58,12 +59,33 @@ public class HashTableLoader implements org.apache.hadoop.hive.ql.exec.HashTable
   private MapJoinDesc desc;
   private MapJoinKey lastKey = null;
   private int rowCount = 0;
+  private boolean isVectorized;
 
   @Override
   public void init(ExecMapperContext context, Configuration hconf, MapJoinOperator joinOp) {
     this.context = context;
     this.hconf = hconf;
     this.desc = joinOp.getConf();
+    this.isVectorized = joinOp instanceof VectorMapJoinOperator;
+  }
+
+  /**
+   * Hybrid grace hash join is only used for the row mode join of one small table, where
+   * MapJoinOperator can spill big table rows for the partitions that don't fit in memory.
+   */
+  private boolean useHybridGraceHashJoin(boolean useOptimizedTables, int numTables, int pos) {
+    return useOptimizedTables && numTables == 2 && !isVectorized
+        && desc.getValueIndex(pos) == null
+        && HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVEMAPJOINUSEHYBRIDGRACE);
+  }
+
+  private long getHybridGraceMemory() {
+    long memory = HiveConf.getLongVar(hconf, HiveConf.ConfVars.HIVEHYBRIDGRACEHASHJOINMEMORY);
+    if (memory <= 0) {
+      memory = HiveConf.getLongVar(
+          hconf, HiveConf.ConfVars.HIVECONVERTJOINNOCONDITIONALTASKTHRESHOLD);
+    }
+    return memory;
   }
 
   @Override
@@ -105,9 +127,15 @@ public void load(
         isFirstKey = false;
         Long keyCountObj = parentKeyCounts.get(pos);
         long keyCount = (keyCountObj == null) ? -1 : keyCountObj.longValue();
-        MapJoinTableContainer tableContainer = useOptimizedTables
-            ? new MapJoinBytesTableContainer(hconf, valCtx, keyCount)
-            : new HashMapWrapper(hconf, keyCount);
+        MapJoinTableContainer tableContainer;
+        if (useHybridGraceHashJoin(useOptimizedTables, mapJoinTables.length, pos)) {
+          tableContainer = new MapJoinBytesTableContainer(
+              hconf, valCtx, keyCount, getHybridGraceMemory());
+        } else {
+          tableContainer = useOptimizedTables
+              ? new MapJoinBytesTableContainer(hconf, valCtx, keyCount)
+              : new HashMapWrapper(hconf, keyCount);
+        }
 
         while (kvReader.next()) {
           rowCount++;
@@ -128,13 +156,19 @@ public void load(
       LOG.info("Is this a bucket map join: " + desc.isBucketMapJoin());
       // cache is disabled for bucket map join because of the same reason
       // given in loadHashTable in MapJoinOperator.
-      if (!desc.isBucketMapJoin()) {
+      // Tables with spilled partitions are not cached either; see MapJoinOperator.
+      if (!desc.isBucketMapJoin() && !isSpilled(mapJoinTables[pos])) {
         tezCacheAccess.registerCachedInput(inputName);
         LOG.info("Setting Input: " + inputName + " as cached");
       }
     }
   }
 
+  private static boolean isSpilled(MapJoinTableContainer tableContainer) {
+    return tableContainer instanceof MapJoinBytesTableContainer
+        && ((MapJoinBytesTableContainer) tableContainer).hasSpilledPartitions();
+  }
+
   private String describeOi(String desc, ObjectInspector keyOi) {
     for (StructField field : ((StructObjectInspector)keyOi).getAllStructFieldRefs()) {
       ObjectInspector oi = field.getFieldObjectInspector();
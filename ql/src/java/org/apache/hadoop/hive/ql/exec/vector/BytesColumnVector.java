@@ -38,6 +38,11 @@
  * You can also set data by value, as long as you call the initBuffer() method first.
  * You can mix "by value" and "by reference" in the same column vector,
  * though that use is probably not typical.
+ * <p>
+ * Readers of dictionary encoded columns may also set the dictionary and the
+ * id of the dictionary entry for each value. The values still reference the
+ * bytes of their entries, so only the expressions that benefit from it need
+ * to look at the dictionary.
  */
 public class BytesColumnVector extends ColumnVector {
   public byte[][] vector;
@@ -48,6 +53,21 @@ public class BytesColumnVector extends ColumnVector {
    * in vector[0] and isRepeating from the superclass is set to true.
    */
   public int[] length;
+
+  /*
+   * The entries of the dictionary that the values reference or null if the
+   * values are not dictionary encoded. The reader sets a new dictionary object
+   * when the dictionary changes, so expressions can cache their results for
+   * the entries on the identity of the dictionary.
+   */
+  public BytesColumnVector dictionary;
+
+  /*
+   * The dictionary entry of each value, when the dictionary is set. The ids
+   * of null values are undefined.
+   */
+  public int[] dictionaryIds;
+
   private byte[] buffer;   // optional buffer to use when actually copying in data
   private int nextFree;    // next free position in buffer
 
@@ -145,6 +165,7 @@ public int bufferSize() {
    * @param length  length of source byte sequence
    */
   public void setVal(int elementNum, byte[] sourceBuf, int start, int length) {
+    dictionary = null;
     if ((nextFree + length) > buffer.length) {
       increaseBufferSpace(length);
     }
@@ -169,6 +190,7 @@ public void setVal(int elementNum, byte[] sourceBuf, int start, int length) {
    */
   public void setConcat(int elementNum, byte[] leftSourceBuf, int leftStart, int leftLen,
       byte[] rightSourceBuf, int rightStart, int rightLen) {
+    dictionary = null;
     int newLen = leftLen + rightLen;
     if ((nextFree + newLen) > buffer.length) {
       increaseBufferSpace(newLen);
@@ -298,6 +320,15 @@ public void flatten(boolean selectedInUse, int[] sel, int size) {
             this.setRef(i, vector[0], start[0], length[0]);
           }
         }
+        if (dictionary != null) {
+          if (selectedInUse) {
+            for (int j = 1; j < size; j++) {
+              dictionaryIds[sel[j]] = dictionaryIds[0];
+            }
+          } else {
+            Arrays.fill(dictionaryIds, 1, size, dictionaryIds[0]);
+          }
+        }
       }
       flattenRepeatingNulls(selectedInUse, sel, size);
     }
@@ -306,6 +337,7 @@ public void flatten(boolean selectedInUse, int[] sel, int size) {
 
   // Fill the all the vector entries with provided value
   public void fill(byte[] value) {
+    dictionary = null;
     noNulls = true;
     isRepeating = true;
     setRef(0, value, 0, value.length);
@@ -314,11 +346,17 @@ public void fill(byte[] value) {
   @Override
   public void setElement(int outElementNum, int inputElementNum, ColumnVector inputVector) {
     BytesColumnVector in = (BytesColumnVector) inputVector;
-    setVal(outElementNum, in.vector[inputElementNum], in.start[inputElementNum], in.length[outElementNum]);
+    setVal(outElementNum, in.vector[inputElementNum], in.start[inputElementNum], in.length[inputElementNum]);
   }
 
   @Override
   public void init() {
     initBuffer(0);
   }
+
+  @Override
+  public void reset() {
+    super.reset();
+    dictionary = null;
+  }
 }
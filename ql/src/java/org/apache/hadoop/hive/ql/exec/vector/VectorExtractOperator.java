@@ -20,7 +20,9 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluator;
@@ -40,19 +42,45 @@
  * Vectorized extract operator implementation.  Consumes rows and outputs a
  * vectorized batch of subobjects.
  **/
-public class VectorExtractOperator extends ExtractOperator {
+public class VectorExtractOperator extends ExtractOperator implements VectorizationContextRegion {
   private static final long serialVersionUID = 1L;
 
   private int keyColCount;
   private int valueColCount;
-  
+
+  // Key for the scratch columns of the output batch.
+  private String fileKey;
+
   private transient VectorizedRowBatch outputBatch;
   private transient int remainingColCount;
 
+  // The values move to the front of the output batch, and the operators below refer to
+  // them by their names without the "VALUE." prefix.
+  private transient VectorizationContext vOutContext;
+
   public VectorExtractOperator(VectorizationContext vContext, OperatorDesc conf)
       throws HiveException {
     this();
     this.conf = (ExtractDesc) conf;
+
+    String keyPrefix = Utilities.ReduceField.KEY.toString() + ".";
+    String valuePrefix = Utilities.ReduceField.VALUE.toString() + ".";
+    int numKeys = 0;
+    for (String columnName : vContext.getColumnMap().keySet()) {
+      if (columnName.startsWith(keyPrefix)) {
+        numKeys++;
+      }
+    }
+    Map<String, Integer> valueColumnMap = new HashMap<String, Integer>();
+    for (Map.Entry<String, Integer> entry : vContext.getColumnMap().entrySet()) {
+      if (entry.getKey().startsWith(valuePrefix)) {
+        valueColumnMap.put(entry.getKey().substring(valuePrefix.length()),
+            entry.getValue() - numKeys);
+      }
+    }
+    vOutContext = new VectorizationContext(valueColumnMap, valueColumnMap.size());
+    vOutContext.setFileKey(vContext.getFileKey() + "/_EXTRACT_");
+    fileKey = vOutContext.getFileKey();
   }
 
   public VectorExtractOperator() {
@@ -77,7 +105,11 @@ protected void initializeOp(Configuration hconf) throws HiveException {
     outputObjInspector = ObjectInspectorFactory
               .getStandardStructObjectInspector(colNames, ois);
     remainingColCount = fields.size() - keyColCount;
-    outputBatch =  new VectorizedRowBatch(remainingColCount);
+    // The value columns are shared with the input batch, but the scratch columns
+    // of the operators below belong to the output batch.
+    VectorizedRowBatchCtx vrbCtx = new VectorizedRowBatchCtx();
+    vrbCtx.init(hconf, fileKey, (StructObjectInspector) outputObjInspector);
+    outputBatch = vrbCtx.createVectorizedRowBatch();
     initializeChildren(hconf);
   }
 
@@ -99,4 +131,9 @@ public void processOp(Object row, int tag) throws HiveException {
 
     forward(outputBatch, outputObjInspector);
   }
+
+  @Override
+  public VectorizationContext getOuputVectorizationContext() {
+    return vOutContext;
+  }
 }
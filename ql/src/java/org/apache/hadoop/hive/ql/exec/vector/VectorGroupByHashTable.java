@@ -0,0 +1,315 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+
+/**
+ * Open addressing (linear probing) hash table from group by keys to aggregation buffers,
+ * used by the hash mode of {@link VectorGroupByOperator}. Unlike java.util.HashMap, there
+ * are no per-entry objects: keys and aggregation buffers are kept in parallel arrays.
+ * A single long key (the common case for integer ids) is stored as a primitive in a long[],
+ * so the key wrapper doesn't have to be copied at all.
+ */
+public abstract class VectorGroupByHashTable {
+
+  private static final float LOAD_FACTOR = 0.5f;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /**
+   * Receives the entries removed from the table by {@link #flush(int, Visitor)}.
+   */
+  public static interface Visitor {
+    /**
+     * @param key The key of the entry. It may be reused after the call returns.
+     */
+    void visit(VectorHashKeyWrapper key, VectorAggregationBufferRow aggregationBuffers)
+        throws HiveException;
+  }
+
+  protected VectorAggregationBufferRow[] values;
+  protected int size;
+  private int resizeThreshold;
+
+  protected VectorGroupByHashTable() {
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Creates the hash table best suited for the keys of the batch.
+   */
+  public static VectorGroupByHashTable create(VectorHashKeyWrapperBatch keyWrappersBatch) {
+    if (keyWrappersBatch.isSingleLongKey()) {
+      return new LongKeys(keyWrappersBatch.allocateKeyWrapper());
+    }
+    return new WrapperKeys();
+  }
+
+  /**
+   * @return The aggregation buffers for the key; null if the key is not in the table.
+   */
+  public abstract VectorAggregationBufferRow get(VectorHashKeyWrapper kw);
+
+  /**
+   * Adds a key that is not in the table. The key wrapper is copied if needed.
+   */
+  public void put(VectorHashKeyWrapper kw, VectorAggregationBufferRow aggregationBuffers) {
+    if (size >= resizeThreshold) {
+      rehash(values.length * 2);
+    }
+    putInternal(kw, aggregationBuffers);
+    ++size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes up to count entries from the table, passing each one to the visitor.
+   * If count is at least the size of the table, the table is emptied.
+   */
+  public void flush(int count, Visitor visitor) throws HiveException {
+    int flushed = 0;
+    for (int slot = 0; slot < values.length && flushed < count; ++slot) {
+      if (values[slot] != null) {
+        visitor.visit(getKey(slot), values[slot]);
+        values[slot] = null;
+        ++flushed;
+      }
+    }
+    size -= flushed;
+    if (size == 0) {
+      // start from the beginning, the table may have grown larger than needed
+      allocate(INITIAL_CAPACITY);
+    } else {
+      // the probe sequences may have been broken by the removals
+      rehash(values.length);
+    }
+  }
+
+  /**
+   * @return The memory used per entry by the table itself, besides the aggregation buffers
+   *         and variable-size keys.
+   */
+  public abstract int getEntryFixedSize(JavaDataModel model);
+
+  protected abstract void allocateKeys(int capacity);
+
+  protected abstract VectorHashKeyWrapper getKey(int slot);
+
+  protected abstract void putInternal(VectorHashKeyWrapper kw,
+      VectorAggregationBufferRow aggregationBuffers);
+
+  protected abstract void moveEntries(int oldCapacity, VectorAggregationBufferRow[] oldValues);
+
+  private void allocate(int capacity) {
+    values = new VectorAggregationBufferRow[capacity];
+    allocateKeys(capacity);
+    resizeThreshold = (int)(capacity * LOAD_FACTOR);
+  }
+
+  private void rehash(int capacity) {
+    VectorAggregationBufferRow[] oldValues = values;
+    int oldCapacity = values.length;
+    int oldSize = size;
+    allocate(capacity);
+    moveEntries(oldCapacity, oldValues);
+    size = oldSize;
+  }
+
+  protected final int getSlot(int hashCode) {
+    return hashCode & (values.length - 1);
+  }
+
+  protected final int nextSlot(int slot) {
+    return (slot + 1) & (values.length - 1);
+  }
+
+  /**
+   * Table for any combination of keys. The keys are copies of the batch key wrappers.
+   */
+  private static class WrapperKeys extends VectorGroupByHashTable {
+    private VectorHashKeyWrapper[] keys;
+    // the keys to move are saved here by moveEntries
+    private VectorHashKeyWrapper[] oldKeys;
+
+    @Override
+    protected void allocateKeys(int capacity) {
+      oldKeys = keys;
+      keys = new VectorHashKeyWrapper[capacity];
+    }
+
+    @Override
+    public VectorAggregationBufferRow get(VectorHashKeyWrapper kw) {
+      for (int slot = getSlot(mix(kw.hashCode())); values[slot] != null; slot = nextSlot(slot)) {
+        if (keys[slot].equals(kw)) {
+          return values[slot];
+        }
+      }
+      return null;
+    }
+
+    @Override
+    protected void putInternal(VectorHashKeyWrapper kw,
+        VectorAggregationBufferRow aggregationBuffers) {
+      // the key wrappers of the batch are reused, so the key has to be copied
+      insert((VectorHashKeyWrapper) kw.copyKey(), aggregationBuffers);
+    }
+
+    private void insert(VectorHashKeyWrapper kw, VectorAggregationBufferRow aggregationBuffers) {
+      int slot = getSlot(mix(kw.hashCode()));
+      while (values[slot] != null) {
+        slot = nextSlot(slot);
+      }
+      keys[slot] = kw;
+      values[slot] = aggregationBuffers;
+    }
+
+    @Override
+    protected VectorHashKeyWrapper getKey(int slot) {
+      VectorHashKeyWrapper key = keys[slot];
+      keys[slot] = null;
+      return key;
+    }
+
+    @Override
+    protected void moveEntries(int oldCapacity, VectorAggregationBufferRow[] oldValues) {
+      for (int slot = 0; slot < oldCapacity; ++slot) {
+        if (oldValues[slot] != null) {
+          insert(oldKeys[slot], oldValues[slot]);
+        }
+      }
+      oldKeys = null;
+    }
+
+    @Override
+    public int getEntryFixedSize(JavaDataModel model) {
+      // two references per slot
+      return (int)(2 * model.ref() / LOAD_FACTOR);
+    }
+  }
+
+  /**
+   * Table for a single long key. The null key is stored outside the arrays.
+   */
+  private static class LongKeys extends VectorGroupByHashTable {
+    private long[] keys;
+    private long[] oldKeys;
+    private VectorAggregationBufferRow nullKeyValue;
+    // used to pass the keys to the visitor
+    private final VectorHashKeyWrapper scratchKey;
+
+    public LongKeys(VectorHashKeyWrapper scratchKey) {
+      this.scratchKey = scratchKey;
+    }
+
+    @Override
+    protected void allocateKeys(int capacity) {
+      oldKeys = keys;
+      keys = new long[capacity];
+    }
+
+    @Override
+    public VectorAggregationBufferRow get(VectorHashKeyWrapper kw) {
+      if (kw.getIsLongNull(0)) {
+        return nullKeyValue;
+      }
+      long key = kw.getLongValue(0);
+      for (int slot = getSlot(hash(key)); values[slot] != null; slot = nextSlot(slot)) {
+        if (keys[slot] == key) {
+          return values[slot];
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public void put(VectorHashKeyWrapper kw, VectorAggregationBufferRow aggregationBuffers) {
+      if (kw.getIsLongNull(0)) {
+        nullKeyValue = aggregationBuffers;
+        ++size;
+      } else {
+        super.put(kw, aggregationBuffers);
+      }
+    }
+
+    @Override
+    protected void putInternal(VectorHashKeyWrapper kw,
+        VectorAggregationBufferRow aggregationBuffers) {
+      insert(kw.getLongValue(0), aggregationBuffers);
+    }
+
+    private void insert(long key, VectorAggregationBufferRow aggregationBuffers) {
+      int slot = getSlot(hash(key));
+      while (values[slot] != null) {
+        slot = nextSlot(slot);
+      }
+      keys[slot] = key;
+      values[slot] = aggregationBuffers;
+    }
+
+    @Override
+    public void flush(int count, Visitor visitor) throws HiveException {
+      if (nullKeyValue != null && count > 0) {
+        scratchKey.assignNullLong(0);
+        visitor.visit(scratchKey, nullKeyValue);
+        nullKeyValue = null;
+        --size;
+        --count;
+      }
+      super.flush(count, visitor);
+    }
+
+    @Override
+    protected VectorHashKeyWrapper getKey(int slot) {
+      scratchKey.assignLong(0, keys[slot]);
+      return scratchKey;
+    }
+
+    @Override
+    protected void moveEntries(int oldCapacity, VectorAggregationBufferRow[] oldValues) {
+      for (int slot = 0; slot < oldCapacity; ++slot) {
+        if (oldValues[slot] != null) {
+          insert(oldKeys[slot], oldValues[slot]);
+        }
+      }
+      oldKeys = null;
+    }
+
+    @Override
+    public int getEntryFixedSize(JavaDataModel model) {
+      // a reference and a long per slot
+      return (int)((model.ref() + JavaDataModel.PRIMITIVES2) / LOAD_FACTOR);
+    }
+
+    private static int hash(long key) {
+      return mix((int)(key ^ (key >>> 32)));
+    }
+  }
+
+  /**
+   * Spreads the bits of the hash code, since the slot is taken from the low bits.
+   */
+  private static int mix(int hashCode) {
+    int h = hashCode * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -24,7 +24,6 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -35,7 +34,6 @@
 import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluator;
 import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluatorFactory;
 import org.apache.hadoop.hive.ql.exec.GroupByOperator;
-import org.apache.hadoop.hive.ql.exec.KeyWrapper;
 import org.apache.hadoop.hive.ql.exec.KeyWrapperFactory;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpressionWriter;
@@ -215,9 +213,9 @@ public void close(boolean aborted) throws HiveException {
   private class ProcessingModeHashAggregate extends ProcessingModeBase {
 
     /**
-     * The global key-aggregation hash map.
+     * The global key-aggregation hash table.
      */
-    private Map<KeyWrapper, VectorAggregationBufferRow> mapKeysAggregationBuffers;
+    private VectorGroupByHashTable mapKeysAggregationBuffers;
 
     /**
      * Total per hashtable entry fixed memory (does not depend on key/agg values).
@@ -310,7 +308,7 @@ public void initialize(Configuration hconf) throws HiveException {
             HiveConf.ConfVars.HIVEGROUPBYMAPINTERVAL.defaultIntVal;
       }
 
-      mapKeysAggregationBuffers = new HashMap<KeyWrapper, VectorAggregationBufferRow>();
+      mapKeysAggregationBuffers = VectorGroupByHashTable.create(keyWrappersBatch);
       computeMemoryLimits();
       LOG.info("using hash aggregation processing mode");
     }
@@ -388,10 +386,10 @@ private void prepareBatchAggregationBufferSets(VectorizedRowBatch batch) throws
         if (null == aggregationBuffer) {
           // the probe failed, we must allocate a set of aggregation buffers
           // and push the (keywrapper,buffers) pair into the hash.
-          // is very important to clone the keywrapper, the one we have from our
+          // the hash table copies the keywrapper if it needs to, the one we have from our
           // keyWrappersBatch is going to be reset/reused on next batch.
           aggregationBuffer = allocateAggregationBuffer();
-          mapKeysAggregationBuffers.put(kw.copyKey(), aggregationBuffer);
+          mapKeysAggregationBuffers.put(kw, aggregationBuffer);
           numEntriesHashTable++;
           numEntriesSinceCheck++;
         }
@@ -405,9 +403,10 @@ private void prepareBatchAggregationBufferSets(VectorizedRowBatch batch) throws
     private void computeMemoryLimits() {
       JavaDataModel model = JavaDataModel.get();
 
+      // a single long key is stored inline in the hash table, no key wrapper is kept
       fixedHashEntrySize =
-          model.hashMapEntry() +
-          keyWrappersBatch.getKeysFixedSize() +
+          mapKeysAggregationBuffers.getEntryFixedSize(model) +
+          (keyWrappersBatch.isSingleLongKey() ? 0 : keyWrappersBatch.getKeysFixedSize()) +
           aggregationBatchInfo.getAggregatorsFixedSize();
 
       MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
@@ -441,7 +440,6 @@ private void flush(boolean all) throws HiveException {
 
       int entriesToFlush = all ? numEntriesHashTable :
         (int)(numEntriesHashTable * this.percentEntriesToFlush);
-      int entriesFlushed = 0;
 
       if (LOG.isDebugEnabled()) {
         LOG.debug(String.format(
@@ -453,28 +451,16 @@ private void flush(boolean all) throws HiveException {
             gcCanary.get() == null ? "dead" : "alive"));
       }
 
-      /* Iterate the global (keywrapper,aggregationbuffers) map and emit
+      /* Remove entries from the global (keywrapper,aggregationbuffers) table and emit
        a row for each key */
-      Iterator<Map.Entry<KeyWrapper, VectorAggregationBufferRow>> iter =
-          mapKeysAggregationBuffers.entrySet().iterator();
-      while(iter.hasNext()) {
-        Map.Entry<KeyWrapper, VectorAggregationBufferRow> pair = iter.next();
-
-        writeSingleRow((VectorHashKeyWrapper) pair.getKey(), pair.getValue());
-
-        if (!all) {
-          iter.remove();
-          --numEntriesHashTable;
-          if (++entriesFlushed >= entriesToFlush) {
-            break;
-          }
+      mapKeysAggregationBuffers.flush(entriesToFlush, new VectorGroupByHashTable.Visitor() {
+        @Override
+        public void visit(VectorHashKeyWrapper key, VectorAggregationBufferRow aggregationBuffers)
+            throws HiveException {
+          writeSingleRow(key, aggregationBuffers);
         }
-      }
-
-      if (all) {
-        mapKeysAggregationBuffers.clear();
-        numEntriesHashTable = 0;
-      }
+      });
+      numEntriesHashTable = mapKeysAggregationBuffers.size();
       
       if (all && LOG.isDebugEnabled()) {
         LOG.debug(String.format("GC canary caused %d flushes", gcCanaryFlushes));
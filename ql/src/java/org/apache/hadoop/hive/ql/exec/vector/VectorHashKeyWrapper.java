@@ -48,6 +48,7 @@ public class VectorHashKeyWrapper extends KeyWrapper {
   private byte[][] byteValues;
   private int[] byteStarts;
   private int[] byteLengths;
+  private int[] byteHashCodes;
 
   private Decimal128[] decimalValues;
 
@@ -66,10 +67,12 @@ public VectorHashKeyWrapper(int longValuesCount, int doubleValuesCount,
       byteValues = new byte[byteValuesCount][];
       byteStarts = new int[byteValuesCount];
       byteLengths = new int[byteValuesCount];
+      byteHashCodes = new int[byteValuesCount];
     } else {
       byteValues = EMPTY_BYTES_ARRAY;
       byteStarts = EMPTY_INT_ARRAY;
       byteLengths = EMPTY_INT_ARRAY;
+      byteHashCodes = EMPTY_INT_ARRAY;
     }
     isNull = new boolean[longValuesCount + doubleValuesCount + byteValuesCount + decimalValuesCount];
     hashcode = 0;
@@ -93,27 +96,27 @@ public void setHashKey() {
     // This code, with branches and all, is not executed if there are no string keys
     for (int i = 0; i < byteValues.length; ++i) {
       /*
-       *  Hashing the string is potentially expensive so is better to branch.
-       *  Additionally not looking at values for nulls allows us not reset the values.
+       *  The hash codes of the strings were computed when they were assigned.
+       *  Not looking at values for nulls allows us not reset the values.
        */
       if (!isNull[longValues.length + doubleValues.length + i]) {
-        byte[] bytes = byteValues[i];
-        int start = byteStarts[i];
-        int length = byteLengths[i];
-        if (length == bytes.length && start == 0) {
-          hashcode ^= Arrays.hashCode(bytes);
-        }
-        else {
-          // Unfortunately there is no Arrays.hashCode(byte[], start, length)
-          for(int j = start; j < start + length; ++j) {
-            // use 461 as is a (sexy!) prime.
-            hashcode ^= 461 * bytes[j];
-          }
-        }
+        hashcode ^= byteHashCodes[i];
       }
     }
   }
 
+  /**
+   * Hash a string key. This is the same as Arrays.hashCode over the range,
+   * so a key has the same hash code wherever its bytes are.
+   */
+  public static int hashBytes(byte[] bytes, int start, int length) {
+    int result = 1;
+    for (int j = start; j < start + length; ++j) {
+      result = 31 * result + bytes[j];
+    }
+    return result;
+  }
+
   @Override
   public int hashCode() {
     return hashcode;
@@ -174,6 +177,7 @@ public void duplicateTo(VectorHashKeyWrapper clone) {
     clone.byteValues = new byte[byteValues.length][];
     clone.byteStarts = new int[byteValues.length];
     clone.byteLengths = byteLengths.clone();
+    clone.byteHashCodes = byteHashCodes.clone();
     for (int i = 0; i < byteValues.length; ++i) {
       // avoid allocation/copy of nulls, because it potentially expensive. branch instead.
       if (!isNull[longValues.length + doubleValues.length + i]) {
@@ -223,9 +227,20 @@ public void assignNullLong(int index) {
   }
 
   public void assignString(int index, byte[] bytes, int start, int length) {
+    assignString(index, bytes, start, length, hashBytes(bytes, start, length));
+  }
+
+  /**
+   * Assign a string key whose hash code is already known, such as the value
+   * of a dictionary entry.
+   * @param hashCode the result of hashBytes for the value
+   */
+  public void assignString(int index, byte[] bytes, int start, int length,
+      int hashCode) {
     byteValues[index] = bytes;
     byteStarts[index] = start;
     byteLengths[index] = length;
+    byteHashCodes[index] = hashCode;
     isNull[longValues.length + doubleValues.length + index] = false;
   }
 
@@ -41,7 +41,7 @@ public VectorHashKeyWrapperBatch(int keyCount) {
   /**
    * Number of object references in 'this' (for size computation)
    */
-  private static final int MODEL_REFERENCES_COUNT = 7;
+  private static final int MODEL_REFERENCES_COUNT = 8;
 
   /**
    * The key expressions that require evaluation and output the primitive values for each key.
@@ -56,11 +56,47 @@ public VectorHashKeyWrapperBatch(int keyCount) {
    */
   private VectorHashKeyWrapper[] vectorHashKeyWrappers;
 
+  /**
+   * The hash codes of the dictionary entries for each string key, which are
+   * computed once for the batches that share a dictionary.
+   */
+  private DictionaryHashCodes[] dictionaryHashCodes;
+
   /**
    * The fixed size of the key wrappers.
    */
   private int keysFixedSize;
 
+  /**
+   * The hash codes of the entries of the current dictionary of a dictionary
+   * encoded string key, which are computed when an entry is first used.
+   */
+  private static final class DictionaryHashCodes {
+    private BytesColumnVector dictionary = null;
+    private int[] hashCodes;
+    private boolean[] computed;
+
+    int get(BytesColumnVector columnVector, int row) {
+      if (columnVector.dictionary != dictionary) {
+        dictionary = columnVector.dictionary;
+        int size = dictionary.vector.length;
+        if (computed == null || computed.length < size) {
+          hashCodes = new int[size];
+          computed = new boolean[size];
+        } else {
+          Arrays.fill(computed, 0, size, false);
+        }
+      }
+      int id = columnVector.dictionaryIds[row];
+      if (!computed[id]) {
+        hashCodes[id] = VectorHashKeyWrapper.hashBytes(dictionary.vector[id],
+            dictionary.start[id], dictionary.length[id]);
+        computed[id] = true;
+      }
+      return hashCodes[id];
+    }
+  }
+
    /**
    * Returns the compiled fixed size for the key wrappers.
    * @return
@@ -69,6 +105,13 @@ public int getKeysFixedSize() {
     return keysFixedSize;
   }
 
+  /**
+   * Returns true if the only key is a single long (or long-like) column.
+   */
+  public boolean isSingleLongKey() {
+    return keyExpressions.length == 1 && longIndices.length == 1;
+  }
+
   /**
    * Accessor for the batch-sized array of key wrappers.
    */
@@ -138,7 +181,10 @@ public void evaluateBatch(VectorizedRowBatch batch) throws HiveException {
       int keyIndex = stringIndices[i];
       int columnIndex = keyExpressions[keyIndex].getOutputColumn();
       BytesColumnVector columnVector = (BytesColumnVector) batch.cols[columnIndex];
-      if (columnVector.noNulls && !columnVector.isRepeating && !batch.selectedInUse) {
+      if (columnVector.dictionary != null) {
+        assignStringDictionary(i, batch.size, columnVector, batch.selectedInUse,
+            batch.selected);
+      } else if (columnVector.noNulls && !columnVector.isRepeating && !batch.selectedInUse) {
         assignStringNoNullsNoRepeatingNoSelection(i, batch.size, columnVector);
       } else if (columnVector.noNulls && !columnVector.isRepeating && batch.selectedInUse) {
         assignStringNoNullsNoRepeatingSelection(i, batch.size, columnVector, batch.selected);
@@ -183,6 +229,30 @@ public void evaluateBatch(VectorizedRowBatch batch) throws HiveException {
     }
   }
 
+  /**
+   * Helper method to assign values from a vector column into the key wrapper.
+   * For dictionary encoded strings, which hash each dictionary entry once.
+   */
+  private void assignStringDictionary(int index, int size,
+      BytesColumnVector columnVector, boolean selectedInUse, int[] selected) {
+    if (dictionaryHashCodes[index] == null) {
+      dictionaryHashCodes[index] = new DictionaryHashCodes();
+    }
+    DictionaryHashCodes hashCodes = dictionaryHashCodes[index];
+    for(int i=0; i<size; ++i) {
+      int row = columnVector.isRepeating ? 0 : (selectedInUse ? selected[i] : i);
+      if (!columnVector.noNulls && columnVector.isNull[row]) {
+        vectorHashKeyWrappers[i].assignNullString(index);
+      } else {
+        vectorHashKeyWrappers[i].assignString(index,
+            columnVector.vector[row],
+            columnVector.start[row],
+            columnVector.length[row],
+            hashCodes.get(columnVector, row));
+      }
+    }
+  }
+
   /**
    * Helper method to assign values from a vector column into the key wrapper.
    * Optimized for string type, possible nulls, no repeat values, batch selection vector.
@@ -521,6 +591,8 @@ public static VectorHashKeyWrapperBatch compileKeyWrapperBatch(VectorExpression[
       compiledKeyWrapperBatch.addKey(keyExpressions[i].getOutputType());
     }
     compiledKeyWrapperBatch.finishAdding();
+    compiledKeyWrapperBatch.dictionaryHashCodes =
+        new DictionaryHashCodes[compiledKeyWrapperBatch.stringIndices.length];
 
     compiledKeyWrapperBatch.vectorHashKeyWrappers =
         new VectorHashKeyWrapper[VectorizedRowBatch.DEFAULT_SIZE];
@@ -545,6 +617,7 @@ public static VectorHashKeyWrapperBatch compileKeyWrapperBatch(VectorExpression[
     compiledKeyWrapperBatch.keysFixedSize += model.lengthForObjectArrayOfSize(compiledKeyWrapperBatch.stringIndices.length);
     compiledKeyWrapperBatch.keysFixedSize += model.lengthForObjectArrayOfSize(compiledKeyWrapperBatch.decimalIndices.length);
     compiledKeyWrapperBatch.keysFixedSize += model.lengthForIntArrayOfSize(compiledKeyWrapperBatch.longIndices.length) * 2;
+    compiledKeyWrapperBatch.keysFixedSize += model.lengthForIntArrayOfSize(compiledKeyWrapperBatch.stringIndices.length);
     compiledKeyWrapperBatch.keysFixedSize +=
         model.lengthForBooleanArrayOfSize(keyExpressions.length);
 
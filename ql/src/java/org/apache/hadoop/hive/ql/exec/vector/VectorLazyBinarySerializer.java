@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinaryUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+/**
+ * Serializes columns of a row in a VectorizedRowBatch straight into the struct format of
+ * LazyBinarySerDe, without going through ObjectInspectors or writables. Used for the
+ * values of the vectorized reduce sink.
+ */
+public class VectorLazyBinarySerializer {
+
+  private final int[] columns;
+  private final PrimitiveCategory[] categories;
+
+  public VectorLazyBinarySerializer(int[] columns, PrimitiveCategory[] categories) {
+    this.columns = columns;
+    this.categories = categories;
+  }
+
+  /**
+   * Whether columns of this type can be serialized directly from column vectors.
+   */
+  public static boolean isSupportedType(TypeInfo typeInfo) {
+    if (typeInfo.getCategory() != Category.PRIMITIVE) {
+      return false;
+    }
+    switch (((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory()) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case DATE:
+    case FLOAT:
+    case DOUBLE:
+    case STRING:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Serializes the columns of one row as a struct.
+   * @param batch The batch to read the columns from.
+   * @param rowIndex Index of the row in the batch (after applying selected).
+   * @param output The output to write to; it is reset first.
+   */
+  public void serialize(VectorizedRowBatch batch, int rowIndex, Output output)
+      throws HiveException {
+    output.reset();
+    // one null byte for every eight fields, followed by the non-null fields among them
+    for (int first = 0; first < columns.length; first += 8) {
+      int last = Math.min(first + 8, columns.length);
+      byte nullByte = 0;
+      for (int i = first; i < last; ++i) {
+        ColumnVector cv = batch.cols[columns[i]];
+        int row = cv.isRepeating ? 0 : rowIndex;
+        if (cv.noNulls || !cv.isNull[row]) {
+          nullByte |= 1 << (i % 8);
+        }
+      }
+      output.write(nullByte);
+      for (int i = first; i < last; ++i) {
+        if ((nullByte & (1 << (i % 8))) != 0) {
+          ColumnVector cv = batch.cols[columns[i]];
+          serializeField(output, cv, cv.isRepeating ? 0 : rowIndex, categories[i]);
+        }
+      }
+    }
+  }
+
+  private static void serializeField(Output output, ColumnVector cv, int row,
+      PrimitiveCategory category) throws HiveException {
+    switch (category) {
+    case BOOLEAN:
+      output.write((byte) (((LongColumnVector) cv).vector[row] != 0 ? 1 : 0));
+      return;
+    case BYTE:
+      output.write((byte) ((LongColumnVector) cv).vector[row]);
+      return;
+    case SHORT: {
+      short v = (short) ((LongColumnVector) cv).vector[row];
+      output.write((byte) (v >> 8));
+      output.write((byte) (v));
+      return;
+    }
+    case INT:
+    case DATE:
+      LazyBinaryUtils.writeVInt(output, (int) ((LongColumnVector) cv).vector[row]);
+      return;
+    case LONG:
+      LazyBinaryUtils.writeVLong(output, ((LongColumnVector) cv).vector[row]);
+      return;
+    case FLOAT: {
+      int v = Float.floatToIntBits((float) ((DoubleColumnVector) cv).vector[row]);
+      output.write((byte) (v >> 24));
+      output.write((byte) (v >> 16));
+      output.write((byte) (v >> 8));
+      output.write((byte) (v));
+      return;
+    }
+    case DOUBLE:
+      LazyBinaryUtils.writeDouble(output, ((DoubleColumnVector) cv).vector[row]);
+      return;
+    case STRING: {
+      BytesColumnVector bcv = (BytesColumnVector) cv;
+      LazyBinaryUtils.writeVInt(output, bcv.length[row]);
+      output.write(bcv.vector[row], bcv.start[row], bcv.length[row]);
+      return;
+    }
+    default:
+      throw new HiveException("Unsupported vectorized value type " + category);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.apache.hadoop.hive.serde2.binarysortable.BinarySortableSerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+/**
+ * Serializes the join key columns of a row in a VectorizedRowBatch straight into the
+ * BinarySortable format used by the optimized map join hash table, without going
+ * through ObjectInspectors or writables. Also used for the keys of the vectorized
+ * reduce sink, which are in the same format.
+ */
+public class VectorMapJoinKeySerializer {
+
+  private final int[] keyColumns;
+  private final PrimitiveCategory[] keyCategories;
+  private final boolean[] sortOrders;
+
+  public VectorMapJoinKeySerializer(int[] keyColumns, PrimitiveCategory[] keyCategories,
+      boolean[] sortOrders) {
+    this.keyColumns = keyColumns;
+    this.keyCategories = keyCategories;
+    this.sortOrders = sortOrders;
+  }
+
+  /**
+   * Whether keys of this type can be serialized directly from column vectors.
+   */
+  public static boolean isSupportedKey(TypeInfo typeInfo) {
+    if (typeInfo.getCategory() != Category.PRIMITIVE) {
+      return false;
+    }
+    switch (((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory()) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case DATE:
+    case STRING:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Serializes the key of one row.
+   * @param batch The batch to read the key columns from.
+   * @param rowIndex Index of the row in the batch (after applying selected).
+   * @param output The output to write to; it is reset first.
+   * @return false if any of the key columns is null, in which case nothing can match
+   *         and the output contents are undefined.
+   */
+  public boolean serializeKey(VectorizedRowBatch batch, int rowIndex, Output output)
+      throws HiveException {
+    return serialize(batch, rowIndex, output, false);
+  }
+
+  /**
+   * Serializes the key of one row, writing null markers for the null key columns
+   * like BinarySortableSerDe does, e.g. for reduce sink keys.
+   * @param batch The batch to read the key columns from.
+   * @param rowIndex Index of the row in the batch (after applying selected).
+   * @param output The output to write to; it is reset first.
+   */
+  public void serializeNullableKey(VectorizedRowBatch batch, int rowIndex, Output output)
+      throws HiveException {
+    serialize(batch, rowIndex, output, true);
+  }
+
+  private boolean serialize(VectorizedRowBatch batch, int rowIndex, Output output,
+      boolean nullable) throws HiveException {
+    output.reset();
+    for (int i = 0; i < keyColumns.length; ++i) {
+      ColumnVector cv = batch.cols[keyColumns[i]];
+      int row = cv.isRepeating ? 0 : rowIndex;
+      boolean invert = sortOrders[i];
+      if (!cv.noNulls && cv.isNull[row]) {
+        if (!nullable) {
+          return false;
+        }
+        BinarySortableSerDe.serializeNullMarker(output, true, invert);
+        continue;
+      }
+      BinarySortableSerDe.serializeNullMarker(output, false, invert);
+      if (keyCategories[i] == PrimitiveCategory.STRING) {
+        BytesColumnVector bcv = (BytesColumnVector) cv;
+        BinarySortableSerDe.serializeBytes(
+            output, bcv.vector[row], bcv.start[row], bcv.length[row], invert);
+      } else if (!BinarySortableSerDe.serializeLongPrimitive(output,
+          ((LongColumnVector) cv).vector[row], keyCategories[i], invert)) {
+        throw new HiveException("Unsupported vectorized key type " + keyCategories[i]);
+      }
+    }
+    return true;
+  }
+}
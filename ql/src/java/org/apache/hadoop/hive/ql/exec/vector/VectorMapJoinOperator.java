@@ -26,10 +26,12 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluator;
 import org.apache.hadoop.hive.ql.exec.MapJoinOperator;
 import org.apache.hadoop.hive.ql.exec.TableScanOperator;
 import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinBytesTableContainer;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinKeyObject;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinKey;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinKey;
@@ -39,12 +41,38 @@
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpressionWriterFactory;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.JoinCondDesc;
+import org.apache.hadoop.hive.ql.plan.JoinDesc;
 import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
 import org.apache.hadoop.hive.ql.plan.OperatorDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
 import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.WriteBuffers;
+import org.apache.hadoop.hive.serde2.lazy.ByteArrayRef;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinaryFactory;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinaryStruct;
+import org.apache.hadoop.hive.serde2.lazybinary.objectinspector.LazyBinaryStructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BooleanObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ByteObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DateObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DoubleObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.FloatObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.IntObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ShortObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
 
 /**
  * The vectorized version of the MapJoinOperator.
@@ -85,6 +113,23 @@ public class VectorMapJoinOperator extends MapJoinOperator implements Vectorizat
   
   private transient VectorizationContext vOutContext = null;
   private transient VectorizedRowBatchCtx vrbCtx = null;
+
+  // Members used by the native (batch-at-a-time) join, which probes the optimized
+  // hashtable with keys serialized directly from the key column vectors, and writes
+  // matches straight into the output batch without converting the big table to rows.
+  private transient boolean nativeJoinChecked;
+  private transient boolean nativeJoin;
+  private transient int nativeJoinType;
+  private transient MapJoinBytesTableContainer nativeSmallTable;
+  private transient VectorMapJoinKeySerializer nativeKeySerializer;
+  private transient Output nativeKeyOutput;
+  private transient List<WriteBuffers.ByteSegmentRef> nativeValueRefs;
+  private transient int[] bigTableInputColumns;
+  private transient int[] bigTableOutputColumns;
+  private transient int[] smallTableOutputColumns;
+  private transient PrimitiveObjectInspector[] smallTableValueOIs;
+  private transient LazyBinaryStruct smallTableValue;
+  private transient ByteArrayRef smallTableValueBytes;
   
   public VectorMapJoinOperator() {
     super();
@@ -225,6 +270,17 @@ protected void internalForward(Object row, ObjectInspector outputOI) throws Hive
   private void flushOutput() throws HiveException {
     forward(outputBatch, null);
     outputBatch.reset();
+    if (nativeJoin) {
+      resetBytesOutputBuffers();
+    }
+  }
+
+  private void resetBytesOutputBuffers() {
+    for (ColumnVector cv : outputBatch.cols) {
+      if (cv instanceof BytesColumnVector) {
+        ((BytesColumnVector) cv).initBuffer();
+      }
+    }
   }
 
   @Override
@@ -245,6 +301,16 @@ public void processOp(Object row, int tag) throws HiveException {
     byte alias = (byte) tag;
     VectorizedRowBatch inBatch = (VectorizedRowBatch) row;
 
+    if (!nativeJoinChecked) {
+      try {
+        loadHashTablesOnFirstRow();
+      } catch (SerDeException e) {
+        throw new HiveException(e);
+      }
+      nativeJoin = initNativeJoin();
+      nativeJoinChecked = true;
+    }
+
     if (null != bigTableFilterExpressions) {
       for(VectorExpression ve:bigTableFilterExpressions) {
         ve.evaluate(inBatch);
@@ -257,6 +323,14 @@ public void processOp(Object row, int tag) throws HiveException {
       }
     }
 
+    if (nativeJoin) {
+      for (VectorExpression ve : keyExpressions) {
+        ve.evaluate(inBatch);
+      }
+      processBatchNative(inBatch);
+      return;
+    }
+
     keyWrapperBatch.evaluateBatch(inBatch);
     keyValues = keyWrapperBatch.getVectorHashKeyWrappers();
 
@@ -276,6 +350,276 @@ public void processOp(Object row, int tag) throws HiveException {
     keyValues = null;
   }
 
+  /**
+   * Checks whether this join can be executed natively against the optimized hashtable,
+   * and prepares the column mappings if so. Only two-way inner, left semi and outer joins
+   * where the big table is the preserved side are supported, without residual filters,
+   * null-safe keys or key-derived values, and only for primitive keys and values that
+   * map directly onto column vectors.
+   */
+  private boolean initNativeJoin() throws HiveException {
+    if (!HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_ENABLED)) {
+      return false;
+    }
+    JoinCondDesc[] conds = conf.getConds();
+    if (numAliases != 2 || conds.length != 1) {
+      return false;
+    }
+    byte smallPos = (byte) (posBigTable == 0 ? 1 : 0);
+    int joinType = conds[0].getType();
+    switch (joinType) {
+    case JoinDesc.INNER_JOIN:
+      break;
+    case JoinDesc.LEFT_SEMI_JOIN:
+    case JoinDesc.LEFT_OUTER_JOIN:
+      if (conds[0].getLeft() != posBigTable) {
+        return false;
+      }
+      break;
+    case JoinDesc.RIGHT_OUTER_JOIN:
+      if (conds[0].getRight() != posBigTable) {
+        return false;
+      }
+      break;
+    default:
+      return false;
+    }
+    if (!(mapJoinTables[smallPos] instanceof MapJoinBytesTableContainer)
+        || ((MapJoinBytesTableContainer) mapJoinTables[smallPos]).hasSpilledPartitions()
+        || conf.getValueIndex(smallPos) != null || hasFilter(smallPos)) {
+      return false;
+    }
+    // The row-mode path evaluates big table filters as join filters for outer joins.
+    Map<Byte, List<ExprNodeDesc>> filters = conf.getFilters();
+    if (!noOuterJoin && filters != null && filters.get(posBigTable) != null
+        && !filters.get(posBigTable).isEmpty()) {
+      return false;
+    }
+    if (nullsafes != null) {
+      for (boolean nullsafe : nullsafes) {
+        if (nullsafe) {
+          return false;
+        }
+      }
+    }
+
+    MapJoinBytesTableContainer smallTable = (MapJoinBytesTableContainer) mapJoinTables[smallPos];
+    List<ExprNodeDesc> keyDesc = conf.getKeys().get(posBigTable);
+    int[] keyColumns = new int[keyDesc.size()];
+    PrimitiveCategory[] keyCategories = new PrimitiveCategory[keyDesc.size()];
+    for (int i = 0; i < keyDesc.size(); ++i) {
+      TypeInfo typeInfo = keyDesc.get(i).getTypeInfo();
+      if (!VectorMapJoinKeySerializer.isSupportedKey(typeInfo)) {
+        return false;
+      }
+      keyColumns[i] = keyExpressions[i].getOutputColumn();
+      keyCategories[i] = ((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory();
+    }
+    boolean[] sortOrders = smallTable.getSortableSortOrders();
+    if (sortOrders == null) {
+      if (!smallTable.isEmpty()) {
+        // Keys were serialized with LazyBinarySerDe; we only produce BinarySortable keys.
+        return false;
+      }
+      sortOrders = new boolean[keyDesc.size()];
+    }
+
+    int smallValueCount = joinValues[smallPos].size();
+    if (joinType == JoinDesc.LEFT_SEMI_JOIN && smallValueCount != 0) {
+      return false;
+    }
+    PrimitiveObjectInspector[] valueOIs = new PrimitiveObjectInspector[smallValueCount];
+    LazyBinaryStructObjectInspector valueOI = smallTable.getValueObjectInspector();
+    if (valueOI != null) {
+      List<? extends StructField> fields = valueOI.getAllStructFieldRefs();
+      if (fields.size() != smallValueCount) {
+        return false;
+      }
+      for (int i = 0; i < smallValueCount; ++i) {
+        ObjectInspector oi = fields.get(i).getFieldObjectInspector();
+        if (oi.getCategory() != Category.PRIMITIVE
+            || !isSupportedValue(((PrimitiveObjectInspector) oi).getPrimitiveCategory())) {
+          return false;
+        }
+        valueOIs[i] = (PrimitiveObjectInspector) oi;
+      }
+      smallTableValue = (LazyBinaryStruct) LazyBinaryFactory.createLazyBinaryObject(valueOI);
+    } else if (!smallTable.isEmpty()) {
+      return false;
+    }
+
+    // Output columns are laid out in alias order, big table values come from the input batch.
+    Map<String, Integer> columnMap = Utilities.getScratchColumnMap(hconf).get(fileKey);
+    List<String> outputColumnNames = conf.getOutputColumnNames();
+    int bigValueCount = bigTableValueExpressions == null ? 0 : bigTableValueExpressions.length;
+    bigTableInputColumns = new int[bigValueCount];
+    bigTableOutputColumns = new int[bigValueCount];
+    smallTableOutputColumns = new int[smallValueCount];
+    int offset = 0;
+    for (int i = 0; i < order.length; ++i) {
+      if (order[i] == posBigTable) {
+        for (int j = 0; j < bigValueCount; ++j) {
+          bigTableInputColumns[j] = bigTableValueExpressions[j].getOutputColumn();
+          bigTableOutputColumns[j] = columnMap.get(outputColumnNames.get(offset + j));
+        }
+      } else {
+        for (int j = 0; j < smallValueCount; ++j) {
+          smallTableOutputColumns[j] = columnMap.get(outputColumnNames.get(offset + j));
+        }
+      }
+      offset += joinValues[order[i]].size();
+    }
+
+    nativeJoinType = joinType;
+    nativeSmallTable = smallTable;
+    nativeKeySerializer = new VectorMapJoinKeySerializer(keyColumns, keyCategories, sortOrders);
+    nativeKeyOutput = new Output();
+    nativeValueRefs = new ArrayList<WriteBuffers.ByteSegmentRef>(0);
+    smallTableValueOIs = valueOIs;
+    smallTableValueBytes = new ByteArrayRef();
+    resetBytesOutputBuffers();
+    LOG.info("Using native vectorized map join, join type " + joinType);
+    return true;
+  }
+
+  /**
+   * @return Whether the batches are joined natively rather than converted to rows.
+   */
+  boolean isNativeJoin() {
+    return nativeJoin;
+  }
+
+  private static boolean isSupportedValue(PrimitiveCategory category) {
+    switch (category) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case DATE:
+    case FLOAT:
+    case DOUBLE:
+    case STRING:
+    case BINARY:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private void processBatchNative(VectorizedRowBatch inBatch) throws HiveException {
+    boolean probe = !nativeSmallTable.isEmpty();
+    for (int i = 0; i < inBatch.size; ++i) {
+      int rowIndex = inBatch.selectedInUse ? inBatch.selected[i] : i;
+      nativeValueRefs.clear();
+      if (probe && nativeKeySerializer.serializeKey(inBatch, rowIndex, nativeKeyOutput)) {
+        nativeSmallTable.getValueRefs(
+            nativeKeyOutput.getData(), nativeKeyOutput.getLength(), nativeValueRefs);
+      }
+      if (nativeValueRefs.isEmpty()) {
+        if (!noOuterJoin) {
+          appendNativeRow(inBatch, rowIndex, null);
+        }
+      } else if (nativeJoinType == JoinDesc.LEFT_SEMI_JOIN) {
+        appendNativeRow(inBatch, rowIndex, null);
+      } else {
+        for (WriteBuffers.ByteSegmentRef ref : nativeValueRefs) {
+          appendNativeRow(inBatch, rowIndex, ref);
+        }
+      }
+    }
+  }
+
+  /**
+   * Appends a joined row to the output batch.
+   * @param ref The small table value; null to output nulls for the small table columns.
+   */
+  private void appendNativeRow(VectorizedRowBatch inBatch, int rowIndex,
+      WriteBuffers.ByteSegmentRef ref) throws HiveException {
+    int outIndex = outputBatch.size;
+    for (int i = 0; i < bigTableInputColumns.length; ++i) {
+      ColumnVector inCol = inBatch.cols[bigTableInputColumns[i]];
+      ColumnVector outCol = outputBatch.cols[bigTableOutputColumns[i]];
+      int inIndex = inCol.isRepeating ? 0 : rowIndex;
+      if (!inCol.noNulls && inCol.isNull[inIndex]) {
+        VectorizedBatchUtil.setNullColIsNullValue(outCol, outIndex);
+      } else {
+        outCol.isNull[outIndex] = false;
+        outCol.setElement(outIndex, inIndex, inCol);
+      }
+    }
+    if (ref == null || ref.getLength() == 0) {
+      for (int i = 0; i < smallTableOutputColumns.length; ++i) {
+        VectorizedBatchUtil.setNullColIsNullValue(
+            outputBatch.cols[smallTableOutputColumns[i]], outIndex);
+      }
+    } else {
+      if (ref.getBytes() == null) {
+        nativeSmallTable.populateValue(
+            nativeKeyOutput.getData(), nativeKeyOutput.getLength(), ref);
+      }
+      smallTableValueBytes.setData(ref.getBytes());
+      smallTableValue.init(smallTableValueBytes, (int) ref.getOffset(), ref.getLength());
+      for (int i = 0; i < smallTableOutputColumns.length; ++i) {
+        assignValue(smallTableValue.getField(i), smallTableValueOIs[i],
+            outputBatch.cols[smallTableOutputColumns[i]], outIndex);
+      }
+    }
+    ++outputBatch.size;
+    if (outputBatch.size == VectorizedRowBatch.DEFAULT_SIZE) {
+      flushOutput();
+    }
+  }
+
+  private static void assignValue(Object value, PrimitiveObjectInspector poi,
+      ColumnVector outCol, int outIndex) throws HiveException {
+    if (value == null) {
+      VectorizedBatchUtil.setNullColIsNullValue(outCol, outIndex);
+      return;
+    }
+    outCol.isNull[outIndex] = false;
+    switch (poi.getPrimitiveCategory()) {
+    case BOOLEAN:
+      ((LongColumnVector) outCol).vector[outIndex] =
+          ((BooleanObjectInspector) poi).get(value) ? 1 : 0;
+      break;
+    case BYTE:
+      ((LongColumnVector) outCol).vector[outIndex] = ((ByteObjectInspector) poi).get(value);
+      break;
+    case SHORT:
+      ((LongColumnVector) outCol).vector[outIndex] = ((ShortObjectInspector) poi).get(value);
+      break;
+    case INT:
+      ((LongColumnVector) outCol).vector[outIndex] = ((IntObjectInspector) poi).get(value);
+      break;
+    case LONG:
+      ((LongColumnVector) outCol).vector[outIndex] = ((LongObjectInspector) poi).get(value);
+      break;
+    case DATE:
+      ((LongColumnVector) outCol).vector[outIndex] =
+          ((DateObjectInspector) poi).getPrimitiveWritableObject(value).getDays();
+      break;
+    case FLOAT:
+      ((DoubleColumnVector) outCol).vector[outIndex] = ((FloatObjectInspector) poi).get(value);
+      break;
+    case DOUBLE:
+      ((DoubleColumnVector) outCol).vector[outIndex] = ((DoubleObjectInspector) poi).get(value);
+      break;
+    case STRING: {
+      Text t = ((StringObjectInspector) poi).getPrimitiveWritableObject(value);
+      ((BytesColumnVector) outCol).setVal(outIndex, t.getBytes(), 0, t.getLength());
+      break;
+    }
+    case BINARY: {
+      BytesWritable bw = ((BinaryObjectInspector) poi).getPrimitiveWritableObject(value);
+      ((BytesColumnVector) outCol).setVal(outIndex, bw.getBytes(), 0, bw.getLength());
+      break;
+    }
+    default:
+      throw new HiveException("Unexpected value type " + poi.getPrimitiveCategory());
+    }
+  }
+
   @Override
   public VectorizationContext getOuputVectorizationContext() {
     return vOutContext;
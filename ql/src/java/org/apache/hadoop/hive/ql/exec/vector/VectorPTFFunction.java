@@ -0,0 +1,495 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.parse.WindowingSpec.BoundarySpec;
+import org.apache.hadoop.hive.ql.parse.WindowingSpec.Direction;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ptf.BoundaryDef;
+import org.apache.hadoop.hive.ql.plan.ptf.CurrentRowDef;
+import org.apache.hadoop.hive.ql.plan.ptf.PTFExpressionDef;
+import org.apache.hadoop.hive.ql.plan.ptf.RangeBoundaryDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFrameDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFunctionDef;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+/**
+ * A window function evaluated by {@link VectorPTFOperator} one batch at a time. Only
+ * functions whose value for a row depends on the rows before it in the partition are
+ * supported, so that every batch can be forwarded as soon as it has been processed:
+ * the ranking functions, lag, and the running aggregates over
+ * ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW.
+ *
+ * The state carried from one batch to the next is reset at the first row of each
+ * partition.
+ */
+public abstract class VectorPTFFunction implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  // The column of the argument; -1 for functions without one.
+  protected int inputColumn = -1;
+  protected int outputColumn;
+
+  /**
+   * Evaluates the function for the rows of the batch.
+   * @param newPartition Whether the i-th row of the batch (after applying selected) is the
+   *          first row of a partition.
+   * @param newPeers Whether the i-th row of the batch has different order keys than the
+   *          row before it, or is the first row of a partition.
+   */
+  public abstract void evaluate(VectorizedRowBatch batch, boolean[] newPartition,
+      boolean[] newPeers);
+
+  public int getOutputColumn() {
+    return outputColumn;
+  }
+
+  public void setOutputColumn(int outputColumn) {
+    this.outputColumn = outputColumn;
+  }
+
+  /**
+   * @return The type of the column the function writes to.
+   */
+  public abstract String getOutputType();
+
+  /**
+   * Creates the vectorized version of a window function.
+   * @param inputColumn The column of the first argument; -1 if there is none.
+   * @return null if the function cannot be vectorized.
+   */
+  public static VectorPTFFunction create(WindowFunctionDef wFnDef, int inputColumn) {
+    String name = wFnDef.getName().toLowerCase();
+    if (wFnDef.isDistinct()) {
+      return null;
+    }
+    if (name.equals("row_number")) {
+      return new RowNumber();
+    }
+    if (name.equals("rank")) {
+      return new Rank();
+    }
+    if (name.equals("dense_rank")) {
+      return new DenseRank();
+    }
+    if (name.equals("count") && wFnDef.isStar()) {
+      return isRunningFrame(wFnDef.getWindowFrame()) ? new Count() : null;
+    }
+
+    List<PTFExpressionDef> args = wFnDef.getArgs();
+    if (args == null || args.isEmpty() || inputColumn < 0) {
+      return null;
+    }
+    if (name.equals("count")) {
+      if (args.size() != 1 || !isRunningFrame(wFnDef.getWindowFrame())) {
+        return null;
+      }
+      Count count = new Count();
+      count.inputColumn = inputColumn;
+      return count;
+    }
+    boolean isLong;
+    String argType = args.get(0).getExprNode().getTypeString();
+    switch (getPrimitiveCategory(args.get(0).getExprNode().getTypeInfo())) {
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      isLong = true;
+      break;
+    case FLOAT:
+    case DOUBLE:
+      isLong = false;
+      break;
+    default:
+      return null;
+    }
+
+    VectorPTFFunction function;
+    if (name.equals("lag")) {
+      int amount = 1;
+      if (args.size() > 2) {
+        // lag with a default value
+        return null;
+      }
+      if (args.size() == 2) {
+        ExprNodeDesc amountDesc = args.get(1).getExprNode();
+        if (!(amountDesc instanceof ExprNodeConstantDesc)
+            || !(((ExprNodeConstantDesc) amountDesc).getValue() instanceof Integer)) {
+          return null;
+        }
+        amount = (Integer) ((ExprNodeConstantDesc) amountDesc).getValue();
+        if (amount < 0) {
+          return null;
+        }
+      }
+      function = new Lag(isLong, argType, amount);
+    } else if (args.size() != 1 || !isRunningFrame(wFnDef.getWindowFrame())) {
+      return null;
+    } else if (name.equals("sum")) {
+      function = new RunningAggregate(RunningAggregate.SUM, isLong, isLong ? "bigint" : "double");
+    } else if (name.equals("avg")) {
+      function = new RunningAggregate(RunningAggregate.AVG, isLong, "double");
+    } else if (name.equals("min")) {
+      function = new RunningAggregate(RunningAggregate.MIN, isLong, argType);
+    } else if (name.equals("max")) {
+      function = new RunningAggregate(RunningAggregate.MAX, isLong, argType);
+    } else {
+      return null;
+    }
+    function.inputColumn = inputColumn;
+    return function;
+  }
+
+  /**
+   * Whether the frame is ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW.
+   */
+  private static boolean isRunningFrame(WindowFrameDef frame) {
+    if (frame == null) {
+      return false;
+    }
+    BoundaryDef start = frame.getStart();
+    BoundaryDef end = frame.getEnd();
+    return start instanceof RangeBoundaryDef && start.getDirection() == Direction.PRECEDING
+        && start.getAmt() == BoundarySpec.UNBOUNDED_AMOUNT && end instanceof CurrentRowDef;
+  }
+
+  private static PrimitiveCategory getPrimitiveCategory(TypeInfo typeInfo) {
+    return typeInfo instanceof PrimitiveTypeInfo
+        ? ((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory() : PrimitiveCategory.UNKNOWN;
+  }
+
+  protected static int rowAt(VectorizedRowBatch batch, int i) {
+    return batch.selectedInUse ? batch.selected[i] : i;
+  }
+
+  protected static void prepareOutput(ColumnVector output) {
+    output.isRepeating = false;
+    output.noNulls = true;
+  }
+
+  protected static void setNull(ColumnVector output, int row) {
+    output.noNulls = false;
+    output.isNull[row] = true;
+  }
+
+  /**
+   * row_number(): the position of the row in its partition.
+   */
+  public static class RowNumber extends VectorPTFFunction {
+    private static final long serialVersionUID = 1L;
+    private transient long rowNumber;
+
+    @Override
+    public void evaluate(VectorizedRowBatch batch, boolean[] newPartition, boolean[] newPeers) {
+      LongColumnVector output = (LongColumnVector) batch.cols[outputColumn];
+      prepareOutput(output);
+      for (int i = 0; i < batch.size; ++i) {
+        rowNumber = newPartition[i] ? 1 : rowNumber + 1;
+        int row = rowAt(batch, i);
+        output.isNull[row] = false;
+        output.vector[row] = rowNumber;
+      }
+    }
+
+    @Override
+    public String getOutputType() {
+      return "int";
+    }
+  }
+
+  /**
+   * rank(): the position of the first of the peers of the row in its partition.
+   */
+  public static class Rank extends VectorPTFFunction {
+    private static final long serialVersionUID = 1L;
+    private transient long rowNumber;
+    private transient long rank;
+
+    @Override
+    public void evaluate(VectorizedRowBatch batch, boolean[] newPartition, boolean[] newPeers) {
+      LongColumnVector output = (LongColumnVector) batch.cols[outputColumn];
+      prepareOutput(output);
+      for (int i = 0; i < batch.size; ++i) {
+        rowNumber = newPartition[i] ? 1 : rowNumber + 1;
+        if (newPeers[i]) {
+          rank = rowNumber;
+        }
+        int row = rowAt(batch, i);
+        output.isNull[row] = false;
+        output.vector[row] = rank;
+      }
+    }
+
+    @Override
+    public String getOutputType() {
+      return "int";
+    }
+  }
+
+  /**
+   * dense_rank(): the number of distinct order keys up to the row in its partition.
+   */
+  public static class DenseRank extends VectorPTFFunction {
+    private static final long serialVersionUID = 1L;
+    private transient long rank;
+
+    @Override
+    public void evaluate(VectorizedRowBatch batch, boolean[] newPartition, boolean[] newPeers) {
+      LongColumnVector output = (LongColumnVector) batch.cols[outputColumn];
+      prepareOutput(output);
+      for (int i = 0; i < batch.size; ++i) {
+        if (newPartition[i]) {
+          rank = 1;
+        } else if (newPeers[i]) {
+          rank++;
+        }
+        int row = rowAt(batch, i);
+        output.isNull[row] = false;
+        output.vector[row] = rank;
+      }
+    }
+
+    @Override
+    public String getOutputType() {
+      return "int";
+    }
+  }
+
+  /**
+   * count(*) or count(expr) over the rows up to the current one.
+   */
+  public static class Count extends VectorPTFFunction {
+    private static final long serialVersionUID = 1L;
+    private transient long count;
+
+    @Override
+    public void evaluate(VectorizedRowBatch batch, boolean[] newPartition, boolean[] newPeers) {
+      LongColumnVector output = (LongColumnVector) batch.cols[outputColumn];
+      ColumnVector input = inputColumn < 0 ? null : batch.cols[inputColumn];
+      prepareOutput(output);
+      for (int i = 0; i < batch.size; ++i) {
+        if (newPartition[i]) {
+          count = 0;
+        }
+        int row = rowAt(batch, i);
+        if (input == null || input.noNulls || !input.isNull[input.isRepeating ? 0 : row]) {
+          count++;
+        }
+        output.isNull[row] = false;
+        output.vector[row] = count;
+      }
+    }
+
+    @Override
+    public String getOutputType() {
+      return "bigint";
+    }
+  }
+
+  /**
+   * sum, avg, min and max over the rows up to the current one. Null arguments are
+   * skipped; the result is null until the first non-null argument of the partition.
+   */
+  public static class RunningAggregate extends VectorPTFFunction {
+    private static final long serialVersionUID = 1L;
+    static final int SUM = 0;
+    static final int AVG = 1;
+    static final int MIN = 2;
+    static final int MAX = 3;
+
+    private int kind;
+    private boolean isLong;
+    private String outputType;
+
+    private transient long longValue;
+    private transient double doubleValue;
+    private transient long count;
+
+    public RunningAggregate() {
+    }
+
+    RunningAggregate(int kind, boolean isLong, String outputType) {
+      this.kind = kind;
+      this.isLong = isLong;
+      this.outputType = outputType;
+    }
+
+    @Override
+    public void evaluate(VectorizedRowBatch batch, boolean[] newPartition, boolean[] newPeers) {
+      ColumnVector input = batch.cols[inputColumn];
+      ColumnVector output = batch.cols[outputColumn];
+      long[] longInput = isLong ? ((LongColumnVector) input).vector : null;
+      double[] doubleInput = isLong ? null : ((DoubleColumnVector) input).vector;
+      prepareOutput(output);
+      for (int i = 0; i < batch.size; ++i) {
+        if (newPartition[i]) {
+          count = 0;
+        }
+        int row = rowAt(batch, i);
+        int inputRow = input.isRepeating ? 0 : row;
+        if (input.noNulls || !input.isNull[inputRow]) {
+          if (isLong) {
+            aggregate(longInput[inputRow]);
+          } else {
+            aggregate(doubleInput[inputRow]);
+          }
+        }
+        if (count == 0) {
+          setNull(output, row);
+          continue;
+        }
+        output.isNull[row] = false;
+        if (kind == AVG) {
+          double sum = isLong ? longValue : doubleValue;
+          ((DoubleColumnVector) output).vector[row] = sum / count;
+        } else if (isLong) {
+          ((LongColumnVector) output).vector[row] = longValue;
+        } else {
+          ((DoubleColumnVector) output).vector[row] = doubleValue;
+        }
+      }
+    }
+
+    private void aggregate(long value) {
+      if (count++ == 0) {
+        longValue = value;
+        return;
+      }
+      switch (kind) {
+      case SUM:
+      case AVG:
+        longValue += value;
+        break;
+      case MIN:
+        longValue = Math.min(longValue, value);
+        break;
+      default:
+        longValue = Math.max(longValue, value);
+      }
+    }
+
+    private void aggregate(double value) {
+      if (count++ == 0) {
+        doubleValue = value;
+        return;
+      }
+      switch (kind) {
+      case SUM:
+      case AVG:
+        doubleValue += value;
+        break;
+      case MIN:
+        doubleValue = Math.min(doubleValue, value);
+        break;
+      default:
+        doubleValue = Math.max(doubleValue, value);
+      }
+    }
+
+    @Override
+    public String getOutputType() {
+      return outputType;
+    }
+  }
+
+  /**
+   * lag(expr, amount): the argument of the row amount rows before the current one in
+   * the partition; null for the first rows. The last values are kept in a ring buffer.
+   */
+  public static class Lag extends VectorPTFFunction {
+    private static final long serialVersionUID = 1L;
+
+    private boolean isLong;
+    private String outputType;
+    private int amount;
+
+    private transient long[] longValues;
+    private transient double[] doubleValues;
+    private transient boolean[] isNull;
+    // number of rows of the partition seen so far
+    private transient long position;
+
+    public Lag() {
+    }
+
+    Lag(boolean isLong, String outputType, int amount) {
+      this.isLong = isLong;
+      this.outputType = outputType;
+      this.amount = amount;
+    }
+
+    @Override
+    public void evaluate(VectorizedRowBatch batch, boolean[] newPartition, boolean[] newPeers) {
+      if (isNull == null) {
+        int size = amount + 1;
+        longValues = isLong ? new long[size] : null;
+        doubleValues = isLong ? null : new double[size];
+        isNull = new boolean[size];
+      }
+      ColumnVector input = batch.cols[inputColumn];
+      ColumnVector output = batch.cols[outputColumn];
+      prepareOutput(output);
+      for (int i = 0; i < batch.size; ++i) {
+        if (newPartition[i]) {
+          position = 0;
+        }
+        int row = rowAt(batch, i);
+        int inputRow = input.isRepeating ? 0 : row;
+
+        // remember the current value, then read the one amount rows back
+        int slot = (int) (position % isNull.length);
+        isNull[slot] = !input.noNulls && input.isNull[inputRow];
+        if (isLong) {
+          longValues[slot] = ((LongColumnVector) input).vector[inputRow];
+        } else {
+          doubleValues[slot] = ((DoubleColumnVector) input).vector[inputRow];
+        }
+        if (position < amount) {
+          setNull(output, row);
+        } else {
+          int lagSlot = (int) ((position - amount) % isNull.length);
+          if (isNull[lagSlot]) {
+            setNull(output, row);
+          } else {
+            output.isNull[row] = false;
+            if (isLong) {
+              ((LongColumnVector) output).vector[row] = longValues[lagSlot];
+            } else {
+              ((DoubleColumnVector) output).vector[row] = doubleValues[lagSlot];
+            }
+          }
+        }
+        position++;
+      }
+    }
+
+    @Override
+    public String getOutputType() {
+      return outputType;
+    }
+  }
+}
@@ -0,0 +1,315 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.PTFOperator;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.StringExpr;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.OperatorDesc;
+import org.apache.hadoop.hive.ql.plan.PTFDesc;
+import org.apache.hadoop.hive.ql.plan.ptf.PTFExpressionDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFunctionDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowTableFunctionDef;
+
+/**
+ * The vectorized version of the reduce-side windowing PTFOperator. The rows arrive sorted
+ * on the partition and order keys, so the partition and peer boundaries are found by
+ * comparing every row to the one before it. The window functions write their results to
+ * scratch columns of the batch, which is then forwarded with the window columns in front
+ * of the input columns, like the output of WindowingTableFunction.
+ *
+ * Only the functions of {@link VectorPTFFunction} are supported, none of which needs to
+ * look ahead; everything else keeps using the row mode PTFOperator.
+ */
+public class VectorPTFOperator extends PTFOperator implements VectorizationContextRegion {
+
+  private static final long serialVersionUID = 1L;
+
+  private VectorExpression[] partitionExpressions;
+  private VectorExpression[] orderExpressions;
+  private VectorExpression[] argExpressions;
+  private VectorPTFFunction[] functions;
+
+  private transient VectorizationContext vOutContext;
+
+  private transient KeyColumn[] partitionKeys;
+  private transient KeyColumn[] orderKeys;
+  private transient boolean hasPreviousRow;
+  private transient boolean[] newPartition;
+  private transient boolean[] newPeers;
+  private transient int[] outputProjection;
+
+  public VectorPTFOperator(VectorizationContext vContext, OperatorDesc conf)
+      throws HiveException {
+    this();
+    PTFDesc desc = (PTFDesc) conf;
+    this.conf = desc;
+    WindowTableFunctionDef tDef = (WindowTableFunctionDef) desc.getFuncDef();
+
+    partitionExpressions = vContext.getVectorExpressions(
+        getExprNodes(tDef.getPartition().getExpressions()));
+    orderExpressions = vContext.getVectorExpressions(
+        getExprNodes(tDef.getOrder().getExpressions()));
+
+    List<WindowFunctionDef> wFnDefs = tDef.getWindowFunctions();
+    List<VectorExpression> args = new ArrayList<VectorExpression>();
+    functions = new VectorPTFFunction[wFnDefs.size()];
+    for (int i = 0; i < functions.length; ++i) {
+      WindowFunctionDef wFnDef = wFnDefs.get(i);
+      int inputColumn = -1;
+      if (wFnDef.getArgs() != null && !wFnDef.getArgs().isEmpty()) {
+        VectorExpression arg = vContext.getVectorExpression(wFnDef.getArgs().get(0).getExprNode());
+        args.add(arg);
+        inputColumn = arg.getOutputColumn();
+      }
+      functions[i] = VectorPTFFunction.create(wFnDef, inputColumn);
+      if (functions[i] == null) {
+        throw new HiveException("Window function " + wFnDef.getName() + " cannot be vectorized");
+      }
+      functions[i].setOutputColumn(vContext.allocateScratchColumn(functions[i].getOutputType()));
+    }
+    argExpressions = args.toArray(new VectorExpression[args.size()]);
+
+    // The window columns come first, followed by the input columns.
+    vOutContext = new VectorizationContext(vContext);
+    vOutContext.setFileKey(vContext.getFileKey() + "/_PTF_");
+    vOutContext.getColumnMap().clear();
+    List<String> outputColumnNames = tDef.getOutputShape().getColumnNames();
+    for (int i = 0; i < outputColumnNames.size(); ++i) {
+      String columnName = outputColumnNames.get(i);
+      if (i < functions.length) {
+        vOutContext.addToColumnMap(columnName, functions[i].getOutputColumn());
+      } else {
+        Integer inputColumn = vContext.getColumnMap().get(columnName);
+        if (inputColumn == null) {
+          throw new HiveException("Column " + columnName + " is not in the input of the PTF");
+        }
+        vOutContext.addToColumnMap(columnName, inputColumn);
+      }
+    }
+  }
+
+  public VectorPTFOperator() {
+    super();
+  }
+
+  private static List<ExprNodeDesc> getExprNodes(List<? extends PTFExpressionDef> exprDefs) {
+    List<ExprNodeDesc> exprs = new ArrayList<ExprNodeDesc>(exprDefs.size());
+    for (PTFExpressionDef exprDef : exprDefs) {
+      exprs.add(exprDef.getExprNode());
+    }
+    return exprs;
+  }
+
+  @Override
+  protected void initializeOp(Configuration hconf) throws HiveException {
+    // The query def is only needed for the output object inspector; none of the row mode
+    // partitions and evaluators are set up.
+    reconstructQueryDef(hconf);
+    outputObjInspector = conf.getFuncDef().getOutputShape().getOI();
+
+    partitionKeys = createKeyColumns(partitionExpressions.length);
+    orderKeys = createKeyColumns(orderExpressions.length);
+    hasPreviousRow = false;
+    newPartition = new boolean[VectorizedRowBatch.DEFAULT_SIZE];
+    newPeers = new boolean[VectorizedRowBatch.DEFAULT_SIZE];
+    initializeChildren(hconf);
+  }
+
+  private static KeyColumn[] createKeyColumns(int count) {
+    KeyColumn[] keys = new KeyColumn[count];
+    for (int i = 0; i < count; ++i) {
+      keys[i] = new KeyColumn();
+    }
+    return keys;
+  }
+
+  @Override
+  protected void closeOp(boolean abort) throws HiveException {
+    // Every batch has been forwarded already.
+  }
+
+  @Override
+  public void processOp(Object row, int tag) throws HiveException {
+    VectorizedRowBatch batch = (VectorizedRowBatch) row;
+    if (batch.size == 0) {
+      return;
+    }
+    evaluate(partitionExpressions, batch);
+    evaluate(orderExpressions, batch);
+    evaluate(argExpressions, batch);
+
+    findBoundaries(batch);
+    for (VectorPTFFunction function : functions) {
+      function.evaluate(batch, newPartition, newPeers);
+    }
+
+    int[] originalProjections = batch.projectedColumns;
+    int originalProjectionSize = batch.projectionSize;
+    int projectionSize = functions.length + originalProjectionSize;
+    if (outputProjection == null || outputProjection.length != projectionSize) {
+      outputProjection = new int[projectionSize];
+    }
+    for (int i = 0; i < functions.length; ++i) {
+      outputProjection[i] = functions[i].getOutputColumn();
+    }
+    System.arraycopy(originalProjections, 0, outputProjection, functions.length,
+        originalProjectionSize);
+    batch.projectionSize = projectionSize;
+    batch.projectedColumns = outputProjection;
+    forward(batch, outputObjInspector);
+
+    // Revert the projected columns back, because the batch will be re-used.
+    batch.projectionSize = originalProjectionSize;
+    batch.projectedColumns = originalProjections;
+  }
+
+  private static void evaluate(VectorExpression[] expressions, VectorizedRowBatch batch) {
+    for (VectorExpression ve : expressions) {
+      ve.evaluate(batch);
+    }
+  }
+
+  /**
+   * Marks the rows that start a new partition, and the rows that start a new group of
+   * peers, one key column at a time.
+   */
+  private void findBoundaries(VectorizedRowBatch batch) {
+    int size = batch.size;
+    if (newPartition.length < size) {
+      newPartition = new boolean[size];
+      newPeers = new boolean[size];
+    }
+    Arrays.fill(newPartition, 0, size, false);
+    newPartition[0] = !hasPreviousRow;
+    markChanges(batch, partitionExpressions, partitionKeys, newPartition);
+    System.arraycopy(newPartition, 0, newPeers, 0, size);
+    markChanges(batch, orderExpressions, orderKeys, newPeers);
+    hasPreviousRow = true;
+  }
+
+  private void markChanges(VectorizedRowBatch batch, VectorExpression[] expressions,
+      KeyColumn[] keys, boolean[] changed) {
+    int size = batch.size;
+    int lastRow = batch.selectedInUse ? batch.selected[size - 1] : size - 1;
+    for (int k = 0; k < keys.length; ++k) {
+      ColumnVector cv = batch.cols[expressions[k].getOutputColumn()];
+      KeyColumn key = keys[k];
+      int firstRow = batch.selectedInUse ? batch.selected[0] : 0;
+      if (hasPreviousRow && !key.equalsSaved(cv, firstRow)) {
+        changed[0] = true;
+      }
+      if (!cv.isRepeating) {
+        for (int i = 1; i < size; ++i) {
+          int row = batch.selectedInUse ? batch.selected[i] : i;
+          int previousRow = batch.selectedInUse ? batch.selected[i - 1] : i - 1;
+          if (!KeyColumn.equalRows(cv, previousRow, row)) {
+            changed[i] = true;
+          }
+        }
+      }
+      key.save(cv, lastRow);
+    }
+  }
+
+  @Override
+  public VectorizationContext getOuputVectorizationContext() {
+    return vOutContext;
+  }
+
+  /**
+   * The value of a partition or order key column in the last row of the previous batch.
+   * Nulls are equal to each other, like in the row mode.
+   */
+  private static class KeyColumn {
+    private boolean isNull;
+    private long longValue;
+    private double doubleValue;
+    private byte[] bytes = new byte[16];
+    private int length;
+
+    static boolean equalRows(ColumnVector cv, int row1, int row2) {
+      boolean isNull1 = !cv.noNulls && cv.isNull[row1];
+      boolean isNull2 = !cv.noNulls && cv.isNull[row2];
+      if (isNull1 || isNull2) {
+        return isNull1 == isNull2;
+      }
+      if (cv instanceof LongColumnVector) {
+        long[] vector = ((LongColumnVector) cv).vector;
+        return vector[row1] == vector[row2];
+      }
+      if (cv instanceof DoubleColumnVector) {
+        double[] vector = ((DoubleColumnVector) cv).vector;
+        return vector[row1] == vector[row2];
+      }
+      BytesColumnVector bcv = (BytesColumnVector) cv;
+      return StringExpr.compare(bcv.vector[row1], bcv.start[row1], bcv.length[row1],
+          bcv.vector[row2], bcv.start[row2], bcv.length[row2]) == 0;
+    }
+
+    boolean equalsSaved(ColumnVector cv, int row) {
+      if (cv.isRepeating) {
+        row = 0;
+      }
+      boolean rowIsNull = !cv.noNulls && cv.isNull[row];
+      if (isNull || rowIsNull) {
+        return isNull == rowIsNull;
+      }
+      if (cv instanceof LongColumnVector) {
+        return ((LongColumnVector) cv).vector[row] == longValue;
+      }
+      if (cv instanceof DoubleColumnVector) {
+        return ((DoubleColumnVector) cv).vector[row] == doubleValue;
+      }
+      BytesColumnVector bcv = (BytesColumnVector) cv;
+      return StringExpr.compare(bytes, 0, length,
+          bcv.vector[row], bcv.start[row], bcv.length[row]) == 0;
+    }
+
+    void save(ColumnVector cv, int row) {
+      if (cv.isRepeating) {
+        row = 0;
+      }
+      isNull = !cv.noNulls && cv.isNull[row];
+      if (isNull) {
+        return;
+      }
+      if (cv instanceof LongColumnVector) {
+        longValue = ((LongColumnVector) cv).vector[row];
+      } else if (cv instanceof DoubleColumnVector) {
+        doubleValue = ((DoubleColumnVector) cv).vector[row];
+      } else {
+        // the batch buffers are reused, so the bytes have to be copied
+        BytesColumnVector bcv = (BytesColumnVector) cv;
+        length = bcv.length[row];
+        if (bytes.length < length) {
+          bytes = new byte[length];
+        }
+        System.arraycopy(bcv.vector[row], bcv.start[row], bytes, 0, length);
+      }
+    }
+  }
+}
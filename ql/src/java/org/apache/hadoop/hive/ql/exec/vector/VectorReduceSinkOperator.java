@@ -18,18 +18,38 @@
 
 package org.apache.hadoop.hive.ql.exec.vector;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.exec.ReduceSinkOperator;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpressionWriter;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpressionWriterFactory;
+import org.apache.hadoop.hive.ql.io.AcidUtils;
+import org.apache.hadoop.hive.ql.io.HiveKey;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.OperatorDesc;
 import org.apache.hadoop.hive.ql.plan.ReduceSinkDesc;
+import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.apache.hadoop.hive.serde2.binarysortable.BinarySortableSerDe;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinarySerDe;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
 
 public class VectorReduceSinkOperator extends ReduceSinkOperator {
 
+  private static final Log LOG = LogFactory.getLog(VectorReduceSinkOperator.class.getName());
+
   private static final long serialVersionUID = 1L;
 
   // Writer for producing row from input batch.
@@ -37,11 +57,39 @@ public class VectorReduceSinkOperator extends ReduceSinkOperator {
   
   protected transient Object[] singleRow;
 
+  // Null if the expressions couldn't be vectorized; the batch is then converted to rows.
+  private VectorExpression[] keyExpressions;
+  private VectorExpression[] valueExpressions;
+  private VectorExpression[] partitionExpressions;
+
+  // Members used by the native sink, which serializes the key and value columns straight
+  // into the BinarySortable and LazyBinary formats and computes the partition hash codes
+  // column by column, without converting the batch to rows.
+  private transient boolean nativeSink;
+  private transient VectorMapJoinKeySerializer nativeKeySerializer;
+  private transient VectorLazyBinarySerializer nativeValueSerializer;
+  private transient PrimitiveCategory[] partitionCategories;
+  private transient Output nativeKeyOutput;
+  private transient Output nativeValueOutput;
+  private transient BytesWritable nativeValue;
+  private transient int[] hashCodes;
+
   public VectorReduceSinkOperator(VectorizationContext vContext, OperatorDesc conf)
       throws HiveException {
     this();
     ReduceSinkDesc desc = (ReduceSinkDesc) conf;
     this.conf = desc;
+    try {
+      keyExpressions = vContext.getVectorExpressions(desc.getKeyCols());
+      valueExpressions = vContext.getVectorExpressions(desc.getValueCols());
+      partitionExpressions = vContext.getVectorExpressions(desc.getPartitionCols());
+    } catch (HiveException e) {
+      LOG.info("Reduce sink expressions cannot be vectorized, the batches will be "
+          + "converted to rows: " + e.getMessage());
+      keyExpressions = null;
+      valueExpressions = null;
+      partitionExpressions = null;
+    }
   }
 
   public VectorReduceSinkOperator() {
@@ -66,12 +114,90 @@ public void assign(VectorExpressionWriter[] writers,
 
     // Call ReduceSinkOperator with new input inspector.
     super.initializeOp(hconf);
+
+    nativeSink = initNativeSink(hconf);
+    if (nativeSink) {
+      LOG.info("Using the native vectorized reduce sink");
+    }
+  }
+
+  /**
+   * Checks whether the batches can be serialized natively, and prepares the serializers
+   * if so. Only plain BinarySortable keys and LazyBinary values of primitive types that
+   * map directly onto column vectors are supported, without distinct keys, bucketing,
+   * ACID operations or top-n.
+   */
+  private boolean initNativeSink(Configuration hconf) throws HiveException {
+    if (!HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVE_VECTORIZATION_REDUCESINK_NATIVE_ENABLED)
+        || keyExpressions == null) {
+      return false;
+    }
+    if (!(keySerializer instanceof BinarySortableSerDe)
+        || !(valueSerializer instanceof LazyBinarySerDe)) {
+      return false;
+    }
+    if (numDistinctExprs > 0 || bucketEval != null
+        || conf.getWriteType() != AcidUtils.Operation.NOT_ACID || conf.isPTFReduceSink()
+        || (conf.getTopN() >= 0 && conf.getTopNMemoryUsage() > 0)) {
+      return false;
+    }
+
+    PrimitiveCategory[] keyCategories = getCategories(conf.getKeyCols(), true);
+    PrimitiveCategory[] valueCategories = getCategories(conf.getValueCols(), false);
+    partitionCategories = getCategories(conf.getPartitionCols(), false);
+    if (keyCategories == null || valueCategories == null || partitionCategories == null) {
+      return false;
+    }
+    boolean[] sortOrders = ((BinarySortableSerDe) keySerializer).getSortOrders();
+    if (sortOrders.length != keyCategories.length) {
+      return false;
+    }
+
+    nativeKeySerializer = new VectorMapJoinKeySerializer(
+        getOutputColumns(keyExpressions), keyCategories, sortOrders);
+    nativeValueSerializer = new VectorLazyBinarySerializer(
+        getOutputColumns(valueExpressions), valueCategories);
+    nativeKeyOutput = new Output();
+    nativeValueOutput = new Output();
+    nativeValue = new BytesWritable();
+    hashCodes = new int[VectorizedRowBatch.DEFAULT_SIZE];
+    return true;
+  }
+
+  /**
+   * @return The primitive categories of the expressions; null if any of them is not
+   *         supported by the native sink.
+   */
+  private static PrimitiveCategory[] getCategories(List<ExprNodeDesc> exprs, boolean isKey) {
+    PrimitiveCategory[] categories = new PrimitiveCategory[exprs.size()];
+    for (int i = 0; i < categories.length; ++i) {
+      TypeInfo typeInfo = exprs.get(i).getTypeInfo();
+      if (isKey ? !VectorMapJoinKeySerializer.isSupportedKey(typeInfo)
+          : !VectorLazyBinarySerializer.isSupportedType(typeInfo)) {
+        return null;
+      }
+      categories[i] = ((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory();
+    }
+    return categories;
+  }
+
+  private static int[] getOutputColumns(VectorExpression[] expressions) {
+    int[] columns = new int[expressions.length];
+    for (int i = 0; i < expressions.length; ++i) {
+      columns[i] = expressions[i].getOutputColumn();
+    }
+    return columns;
   }
 
   @Override
   public void processOp(Object data, int tag) throws HiveException {
     VectorizedRowBatch vrg = (VectorizedRowBatch) data;
 
+    if (nativeSink) {
+      processBatch(vrg, tag);
+      return;
+    }
+
     for (int batchIndex = 0 ; batchIndex < vrg.size; ++batchIndex) {
       Object row = getRowObject(vrg, batchIndex);
       super.processOp(row, tag);
@@ -95,4 +221,118 @@ private Object[] getRowObject(VectorizedRowBatch vrg, int rowIndex)
     }
     return singleRow;
   }
+
+  /**
+   * @return Whether the batches are serialized natively rather than converted to rows.
+   */
+  boolean isNativeSink() {
+    return nativeSink;
+  }
+
+  /**
+   * Serializes the rows of the batch. The tag is the one the row mode gets, so the keys
+   * are the same bytes whichever mode wrote them.
+   */
+  private void processBatch(VectorizedRowBatch batch, int tag) throws HiveException {
+    if (batch.size == 0) {
+      return;
+    }
+    evaluate(keyExpressions, batch);
+    evaluate(valueExpressions, batch);
+    evaluate(partitionExpressions, batch);
+    computeHashCodes(batch);
+
+    boolean murmurHash = autoParallel && partitionExpressions.length > 0;
+    try {
+      for (int i = 0; i < batch.size; ++i) {
+        int row = batch.selectedInUse ? batch.selected[i] : i;
+        nativeKeySerializer.serializeNullableKey(batch, row, nativeKeyOutput);
+        HiveKey key = toHiveKey(
+            nativeKeyOutput.getData(), nativeKeyOutput.getLength(), tag, null);
+        key.setHashCode(murmurHash ? computeMurmurHash(key) : hashCodes[i]);
+
+        nativeValueSerializer.serialize(batch, row, nativeValueOutput);
+        nativeValue.set(nativeValueOutput.getData(), 0, nativeValueOutput.getLength());
+        collect(key, nativeValue);
+      }
+    } catch (IOException e) {
+      throw new HiveException(e);
+    }
+  }
+
+  private static void evaluate(VectorExpression[] expressions, VectorizedRowBatch batch) {
+    for (VectorExpression ve : expressions) {
+      ve.evaluate(batch);
+    }
+  }
+
+  /**
+   * Computes the hash codes of the partition columns of the batch, one column at a time.
+   * They are the same as the hash codes the row mode computes with ObjectInspectorUtils,
+   * so both can feed the same reducers.
+   */
+  private void computeHashCodes(VectorizedRowBatch batch) {
+    int size = batch.size;
+    if (hashCodes.length < size) {
+      hashCodes = new int[size];
+    }
+    if (partitionExpressions.length == 0) {
+      // distribute the rows uniformly, the same way the row mode does
+      if (random == null) {
+        random = new Random(12345);
+      }
+      for (int i = 0; i < size; ++i) {
+        hashCodes[i] = random.nextInt();
+      }
+    } else {
+      for (int i = 0; i < size; ++i) {
+        hashCodes[i] = 0;
+      }
+      for (int p = 0; p < partitionExpressions.length; ++p) {
+        ColumnVector cv = batch.cols[partitionExpressions[p].getOutputColumn()];
+        PrimitiveCategory category = partitionCategories[p];
+        for (int i = 0; i < size; ++i) {
+          int row = cv.isRepeating ? 0 : (batch.selectedInUse ? batch.selected[i] : i);
+          hashCodes[i] = hashCodes[i] * 31 + hashColumn(cv, row, category);
+        }
+      }
+    }
+    if (bucketNumber >= 0) {
+      for (int i = 0; i < size; ++i) {
+        hashCodes[i] = hashCodes[i] * 31 + bucketNumber;
+      }
+    }
+  }
+
+  private static int hashColumn(ColumnVector cv, int row, PrimitiveCategory category) {
+    if (!cv.noNulls && cv.isNull[row]) {
+      return 0;
+    }
+    switch (category) {
+    case BOOLEAN:
+      return ((LongColumnVector) cv).vector[row] != 0 ? 1 : 0;
+    case LONG: {
+      long v = ((LongColumnVector) cv).vector[row];
+      return (int) ((v >>> 32) ^ v);
+    }
+    case FLOAT:
+      return Float.floatToIntBits((float) ((DoubleColumnVector) cv).vector[row]);
+    case DOUBLE: {
+      long v = Double.doubleToLongBits(((DoubleColumnVector) cv).vector[row]);
+      return (int) ((v >>> 32) ^ v);
+    }
+    case STRING: {
+      BytesColumnVector bcv = (BytesColumnVector) cv;
+      byte[] bytes = bcv.vector[row];
+      int r = 0;
+      for (int i = bcv.start[row], end = bcv.start[row] + bcv.length[row]; i < end; ++i) {
+        r = r * 31 + bytes[i];
+      }
+      return r;
+    }
+    default:
+      // BYTE, SHORT, INT and DATE hash to their value
+      return (int) ((LongColumnVector) cv).vector[row];
+    }
+  }
 }
@@ -1999,6 +1999,14 @@ public Map<String, Integer> getColumnMap() {
     return columnMap;
   }
 
+  /**
+   * Allocates a scratch column of the given type for an operator that adds
+   * columns to the batch, rather than for an expression.
+   */
+  public int allocateScratchColumn(String hiveTypeName) {
+    return ocm.allocateOutputColumn(hiveTypeName);
+  }
+
   public void addToColumnMap(String columnName, int outputColumn) throws HiveException {
     if (columnMap.containsKey(columnName) && (columnMap.get(columnName) != outputColumn)) {
       throw new HiveException(String.format("Column %s is already mapped to %d. Cannot remap to %d.",
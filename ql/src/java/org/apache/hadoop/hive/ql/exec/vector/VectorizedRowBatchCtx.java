@@ -271,6 +271,13 @@ public void init(Configuration hiveConf, FileSplit split) throws ClassNotFoundEx
     colsToInclude = ColumnProjectionUtils.getReadColumnIDs(hiveConf);
   }
   
+  /**
+   * Get the deserializer of the partition that the context was initialized for.
+   */
+  public Deserializer getDeserializer() {
+    return deserializer;
+  }
+
   /**
    * Creates a Vectorized row batch and the column vectors.
    *
@@ -37,12 +37,14 @@
  * functions, but they have different grammars. AbstractFilterStringColLikeStringScalar class
  * provides shared classes and methods. Each subclass handles its grammar.
  */
-public abstract class AbstractFilterStringColLikeStringScalar extends VectorExpression {
+public abstract class AbstractFilterStringColLikeStringScalar extends VectorExpression
+    implements DictionaryFilter.Condition {
   private static final long serialVersionUID = 1L;
 
   private int colNum;
   private String pattern;
   transient Checker checker = null;
+  private transient DictionaryFilter dictionaryFilter = null;
 
   public AbstractFilterStringColLikeStringScalar() {
     super();
@@ -94,6 +96,15 @@ public void evaluate(VectorizedRowBatch batch) {
       return;
     }
 
+    // match each dictionary entry once
+    if (inputColVector.dictionary != null) {
+      if (dictionaryFilter == null) {
+        dictionaryFilter = new DictionaryFilter();
+      }
+      dictionaryFilter.filter(batch, inputColVector, this);
+      return;
+    }
+
     if (inputColVector.noNulls) {
       if (inputColVector.isRepeating) {
 
@@ -177,6 +188,11 @@ public void evaluate(VectorizedRowBatch batch) {
     }
   }
 
+  @Override
+  public boolean matches(byte[] bytes, int start, int length) {
+    return checker.check(bytes, start, length);
+  }
+
   @Override
   public int getOutputColumn() {
     return -1;
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * Filters a batch on a condition over a dictionary encoded string column.
+ * The condition is evaluated once for each dictionary entry that the rows
+ * use and the result is remembered until the column has a new dictionary,
+ * so the rows are filtered by looking up their dictionary ids.
+ */
+public class DictionaryFilter {
+
+  /**
+   * A condition on the bytes of a string value.
+   */
+  public interface Condition {
+    boolean matches(byte[] bytes, int start, int length);
+  }
+
+  private static final byte UNKNOWN = 0;
+  private static final byte MATCH = 1;
+  private static final byte NO_MATCH = 2;
+
+  private BytesColumnVector dictionary = null;
+  private byte[] results = null;
+
+  /**
+   * Filter the selected rows of the batch, keeping the rows whose value is
+   * not null and matches the condition.
+   * @param batch the batch to filter
+   * @param inputColVector the input column, which must have a dictionary
+   * @param condition the condition that the values must match
+   */
+  public void filter(VectorizedRowBatch batch, BytesColumnVector inputColVector,
+      Condition condition) {
+    if (inputColVector.dictionary != dictionary) {
+      dictionary = inputColVector.dictionary;
+      int size = dictionary.vector.length;
+      if (results == null || results.length < size) {
+        results = new byte[size];
+      } else {
+        Arrays.fill(results, 0, size, UNKNOWN);
+      }
+    }
+    int[] sel = batch.selected;
+    int n = batch.size;
+    int[] ids = inputColVector.dictionaryIds;
+    boolean[] nullPos = inputColVector.isNull;
+    boolean noNulls = inputColVector.noNulls;
+
+    if (inputColVector.isRepeating) {
+
+      // All must be selected otherwise size would be zero. Repeating property will not change.
+      if ((!noNulls && nullPos[0]) || !matches(ids[0], condition)) {
+
+        // Entire batch is filtered out.
+        batch.size = 0;
+      }
+    } else if (batch.selectedInUse) {
+      int newSize = 0;
+      for (int j = 0; j != n; j++) {
+        int i = sel[j];
+        if ((noNulls || !nullPos[i]) && matches(ids[i], condition)) {
+          sel[newSize++] = i;
+        }
+      }
+      batch.size = newSize;
+    } else {
+      int newSize = 0;
+      for (int i = 0; i != n; i++) {
+        if ((noNulls || !nullPos[i]) && matches(ids[i], condition)) {
+          sel[newSize++] = i;
+        }
+      }
+      if (newSize < n) {
+        batch.size = newSize;
+        batch.selectedInUse = true;
+      }
+    }
+  }
+
+  private boolean matches(int id, Condition condition) {
+    byte result = results[id];
+    if (result == UNKNOWN) {
+      result = condition.matches(dictionary.vector[id], dictionary.start[id],
+          dictionary.length[id]) ? MATCH : NO_MATCH;
+      results[id] = result;
+    }
+    return result == MATCH;
+  }
+}
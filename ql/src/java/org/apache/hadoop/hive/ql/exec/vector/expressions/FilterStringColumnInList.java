@@ -37,7 +37,8 @@
  * the inner loop, and there is a hash table implemented
  * with Cuckoo hashing that has fast lookup to do the IN test.
  */
-public class FilterStringColumnInList extends VectorExpression implements IStringInExpr {
+public class FilterStringColumnInList extends VectorExpression
+    implements IStringInExpr, DictionaryFilter.Condition {
   private static final long serialVersionUID = 1L;
   private int inputCol;
   private byte[][] inListValues;
@@ -46,6 +47,9 @@ public class FilterStringColumnInList extends VectorExpression implements IStrin
   // of the data type of the column.
   private transient CuckooSetBytes inSet;
 
+  // looks up each entry of a dictionary encoded column once
+  private transient DictionaryFilter dictionaryFilter = null;
+
   public FilterStringColumnInList() {
     super();
     inSet = null;
@@ -84,6 +88,14 @@ public void evaluate(VectorizedRowBatch batch) {
       return;
     }
 
+    if (inputColVector.dictionary != null) {
+      if (dictionaryFilter == null) {
+        dictionaryFilter = new DictionaryFilter();
+      }
+      dictionaryFilter.filter(batch, inputColVector, this);
+      return;
+    }
+
     if (inputColVector.noNulls) {
       if (inputColVector.isRepeating) {
 
@@ -160,6 +172,11 @@ public void evaluate(VectorizedRowBatch batch) {
   }
 
 
+  @Override
+  public boolean matches(byte[] bytes, int start, int length) {
+    return inSet.lookup(bytes, start, length);
+  }
+
   @Override
   public String getOutputType() {
     return "boolean";
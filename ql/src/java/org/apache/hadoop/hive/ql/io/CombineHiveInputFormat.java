@@ -30,6 +30,7 @@
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -262,10 +263,58 @@ public int hashCode() {
     }
   }
 
+  /**
+   * Gets the status of an input path and, if asked to, looks for compressed
+   * files under it. The tasks of the input paths run in parallel, so that the
+   * name node calls of thousands of partitions don't run one after the other.
+   */
+  private static class PathStatusTask implements Callable<PathStatusTask> {
+    private final Path path;
+    private final JobConf job;
+    private final boolean checkCompression;
+    private FileStatus status;
+    private boolean compressed = false;
+
+    PathStatusTask(Path path, JobConf job, boolean checkCompression) {
+      this.path = path;
+      this.job = job;
+      this.checkCompression = checkCompression;
+    }
+
+    @Override
+    public PathStatusTask call() throws IOException {
+      FileSystem inpFs = path.getFileSystem(job);
+      status = inpFs.getFileStatus(path);
+      if (!checkCompression) {
+        return this;
+      }
+      CompressionCodecFactory codecs = new CompressionCodecFactory(job);
+      if (!status.isDir()) {
+        compressed = codecs.getCodec(path) != null;
+        return this;
+      }
+      Queue<Path> dirs = new LinkedList<Path>();
+      dirs.offer(path);
+      while (dirs.peek() != null) {
+        Path tstPath = dirs.remove();
+        FileStatus[] fStatus = inpFs.listStatus(tstPath);
+        for (int idx = 0; idx < fStatus.length; idx++) {
+          if (fStatus[idx].isDir()) {
+            dirs.offer(fStatus[idx].getPath());
+          } else if (codecs.getCodec(fStatus[idx].getPath()) != null) {
+            compressed = true;
+            return this;
+          }
+        }
+      }
+      return this;
+    }
+  }
+
   /**
    * Create Hive splits based on CombineFileSplit.
    */
-  private InputSplit[] getCombineSplits(JobConf job,
+  private InputSplit[] getCombineSplits(final JobConf job,
                                         int numSplits) throws IOException {
     PerfLogger perfLogger = PerfLogger.getPerfLogger();
     perfLogger.PerfLogBegin(CLASS_NAME, PerfLogger.GET_SPLITS);
@@ -298,73 +347,64 @@ private InputSplit[] getCombineSplits(JobConf job,
       new HashMap<CombinePathInputFormat, CombineFilter>();
     Set<Path> poolSet = new HashSet<Path>();
 
-    for (Path path : paths) {
+    // Since there is no easy way of knowing whether MAPREDUCE-1597 is present in the tree or not,
+    // we use a configuration variable for the same
+    boolean checkCompression = this.mrwork != null && !this.mrwork.getHadoopSupportsSplittable();
+
+    // Find the paths that can't be combined before any of them is listed and list the rest in
+    // parallel. Any of these checks falls back to HiveInputFormat.getSplits for all the paths.
+    PartitionDesc[] parts = new PartitionDesc[paths.length];
+    List<Callable<PathStatusTask>> statusTasks = new ArrayList<Callable<PathStatusTask>>();
+    for (int i = 0; i < paths.length; ++i) {
+      Path path = paths[i];
       PartitionDesc part = HiveFileFormatUtils.getPartitionDescFromPathRecursively(
           pathToPartitionInfo, path, IOPrepareCache.get().allocatePartitionDescMap());
       TableDesc tableDesc = part.getTableDesc();
       if ((tableDesc != null) && tableDesc.isNonNative()) {
         return super.getSplits(job, numSplits);
       }
+      InputFormat inputFormat = getInputFormatFromCache(part.getInputFileFormatClass(), job);
+      //don't combine if inputformat is a SymlinkTextInputFormat
+      if (inputFormat instanceof SymlinkTextInputFormat) {
+        splits = super.getSplits(job, numSplits);
+        perfLogger.PerfLogEnd(CLASS_NAME, PerfLogger.GET_SPLITS);
+        return splits;
+      }
+      parts[i] = part;
 
-      // Use HiveInputFormat if any of the paths is not splittable
+      // The following check should be removed, once
+      // https://issues.apache.org/jira/browse/MAPREDUCE-1597 is fixed.
+      // Hadoop does not handle non-splittable files correctly for CombineFileInputFormat,
+      // so don't use CombineFileInputFormat for non-splittable files
+
+      //ie, dont't combine if inputformat is a TextInputFormat and has compression turned on
+      boolean checkPathCompression = checkCompression && inputFormat instanceof TextInputFormat;
+      if (checkPathCompression || mrwork.isMapperCannotSpanPartns()) {
+        statusTasks.add(new PathStatusTask(path, job, checkPathCompression));
+      }
+    }
+    Map<Path, FileStatus> pathStatus = new HashMap<Path, FileStatus>();
+    for (PathStatusTask task : runSplitTasks(job, statusTasks)) {
+      if (task.compressed) {
+        //if compresssion codec is set, use HiveInputFormat.getSplits (don't combine)
+        splits = super.getSplits(job, numSplits);
+        perfLogger.PerfLogEnd(CLASS_NAME, PerfLogger.GET_SPLITS);
+        return splits;
+      }
+      pathStatus.put(task.path, task.status);
+    }
+
+    for (int i = 0; i < paths.length; ++i) {
+      Path path = paths[i];
+      PartitionDesc part = parts[i];
       Class inputFormatClass = part.getInputFileFormatClass();
       String inputFormatClassName = inputFormatClass.getName();
-      InputFormat inputFormat = getInputFormatFromCache(inputFormatClass, job);
       String deserializerClassName = null;
       try {
         deserializerClassName = part.getDeserializer(job).getClass().getName();
       } catch (Exception e) {
         // ignore
       }
-      FileSystem inpFs = path.getFileSystem(job);
-
-      // Since there is no easy way of knowing whether MAPREDUCE-1597 is present in the tree or not,
-      // we use a configuration variable for the same
-      if (this.mrwork != null && !this.mrwork.getHadoopSupportsSplittable()) {
-        // The following code should be removed, once
-        // https://issues.apache.org/jira/browse/MAPREDUCE-1597 is fixed.
-        // Hadoop does not handle non-splittable files correctly for CombineFileInputFormat,
-        // so don't use CombineFileInputFormat for non-splittable files
-
-        //ie, dont't combine if inputformat is a TextInputFormat and has compression turned on
-
-        if (inputFormat instanceof TextInputFormat) {
-          Queue<Path> dirs = new LinkedList<Path>();
-          FileStatus fStats = inpFs.getFileStatus(path);
-
-          // If path is a directory
-          if (fStats.isDir()) {
-            dirs.offer(path);
-          } else if ((new CompressionCodecFactory(job)).getCodec(path) != null) {
-            //if compresssion codec is set, use HiveInputFormat.getSplits (don't combine)
-            splits = super.getSplits(job, numSplits);
-            perfLogger.PerfLogEnd(CLASS_NAME, PerfLogger.GET_SPLITS);
-            return splits;
-          }
-
-          while (dirs.peek() != null) {
-            Path tstPath = dirs.remove();
-            FileStatus[] fStatus = inpFs.listStatus(tstPath);
-            for (int idx = 0; idx < fStatus.length; idx++) {
-              if (fStatus[idx].isDir()) {
-                dirs.offer(fStatus[idx].getPath());
-              } else if ((new CompressionCodecFactory(job)).getCodec(
-                  fStatus[idx].getPath()) != null) {
-                //if compresssion codec is set, use HiveInputFormat.getSplits (don't combine)
-                splits = super.getSplits(job, numSplits);
-                perfLogger.PerfLogEnd(CLASS_NAME, PerfLogger.GET_SPLITS);
-                return splits;
-              }
-            }
-          }
-        }
-      }
-      //don't combine if inputformat is a SymlinkTextInputFormat
-      if (inputFormat instanceof SymlinkTextInputFormat) {
-        splits = super.getSplits(job, numSplits);
-        perfLogger.PerfLogEnd(CLASS_NAME, PerfLogger.GET_SPLITS);
-        return splits;
-      }
 
       Path filterPath = path;
 
@@ -399,7 +439,7 @@ private InputSplit[] getCombineSplits(JobConf job,
         // parent directory will be grouped into one pool but not files from different parent
         // directories. This guarantees that a split will combine all files in the same partition
         // but won't cross multiple partitions if the user has asked so.
-        if (!path.getFileSystem(job).getFileStatus(path).isDir()) { // path is not directory
+        if (!pathStatus.get(path).isDir()) { // path is not directory
           filterPath = path.getParent();
           inpFiles.add(path);
           poolSet.add(filterPath);
@@ -417,8 +457,21 @@ private InputSplit[] getCombineSplits(JobConf job,
       // using combine.createPool.
       iss = Arrays.asList(combine.getSplits(job, 1));
     } else {
-      for (Path path : inpDirs) {
-        processPaths(job, combine, iss, path);
+      // each partition is combined on its own, so they can be listed in parallel
+      List<Callable<InputSplitShim[]>> dirTasks = new ArrayList<Callable<InputSplitShim[]>>();
+      for (final Path path : inpDirs) {
+        dirTasks.add(new Callable<InputSplitShim[]>() {
+          @Override
+          public InputSplitShim[] call() throws IOException {
+            JobConf currJob = new JobConf(job);
+            FileInputFormat.setInputPaths(currJob, path);
+            // the shim keeps the split sizes, so each thread uses its own
+            return ShimLoader.getHadoopShims().getCombineFileInputFormat().getSplits(currJob, 1);
+          }
+        });
+      }
+      for (InputSplitShim[] dirSplits : runSplitTasks(job, dirTasks)) {
+        iss.addAll(Arrays.asList(dirSplits));
       }
 
       if (inpFiles.size() > 0) {
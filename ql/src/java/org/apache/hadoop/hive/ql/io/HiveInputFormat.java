@@ -27,7 +27,12 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.Map.Entry;
 
 import org.apache.commons.logging.Log;
@@ -63,6 +68,8 @@
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.util.ReflectionUtils;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * HiveInputFormat is a parameterized InputFormat which looks at the path name
  * and determine the correct InputFormat for that path name from
@@ -270,11 +277,18 @@ protected void init(JobConf job) {
    * The reason for this is that this is faster on some InputFormats. E.g.: Orc will start
    * a threadpool to do the work and calling it multiple times unnecessarily will create a lot
    * of unnecessary thread pools.
+   *
+   * The configuration of the group is prepared here, on a copy of conf, and the returned
+   * task computes the splits, so that the groups can be listed in parallel. Each task uses
+   * its own instance of the input format, since some formats, e.g. the HBase one, keep the
+   * state of the table they list in the instance.
    */
-  private void addSplitsForGroup(List<Path> dirs, TableScanOperator tableScan, JobConf conf,
-      InputFormat inputFormat, Class<? extends InputFormat> inputFormatClass, int splits,
-      TableDesc table, List<InputSplit> result) throws IOException {
+  Callable<List<InputSplit>> getSplitsForGroup(List<Path> dirs,
+      TableScanOperator tableScan, JobConf job,
+      final Class<? extends InputFormat> inputFormatClass, final int splits, TableDesc table)
+      throws IOException {
 
+    final JobConf conf = new JobConf(job);
     Utilities.copyTableJobPropertiesToConf(table, conf);
 
     if (tableScan != null) {
@@ -282,7 +296,7 @@ private void addSplitsForGroup(List<Path> dirs, TableScanOperator tableScan, Job
     }
 
     FileInputFormat.setInputPaths(conf, dirs.toArray(new Path[dirs.size()]));
-    conf.setInputFormat(inputFormat.getClass());
+    conf.setInputFormat(inputFormatClass);
 
     int headerCount = 0;
     int footerCount = 0;
@@ -297,10 +311,75 @@ private void addSplitsForGroup(List<Path> dirs, TableScanOperator tableScan, Job
       }
     }
 
-    InputSplit[] iss = inputFormat.getSplits(conf, splits);
-    for (InputSplit is : iss) {
-      result.add(new HiveInputSplit(is, inputFormatClass.getName()));
+    return new Callable<List<InputSplit>>() {
+      @Override
+      public List<InputSplit> call() throws IOException {
+        InputFormat inputFormat;
+        try {
+          inputFormat = (InputFormat) ReflectionUtils.newInstance(inputFormatClass, conf);
+        } catch (Exception e) {
+          throw new IOException("Cannot create an instance of InputFormat class "
+              + inputFormatClass.getName() + " as specified in mapredWork!", e);
+        }
+        InputSplit[] iss = inputFormat.getSplits(conf, splits);
+        List<InputSplit> result = new ArrayList<InputSplit>(iss.length);
+        for (InputSplit is : iss) {
+          result.add(new HiveInputSplit(is, inputFormatClass.getName()));
+        }
+        return result;
+      }
+    };
+  }
+
+  /**
+   * Run the tasks that list the input directories or read the file footers on up to
+   * hive.exec.input.split.threads threads.
+   *
+   * @return the results of the tasks, in the order of the tasks
+   */
+  public static <T> List<T> runSplitTasks(JobConf job, List<Callable<T>> tasks) throws IOException {
+    List<T> results = new ArrayList<T>(tasks.size());
+    int threads = Math.min(tasks.size(),
+        HiveConf.getIntVar(job, HiveConf.ConfVars.HIVE_SPLIT_GENERATION_THREADS));
+    if (threads <= 1) {
+      for (Callable<T> task : tasks) {
+        try {
+          results.add(task.call());
+        } catch (IOException e) {
+          throw e;
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IOException(e);
+        }
+      }
+      return results;
+    }
+    LOG.info("Using " + threads + " threads to generate the splits of " + tasks.size()
+        + " groups of paths");
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("HIVE_GET_SPLITS #%d").build());
+    try {
+      List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+      for (Callable<T> task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while generating splits", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      executor.shutdownNow();
     }
+    return results;
   }
 
   Path[] getInputPaths(JobConf job) throws IOException {
@@ -327,7 +406,7 @@ public InputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
     init(job);
     Path[] dirs = getInputPaths(job);
     JobConf newjob = new JobConf(job);
-    List<InputSplit> result = new ArrayList<InputSplit>();
+    List<Callable<List<InputSplit>>> groups = new ArrayList<Callable<List<InputSplit>>>();
 
     List<Path> currentDirs = new ArrayList<Path>();
     Class<? extends InputFormat> currentInputFormatClass = null;
@@ -376,11 +455,9 @@ public InputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
       }
 
       if (!currentDirs.isEmpty()) {
-        LOG.info("Generating splits");
-        addSplitsForGroup(currentDirs, currentTableScan, newjob,
-            getInputFormatFromCache(currentInputFormatClass, job),
+        groups.add(getSplitsForGroup(currentDirs, currentTableScan, newjob,
             currentInputFormatClass, currentDirs.size()*(numSplits / dirs.length),
-            currentTable, result);
+            currentTable));
       }
 
       currentDirs.clear();
@@ -398,11 +475,15 @@ public InputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
     }
 
     if (dirs.length != 0) {
-      LOG.info("Generating splits");
-      addSplitsForGroup(currentDirs, currentTableScan, newjob,
-          getInputFormatFromCache(currentInputFormatClass, job),
+      groups.add(getSplitsForGroup(currentDirs, currentTableScan, newjob,
           currentInputFormatClass, currentDirs.size()*(numSplits / dirs.length),
-          currentTable, result);
+          currentTable));
+    }
+
+    LOG.info("Generating splits");
+    List<InputSplit> result = new ArrayList<InputSplit>();
+    for (List<InputSplit> splits : runSplitTasks(job, groups)) {
+      result.addAll(splits);
     }
 
     Utilities.clearWorkMapForConf(job);
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedInputFormatInterface;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.TextInputFormat;
+
+/**
+ * A text input format that reads the lines of the split into vectorized row
+ * batches when the plan runs in vector mode. The Vectorizer replaces the
+ * TextInputFormat of the partitions that are read with LazySimpleSerDe by
+ * this input format.
+ */
+public class VectorizedTextInputFormat extends TextInputFormat
+    implements VectorizedInputFormatInterface {
+
+  /**
+   * Can the partition be read a batch at a time? Only the lines of
+   * LazySimpleSerDe are parsed, and the header and footer lines that the
+   * record reader of Hive skips are not supported.
+   */
+  public static boolean isVectorizable(PartitionDesc pd) throws IOException {
+    return pd.getInputFileFormatClass() == TextInputFormat.class
+        && LazySimpleSerDe.class.getName().equals(pd.getSerdeClassName())
+        && Utilities.getHeaderCount(pd.getTableDesc()) == 0
+        && "0".equals(pd.getTableDesc().getProperties().getProperty(
+            serdeConstants.FOOTER_COUNT, "0").trim());
+  }
+
+  @Override
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public RecordReader<LongWritable, Text> getRecordReader(InputSplit split, JobConf job,
+      Reporter reporter) throws IOException {
+    RecordReader<LongWritable, Text> lines = super.getRecordReader(split, job, reporter);
+    if (!Utilities.isVectorMode(job)) {
+      return lines;
+    }
+    return (RecordReader) new VectorizedTextRecordReader(job, (FileSplit) split, lines);
+  }
+}
@@ -0,0 +1,364 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.Deserializer;
+import org.apache.hadoop.hive.serde2.lazy.LazyByte;
+import org.apache.hadoop.hive.serde2.lazy.LazyDouble;
+import org.apache.hadoop.hive.serde2.lazy.LazyFieldScanner;
+import org.apache.hadoop.hive.serde2.lazy.LazyFloat;
+import org.apache.hadoop.hive.serde2.lazy.LazyInteger;
+import org.apache.hadoop.hive.serde2.lazy.LazyLong;
+import org.apache.hadoop.hive.serde2.lazy.LazyShort;
+import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
+import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe.SerDeParameters;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.RecordReader;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Reads the lines of a text file into vectorized row batches. The delimited
+ * fields of the boolean, integer, floating point and string columns are
+ * found by LazyFieldScanner and parsed directly into the column vectors,
+ * with the same rules as the lazy objects of LazySimpleSerDe, so no objects
+ * are created per row. The lines
+ * of a table with other types, escaped fields or a charset other than UTF-8
+ * are deserialized by the SerDe and added to the batch a row at a time.
+ */
+public class VectorizedTextRecordReader implements RecordReader<NullWritable, VectorizedRowBatch> {
+  private static final Log LOG = LogFactory.getLog(VectorizedTextRecordReader.class);
+
+  private final RecordReader<LongWritable, Text> lines;
+  private final LongWritable lineKey;
+  private final Text line;
+  private final VectorizedRowBatchCtx rbCtx;
+  private final Deserializer deserializer;
+  private final DataOutputBuffer buffer = new DataOutputBuffer();
+  private final int dataColumns;
+  private boolean addPartitionCols = true;
+
+  // the type of each column of the line or null if the lines can't be parsed
+  private final PrimitiveCategory[] categories;
+  private final byte separator;
+  private final byte[] nullSequence;
+  private final boolean extendedBooleanLiteral;
+  // are the columns that the batch reads parsed from the line?
+  private boolean parseFields;
+  // the last column that the batch reads
+  private int lastColumn = -1;
+  // the start of each field of the line
+  private final int[] positions;
+
+  public VectorizedTextRecordReader(Configuration conf, FileSplit split,
+      RecordReader<LongWritable, Text> lines) throws IOException {
+    this(createContext(conf, split), lines);
+  }
+
+  VectorizedTextRecordReader(VectorizedRowBatchCtx rbCtx,
+      RecordReader<LongWritable, Text> lines) throws IOException {
+    this.rbCtx = rbCtx;
+    this.lines = lines;
+    this.lineKey = lines.createKey();
+    this.line = lines.createValue();
+    this.deserializer = rbCtx.getDeserializer();
+    try {
+      ObjectInspector rowOI = deserializer.getObjectInspector();
+      dataColumns = ((StructObjectInspector) rowOI).getAllStructFieldRefs().size();
+    } catch (Exception e) {
+      throw new IOException("Can't get the columns of " + deserializer, e);
+    }
+    this.positions = new int[dataColumns + 1];
+
+    SerDeParameters params = deserializer instanceof LazySimpleSerDe ?
+        ((LazySimpleSerDe) deserializer).getSerdeParams() : null;
+    if (params != null && !params.isEscaped() && !params.isLastColumnTakesRest()
+        && Charsets.UTF_8.equals(((LazySimpleSerDe) deserializer).getCharset())) {
+      List<TypeInfo> types = params.getColumnTypes();
+      categories = new PrimitiveCategory[types.size()];
+      for (int i = 0; i < categories.length; ++i) {
+        if (types.get(i).getCategory() == ObjectInspector.Category.PRIMITIVE) {
+          categories[i] = ((PrimitiveTypeInfo) types.get(i)).getPrimitiveCategory();
+        }
+      }
+      separator = params.getSeparators()[0];
+      Text nulls = params.getNullSequence();
+      nullSequence = new byte[nulls.getLength()];
+      System.arraycopy(nulls.getBytes(), 0, nullSequence, 0, nullSequence.length);
+      extendedBooleanLiteral = params.isExtendedBooleanLiteral();
+    } else {
+      categories = null;
+      separator = 0;
+      nullSequence = null;
+      extendedBooleanLiteral = false;
+    }
+  }
+
+  private static VectorizedRowBatchCtx createContext(Configuration conf, FileSplit split)
+      throws IOException {
+    try {
+      VectorizedRowBatchCtx rbCtx = new VectorizedRowBatchCtx();
+      rbCtx.init(conf, split);
+      return rbCtx;
+    } catch (Exception e) {
+      throw new IOException("Can't initialize the batch context of " + split, e);
+    }
+  }
+
+  private static boolean isParsed(PrimitiveCategory category) {
+    if (category == null) {
+      return false;
+    }
+    switch (category) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case FLOAT:
+    case DOUBLE:
+    case STRING:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Decide whether the columns that the batch reads can be parsed from the
+   * lines. The batch has vectors for the columns that the query reads.
+   */
+  private void initParsing(VectorizedRowBatch batch) {
+    parseFields = categories != null;
+    for (int i = 0; parseFields && i < dataColumns; ++i) {
+      if (batch.cols[i] != null) {
+        parseFields = isParsed(categories[i]);
+        lastColumn = i;
+      }
+    }
+    if (!parseFields) {
+      LOG.info("Deserializing the rows of " + deserializer.getClass().getName()
+          + " because some of the columns can't be parsed into vectors");
+    }
+  }
+
+  @Override
+  public NullWritable createKey() {
+    return NullWritable.get();
+  }
+
+  @Override
+  public VectorizedRowBatch createValue() {
+    try {
+      return rbCtx.createVectorizedRowBatch();
+    } catch (HiveException e) {
+      throw new RuntimeException("Error creating a batch", e);
+    }
+  }
+
+  @Override
+  public boolean next(NullWritable key, VectorizedRowBatch batch) throws IOException {
+    if (addPartitionCols) {
+      // Check and update partition cols if necessary. Ideally this should be done
+      // in CreateValue() as the partition is constant per split. But since Hive uses
+      // CombineHiveRecordReader and as this does not call CreateValue() for
+      // each new RecordReader it creates, this check is required in next()
+      try {
+        rbCtx.addPartitionColsToBatch(batch);
+      } catch (HiveException e) {
+        throw new IOException("Can't add the partition values to the batch", e);
+      }
+      initParsing(batch);
+      addPartitionCols = false;
+    }
+
+    // the partition columns keep their repeated values
+    batch.selectedInUse = false;
+    for (int i = 0; i < dataColumns; ++i) {
+      ColumnVector column = batch.cols[i];
+      if (column != null) {
+        column.reset();
+        if (column instanceof BytesColumnVector) {
+          ((BytesColumnVector) column).initBuffer();
+        }
+      }
+    }
+    buffer.reset();
+
+    int row = 0;
+    while (row < VectorizedRowBatch.DEFAULT_SIZE && lines.next(lineKey, line)) {
+      if (parseFields) {
+        parseLine(line.getBytes(), line.getLength(), batch, row);
+      } else {
+        try {
+          rbCtx.addRowToBatch(row, line, batch, buffer);
+        } catch (Exception e) {
+          throw new IOException("Can't add the line to the batch", e);
+        }
+      }
+      ++row;
+    }
+    batch.size = row;
+    return row > 0;
+  }
+
+  /**
+   * Find the fields of the line and parse the fields that the batch reads.
+   * As in LazyStruct, the missing fields at the end of the line are null and
+   * the extra fields are ignored.
+   */
+  void parseLine(byte[] bytes, int length, VectorizedRowBatch batch, int row) {
+    if (lastColumn < 0) {
+      return;
+    }
+    LazyFieldScanner.findFields(bytes, 0, length, separator, false, (byte) 0, false,
+        positions, lastColumn + 1);
+    for (int column = 0; column <= lastColumn; ++column) {
+      ColumnVector vector = batch.cols[column];
+      if (vector != null) {
+        int fieldLength = positions[column + 1] - positions[column] - 1;
+        if (fieldLength < 0) {
+          setNull(vector, row);
+        } else {
+          parseField(bytes, positions[column], fieldLength, categories[column], vector, row);
+        }
+      }
+    }
+  }
+
+  private static void setNull(ColumnVector vector, int row) {
+    vector.isNull[row] = true;
+    vector.noNulls = false;
+  }
+
+  private boolean isNullSequence(byte[] bytes, int start, int length) {
+    if (length != nullSequence.length) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      if (bytes[start + i] != nullSequence[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void parseField(byte[] bytes, int start, int length, PrimitiveCategory category,
+      ColumnVector vector, int row) {
+    if (isNullSequence(bytes, start, length)) {
+      setNull(vector, row);
+      return;
+    }
+    try {
+      switch (category) {
+      case BOOLEAN:
+        parseBoolean(bytes, start, length, (LongColumnVector) vector, row);
+        return;
+      case BYTE:
+        ((LongColumnVector) vector).vector[row] = LazyByte.parseByte(bytes, start, length, 10);
+        break;
+      case SHORT:
+        ((LongColumnVector) vector).vector[row] = LazyShort.parseShort(bytes, start, length, 10);
+        break;
+      case INT:
+        ((LongColumnVector) vector).vector[row] = LazyInteger.parseInt(bytes, start, length, 10);
+        break;
+      case LONG:
+        ((LongColumnVector) vector).vector[row] = LazyLong.parseLong(bytes, start, length, 10);
+        break;
+      case FLOAT:
+        ((DoubleColumnVector) vector).vector[row] = LazyFloat.parseFloat(bytes, start, length);
+        break;
+      case DOUBLE:
+        ((DoubleColumnVector) vector).vector[row] = LazyDouble.parseDouble(bytes, start, length);
+        break;
+      case STRING:
+        ((BytesColumnVector) vector).setVal(row, bytes, start, length);
+        break;
+      default:
+        throw new IllegalStateException("Can't parse " + category);
+      }
+      vector.isNull[row] = false;
+    } catch (NumberFormatException e) {
+      setNull(vector, row);
+    }
+  }
+
+  private void parseBoolean(byte[] bytes, int start, int length, LongColumnVector vector,
+      int row) {
+    if (length == 4 && Character.toUpperCase(bytes[start]) == 'T'
+        && Character.toUpperCase(bytes[start + 1]) == 'R'
+        && Character.toUpperCase(bytes[start + 2]) == 'U'
+        && Character.toUpperCase(bytes[start + 3]) == 'E') {
+      vector.vector[row] = 1;
+    } else if (length == 5 && Character.toUpperCase(bytes[start]) == 'F'
+        && Character.toUpperCase(bytes[start + 1]) == 'A'
+        && Character.toUpperCase(bytes[start + 2]) == 'L'
+        && Character.toUpperCase(bytes[start + 3]) == 'S'
+        && Character.toUpperCase(bytes[start + 4]) == 'E') {
+      vector.vector[row] = 0;
+    } else if (extendedBooleanLiteral && length == 1
+        && (bytes[start] == '1' || bytes[start] == 't' || bytes[start] == 'T')) {
+      vector.vector[row] = 1;
+    } else if (extendedBooleanLiteral && length == 1
+        && (bytes[start] == '0' || bytes[start] == 'f' || bytes[start] == 'F')) {
+      vector.vector[row] = 0;
+    } else {
+      setNull(vector, row);
+      return;
+    }
+    vector.isNull[row] = false;
+  }
+
+  @Override
+  public long getPos() throws IOException {
+    return lines.getPos();
+  }
+
+  @Override
+  public void close() throws IOException {
+    lines.close();
+  }
+
+  @Override
+  public float getProgress() throws IOException {
+    return lines.getProgress();
+  }
+}
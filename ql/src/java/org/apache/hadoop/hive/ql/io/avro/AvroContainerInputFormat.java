@@ -18,6 +18,8 @@
 package org.apache.hadoop.hive.ql.io.avro;
 
 import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedInputFormatInterface;
 import org.apache.hadoop.hive.serde2.avro.AvroGenericRecordWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapred.FileInputFormat;
@@ -33,7 +35,8 @@
 import java.util.List;
 
 public class AvroContainerInputFormat
-        extends FileInputFormat<NullWritable, AvroGenericRecordWritable> implements JobConfigurable {
+        extends FileInputFormat<NullWritable, AvroGenericRecordWritable>
+        implements JobConfigurable, VectorizedInputFormatInterface {
   protected JobConf jobConf;
 
   @Override
@@ -46,9 +49,14 @@ protected FileStatus[] listStatus(JobConf job) throws IOException {
   }
 
   @Override
+  @SuppressWarnings({ "unchecked", "rawtypes" })
   public RecordReader<NullWritable, AvroGenericRecordWritable>
     getRecordReader(InputSplit inputSplit, JobConf jc, Reporter reporter) throws IOException {
-    return new AvroGenericRecordReader(jc, (FileSplit) inputSplit, reporter);
+    AvroGenericRecordReader reader = new AvroGenericRecordReader(jc, (FileSplit) inputSplit, reporter);
+    if (Utilities.isVectorMode(jc)) {
+      return (RecordReader) new VectorizedAvroRecordReader(jc, (FileSplit) inputSplit, reader);
+    }
+    return reader;
   }
 
   @Override
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io.avro;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.avro.AvroGenericRecordWritable;
+import org.apache.hadoop.hive.serde2.avro.AvroSerdeUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.RecordReader;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Reads the records of an Avro container file into vectorized row batches.
+ * The values of the boolean, int, long, float, double, string and enum
+ * fields are copied from the generic records directly into the column
+ * vectors. The records with other types, or whose schema doesn't have the
+ * columns, are deserialized by the AvroSerDe and added to the batch a row
+ * at a time.
+ */
+public class VectorizedAvroRecordReader implements RecordReader<NullWritable, VectorizedRowBatch> {
+  private static final Log LOG = LogFactory.getLog(VectorizedAvroRecordReader.class);
+
+  private final AvroGenericRecordReader reader;
+  private final AvroGenericRecordWritable record;
+  private final VectorizedRowBatchCtx rbCtx;
+  private final DataOutputBuffer buffer = new DataOutputBuffer();
+  private final String[] columnNames;
+  private final PrimitiveCategory[] categories;
+  private boolean addPartitionCols = true;
+
+  // the schema that the field positions were found for
+  private Schema recordSchema = null;
+  // the position of the field of each column that the batch reads, or null
+  // if the records of the schema are deserialized
+  private int[] fieldPositions = null;
+
+  public VectorizedAvroRecordReader(Configuration conf, FileSplit split,
+      AvroGenericRecordReader reader) throws IOException {
+    this.reader = reader;
+    this.record = reader.createValue();
+    try {
+      rbCtx = new VectorizedRowBatchCtx();
+      rbCtx.init(conf, split);
+      List<? extends StructField> fields =
+          ((StructObjectInspector) rbCtx.getDeserializer().getObjectInspector())
+          .getAllStructFieldRefs();
+      columnNames = new String[fields.size()];
+      categories = new PrimitiveCategory[fields.size()];
+      for (int i = 0; i < columnNames.length; ++i) {
+        columnNames[i] = fields.get(i).getFieldName();
+        ObjectInspector oi = fields.get(i).getFieldObjectInspector();
+        if (oi.getCategory() == ObjectInspector.Category.PRIMITIVE) {
+          categories[i] = ((PrimitiveObjectInspector) oi).getPrimitiveCategory();
+        }
+      }
+    } catch (Exception e) {
+      throw new IOException("Can't initialize the batch context of " + split, e);
+    }
+  }
+
+  /**
+   * Find the fields of the columns that the batch reads in the schema of
+   * the records.
+   *
+   * @return the field positions or null if some of the columns can't be
+   *     copied from the records
+   */
+  private int[] findFields(Schema schema, VectorizedRowBatch batch) {
+    int[] positions = new int[columnNames.length];
+    for (int i = 0; i < columnNames.length; ++i) {
+      if (batch.cols[i] == null) {
+        positions[i] = -1;
+        continue;
+      }
+      Schema.Field field = schema.getField(columnNames[i]);
+      if (field == null || !isCopied(categories[i], field.schema())) {
+        LOG.info("Deserializing the records because column " + columnNames[i]
+            + " can't be copied from " + schema);
+        return null;
+      }
+      positions[i] = field.pos();
+    }
+    return positions;
+  }
+
+  private static boolean isCopied(PrimitiveCategory category, Schema schema) {
+    if (AvroSerdeUtils.isNullableType(schema)) {
+      schema = AvroSerdeUtils.getOtherTypeFromNullableType(schema);
+    }
+    if (category == null || schema.getProp("logicalType") != null) {
+      return false;
+    }
+    switch (schema.getType()) {
+    case BOOLEAN:
+      return category == PrimitiveCategory.BOOLEAN;
+    case INT:
+      return category == PrimitiveCategory.INT;
+    case LONG:
+      return category == PrimitiveCategory.LONG;
+    case FLOAT:
+      return category == PrimitiveCategory.FLOAT;
+    case DOUBLE:
+      return category == PrimitiveCategory.DOUBLE;
+    case STRING:
+    case ENUM:
+      return category == PrimitiveCategory.STRING;
+    default:
+      return false;
+    }
+  }
+
+  @Override
+  public NullWritable createKey() {
+    return NullWritable.get();
+  }
+
+  @Override
+  public VectorizedRowBatch createValue() {
+    try {
+      return rbCtx.createVectorizedRowBatch();
+    } catch (HiveException e) {
+      throw new RuntimeException("Error creating a batch", e);
+    }
+  }
+
+  @Override
+  public boolean next(NullWritable key, VectorizedRowBatch batch) throws IOException {
+    if (addPartitionCols) {
+      // the batches of CombineHiveRecordReader aren't created by this reader,
+      // so the partition values are added by the first call
+      try {
+        rbCtx.addPartitionColsToBatch(batch);
+      } catch (HiveException e) {
+        throw new IOException("Can't add the partition values to the batch", e);
+      }
+      addPartitionCols = false;
+    }
+
+    // the partition columns keep their repeated values
+    batch.selectedInUse = false;
+    for (int i = 0; i < columnNames.length; ++i) {
+      if (batch.cols[i] != null) {
+        batch.cols[i].reset();
+      }
+    }
+    buffer.reset();
+
+    int row = 0;
+    while (row < VectorizedRowBatch.DEFAULT_SIZE && reader.next(null, record)) {
+      GenericRecord r = record.getRecord();
+      if (r.getSchema() != recordSchema) {
+        recordSchema = r.getSchema();
+        fieldPositions = findFields(recordSchema, batch);
+      }
+      if (fieldPositions != null) {
+        copyRecord(r, batch, row);
+      } else {
+        try {
+          rbCtx.addRowToBatch(row, record, batch, buffer);
+        } catch (Exception e) {
+          throw new IOException("Can't add the record to the batch", e);
+        }
+      }
+      ++row;
+    }
+    batch.size = row;
+    return row > 0;
+  }
+
+  private void copyRecord(GenericRecord r, VectorizedRowBatch batch, int row) {
+    for (int i = 0; i < fieldPositions.length; ++i) {
+      if (fieldPositions[i] == -1) {
+        continue;
+      }
+      ColumnVector vector = batch.cols[i];
+      Object datum = r.get(fieldPositions[i]);
+      if (datum == null) {
+        vector.isNull[row] = true;
+        vector.noNulls = false;
+        continue;
+      }
+      vector.isNull[row] = false;
+      switch (categories[i]) {
+      case BOOLEAN:
+        ((LongColumnVector) vector).vector[row] = ((Boolean) datum).booleanValue() ? 1 : 0;
+        break;
+      case INT:
+      case LONG:
+        ((LongColumnVector) vector).vector[row] = ((Number) datum).longValue();
+        break;
+      case FLOAT:
+      case DOUBLE:
+        ((DoubleColumnVector) vector).vector[row] = ((Number) datum).doubleValue();
+        break;
+      default:
+        // the datum belongs to the record, which isn't reused by the reader
+        if (datum instanceof Utf8) {
+          Utf8 utf8 = (Utf8) datum;
+          ((BytesColumnVector) vector).setRef(row, utf8.getBytes(), 0, utf8.getByteLength());
+        } else {
+          byte[] bytes = datum.toString().getBytes(Charsets.UTF_8);
+          ((BytesColumnVector) vector).setRef(row, bytes, 0, bytes.length);
+        }
+        break;
+      }
+    }
+  }
+
+  @Override
+  public long getPos() throws IOException {
+    return reader.getPos();
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  @Override
+  public float getProgress() throws IOException {
+    return reader.getProgress();
+  }
+}
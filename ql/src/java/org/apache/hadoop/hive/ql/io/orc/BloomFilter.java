@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.orc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.io.Text;
+
+/**
+ * A bloom filter over the values of a column in one row group. The writer
+ * keeps one for each column that was requested in the table properties and
+ * stores it in the BLOOM_FILTER stream next to the row index, so that the
+ * readers can skip the row groups that can't contain the values of an
+ * equality or in predicate. The min/max statistics can't do that for
+ * unsorted columns with many distinct values.
+ *
+ * The positions of a value are derived from a single 64 bit hash that is
+ * split into two 32 bit hashes, which are combined as h1 + i * h2 for the
+ * i-th position.
+ */
+class BloomFilter {
+  static final double DEFAULT_FPP = 0.05;
+
+  private final long[] bits;
+  private final int numBits;
+  private final int numHashFunctions;
+
+  /**
+   * Create an empty bloom filter.
+   * @param expectedEntries the number of values the filter is sized for
+   * @param fpp the false positive probability at that number of values
+   */
+  BloomFilter(long expectedEntries, double fpp) {
+    if (expectedEntries <= 0) {
+      throw new IllegalArgumentException("Bloom filter needs a positive " +
+          "number of expected entries: " + expectedEntries);
+    }
+    if (fpp <= 0.0 || fpp >= 1.0) {
+      throw new IllegalArgumentException("Bloom filter false positive " +
+          "probability must be between 0 and 1: " + fpp);
+    }
+    int requiredBits = optimalNumOfBits(expectedEntries, fpp);
+    // round up to whole longs
+    this.bits = new long[(requiredBits + 63) / 64];
+    this.numBits = bits.length * 64;
+    this.numHashFunctions = optimalNumOfHashFunctions(expectedEntries, numBits);
+  }
+
+  private BloomFilter(long[] bits, int numHashFunctions) {
+    this.bits = bits;
+    this.numBits = bits.length * 64;
+    this.numHashFunctions = numHashFunctions;
+  }
+
+  static int optimalNumOfHashFunctions(long n, long m) {
+    return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+  }
+
+  static int optimalNumOfBits(long n, double p) {
+    return Math.max(64, (int) (-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+  }
+
+  void addLong(long value) {
+    addHash(hash64(value));
+  }
+
+  void addDouble(double value) {
+    addLong(Double.doubleToLongBits(value));
+  }
+
+  void addBytes(byte[] value, int offset, int length) {
+    addHash(hash64(value, offset, length));
+  }
+
+  /**
+   * Add a string value. The trailing whitespace is ignored, because the
+   * search arguments strip it from the string literals.
+   */
+  void addText(Text value) {
+    int length = value.getLength();
+    byte last = length == 0 ? 0 : value.getBytes()[length - 1];
+    // only decode the values that might end in whitespace
+    if (last < 0 || Character.isWhitespace(last)) {
+      Text stripped = new Text(StringUtils.stripEnd(value.toString(), null));
+      addBytes(stripped.getBytes(), 0, stripped.getLength());
+    } else {
+      addBytes(value.getBytes(), 0, length);
+    }
+  }
+
+  boolean testLong(long value) {
+    return testHash(hash64(value));
+  }
+
+  boolean testDouble(double value) {
+    return testLong(Double.doubleToLongBits(value));
+  }
+
+  boolean testBytes(byte[] value, int offset, int length) {
+    return testHash(hash64(value, offset, length));
+  }
+
+  boolean testString(String value) {
+    Text text = new Text(StringUtils.stripEnd(value, null));
+    return testBytes(text.getBytes(), 0, text.getLength());
+  }
+
+  private void addHash(long hash) {
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+    for(int i=1; i <= numHashFunctions; ++i) {
+      int position = getPosition(hash1, hash2, i);
+      bits[position >>> 6] |= 1L << position;
+    }
+  }
+
+  private boolean testHash(long hash) {
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+    for(int i=1; i <= numHashFunctions; ++i) {
+      int position = getPosition(hash1, hash2, i);
+      if ((bits[position >>> 6] & (1L << position)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int getPosition(int hash1, int hash2, int i) {
+    int combined = hash1 + i * hash2;
+    // flip all the bits if it's negative (guaranteed positive number)
+    if (combined < 0) {
+      combined = ~combined;
+    }
+    return combined % numBits;
+  }
+
+  /**
+   * Thomas Wang's 64 bit integer hash, which spreads the entropy of the
+   * key over all of the bits.
+   */
+  static long hash64(long key) {
+    key = (~key) + (key << 21);
+    key = key ^ (key >>> 24);
+    key = (key + (key << 3)) + (key << 8);
+    key = key ^ (key >>> 14);
+    key = (key + (key << 2)) + (key << 4);
+    key = key ^ (key >>> 28);
+    key = key + (key << 31);
+    return key;
+  }
+
+  /**
+   * 64 bit FNV-1a over the bytes, mixed with the integer hash because FNV
+   * leaves the upper bits poorly distributed for short values.
+   */
+  static long hash64(byte[] data, int offset, int length) {
+    long hash = 0xcbf29ce484222325L;
+    for(int i=offset; i < offset + length; ++i) {
+      hash ^= data[i] & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash64(hash);
+  }
+
+  int getNumHashFunctions() {
+    return numHashFunctions;
+  }
+
+  int getBitSize() {
+    return numBits;
+  }
+
+  /**
+   * Clear the filter, so that it can be used for the next row group.
+   */
+  void reset() {
+    Arrays.fill(bits, 0);
+  }
+
+  void write(DataOutput out) throws IOException {
+    out.writeInt(numHashFunctions);
+    out.writeInt(bits.length);
+    for(long word: bits) {
+      out.writeLong(word);
+    }
+  }
+
+  static BloomFilter read(DataInput in) throws IOException {
+    int numHashFunctions = in.readInt();
+    long[] bits = new long[in.readInt()];
+    for(int i=0; i < bits.length; ++i) {
+      bits[i] = in.readLong();
+    }
+    return new BloomFilter(bits, numHashFunctions);
+  }
+
+  @Override
+  public String toString() {
+    int setBits = 0;
+    for(long word: bits) {
+      setBits += Long.bitCount(word);
+    }
+    return "bloom filter bits: " + numBits + " set: " + setBits +
+        " hash functions: " + numHashFunctions;
+  }
+}
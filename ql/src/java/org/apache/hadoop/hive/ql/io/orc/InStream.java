@@ -17,9 +17,12 @@
  */
 package org.apache.hadoop.hive.ql.io.orc;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -133,7 +136,6 @@ private static class CompressedStream extends InStream {
     private long currentOffset;
     private int currentRange;
     private boolean isUncompressedOriginal;
-    private boolean isDirect = false;
 
     public CompressedStream(String name, ByteBuffer[] input,
                             long[] offsets, long length,
@@ -143,16 +145,13 @@ public CompressedStream(String name, ByteBuffer[] input,
       this.name = name;
       this.codec = codec;
       this.length = length;
-      if(this.length > 0) {
-        isDirect = this.bytes[0].isDirect();
-      }
       this.offsets = offsets;
       this.bufferSize = bufferSize;
       currentOffset = 0;
       currentRange = 0;
     }
 
-    private ByteBuffer allocateBuffer(int size) {
+    private ByteBuffer allocateBuffer(int size, boolean isDirect) {
       // TODO: use the same pool as the ORC readers
       if(isDirect == true) {
         return ByteBuffer.allocateDirect(size);
@@ -186,11 +185,12 @@ private void readHeader() throws IOException {
           uncompressed = slice;
           isUncompressedOriginal = true;
         } else {
-          if (isUncompressedOriginal) {
-            uncompressed = allocateBuffer(bufferSize);
+          // the direct decompressors need both buffers to be direct, and the
+          // chunks of a stream may come from both mapped and heap buffers
+          if (isUncompressedOriginal || uncompressed == null ||
+              uncompressed.isDirect() != slice.isDirect()) {
+            uncompressed = allocateBuffer(bufferSize, slice.isDirect());
             isUncompressedOriginal = false;
-          } else if (uncompressed == null) {
-            uncompressed = allocateBuffer(bufferSize);
           } else {
             uncompressed.clear();
           }
@@ -287,7 +287,7 @@ private ByteBuffer slice(int chunkLength) throws IOException {
 
       // we need to consolidate 2 or more buffers into 1
       // first copy out compressed buffers
-      ByteBuffer copy = allocateBuffer(chunkLength);
+      ByteBuffer copy = allocateBuffer(chunkLength, compressed.isDirect());
       currentOffset += compressed.remaining();
       len -= compressed.remaining();
       copy.put(compressed);
@@ -367,6 +367,72 @@ public String toString() {
     }
   }
 
+  /**
+   * A stream over the decompressed bytes of a stream in the column cache. Seeks use
+   * the positions of the original stream, which are translated to offsets in the
+   * decompressed bytes.
+   */
+  private static class CachedStream extends InStream {
+    private final String name;
+    private final OrcColumnCache.StreamData data;
+    private final ByteBuffer bytes;
+
+    public CachedStream(String name, OrcColumnCache.StreamData data) {
+      this.name = name;
+      this.data = data;
+      // the cached buffer is shared, so keep a position of our own
+      this.bytes = data.getBytes().duplicate();
+      this.bytes.position(0);
+    }
+
+    @Override
+    public int read() {
+      if (!bytes.hasRemaining()) {
+        return -1;
+      }
+      return 0xff & bytes.get();
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int length) {
+      if (!bytes.hasRemaining()) {
+        return -1;
+      }
+      int actualLength = Math.min(length, bytes.remaining());
+      bytes.get(data, offset, actualLength);
+      return actualLength;
+    }
+
+    @Override
+    public int available() {
+      return bytes.remaining();
+    }
+
+    @Override
+    public void close() {
+      bytes.position(bytes.limit());
+    }
+
+    @Override
+    public void seek(PositionProvider index) throws IOException {
+      long desired = index.getNext();
+      if (data.isCompressed()) {
+        desired = data.getUncompressedOffset(desired) + index.getNext();
+      }
+      if (desired > bytes.limit()) {
+        throw new IllegalArgumentException("Seek in " + name + " to " +
+            desired + " is outside of the data");
+      }
+      bytes.position((int) desired);
+    }
+
+    @Override
+    public String toString() {
+      return "cached stream " + name + " position: " + bytes.position() +
+          " length: " + bytes.limit() + (data.isCompressed() ? " decompressed" : "");
+    }
+  }
+
   public abstract void seek(PositionProvider index) throws IOException;
 
   /**
@@ -394,4 +460,63 @@ public static InStream create(String name,
           bufferSize);
     }
   }
+
+  /**
+   * Create an input stream over the cached bytes of a stream.
+   * @param name the name of the stream
+   * @param data the cached bytes
+   * @return an input stream
+   */
+  public static InStream create(String name, OrcColumnCache.StreamData data) {
+    return new CachedStream(name, data);
+  }
+
+  /**
+   * Read the rest of a stream into a direct buffer that can be added to the column
+   * cache. Compressed streams are decompressed one chunk at a time, so that the
+   * offsets of the chunks can be recorded; they must not have been read from yet.
+   * @param name the name of the stream
+   * @param in the stream to read
+   * @return the decompressed bytes of the stream
+   * @throws IOException
+   */
+  static OrcColumnCache.StreamData readFully(StreamName name, InStream in
+                                             ) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    long[] chunkOffsets = null;
+    long[] chunkStarts = null;
+    long length;
+    if (in instanceof CompressedStream) {
+      CompressedStream compressed = (CompressedStream) in;
+      List<Long> offsets = new ArrayList<Long>();
+      List<Long> starts = new ArrayList<Long>();
+      byte[] buffer = new byte[compressed.bufferSize];
+      length = compressed.length;
+      while (compressed.currentOffset < compressed.length) {
+        offsets.add(compressed.currentOffset);
+        starts.add((long) out.size());
+        compressed.readHeader();
+        int chunkLength = compressed.uncompressed.remaining();
+        compressed.uncompressed.get(buffer, 0, chunkLength);
+        out.write(buffer, 0, chunkLength);
+      }
+      chunkOffsets = new long[offsets.size()];
+      chunkStarts = new long[starts.size()];
+      for (int i = 0; i < chunkOffsets.length; ++i) {
+        chunkOffsets[i] = offsets.get(i);
+        chunkStarts[i] = starts.get(i);
+      }
+    } else {
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer, 0, buffer.length)) > 0) {
+        out.write(buffer, 0, read);
+      }
+      length = out.size();
+    }
+    ByteBuffer bytes = ByteBuffer.allocateDirect(out.size());
+    bytes.put(out.toByteArray());
+    bytes.flip();
+    return new OrcColumnCache.StreamData(name, bytes, chunkOffsets, chunkStarts, length);
+  }
 }
@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.orc;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+
+/**
+ * A size bounded cache of the decompressed data streams of ORC columns. There is one
+ * cache per JVM, so that the tasks that run one after the other in a reused container
+ * do not read and decompress the same stripes again.
+ *
+ * Entries hold all the data streams of one column of one stripe, and are keyed on the
+ * file, its modification time, the stripe and the column; a file that is rewritten gets
+ * new keys and its old entries age out. The least recently used entries are evicted
+ * first. The data is kept in direct buffers, so that it does not add to the heap of the
+ * tasks.
+ */
+class OrcColumnCache {
+
+  private static final Log LOG = LogFactory.getLog(OrcColumnCache.class);
+
+  private static OrcColumnCache instance = null;
+
+  /**
+   * Get the cache of the JVM.
+   * @param conf the configuration with the size of the cache
+   * @return the cache, or null if it is disabled
+   */
+  static synchronized OrcColumnCache getInstance(Configuration conf) {
+    long maxSize = HiveConf.getLongVar(conf, HiveConf.ConfVars.HIVE_ORC_COLUMN_CACHE_SIZE);
+    if (maxSize <= 0) {
+      return null;
+    }
+    if (instance == null) {
+      LOG.info("Creating ORC column cache of " + maxSize + " bytes");
+      instance = new OrcColumnCache(maxSize);
+    }
+    return instance;
+  }
+
+  private final long maxSize;
+  private long currentSize = 0;
+  // in access order, so that the first entry is the least recently used one
+  private final LinkedHashMap<Key, StreamData[]> entries =
+      new LinkedHashMap<Key, StreamData[]>(16, 0.75f, true);
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  OrcColumnCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Get the data streams of a column.
+   * @return the cached streams, or null if the column is not cached
+   */
+  StreamData[] get(Key key) {
+    StreamData[] streams;
+    synchronized (this) {
+      streams = entries.get(key);
+    }
+    if (streams == null) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return streams;
+  }
+
+  /**
+   * Add the data streams of a column, evicting the least recently used columns if the
+   * cache is full. Columns that are larger than the whole cache are not added.
+   */
+  void put(Key key, StreamData[] streams) {
+    long size = getMemorySize(streams);
+    if (size > maxSize) {
+      return;
+    }
+    synchronized (this) {
+      StreamData[] previous = entries.put(key, streams);
+      if (previous != null) {
+        currentSize -= getMemorySize(previous);
+      }
+      currentSize += size;
+      Iterator<Map.Entry<Key, StreamData[]>> iterator = entries.entrySet().iterator();
+      while (currentSize > maxSize && iterator.hasNext()) {
+        Map.Entry<Key, StreamData[]> eldest = iterator.next();
+        if (eldest.getKey().equals(key)) {
+          continue;
+        }
+        currentSize -= getMemorySize(eldest.getValue());
+        iterator.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  private static long getMemorySize(StreamData[] streams) {
+    long size = 0;
+    for (StreamData stream : streams) {
+      size += stream.getMemorySize();
+    }
+    return size;
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  long getEvictions() {
+    return evictions.get();
+  }
+
+  synchronized long getCurrentSize() {
+    return currentSize;
+  }
+
+  @Override
+  public String toString() {
+    return "ORC column cache size: " + getCurrentSize() + " of " + maxSize + " hits: " +
+        hits.get() + " misses: " + misses.get() + " evictions: " + evictions.get();
+  }
+
+  /**
+   * The key of a column of a stripe.
+   */
+  static final class Key {
+    private final Path path;
+    private final long modificationTime;
+    private final long stripeOffset;
+    private final int column;
+
+    Key(Path path, long modificationTime, long stripeOffset, int column) {
+      this.path = path;
+      this.modificationTime = modificationTime;
+      this.stripeOffset = stripeOffset;
+      this.column = column;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key otherKey = (Key) other;
+      return column == otherKey.column && stripeOffset == otherKey.stripeOffset &&
+          modificationTime == otherKey.modificationTime && path.equals(otherKey.path);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = path.hashCode();
+      result = 31 * result + (int) (modificationTime ^ (modificationTime >>> 32));
+      result = 31 * result + (int) (stripeOffset ^ (stripeOffset >>> 32));
+      return 31 * result + column;
+    }
+
+    @Override
+    public String toString() {
+      return path + "@" + modificationTime + " stripe: " + stripeOffset +
+          " column: " + column;
+    }
+  }
+
+  /**
+   * The decompressed bytes of a stream. For compressed streams the offsets of the
+   * compression chunks in the file and in the decompressed bytes are kept, so that the
+   * positions of the row index can be translated.
+   */
+  static final class StreamData {
+    private final StreamName name;
+    private final ByteBuffer bytes;
+    private final long[] chunkOffsets;
+    private final long[] chunkStarts;
+    private final long compressedLength;
+
+    StreamData(StreamName name, ByteBuffer bytes, long[] chunkOffsets, long[] chunkStarts,
+               long compressedLength) {
+      this.name = name;
+      this.bytes = bytes;
+      this.chunkOffsets = chunkOffsets;
+      this.chunkStarts = chunkStarts;
+      this.compressedLength = compressedLength;
+    }
+
+    StreamName getName() {
+      return name;
+    }
+
+    /**
+     * @return the bytes of the stream; callers must duplicate the buffer before
+     *   changing its position
+     */
+    ByteBuffer getBytes() {
+      return bytes;
+    }
+
+    boolean isCompressed() {
+      return chunkOffsets != null;
+    }
+
+    /**
+     * Translate the offset of a compression chunk in the file to the offset of its
+     * first byte in the decompressed bytes.
+     */
+    long getUncompressedOffset(long compressedOffset) {
+      int chunk = Arrays.binarySearch(chunkOffsets, compressedOffset);
+      if (chunk >= 0) {
+        return chunkStarts[chunk];
+      }
+      if (compressedOffset == compressedLength) {
+        return bytes.capacity();
+      }
+      throw new IllegalArgumentException("Seek in " + name + " to " + compressedOffset +
+          " is not at the start of a compression chunk");
+    }
+
+    long getMemorySize() {
+      return bytes.capacity() + (chunkOffsets == null ? 0 : 16L * chunkOffsets.length);
+    }
+  }
+}
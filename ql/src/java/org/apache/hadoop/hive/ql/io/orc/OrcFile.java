@@ -128,7 +128,9 @@ public static enum OrcTableProperties {
     ROW_INDEX_STRIDE("orc.row.index.stride"),
     ENABLE_INDEXES("orc.create.index"),
     BLOCK_PADDING("orc.block.padding"),
-    ENCODING_STRATEGY("orc.encoding.strategy");
+    ENCODING_STRATEGY("orc.encoding.strategy"),
+    BLOOM_FILTER_COLUMNS("orc.bloom.filter.columns"),
+    BLOOM_FILTER_FPP("orc.bloom.filter.fpp");
 
     private final String propName;
 
@@ -236,6 +238,8 @@ public static class WriterOptions {
     private EncodingStrategy encodingStrategy;
     private CompressionStrategy compressionStrategy;
     private float paddingTolerance;
+    private String bloomFilterColumns;
+    private double bloomFilterFpp;
 
     WriterOptions(Configuration conf) {
       configuration = conf;
@@ -271,6 +275,7 @@ public static class WriterOptions {
       paddingTolerance =
           conf.getFloat(HiveConf.ConfVars.HIVE_ORC_BLOCK_PADDING_TOLERANCE.varname,
               HiveConf.ConfVars.HIVE_ORC_BLOCK_PADDING_TOLERANCE.defaultFloatVal);
+      bloomFilterFpp = BloomFilter.DEFAULT_FPP;
     }
 
     /**
@@ -346,6 +351,24 @@ public WriterOptions paddingTolerance(float value) {
       return this;
     }
 
+    /**
+     * Comma separated names of the top level columns that get a bloom filter
+     * for each row group, so that readers can skip the row groups that don't
+     * contain the values of equality and in predicates.
+     */
+    public WriterOptions bloomFilterColumns(String columns) {
+      bloomFilterColumns = columns;
+      return this;
+    }
+
+    /**
+     * Sets the false positive probability of the bloom filters.
+     */
+    public WriterOptions bloomFilterFpp(double fpp) {
+      bloomFilterFpp = fpp;
+      return this;
+    }
+
     /**
      * Sets the generic compression that is used to compress the data.
      */
@@ -419,7 +442,8 @@ public static Writer createWriter(Path path,
                           opts.versionValue, opts.callback,
                           opts.encodingStrategy, opts.compressionStrategy,
                           opts.paddingTolerance,
-                          opts.blockSizeValue);
+                          opts.blockSizeValue, opts.bloomFilterColumns,
+                          opts.bloomFilterFpp);
   }
 
   /**
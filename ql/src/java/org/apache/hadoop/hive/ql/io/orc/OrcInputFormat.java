@@ -74,8 +74,6 @@
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.util.StringUtils;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 /**
  * A MapReduce/Hive input format for ORC files.
@@ -359,7 +357,7 @@ static Path[] getInputPaths(Configuration conf) throws IOException {
    */
   static class Context {
     private final Configuration conf;
-    private static Cache<Path, FileInfo> footerCache;
+    private final OrcMetadataCache footerCache;
     private final ExecutorService threadPool;
     private final List<OrcSplit> splits =
         new ArrayList<OrcSplit>(10000);
@@ -388,23 +386,15 @@ static class Context {
           ConfVars.HIVE_ORC_INCLUDE_FILE_FOOTER_IN_SPLITS);
       numBuckets =
           Math.max(conf.getInt(hive_metastoreConstants.BUCKET_COUNT, 0), 0);
-      int cacheStripeDetailsSize = HiveConf.getIntVar(conf,
-          ConfVars.HIVE_ORC_CACHE_STRIPE_DETAILS_SIZE);
       int numThreads = HiveConf.getIntVar(conf,
           ConfVars.HIVE_ORC_COMPUTE_SPLITS_NUM_THREADS);
 
-      cacheStripeDetails = (cacheStripeDetailsSize > 0);
+      footerCache = OrcMetadataCache.getInstance(conf);
+      cacheStripeDetails = (footerCache != null);
 
       threadPool = Executors.newFixedThreadPool(numThreads,
           new ThreadFactoryBuilder().setDaemon(true)
               .setNameFormat("ORC_GET_SPLITS #%d").build());
-
-      synchronized (Context.class) {
-        if (footerCache == null && cacheStripeDetails) {
-          footerCache = CacheBuilder.newBuilder().concurrencyLevel(numThreads)
-              .initialCapacity(cacheStripeDetailsSize).softValues().build();
-        }
-      }
       String value = conf.get(ValidTxnList.VALID_TXNS_KEY,
                               Long.MAX_VALUE + ":");
       transactionList = new ValidTxnListImpl(value);
@@ -580,34 +570,17 @@ public void run() {
 
     private FileInfo verifyCachedFileInfo(FileStatus file) {
       context.numFilesCounter.incrementAndGet();
-      FileInfo fileInfo = Context.footerCache.getIfPresent(file.getPath());
+      // the cache only returns footers of the current version of the file
+      FileInfo fileInfo = context.footerCache.get(file, fs);
       if (fileInfo != null) {
         if (LOG.isDebugEnabled()) {
           LOG.debug("Info cached for path: " + file.getPath());
         }
-        if (fileInfo.modificationTime == file.getModificationTime() &&
-            fileInfo.size == file.getLen()) {
-          // Cached copy is valid
-          context.cacheHitCounter.incrementAndGet();
-          return fileInfo;
-        } else {
-          // Invalidate
-          Context.footerCache.invalidate(file.getPath());
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("Meta-Info for : " + file.getPath() +
-                " changed. CachedModificationTime: "
-              + fileInfo.modificationTime + ", CurrentModificationTime: "
-              + file.getModificationTime()
-              + ", CachedLength: " + fileInfo.size + ", CurrentLength: " +
-                file.getLen());
-          }
-        }
-      } else {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Info not cached for path: " + file.getPath());
-        }
+        context.cacheHitCounter.incrementAndGet();
+      } else if (LOG.isDebugEnabled()) {
+        LOG.debug("Info not cached for path: " + file.getPath());
       }
-      return null;
+      return fileInfo;
     }
   }
 
@@ -859,33 +832,25 @@ public void run() {
 
     private void populateAndCacheStripeDetails() {
       try {
-        Reader orcReader;
         if (fileInfo != null) {
           stripes = fileInfo.stripeInfos;
-          fileMetaInfo = fileInfo.fileMetaInfo;
           metadata = fileInfo.metadata;
           types = fileInfo.types;
-          // For multiple runs, in case sendSplitsInFooter changes
-          if (fileMetaInfo == null && context.footerInSplits) {
-            orcReader = OrcFile.createReader(file.getPath(),
-                OrcFile.readerOptions(context.conf).filesystem(fs));
-            fileInfo.fileMetaInfo = ((ReaderImpl) orcReader).getFileMetaInfo();
-            fileInfo.metadata = orcReader.getMetadata();
-            fileInfo.types = orcReader.getTypes();
-          }
+          // the cached entries always have the footer, in case sendSplitsInFooter changes
+          fileMetaInfo = context.footerInSplits ? fileInfo.fileMetaInfo : null;
         } else {
-          orcReader = OrcFile.createReader(file.getPath(),
+          Reader orcReader = OrcFile.createReader(file.getPath(),
               OrcFile.readerOptions(context.conf).filesystem(fs));
           stripes = orcReader.getStripes();
           metadata = orcReader.getMetadata();
           types = orcReader.getTypes();
-          fileMetaInfo = context.footerInSplits ?
-              ((ReaderImpl) orcReader).getFileMetaInfo() : null;
+          ReaderImpl.FileMetaInfo footer = ((ReaderImpl) orcReader).getFileMetaInfo();
+          fileMetaInfo = context.footerInSplits ? footer : null;
           if (context.cacheStripeDetails) {
-            // Populate into cache.
-            Context.footerCache.put(file.getPath(),
+            // Populate into cache. The serialized footer is what the cache is sized on.
+            context.footerCache.put(file,
                 new FileInfo(file.getModificationTime(), file.getLen(), stripes,
-                    metadata, types, fileMetaInfo));
+                    metadata, types, footer));
           }
         }
       } catch (Throwable th) {
@@ -973,7 +938,7 @@ public InputSplit[] getSplits(JobConf job,
    * Stores information relevant to split generation for an ORC File.
    *
    */
-  private static class FileInfo {
+  static class FileInfo {
     long modificationTime;
     long size;
     List<StripeInformation> stripeInfos;
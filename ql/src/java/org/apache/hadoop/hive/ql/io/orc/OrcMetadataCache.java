@@ -0,0 +1,376 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.orc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.io.IOUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * The cache of ORC footers used by the split generation, shared by all the queries of a
+ * client or HiveServer2 process.
+ *
+ * The footers are kept in memory up to a total size of their serialized bytes, and the
+ * least recently used ones are evicted first. Optionally every footer is also written to
+ * a local directory, from which it is read back after it has been evicted or the process
+ * has been restarted. A cached footer is only used while the modification time and the
+ * length of the file are unchanged.
+ */
+public class OrcMetadataCache implements OrcMetadataCacheMBean {
+
+  private static final Log LOG = LogFactory.getLog(OrcMetadataCache.class);
+
+  private static final int DISK_FORMAT_VERSION = 1;
+  private static final String DISK_FILE_SUFFIX = ".footer";
+
+  private static OrcMetadataCache instance = null;
+
+  /**
+   * Get the cache of the process. The sizes and the directory are taken from the
+   * configuration that creates it.
+   * @return the cache, or null if it is disabled
+   */
+  static synchronized OrcMetadataCache getInstance(Configuration conf) {
+    int initialCapacity = HiveConf.getIntVar(conf, ConfVars.HIVE_ORC_CACHE_STRIPE_DETAILS_SIZE);
+    if (initialCapacity <= 0) {
+      return null;
+    }
+    if (instance == null) {
+      String dir = HiveConf.getVar(conf, ConfVars.HIVE_ORC_CACHE_STRIPE_DETAILS_DIR);
+      instance = new OrcMetadataCache(conf, initialCapacity,
+          HiveConf.getIntVar(conf, ConfVars.HIVE_ORC_COMPUTE_SPLITS_NUM_THREADS),
+          HiveConf.getLongVar(conf, ConfVars.HIVE_ORC_CACHE_STRIPE_DETAILS_MEMORY_SIZE),
+          dir == null || dir.isEmpty() ? null : new File(dir));
+      instance.registerMBean();
+    }
+    return instance;
+  }
+
+  private final Configuration conf;
+  private final Cache<Path, OrcInputFormat.FileInfo> cache;
+  private final File dir;
+
+  private final AtomicLong size = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong diskHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  OrcMetadataCache(Configuration conf, int initialCapacity, int concurrencyLevel,
+                   long maxSize, File dir) {
+    this.conf = conf;
+    this.dir = dir;
+    this.cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(Math.max(1, concurrencyLevel))
+        .initialCapacity(initialCapacity)
+        .maximumWeight(maxSize)
+        .weigher(new Weigher<Path, OrcInputFormat.FileInfo>() {
+          @Override
+          public int weigh(Path path, OrcInputFormat.FileInfo info) {
+            return getFooterSize(info);
+          }
+        })
+        .removalListener(new RemovalListener<Path, OrcInputFormat.FileInfo>() {
+          @Override
+          public void onRemoval(RemovalNotification<Path, OrcInputFormat.FileInfo> removed) {
+            size.addAndGet(-getFooterSize(removed.getValue()));
+            if (removed.wasEvicted()) {
+              evictions.incrementAndGet();
+            }
+          }
+        })
+        .build();
+    LOG.info("Created ORC footer cache of " + maxSize + " bytes" +
+        (dir == null ? "" : " persisted in " + dir));
+  }
+
+  private void registerMBean() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+          new ObjectName("org.apache.hadoop.hive.ql.io.orc:type=OrcMetadataCache"));
+    } catch (Exception e) {
+      LOG.warn("Unable to register the ORC footer cache MBean", e);
+    }
+  }
+
+  /**
+   * Get the footer of a file, from memory or from the local directory.
+   * @param file the current status of the file
+   * @param fs the file system of the file
+   * @return the footer, or null if there is no valid footer for the file
+   */
+  OrcInputFormat.FileInfo get(FileStatus file, FileSystem fs) {
+    Path path = file.getPath();
+    OrcInputFormat.FileInfo info = cache.getIfPresent(path);
+    if (info != null) {
+      if (isValid(info, file)) {
+        hits.incrementAndGet();
+        return info;
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Meta-Info for : " + path + " changed. CachedModificationTime: " +
+            info.modificationTime + ", CurrentModificationTime: " +
+            file.getModificationTime() + ", CachedLength: " + info.size +
+            ", CurrentLength: " + file.getLen());
+      }
+      cache.invalidate(path);
+    }
+    if (dir != null) {
+      info = readFromDisk(file, fs);
+      if (info != null) {
+        diskHits.incrementAndGet();
+        putInMemory(path, info);
+        return info;
+      }
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Add the footer of a file. The footer must have the serialized file meta info.
+   */
+  void put(FileStatus file, OrcInputFormat.FileInfo info) {
+    putInMemory(file.getPath(), info);
+    if (dir != null) {
+      writeToDisk(file, info);
+    }
+  }
+
+  /**
+   * Remove the footer of a file from memory and from the local disk.
+   */
+  void invalidate(Path path) {
+    cache.invalidate(path);
+    if (dir != null) {
+      File diskFile = getDiskFile(path);
+      if (diskFile.exists() && !diskFile.delete()) {
+        LOG.warn("Unable to delete cached footer " + diskFile);
+      }
+    }
+  }
+
+  private void putInMemory(Path path, OrcInputFormat.FileInfo info) {
+    // add first, so that the size does not go negative if the entry is replaced
+    size.addAndGet(getFooterSize(info));
+    cache.put(path, info);
+  }
+
+  private static boolean isValid(OrcInputFormat.FileInfo info, FileStatus file) {
+    return info.modificationTime == file.getModificationTime() &&
+        info.size == file.getLen();
+  }
+
+  private static ByteBuffer getFooterBytes(ReaderImpl.FileMetaInfo metaInfo) {
+    // the footer starts at the mark, which the position may have moved away from
+    ByteBuffer footer = metaInfo.footerBuffer.duplicate();
+    footer.reset();
+    return footer;
+  }
+
+  private static int getFooterSize(OrcInputFormat.FileInfo info) {
+    return info.fileMetaInfo == null ? 0 : getFooterBytes(info.fileMetaInfo).remaining();
+  }
+
+  private File getDiskFile(Path path) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      byte[] hash = digest.digest(path.toString().getBytes("UTF-8"));
+      StringBuilder name = new StringBuilder(hash.length * 2 + DISK_FILE_SUFFIX.length());
+      for (byte b : hash) {
+        name.append(Character.forDigit((b >> 4) & 0xf, 16));
+        name.append(Character.forDigit(b & 0xf, 16));
+      }
+      return new File(dir, name.append(DISK_FILE_SUFFIX).toString());
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void writeToDisk(FileStatus file, OrcInputFormat.FileInfo info) {
+    if (info.fileMetaInfo == null) {
+      return;
+    }
+    File diskFile = getDiskFile(file.getPath());
+    File tmpFile = new File(dir, diskFile.getName() + "." + Thread.currentThread().getId() +
+        ".tmp");
+    DataOutputStream out = null;
+    try {
+      if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+        throw new IOException("Unable to create " + dir);
+      }
+      out = new DataOutputStream(new FileOutputStream(tmpFile));
+      ReaderImpl.FileMetaInfo metaInfo = info.fileMetaInfo;
+      out.writeInt(DISK_FORMAT_VERSION);
+      out.writeUTF(file.getPath().toString());
+      out.writeLong(file.getModificationTime());
+      out.writeLong(file.getLen());
+      out.writeUTF(metaInfo.compressionType);
+      out.writeInt(metaInfo.bufferSize);
+      out.writeInt(metaInfo.metadataSize);
+      List<Integer> versions = metaInfo.versionList;
+      out.writeInt(versions == null ? -1 : versions.size());
+      if (versions != null) {
+        for (Integer version : versions) {
+          out.writeInt(version);
+        }
+      }
+      ByteBuffer footer = getFooterBytes(metaInfo);
+      byte[] bytes = new byte[footer.remaining()];
+      footer.get(bytes);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      out.close();
+      out = null;
+      // replace the old version atomically, so that readers never see a partial file
+      if (!tmpFile.renameTo(diskFile)) {
+        diskFile.delete();
+        if (!tmpFile.renameTo(diskFile)) {
+          throw new IOException("Unable to rename " + tmpFile + " to " + diskFile);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to write the footer of " + file.getPath() + " to " + diskFile, e);
+      tmpFile.delete();
+    } finally {
+      IOUtils.closeStream(out);
+    }
+  }
+
+  private OrcInputFormat.FileInfo readFromDisk(FileStatus file, FileSystem fs) {
+    File diskFile = getDiskFile(file.getPath());
+    if (!diskFile.exists()) {
+      return null;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new FileInputStream(diskFile));
+      if (in.readInt() != DISK_FORMAT_VERSION ||
+          !in.readUTF().equals(file.getPath().toString()) ||
+          in.readLong() != file.getModificationTime() ||
+          in.readLong() != file.getLen()) {
+        return null;
+      }
+      String compressionType = in.readUTF();
+      int bufferSize = in.readInt();
+      int metadataSize = in.readInt();
+      int numVersions = in.readInt();
+      List<Integer> versions = null;
+      if (numVersions >= 0) {
+        versions = new ArrayList<Integer>(numVersions);
+        for (int i = 0; i < numVersions; ++i) {
+          versions.add(in.readInt());
+        }
+      }
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      ByteBuffer footer = ByteBuffer.wrap(bytes);
+      footer.mark();
+      ReaderImpl.FileMetaInfo metaInfo = new ReaderImpl.FileMetaInfo(compressionType,
+          bufferSize, metadataSize, footer, versions);
+
+      // the reader only parses the footer, it does not open the file
+      Reader reader = OrcFile.createReader(file.getPath(),
+          OrcFile.readerOptions(conf).filesystem(fs).fileMetaInfo(metaInfo));
+      return new OrcInputFormat.FileInfo(file.getModificationTime(), file.getLen(),
+          reader.getStripes(), reader.getMetadata(), reader.getTypes(), metaInfo);
+    } catch (IOException e) {
+      LOG.warn("Unable to read the cached footer of " + file.getPath() + " from " +
+          diskFile, e);
+      return null;
+    } finally {
+      IOUtils.closeStream(in);
+    }
+  }
+
+  @Override
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  @Override
+  public long getDiskHitCount() {
+    return diskHits.get();
+  }
+
+  @Override
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  @Override
+  public long getEntryCount() {
+    return cache.size();
+  }
+
+  @Override
+  public long getSize() {
+    return size.get();
+  }
+
+  @Override
+  public void clear() {
+    cache.invalidateAll();
+    if (dir != null) {
+      File[] files = dir.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          if (file.getName().endsWith(DISK_FILE_SUFFIX)) {
+            file.delete();
+          }
+        }
+      }
+    }
+  }
+}
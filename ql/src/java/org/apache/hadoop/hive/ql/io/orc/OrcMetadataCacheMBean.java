@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.orc;
+
+/**
+ * MBean definition for the ORC footer cache of the split generation, exposed over jmx.
+ */
+public interface OrcMetadataCacheMBean {
+
+  /**
+   * @return the number of lookups that found a valid footer in memory
+   */
+  long getHitCount();
+
+  /**
+   * @return the number of lookups that found a valid footer on the local disk
+   */
+  long getDiskHitCount();
+
+  /**
+   * @return the number of lookups that had to read the footer from the file
+   */
+  long getMissCount();
+
+  /**
+   * @return the number of footers evicted from memory to stay within the size limit
+   */
+  long getEvictionCount();
+
+  /**
+   * @return the number of footers in memory
+   */
+  long getEntryCount();
+
+  /**
+   * @return the size in bytes of the serialized footers in memory
+   */
+  long getSize();
+
+  /**
+   * Removes all the footers from memory and from the local disk.
+   */
+  void clear();
+}
@@ -170,6 +170,16 @@ private OrcFile.WriterOptions getOptions(JobConf conf, Properties props) {
       options.encodingStrategy(EncodingStrategy.valueOf(propVal));
     }
 
+    if ((propVal = getSettingFromPropsFallingBackToConf(
+        OrcFile.OrcTableProperties.BLOOM_FILTER_COLUMNS.getPropName(),props,conf)) != null){
+      options.bloomFilterColumns(propVal);
+    }
+
+    if ((propVal = getSettingFromPropsFallingBackToConf(
+        OrcFile.OrcTableProperties.BLOOM_FILTER_FPP.getPropName(),props,conf)) != null){
+      options.bloomFilterFpp(Double.parseDouble(propVal));
+    }
+
     return options;
   }
 
@@ -19,6 +19,12 @@
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 class OutStream extends PositionedOutputStream {
 
@@ -32,6 +38,9 @@ interface OutputReceiver {
   }
 
   static final int HEADER_SIZE = 3;
+  // the number of buffers that may be compressing in the background, before
+  // the writer waits for the oldest one
+  static final int MAX_PENDING_BUFFERS = 4;
   private final String name;
   private final OutputReceiver receiver;
   // if enabled the stream will be suppressed when writing stripe
@@ -64,15 +73,34 @@ interface OutputReceiver {
   private long compressedBytes = 0;
   private long uncompressedBytes = 0;
 
+  /**
+   * The pool that compresses the full buffers in the background or null to
+   * compress them when they fill. The compressed buffers are passed to the
+   * receiver in order, when they are done and before anything depends on
+   * the compressed size of the stream.
+   */
+  private final ExecutorService compressionPool;
+  private final Deque<Future<ByteBuffer>> pending =
+      new ArrayDeque<Future<ByteBuffer>>();
+
   OutStream(String name,
             int bufferSize,
             CompressionCodec codec,
             OutputReceiver receiver) throws IOException {
+    this(name, bufferSize, codec, receiver, null);
+  }
+
+  OutStream(String name,
+            int bufferSize,
+            CompressionCodec codec,
+            OutputReceiver receiver,
+            ExecutorService compressionPool) throws IOException {
     this.name = name;
     this.bufferSize = bufferSize;
     this.codec = codec;
     this.receiver = receiver;
     this.suppress = false;
+    this.compressionPool = codec == null ? null : compressionPool;
   }
 
   public void clear() throws IOException {
@@ -163,6 +191,17 @@ private void spill() throws java.io.IOException {
     if (codec == null) {
       receiver.output(current);
       getNewInputBuffer();
+    } else if (compressionPool != null) {
+      final ByteBuffer input = current;
+      pending.add(compressionPool.submit(new Callable<ByteBuffer>() {
+        @Override
+        public ByteBuffer call() throws IOException {
+          return compressBuffer(input);
+        }
+      }));
+      uncompressedBytes = 0;
+      getNewInputBuffer();
+      outputCompressed(MAX_PENDING_BUFFERS);
     } else {
       if (compressed == null) {
         compressed = getNewOutputBuffer();
@@ -225,10 +264,66 @@ private void spill() throws java.io.IOException {
     }
   }
 
+  /**
+   * Compress a full buffer into a chunk of its own, which is the same
+   * chunk that spill adds to the compressed buffer.
+   * @param input the buffer with the header space and the bytes to compress
+   * @return the chunk with its header
+   */
+  private ByteBuffer compressBuffer(ByteBuffer input) throws IOException {
+    int length = input.remaining();
+    ByteBuffer chunk = ByteBuffer.allocate(length + HEADER_SIZE);
+    chunk.position(HEADER_SIZE);
+    if (codec.compress(input, chunk, null)) {
+      writeHeader(chunk, 0, chunk.position() - HEADER_SIZE, false);
+      chunk.flip();
+      return chunk;
+    }
+    // the compressed bytes are bigger, so use the original
+    input.position(0);
+    writeHeader(input, 0, length, true);
+    return input;
+  }
+
+  /**
+   * Pass the compressed chunks to the receiver in order until at most
+   * maxPending buffers are still being compressed.
+   */
+  private void outputCompressed(int maxPending) throws IOException {
+    while (pending.size() > maxPending) {
+      ByteBuffer chunk;
+      try {
+        chunk = pending.removeFirst().get();
+      } catch (InterruptedException ie) {
+        throw new IOException("Interrupted compressing " + name, ie);
+      } catch (ExecutionException ee) {
+        if (ee.getCause() instanceof IOException) {
+          throw (IOException) ee.getCause();
+        }
+        throw new IOException("Problem compressing " + name, ee.getCause());
+      }
+      compressedBytes += chunk.remaining();
+      receiver.output(chunk);
+    }
+  }
+
+  /**
+   * Start compressing the buffered bytes in the background, so that the
+   * streams of a stripe can compress their last buffers in parallel before
+   * they are flushed.
+   */
+  void startFlush() throws IOException {
+    if (compressionPool != null) {
+      spill();
+    }
+  }
+
   void getPosition(PositionRecorder recorder) throws IOException {
     if (codec == null) {
       recorder.addPosition(uncompressedBytes);
     } else {
+      // the position is the compressed size of the previous chunks
+      outputCompressed(0);
       recorder.addPosition(compressedBytes);
       recorder.addPosition(uncompressedBytes);
     }
@@ -237,6 +332,7 @@ void getPosition(PositionRecorder recorder) throws IOException {
   @Override
   public void flush() throws IOException {
     spill();
+    outputCompressed(0);
     if (compressed != null && compressed.position() != 0) {
       compressed.flip();
       receiver.output(compressed);
@@ -265,6 +361,7 @@ public long getBufferSize() {
     if (overflow != null) {
       result += overflow.capacity();
     }
+    result += (long) pending.size() * (bufferSize + HEADER_SIZE);
     return result;
   }
 
@@ -17,13 +17,18 @@
  */
 package org.apache.hadoop.hive.ql.io.orc;
 
+import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.HIVE_ORC_LAZY_MATERIALIZATION;
 import static org.apache.hadoop.hive.conf.HiveConf.ConfVars.HIVE_ORC_ZEROCOPY;
 
+import java.io.DataInputStream;
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -104,12 +109,26 @@ class RecordReaderImpl implements RecordReader {
   private final List<PredicateLeaf> sargLeaves;
   // an array the same length as the sargLeaves that map them to column ids
   private final int[] filterColumns;
+  // the columns with equality or in predicates, whose bloom filters are read
+  private final boolean[] bloomFilterColumns;
+  // the bloom filters of the current stripe for each column and row group
+  private final BloomFilter[][] bloomFilters;
+  // evaluates the sarg on the rows of the batches or null if the columns
+  // are all decoded together
+  private final VectorizedSargFilter batchFilter;
   // an array about which row groups aren't skipped
   private boolean[] includedRowGroups = null;
   private final Configuration conf;
 
   private final ByteBufferAllocatorPool pool = new ByteBufferAllocatorPool();
   private final ZeroCopyReaderShim zcr;
+  // the local file that the stripes are memory mapped from for zero copy reads
+  private final FileChannel mappedFile;
+
+  private final Path path;
+  // the cache of decompressed column streams, or null if it is disabled
+  private final OrcColumnCache columnCache;
+  private final long modificationTime;
 
   // this is an implementation copied from ElasticByteBufferPool in hadoop-2,
   // which lacks a clear()/clean() operation
@@ -240,6 +259,7 @@ static int[] mapSargColumns(List<PredicateLeaf> sargLeaves,
                    Configuration conf
                   ) throws IOException {
     this.file = fileSystem.open(path);
+    this.path = path;
     this.codec = codec;
     this.types = types;
     this.bufferSize = bufferSize;
@@ -249,10 +269,18 @@ static int[] mapSargColumns(List<PredicateLeaf> sargLeaves,
     if (sarg != null) {
       sargLeaves = sarg.getLeaves();
       filterColumns = mapSargColumns(sargLeaves, options.getColumnNames(), 0);
+      bloomFilterColumns = new boolean[types.size()];
+      for(int i=0; i < filterColumns.length; ++i) {
+        if (filterColumns[i] != -1 && usesBloomFilter(sargLeaves.get(i))) {
+          bloomFilterColumns[filterColumns[i]] = true;
+        }
+      }
     } else {
       sargLeaves = null;
       filterColumns = null;
+      bloomFilterColumns = null;
     }
+    bloomFilters = new BloomFilter[types.size()][];
     long rows = 0;
     long skippedRows = 0;
     long offset = options.getOffset();
@@ -274,14 +302,38 @@ static int[] mapSargColumns(List<PredicateLeaf> sargLeaves,
         && (codec == null || ((codec instanceof DirectDecompressionCodec)
             && ((DirectDecompressionCodec) codec).isAvailable()))) {
       /* codec is null or is available */
-      this.zcr = ShimLoader.getHadoopShims().getZeroCopyReader(file, pool);
+      if ("file".equals(fileSystem.getUri().getScheme())) {
+        // local files are mapped directly, without going through the file system
+        this.mappedFile = new RandomAccessFile(
+            new File(fileSystem.makeQualified(path).toUri().getPath()), "r")
+            .getChannel();
+        this.zcr = null;
+      } else {
+        this.mappedFile = null;
+        this.zcr = ShimLoader.getHadoopShims().getZeroCopyReader(file, pool);
+      }
     } else {
+      this.mappedFile = null;
       this.zcr = null;
     }
 
+    this.columnCache = (conf == null) ? null : OrcColumnCache.getInstance(conf);
+    // rewritten files must not see the cached streams of their previous version
+    this.modificationTime = (columnCache == null) ? 0 :
+        fileSystem.getFileStatus(path).getModificationTime();
+
     firstRow = skippedRows;
     totalRowCount = rows;
     reader = createTreeReader(path, 0, types, included, conf);
+    if (sarg != null && conf != null &&
+        HiveConf.getBoolVar(conf, HIVE_ORC_LAZY_MATERIALIZATION) &&
+        reader instanceof StructTreeReader) {
+      VectorizedSargFilter filter = new VectorizedSargFilter(sarg, sargLeaves,
+          filterColumns, types, included);
+      batchFilter = filter.hasPredicateFields() ? filter : null;
+    } else {
+      batchFilter = null;
+    }
     indexes = new OrcProto.RowIndex[types.size()];
     rowIndexStride = strideRate;
     advanceToNextRow(0L);
@@ -1530,6 +1582,7 @@ Object nextVector(Object previousVector, long batchSize) throws IOException {
       // Read present/isNull stream
       super.nextVector(result, batchSize);
 
+      result.dictionary = null;
       BytesColumnVectorUtil.readOrcByteArrays(stream, lengths, scratchlcv, result, batchSize);
       return result;
     }
@@ -1552,9 +1605,12 @@ void skipRows(long items) throws IOException {
   private static class StringDictionaryTreeReader extends TreeReader {
     private DynamicByteArray dictionaryBuffer;
     private int[] dictionaryOffsets;
+    private int dictionarySize;
     private IntegerReader reader;
 
     private byte[] dictionaryBufferInBytesCache = null;
+    // the entries of the current dictionary, which the vectors reference
+    private BytesColumnVector dictionaryVector = null;
     private final LongColumnVector scratchlcv;
 
     StringDictionaryTreeReader(Path path, int columnId, Configuration conf) {
@@ -1578,7 +1634,8 @@ void startStripe(Map<StreamName, InStream> streams,
       super.startStripe(streams, encodings);
 
       // read the dictionary blob
-      int dictionarySize = encodings.get(columnId).getDictionarySize();
+      dictionarySize = encodings.get(columnId).getDictionarySize();
+      dictionaryVector = null;
       StreamName name = new StreamName(columnId,
           OrcProto.Stream.Kind.DICTIONARY_DATA);
       InStream in = streams.get(name);
@@ -1665,6 +1722,14 @@ Object nextVector(Object previousVector, long batchSize) throws IOException {
         if (dictionaryBufferInBytesCache == null) {
           dictionaryBufferInBytesCache = dictionaryBuffer.get();
         }
+        if (dictionaryVector == null) {
+          dictionaryVector = createDictionaryVector();
+        }
+        if (result.dictionaryIds == null ||
+            result.dictionaryIds.length < result.isNull.length) {
+          result.dictionaryIds = new int[result.isNull.length];
+        }
+        int[] ids = result.dictionaryIds;
 
         // Read string offsets
         scratchlcv.isNull = result.isNull;
@@ -1675,9 +1740,10 @@ Object nextVector(Object previousVector, long batchSize) throws IOException {
           // and set strings one by one
           for (int i = 0; i < batchSize; i++) {
             if (!scratchlcv.isNull[i]) {
-              offset = dictionaryOffsets[(int) scratchlcv.vector[i]];
-              length = getDictionaryEntryLength((int) scratchlcv.vector[i], offset);
-              result.setRef(i, dictionaryBufferInBytesCache, offset, length);
+              int entry = (int) scratchlcv.vector[i];
+              ids[i] = entry;
+              result.setRef(i, dictionaryBufferInBytesCache,
+                  dictionaryVector.start[entry], dictionaryVector.length[entry]);
             } else {
               // If the value is null then set offset and length to zero (null string)
               result.setRef(i, dictionaryBufferInBytesCache, 0, 0);
@@ -1689,11 +1755,14 @@ Object nextVector(Object previousVector, long batchSize) throws IOException {
           // set all the elements to the same value
           offset = dictionaryOffsets[(int) scratchlcv.vector[0]];
           length = getDictionaryEntryLength((int) scratchlcv.vector[0], offset);
+          ids[0] = (int) scratchlcv.vector[0];
           result.setRef(0, dictionaryBufferInBytesCache, offset, length);
         }
         result.isRepeating = scratchlcv.isRepeating;
+        result.dictionary = dictionaryVector;
       } else {
         // Entire stripe contains null strings.
+        result.dictionary = null;
         result.isRepeating = true;
         result.noNulls = false;
         result.isNull[0] = true;
@@ -1702,6 +1771,20 @@ Object nextVector(Object previousVector, long batchSize) throws IOException {
       return result;
     }
 
+    /**
+     * Build the vector of the dictionary entries, which is shared by the
+     * batches of the stripe.
+     */
+    private BytesColumnVector createDictionaryVector() {
+      BytesColumnVector entries = new BytesColumnVector(dictionarySize);
+      for (int entry = 0; entry < dictionarySize; entry++) {
+        int offset = dictionaryOffsets[entry];
+        entries.setRef(entry, dictionaryBufferInBytesCache, offset,
+            getDictionaryEntryLength(entry, offset));
+      }
+      return entries;
+    }
+
     int getDictionaryEntryLength(int entry, int offset) {
       int length = 0;
       // if it isn't the last entry, subtract the offsets otherwise use
@@ -1752,6 +1835,8 @@ Object nextVector(Object previousVector, long batchSize) throws IOException {
       // Get the vector of strings from StringTreeReader, then make a 2nd pass to
       // adjust down the length (right trim and truncate) if necessary.
       BytesColumnVector result = (BytesColumnVector) super.nextVector(previousVector, batchSize);
+      // the adjusted values don't match the dictionary entries anymore
+      result.dictionary = null;
 
       int adjustedDownLen;
       if (result.isRepeating) {
@@ -1816,6 +1901,8 @@ Object nextVector(Object previousVector, long batchSize) throws IOException {
       // Get the vector of strings from StringTreeReader, then make a 2nd pass to
       // adjust down the length (truncate) if necessary.
       BytesColumnVector result = (BytesColumnVector) super.nextVector(previousVector, batchSize);
+      // the adjusted values don't match the dictionary entries anymore
+      result.dictionary = null;
 
       int adjustedDownLen;
       if (result.isRepeating) {
@@ -1927,6 +2014,26 @@ Object nextVector(Object previousVector, long batchSize) throws IOException {
       return result;
     }
 
+    /**
+     * Read the next batch of a subset of the fields, so that the lazy
+     * materialization can read the other fields afterwards.
+     * @param result the vectors of the fields
+     * @param batchSize the number of rows to read
+     * @param selectedFields the fields to read
+     */
+    void nextVector(ColumnVector[] result, long batchSize,
+                    boolean[] selectedFields) throws IOException {
+      for (int i = 0; i < fields.length; i++) {
+        if (fields[i] != null && selectedFields[i]) {
+          if (result[i] == null) {
+            result[i] = (ColumnVector) fields[i].nextVector(null, batchSize);
+          } else {
+            fields[i].nextVector(result[i], batchSize);
+          }
+        }
+      }
+    }
+
     @Override
     void startStripe(Map<StreamName, InStream> streams,
                      List<OrcProto.ColumnEncoding> encodings
@@ -1948,6 +2055,20 @@ void skipRows(long items) throws IOException {
         }
       }
     }
+
+    /**
+     * Skip the rows of a subset of the fields, which were not read for a
+     * batch that the lazy materialization filtered out.
+     * @param items the number of rows to skip
+     * @param selectedFields the fields to skip
+     */
+    void skipRows(long items, boolean[] selectedFields) throws IOException {
+      for (int i = 0; i < fields.length; i++) {
+        if (fields[i] != null && selectedFields[i]) {
+          fields[i].skipRows(items);
+        }
+      }
+    }
   }
 
   private static class UnionTreeReader extends TreeReader {
@@ -2388,6 +2509,109 @@ static Object getMin(ColumnStatistics index) {
    */
   static TruthValue evaluatePredicate(OrcProto.ColumnStatistics index,
                                       PredicateLeaf predicate) {
+    return evaluatePredicate(index, predicate, null, null);
+  }
+
+  /**
+   * Evaluate a predicate with respect to the statistics and the bloom filter
+   * of the column that is referenced in the predicate. The bloom filter rules
+   * out the row groups that don't have the values of equality and in
+   * predicates, even when the values are between the min and max.
+   * @param index the statistics for the column mentioned in the predicate
+   * @param predicate the leaf predicate we need to evaluation
+   * @param type the type of the column
+   * @param bloomFilter the bloom filter of the column or null if there is none
+   * @return the set of truth values that may be returned for the given
+   *   predicate.
+   */
+  static TruthValue evaluatePredicate(OrcProto.ColumnStatistics index,
+                                      PredicateLeaf predicate,
+                                      OrcProto.Type type,
+                                      BloomFilter bloomFilter) {
+    TruthValue result = evaluatePredicateStatistics(index, predicate);
+    if (bloomFilter == null || !result.isNeeded()) {
+      return result;
+    }
+    switch (predicate.getOperator()) {
+      case EQUALS:
+        if (!mightContain(bloomFilter, type, predicate.getLiteral())) {
+          return TruthValue.NO_NULL;
+        }
+        break;
+      case NULL_SAFE_EQUALS:
+        if (!mightContain(bloomFilter, type, predicate.getLiteral())) {
+          return TruthValue.NO;
+        }
+        break;
+      case IN:
+        for(Object literal: predicate.getLiteralList()) {
+          if (mightContain(bloomFilter, type, literal)) {
+            return result;
+          }
+        }
+        return TruthValue.NO_NULL;
+      default:
+        break;
+    }
+    return result;
+  }
+
+  static boolean usesBloomFilter(PredicateLeaf predicate) {
+    switch (predicate.getOperator()) {
+      case EQUALS:
+      case NULL_SAFE_EQUALS:
+      case IN:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Check the bloom filter for a literal of a predicate, after converting it
+   * to the value that the writer added for the column's type.
+   * @return false if the column definitely doesn't have the value
+   */
+  private static boolean mightContain(BloomFilter bloomFilter,
+                                      OrcProto.Type type,
+                                      Object literal) {
+    if (literal instanceof ExprNodeConstantDesc) {
+      literal = ((ExprNodeConstantDesc) literal).getValue();
+    }
+    if (literal == null) {
+      return true;
+    }
+    Object value;
+    try {
+      switch (type.getKind()) {
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+          value = getBaseObjectForComparison(literal, Long.valueOf(0));
+          return !(value instanceof Long) ||
+              bloomFilter.testLong(((Long) value).longValue());
+        case DOUBLE:
+          value = getBaseObjectForComparison(literal, Double.valueOf(0));
+          return !(value instanceof Double) ||
+              bloomFilter.testDouble(((Double) value).doubleValue());
+        case STRING:
+        case CHAR:
+        case VARCHAR:
+          return bloomFilter.testString(literal.toString());
+        case DATE:
+          return !(literal instanceof DateWritable) ||
+              bloomFilter.testLong(((DateWritable) literal).getDays());
+        default:
+          return true;
+      }
+    } catch (NumberFormatException nfe) {
+      return true;
+    }
+  }
+
+  private static TruthValue evaluatePredicateStatistics(
+      OrcProto.ColumnStatistics index, PredicateLeaf predicate) {
     ColumnStatistics cs = ColumnStatisticsImpl.deserialize(index);
     Object minValue = getMin(cs);
     // if we didn't have any values, everything must have been null
@@ -2402,8 +2626,17 @@ static TruthValue evaluatePredicate(OrcProto.ColumnStatistics index,
     return evaluatePredicateRange(predicate, minValue, maxValue);
   }
 
-  static TruthValue evaluatePredicateRange(PredicateLeaf predicate, Object min,
-      Object max) {
+  /**
+   * Evaluate a predicate on a range of values, which the other file formats
+   * use for their column statistics too.
+   * @param predicate the leaf predicate to evaluate
+   * @param min the minimum value as a Long, Double, String, DateWritable or
+   *    HiveDecimal
+   * @param max the maximum value of the same type
+   * @return the set of truth values that the predicate may have on the range
+   */
+  public static TruthValue evaluatePredicateRange(PredicateLeaf predicate,
+      Object min, Object max) {
     Location loc;
     try {
       // Predicate object and stats object can be one of the following base types
@@ -2584,9 +2817,13 @@ private boolean[] pickRowGroups() throws IOException {
     for(int rowGroup=0; rowGroup < result.length; ++rowGroup) {
       for(int pred=0; pred < leafValues.length; ++pred) {
         if (filterColumns[pred] != -1) {
+          int column = filterColumns[pred];
           OrcProto.ColumnStatistics stats =
-              indexes[filterColumns[pred]].getEntry(rowGroup).getStatistics();
-          leafValues[pred] = evaluatePredicate(stats, sargLeaves.get(pred));
+              indexes[column].getEntry(rowGroup).getStatistics();
+          BloomFilter bloomFilter = bloomFilters[column] == null ? null :
+              bloomFilters[column][rowGroup];
+          leafValues[pred] = evaluatePredicate(stats, sargLeaves.get(pred),
+              types.get(column), bloomFilter);
           if (LOG.isDebugEnabled()) {
             LOG.debug("Stats = " + stats);
             LOG.debug("Setting " + sargLeaves.get(pred) + " to " +
@@ -2648,6 +2885,7 @@ private void readStripe() throws IOException {
     // reset all of the indexes
     for(int i=0; i < indexes.length; ++i) {
       indexes[i] = null;
+      bloomFilters[i] = null;
     }
     includedRowGroups = pickRowGroups();
 
@@ -2661,8 +2899,11 @@ private void readStripe() throws IOException {
 
     // if we haven't skipped the whole stripe, read the data
     if (rowInStripe < rowCountInStripe) {
-      // if we aren't projecting columns or filtering rows, just read it all
-      if (included == null && includedRowGroups == null) {
+      // if we aren't filtering rows, whole columns can go through the cache
+      if (columnCache != null && includedRowGroups == null) {
+        readCachedDataStreams(stripe);
+      } else if (included == null && includedRowGroups == null) {
+        // if we aren't projecting columns or filtering rows, just read it all
         readAllDataStreams(stripe);
       } else {
         readPartialDataStreams(stripe);
@@ -2944,6 +3185,12 @@ List<BufferChunk> readDiskRanges(FSDataInputStream file,
     for(DiskRange range: ranges) {
       int len = (int) (range.end - range.offset);
       long off = range.offset;
+      if (mappedFile != null) {
+        // the mapping stays valid after the channel is closed and is released by the gc
+        result.add(new BufferChunk(
+            mappedFile.map(FileChannel.MapMode.READ_ONLY, base + off, len), off));
+        continue;
+      }
       file.seek(base + off);
       if(zcr != null) {
         while(len > 0) {
@@ -3068,6 +3315,64 @@ private void readPartialDataStreams(StripeInformation stripe
         streams);
   }
 
+  /**
+   * Read the data streams of the included columns through the column cache. Only the
+   * columns that are not in the cache are read from the file; their streams are
+   * decompressed once and added to the cache.
+   */
+  private void readCachedDataStreams(StripeInformation stripe
+                                     ) throws IOException {
+    List<OrcProto.Stream> streamList = stripeFooter.getStreamsList();
+    boolean[] missing = new boolean[types.size()];
+    boolean anyMissing = false;
+    for(int column = 0; column < missing.length; ++column) {
+      if (included != null && !included[column]) {
+        continue;
+      }
+      OrcColumnCache.StreamData[] cached = columnCache.get(
+          new OrcColumnCache.Key(path, modificationTime, stripe.getOffset(), column));
+      if (cached == null) {
+        missing[column] = true;
+        anyMissing = true;
+      } else {
+        for(OrcColumnCache.StreamData data: cached) {
+          streams.put(data.getName(), InStream.create(data.getName().toString(), data));
+        }
+      }
+    }
+    if (!anyMissing) {
+      return;
+    }
+
+    List<DiskRange> chunks =
+        planReadPartialDataStreams(streamList, indexes, missing, null,
+            codec != null, stripeFooter.getColumnsList(), types, bufferSize);
+    mergeDiskRanges(chunks);
+    bufferChunks = readDiskRanges(file, stripe.getOffset(), chunks);
+    Map<StreamName, InStream> read = new HashMap<StreamName, InStream>();
+    createStreams(streamList, bufferChunks, missing, codec, bufferSize, read);
+
+    Map<Integer, List<OrcColumnCache.StreamData>> columns =
+        new HashMap<Integer, List<OrcColumnCache.StreamData>>();
+    for(int column = 0; column < missing.length; ++column) {
+      if (missing[column]) {
+        columns.put(column, new ArrayList<OrcColumnCache.StreamData>());
+      }
+    }
+    for(Map.Entry<StreamName, InStream> entry: read.entrySet()) {
+      StreamName name = entry.getKey();
+      OrcColumnCache.StreamData data = InStream.readFully(name, entry.getValue());
+      entry.getValue().close();
+      columns.get(name.getColumn()).add(data);
+      streams.put(name, InStream.create(name.toString(), data));
+    }
+    for(Map.Entry<Integer, List<OrcColumnCache.StreamData>> entry: columns.entrySet()) {
+      List<OrcColumnCache.StreamData> data = entry.getValue();
+      columnCache.put(new OrcColumnCache.Key(path, modificationTime, stripe.getOffset(),
+          entry.getKey()), data.toArray(new OrcColumnCache.StreamData[data.size()]));
+    }
+  }
+
   @Override
   public boolean hasNext() throws IOException {
     return rowInStripe < rowCountInStripe;
@@ -3143,12 +3448,71 @@ public Object next(Object previous) throws IOException {
 
   @Override
   public VectorizedRowBatch nextBatch(VectorizedRowBatch previous) throws IOException {
+    if (batchFilter != null && previous != null) {
+      return nextFilteredBatch(previous);
+    }
     VectorizedRowBatch result = null;
     if (rowInStripe >= rowCountInStripe) {
       currentStripe += 1;
       readStripe();
     }
 
+    long batchSize = computeBatchSize();
+    rowInStripe += batchSize;
+    if (previous == null) {
+      ColumnVector[] cols = (ColumnVector[]) reader.nextVector(null, (int) batchSize);
+      result = new VectorizedRowBatch(cols.length);
+      result.cols = cols;
+    } else {
+      result = (VectorizedRowBatch) previous;
+      result.selectedInUse = false;
+      reader.nextVector(result.cols, (int) batchSize);
+    }
+
+    result.size = (int) batchSize;
+    advanceToNextRow(rowInStripe + rowBaseInStripe);
+    return result;
+  }
+
+  /**
+   * Read the next batch with lazy materialization. The columns of the
+   * predicate are read first and the other columns are only read if some
+   * of the rows may pass the predicate. Batches without such rows are
+   * skipped, so the result only has no rows at the end of the file.
+   * @param result the batch to read into
+   * @return the batch with the rows that may pass marked as selected
+   */
+  private VectorizedRowBatch nextFilteredBatch(VectorizedRowBatch result
+                                               ) throws IOException {
+    StructTreeReader root = (StructTreeReader) reader;
+    while (true) {
+      if (rowInStripe >= rowCountInStripe) {
+        currentStripe += 1;
+        readStripe();
+      }
+      int batchSize = (int) computeBatchSize();
+      rowInStripe += batchSize;
+      result.selectedInUse = false;
+      result.size = batchSize;
+      root.nextVector(result.cols, batchSize, batchFilter.getPredicateFields());
+      boolean found = batchFilter.filter(result) > 0;
+      if (found) {
+        root.nextVector(result.cols, batchSize, batchFilter.getOtherFields());
+      } else {
+        root.skipRows(batchSize, batchFilter.getOtherFields());
+      }
+      advanceToNextRow(rowInStripe + rowBaseInStripe);
+      if (found || !hasNext()) {
+        return result;
+      }
+    }
+  }
+
+  /**
+   * Compute the number of rows in the next batch, which stays within the
+   * current range of selected row groups.
+   */
+  private long computeBatchSize() {
     long batchSize = 0;
 
     // In case of PPD, batch size should be aware of row group boundaries. If only a subset of row
@@ -3179,21 +3543,7 @@ public VectorizedRowBatch nextBatch(VectorizedRowBatch previous) throws IOExcept
     } else {
       batchSize = Math.min(VectorizedRowBatch.DEFAULT_SIZE, (rowCountInStripe - rowInStripe));
     }
-
-    rowInStripe += batchSize;
-    if (previous == null) {
-      ColumnVector[] cols = (ColumnVector[]) reader.nextVector(null, (int) batchSize);
-      result = new VectorizedRowBatch(cols.length);
-      result.cols = cols;
-    } else {
-      result = (VectorizedRowBatch) previous;
-      result.selectedInUse = false;
-      reader.nextVector(result.cols, (int) batchSize);
-    }
-
-    result.size = (int) batchSize;
-    advanceToNextRow(rowInStripe + rowBaseInStripe);
-    return result;
+    return batchSize;
   }
 
   @Override
@@ -3201,6 +3551,12 @@ public void close() throws IOException {
     clearStreams();
     pool.clear();
     file.close();
+    if (mappedFile != null) {
+      mappedFile.close();
+    }
+    if (columnCache != null && LOG.isDebugEnabled()) {
+      LOG.debug(columnCache.toString());
+    }
   }
 
   @Override
@@ -3252,12 +3608,38 @@ OrcProto.RowIndex[] readRowIndex(int stripeIndex) throws IOException {
               new ByteBuffer[] {ByteBuffer.wrap(buffer)}, new long[]{0},
               stream.getLength(), codec, bufferSize));
         }
+      } else if (stream.getKind() == OrcProto.Stream.Kind.BLOOM_FILTER &&
+          stripeIndex == currentStripe) {
+        // only the columns that have predicates which can use them are read
+        int col = stream.getColumn();
+        if (bloomFilterColumns != null && bloomFilterColumns[col] &&
+            bloomFilters[col] == null) {
+          bloomFilters[col] = readBloomFilters(stripes.get(stripeIndex),
+              offset, stream.getLength());
+        }
       }
       offset += stream.getLength();
     }
     return indexes;
   }
 
+  private BloomFilter[] readBloomFilters(StripeInformation stripe, long offset,
+                                         long length) throws IOException {
+    byte[] buffer = new byte[(int) length];
+    file.seek(offset);
+    file.readFully(buffer);
+    DataInputStream stream = new DataInputStream(InStream.create("bloom_filter",
+        new ByteBuffer[] {ByteBuffer.wrap(buffer)}, new long[]{0},
+        length, codec, bufferSize));
+    // the writer adds one for each row group
+    BloomFilter[] result = new BloomFilter[(int) ((stripe.getNumberOfRows() +
+        rowIndexStride - 1) / rowIndexStride)];
+    for(int i=0; i < result.length; ++i) {
+      result[i] = BloomFilter.read(stream);
+    }
+    return result;
+  }
+
   private void seekToRowEntry(int rowEntry) throws IOException {
     PositionProvider[] index = new PositionProvider[indexes.length];
     for(int i=0; i < indexes.length; ++i) {
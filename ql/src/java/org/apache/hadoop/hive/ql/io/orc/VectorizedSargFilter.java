@@ -0,0 +1,544 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.orc;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.StringExpr;
+import org.apache.hadoop.hive.ql.io.sarg.PredicateLeaf;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument.TruthValue;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.serde2.io.DateWritable;
+
+/**
+ * Evaluates the search argument of a vectorized reader on the individual
+ * rows of a batch, so that the reader can decode the columns of the
+ * predicate first and only decode the other columns for the batches that
+ * have rows left. The leaves compare the long, double and byte vectors with
+ * literals that were converted once to the type of the column, and the
+ * value of the search argument is remembered for each combination of leaf
+ * values. Leaves on other types are evaluated as if each value was a row
+ * group with that value as its minimum and maximum. The result is
+ * conservative: the filter operator above the table scan still evaluates
+ * the complete predicate on the selected rows.
+ */
+class VectorizedSargFilter {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final TruthValue[] TRUTH_VALUES = TruthValue.values();
+  // the search argument is remembered for up to 7^5 combinations
+  private static final int MAX_REMEMBERED_LEAVES = 5;
+  private static final byte NEEDED = 1;
+  private static final byte NOT_NEEDED = 2;
+
+  private final SearchArgument sarg;
+  private final List<PredicateLeaf> leaves;
+  // the field of the root struct that each leaf reads or -1 if it can't be
+  // evaluated on the rows
+  private final int[] leafFields;
+  private final OrcProto.Type.Kind[] leafKinds;
+  // the literals of each leaf as a long[], double[] or byte[][] or null if
+  // the leaf is evaluated on boxed values
+  private final Object[] leafLiterals;
+  // the fields that the predicate reads and the other fields that are read
+  private final boolean[] predicateFields;
+  private final boolean[] otherFields;
+  private final TruthValue[] leafValues;
+  // the ordinal of the value of each leaf for each row of the current batch
+  private byte[][] rowValues;
+  // whether the rows are needed for each combination of leaf values or null
+  // if there are too many leaves
+  private final byte[] results;
+
+  /**
+   * @param sarg the search argument of the reader
+   * @param leaves the leaves of the search argument
+   * @param filterColumns the column id of each leaf or -1
+   * @param types the types of the file
+   * @param included the columns that are read or null for all of them
+   */
+  VectorizedSargFilter(SearchArgument sarg,
+                       List<PredicateLeaf> leaves,
+                       int[] filterColumns,
+                       List<OrcProto.Type> types,
+                       boolean[] included) {
+    this.sarg = sarg;
+    this.leaves = leaves;
+    OrcProto.Type root = types.get(0);
+    int fieldCount = root.getKind() == OrcProto.Type.Kind.STRUCT ?
+        root.getSubtypesCount() : 0;
+    predicateFields = new boolean[fieldCount];
+    otherFields = new boolean[fieldCount];
+    leafFields = new int[leaves.size()];
+    leafKinds = new OrcProto.Type.Kind[leaves.size()];
+    leafLiterals = new Object[leaves.size()];
+    Arrays.fill(leafFields, -1);
+    for(int leaf=0; leaf < leafFields.length; ++leaf) {
+      for(int field=0; field < fieldCount; ++field) {
+        int column = root.getSubtypes(field);
+        if (column == filterColumns[leaf] &&
+            (included == null || included[column])) {
+          leafFields[leaf] = field;
+          leafKinds[leaf] = types.get(column).getKind();
+          leafLiterals[leaf] = getLiterals(leaves.get(leaf), leafKinds[leaf]);
+          predicateFields[field] = true;
+        }
+      }
+    }
+    for(int field=0; field < fieldCount; ++field) {
+      otherFields[field] = !predicateFields[field] &&
+          (included == null || included[root.getSubtypes(field)]);
+    }
+    leafValues = new TruthValue[leaves.size()];
+    rowValues = new byte[leaves.size()][VectorizedRowBatch.DEFAULT_SIZE];
+    if (leaves.size() <= MAX_REMEMBERED_LEAVES) {
+      int combinations = 1;
+      for(int leaf=0; leaf < leaves.size(); ++leaf) {
+        combinations *= TRUTH_VALUES.length;
+      }
+      results = new byte[combinations];
+    } else {
+      results = null;
+    }
+  }
+
+  /**
+   * Convert the literals of a leaf to the type of the vector of its column.
+   * Only the literals that the row group selection compares without any
+   * loss are converted.
+   * @return a long[], double[] or byte[][] or null if the leaf must be
+   *    evaluated on boxed values
+   */
+  private static Object getLiterals(PredicateLeaf predicate,
+                                    OrcProto.Type.Kind kind) {
+    List<Object> literals;
+    switch (predicate.getOperator()) {
+      case IS_NULL:
+        return null;
+      case IN:
+      case BETWEEN:
+        literals = predicate.getLiteralList();
+        break;
+      default:
+        literals = Collections.singletonList(predicate.getLiteral());
+        break;
+    }
+    if (literals == null || literals.isEmpty() ||
+        (predicate.getOperator() == PredicateLeaf.Operator.BETWEEN &&
+            literals.size() != 2)) {
+      return null;
+    }
+    Object[] values = new Object[literals.size()];
+    for(int i=0; i < values.length; ++i) {
+      Object literal = literals.get(i);
+      if (literal instanceof ExprNodeConstantDesc) {
+        literal = ((ExprNodeConstantDesc) literal).getValue();
+      }
+      if (literal == null) {
+        return null;
+      }
+      values[i] = literal;
+    }
+    switch (kind) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG: {
+        long[] result = new long[values.length];
+        for(int i=0; i < values.length; ++i) {
+          if (!(values[i] instanceof Long)) {
+            return null;
+          }
+          result[i] = (Long) values[i];
+        }
+        return result;
+      }
+      case DATE: {
+        long[] result = new long[values.length];
+        for(int i=0; i < values.length; ++i) {
+          if (!(values[i] instanceof DateWritable)) {
+            return null;
+          }
+          result[i] = ((DateWritable) values[i]).getDays();
+        }
+        return result;
+      }
+      case FLOAT:
+      case DOUBLE: {
+        double[] result = new double[values.length];
+        for(int i=0; i < values.length; ++i) {
+          if (!(values[i] instanceof Double)) {
+            return null;
+          }
+          result[i] = (Double) values[i];
+        }
+        return result;
+      }
+      case STRING:
+      case CHAR:
+      case VARCHAR: {
+        byte[][] result = new byte[values.length][];
+        for(int i=0; i < values.length; ++i) {
+          result[i] = values[i].toString().getBytes(UTF8);
+        }
+        return result;
+      }
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Does the predicate read any of the columns?
+   */
+  boolean hasPredicateFields() {
+    for(boolean field: predicateFields) {
+      if (field) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  boolean[] getPredicateFields() {
+    return predicateFields;
+  }
+
+  boolean[] getOtherFields() {
+    return otherFields;
+  }
+
+  /**
+   * Evaluate the predicate on the rows of the batch, whose predicate fields
+   * must have been read. The rows that may pass are marked as selected.
+   * @param batch a batch that doesn't use a selection yet
+   * @return the number of selected rows
+   */
+  int filter(VectorizedRowBatch batch) {
+    int size = batch.size;
+    if (rowValues.length != 0 && rowValues[0].length < size) {
+      rowValues = new byte[rowValues.length][size];
+    }
+    for(int leaf=0; leaf < rowValues.length; ++leaf) {
+      int field = leafFields[leaf];
+      evaluateLeaf(leaf, field == -1 ? null : batch.cols[field], size,
+          rowValues[leaf]);
+    }
+    int selected = 0;
+    for(int row=0; row < size; ++row) {
+      if (isNeeded(row)) {
+        batch.selected[selected++] = row;
+      }
+    }
+    if (selected < size) {
+      batch.selectedInUse = true;
+      batch.size = selected;
+    }
+    return selected;
+  }
+
+  /**
+   * Evaluate the search argument on the leaf values of a row.
+   */
+  private boolean isNeeded(int row) {
+    if (results == null) {
+      for(int leaf=0; leaf < leafValues.length; ++leaf) {
+        leafValues[leaf] = TRUTH_VALUES[rowValues[leaf][row]];
+      }
+      return sarg.evaluate(leafValues).isNeeded();
+    }
+    int combination = 0;
+    for(int leaf=0; leaf < rowValues.length; ++leaf) {
+      combination = combination * TRUTH_VALUES.length + rowValues[leaf][row];
+    }
+    byte result = results[combination];
+    if (result == 0) {
+      for(int leaf=0; leaf < leafValues.length; ++leaf) {
+        leafValues[leaf] = TRUTH_VALUES[rowValues[leaf][row]];
+      }
+      result = sarg.evaluate(leafValues).isNeeded() ? NEEDED : NOT_NEEDED;
+      results[combination] = result;
+    }
+    return result == NEEDED;
+  }
+
+  /**
+   * Store the ordinal of the value of a leaf for each row of the batch.
+   * @param vector the vector of the leaf's column or null
+   */
+  private void evaluateLeaf(int leaf, ColumnVector vector, int size,
+                            byte[] values) {
+    if (vector == null) {
+      Arrays.fill(values, 0, size, (byte) TruthValue.YES_NO_NULL.ordinal());
+      return;
+    } else if (vector.isRepeating) {
+      Arrays.fill(values, 0, size, (byte) evaluateRow(leaf, vector, 0).ordinal());
+      return;
+    }
+    PredicateLeaf.Operator operator = leaves.get(leaf).getOperator();
+    Object literals = leafLiterals[leaf];
+    boolean[] isNull = vector.noNulls ? null : vector.isNull;
+    byte nullValue = (byte) getNullValue(operator).ordinal();
+    if (operator == PredicateLeaf.Operator.IS_NULL) {
+      byte notNull = (byte) TruthValue.NO.ordinal();
+      for(int row=0; row < size; ++row) {
+        values[row] = isNull != null && isNull[row] ? nullValue : notNull;
+      }
+    } else if (literals instanceof long[]) {
+      long[] longLiterals = (long[]) literals;
+      long[] vals = ((LongColumnVector) vector).vector;
+      for(int row=0; row < size; ++row) {
+        values[row] = isNull != null && isNull[row] ? nullValue :
+            (byte) compare(operator, vals[row], longLiterals).ordinal();
+      }
+    } else if (literals instanceof double[]) {
+      double[] doubleLiterals = (double[]) literals;
+      double[] vals = ((DoubleColumnVector) vector).vector;
+      for(int row=0; row < size; ++row) {
+        values[row] = isNull != null && isNull[row] ? nullValue :
+            (byte) compare(operator, vals[row], doubleLiterals).ordinal();
+      }
+    } else if (literals instanceof byte[][]) {
+      byte[][] byteLiterals = (byte[][]) literals;
+      BytesColumnVector bytes = (BytesColumnVector) vector;
+      for(int row=0; row < size; ++row) {
+        if (isNull != null && isNull[row]) {
+          values[row] = nullValue;
+          continue;
+        }
+        int length = getStrippedLength(bytes.vector[row], bytes.start[row],
+            bytes.length[row]);
+        values[row] = (byte) (length == -1 ? evaluateRow(leaf, vector, row) :
+            compare(operator, bytes.vector[row], bytes.start[row], length,
+                byteLiterals)).ordinal();
+      }
+    } else {
+      for(int row=0; row < size; ++row) {
+        values[row] = (byte) evaluateRow(leaf, vector, row).ordinal();
+      }
+    }
+  }
+
+  private TruthValue evaluateRow(int leaf, ColumnVector vector, int row) {
+    PredicateLeaf predicate = leaves.get(leaf);
+    if (!vector.noNulls && vector.isNull[row]) {
+      return getNullValue(predicate.getOperator());
+    }
+    Object literals = leafLiterals[leaf];
+    if (predicate.getOperator() == PredicateLeaf.Operator.IS_NULL) {
+      return TruthValue.NO;
+    } else if (literals instanceof long[]) {
+      return compare(predicate.getOperator(),
+          ((LongColumnVector) vector).vector[row], (long[]) literals);
+    } else if (literals instanceof double[]) {
+      return compare(predicate.getOperator(),
+          ((DoubleColumnVector) vector).vector[row], (double[]) literals);
+    } else if (literals instanceof byte[][]) {
+      BytesColumnVector bytes = (BytesColumnVector) vector;
+      int length = getStrippedLength(bytes.vector[row], bytes.start[row],
+          bytes.length[row]);
+      if (length != -1) {
+        return compare(predicate.getOperator(), bytes.vector[row],
+            bytes.start[row], length, (byte[][]) literals);
+      }
+    }
+    Object value = getValue(leafKinds[leaf], vector, row);
+    if (value == null) {
+      return TruthValue.YES_NO_NULL;
+    }
+    return RecordReaderImpl.evaluatePredicateRange(predicate, value, value);
+  }
+
+  private static TruthValue getNullValue(PredicateLeaf.Operator operator) {
+    switch (operator) {
+      case IS_NULL:
+        return TruthValue.YES;
+      case NULL_SAFE_EQUALS:
+        return TruthValue.YES_NO;
+      default:
+        return TruthValue.NULL;
+    }
+  }
+
+  private static TruthValue compare(PredicateLeaf.Operator operator,
+                                    long value,
+                                    long[] literals) {
+    switch (operator) {
+      case EQUALS:
+      case NULL_SAFE_EQUALS:
+        return value == literals[0] ? TruthValue.YES : TruthValue.NO;
+      case LESS_THAN:
+        return value < literals[0] ? TruthValue.YES : TruthValue.NO;
+      case LESS_THAN_EQUALS:
+        return value <= literals[0] ? TruthValue.YES : TruthValue.NO;
+      case IN:
+        for(long literal: literals) {
+          if (value == literal) {
+            return TruthValue.YES;
+          }
+        }
+        return TruthValue.NO;
+      case BETWEEN:
+        return value >= literals[0] && value <= literals[1] ?
+            TruthValue.YES : TruthValue.NO;
+      default:
+        return TruthValue.YES_NO_NULL;
+    }
+  }
+
+  /**
+   * Compare like the row group selection, which compares the boxed doubles.
+   */
+  private static TruthValue compare(PredicateLeaf.Operator operator,
+                                    double value,
+                                    double[] literals) {
+    switch (operator) {
+      case EQUALS:
+      case NULL_SAFE_EQUALS:
+        return Double.compare(value, literals[0]) == 0 ?
+            TruthValue.YES : TruthValue.NO;
+      case LESS_THAN:
+        return Double.compare(value, literals[0]) < 0 ?
+            TruthValue.YES : TruthValue.NO;
+      case LESS_THAN_EQUALS:
+        return Double.compare(value, literals[0]) <= 0 ?
+            TruthValue.YES : TruthValue.NO;
+      case IN:
+        for(double literal: literals) {
+          if (Double.compare(value, literal) == 0) {
+            return TruthValue.YES;
+          }
+        }
+        return TruthValue.NO;
+      case BETWEEN:
+        return Double.compare(value, literals[0]) >= 0 &&
+            Double.compare(value, literals[1]) <= 0 ?
+            TruthValue.YES : TruthValue.NO;
+      default:
+        return TruthValue.YES_NO_NULL;
+    }
+  }
+
+  /**
+   * Compare the UTF-8 bytes, which orders the strings like the string
+   * comparisons of the filter operator.
+   */
+  private static TruthValue compare(PredicateLeaf.Operator operator,
+                                    byte[] bytes, int start, int length,
+                                    byte[][] literals) {
+    switch (operator) {
+      case EQUALS:
+      case NULL_SAFE_EQUALS:
+        return compare(bytes, start, length, literals[0]) == 0 ?
+            TruthValue.YES : TruthValue.NO;
+      case LESS_THAN:
+        return compare(bytes, start, length, literals[0]) < 0 ?
+            TruthValue.YES : TruthValue.NO;
+      case LESS_THAN_EQUALS:
+        return compare(bytes, start, length, literals[0]) <= 0 ?
+            TruthValue.YES : TruthValue.NO;
+      case IN:
+        for(byte[] literal: literals) {
+          if (compare(bytes, start, length, literal) == 0) {
+            return TruthValue.YES;
+          }
+        }
+        return TruthValue.NO;
+      case BETWEEN:
+        return compare(bytes, start, length, literals[0]) >= 0 &&
+            compare(bytes, start, length, literals[1]) <= 0 ?
+            TruthValue.YES : TruthValue.NO;
+      default:
+        return TruthValue.YES_NO_NULL;
+    }
+  }
+
+  private static int compare(byte[] bytes, int start, int length,
+                             byte[] literal) {
+    return StringExpr.compare(bytes, start, length, literal, 0,
+        literal.length);
+  }
+
+  /**
+   * Get the length of a string without the trailing white space, which the
+   * row group selection strips from the minimum and maximum.
+   * @return the length or -1 if the string may end with white space that
+   *    isn't ASCII
+   */
+  private static int getStrippedLength(byte[] bytes, int start, int length) {
+    int end = start + length;
+    while (end > start && isAsciiWhitespace(bytes[end - 1])) {
+      end -= 1;
+    }
+    // the other white space characters are U+1680, U+2000 to U+205F and
+    // U+3000, which take three bytes starting with 0xE1 to 0xE3
+    if (end - start >= 3 && bytes[end - 3] >= (byte) 0xE1 &&
+        bytes[end - 3] <= (byte) 0xE3) {
+      return -1;
+    }
+    return end - start;
+  }
+
+  private static boolean isAsciiWhitespace(byte b) {
+    return (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x20);
+  }
+
+  /**
+   * Get a value of the vector as the same type that the column statistics
+   * use for its minimum and maximum.
+   * @return the value or null if the type isn't supported
+   */
+  private static Object getValue(OrcProto.Type.Kind kind,
+                                 ColumnVector vector,
+                                 int row) {
+    switch (kind) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+        return ((LongColumnVector) vector).vector[row];
+      case FLOAT:
+      case DOUBLE:
+        return ((DoubleColumnVector) vector).vector[row];
+      case STRING:
+      case CHAR:
+      case VARCHAR:
+        BytesColumnVector bytes = (BytesColumnVector) vector;
+        return new String(bytes.vector[row], bytes.start[row],
+            bytes.length[row], UTF8);
+      case DATE:
+        return new DateWritable((int) ((LongColumnVector) vector).vector[row]);
+      case DECIMAL:
+        return HiveDecimal.create(
+            ((DecimalColumnVector) vector).vector[row].toBigDecimal());
+      default:
+        return null;
+    }
+  }
+}
@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hive.ql.io.orc;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.management.ManagementFactory;
@@ -25,12 +26,20 @@
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedOutputStream;
 import org.apache.commons.logging.Log;
@@ -113,6 +122,10 @@ class WriterImpl implements Writer, MemoryManager.Callback {
   // threshold above which buffer size will be automatically resized
   private static final int COLUMN_COUNT_THRESHOLD = 1000;
 
+  // the threads that compress the streams and write the stripes of all of
+  // the writers in the JVM, which is created by the first writer that uses it
+  private static ExecutorService sharedPool = null;
+
   private final FileSystem fs;
   private final Path path;
   private final long defaultStripeSize;
@@ -124,6 +137,9 @@ class WriterImpl implements Writer, MemoryManager.Callback {
   private final int bufferSize;
   private final long blockSize;
   private final float paddingTolerance;
+  // the columns that get bloom filters, by column id
+  private final boolean[] bloomFilterColumns;
+  private final double bloomFilterFpp;
   // the streams that make up the current stripe
   private final Map<StreamName, BufferedStream> streams =
     new TreeMap<StreamName, BufferedStream>();
@@ -154,6 +170,11 @@ class WriterImpl implements Writer, MemoryManager.Callback {
   private final OrcFile.WriterContext callbackContext;
   private final OrcFile.EncodingStrategy encodingStrategy;
   private final OrcFile.CompressionStrategy compressionStrategy;
+  // the pool that compresses the streams and writes the stripes or null to
+  // do it in the writer's thread
+  private final ExecutorService compressionPool;
+  // the stripe that is being written in the background
+  private Future<OrcProto.StripeInformation> pendingStripe = null;
 
   WriterImpl(FileSystem fs,
              Path path,
@@ -170,7 +191,9 @@ class WriterImpl implements Writer, MemoryManager.Callback {
              OrcFile.EncodingStrategy encodingStrategy,
              CompressionStrategy compressionStrategy,
              float paddingTolerance,
-             long blockSizeValue) throws IOException {
+             long blockSizeValue,
+             String bloomFilterColumnNames,
+             double bloomFilterFpp) throws IOException {
     this.fs = fs;
     this.path = path;
     this.conf = conf;
@@ -198,7 +221,20 @@ public Writer getWriter() {
     this.rowIndexStride = rowIndexStride;
     this.memoryManager = memoryManager;
     buildIndex = rowIndexStride > 0;
+    this.bloomFilterColumns = buildIndex ?
+        getBloomFilterColumns(inspector, bloomFilterColumnNames) : null;
+    this.bloomFilterFpp = bloomFilterFpp;
     codec = createCodec(compress);
+    int compressionThreads = conf.getInt(
+        HiveConf.ConfVars.HIVE_ORC_WRITER_COMPRESSION_THREADS.varname,
+        HiveConf.ConfVars.HIVE_ORC_WRITER_COMPRESSION_THREADS.defaultIntVal);
+    // the lzo codec is loaded by reflection and may not be thread safe
+    if (compressionThreads > 0 && codec != null &&
+        compress != CompressionKind.LZO) {
+      compressionPool = getSharedPool(compressionThreads);
+    } else {
+      compressionPool = null;
+    }
     this.bufferSize = getEstimatedBufferSize(bufferSize);
     treeWriter = createTreeWriter(inspector, streamFactory, false);
     if (buildIndex && rowIndexStride < MIN_ROW_INDEX_STRIDE) {
@@ -210,6 +246,102 @@ public Writer getWriter() {
     memoryManager.addWriter(path, stripeSize, this);
   }
 
+  private static synchronized ExecutorService getSharedPool(int threads) {
+    if (sharedPool == null) {
+      sharedPool = Executors.newFixedThreadPool(threads,
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("ORC_WRITER_COMPRESSION #%d").build());
+    }
+    return sharedPool;
+  }
+
+  /**
+   * Find the column ids of the top level columns that should get bloom
+   * filters. Only the types that the readers can look up are supported.
+   * @param inspector the inspector of the rows
+   * @param columnNames the comma separated names of the columns
+   * @return an array with a boolean for each column id or null if there
+   *   are no bloom filters
+   */
+  static boolean[] getBloomFilterColumns(ObjectInspector inspector,
+                                         String columnNames) {
+    if (columnNames == null || columnNames.trim().isEmpty() ||
+        inspector.getCategory() != ObjectInspector.Category.STRUCT) {
+      return null;
+    }
+    Set<String> names = new HashSet<String>();
+    for(String name: columnNames.split(",")) {
+      names.add(name.trim().toLowerCase());
+    }
+    boolean[] result = new boolean[getColumnCount(inspector)];
+    // column 0 is the row itself and the fields follow in pre-order
+    int column = 1;
+    for(StructField field:
+        ((StructObjectInspector) inspector).getAllStructFieldRefs()) {
+      ObjectInspector fieldInspector = field.getFieldObjectInspector();
+      if (names.contains(field.getFieldName().toLowerCase())) {
+        if (isBloomFilterSupported(fieldInspector)) {
+          result[column] = true;
+        } else {
+          LOG.warn("Bloom filters are not supported on column " +
+              field.getFieldName() + " of type " + fieldInspector.getTypeName());
+        }
+      }
+      column += getColumnCount(fieldInspector);
+    }
+    return result;
+  }
+
+  static boolean isBloomFilterSupported(ObjectInspector inspector) {
+    if (inspector.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+      return false;
+    }
+    switch (((PrimitiveObjectInspector) inspector).getPrimitiveCategory()) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+      case DOUBLE:
+      case STRING:
+      case CHAR:
+      case VARCHAR:
+      case DATE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static int getColumnCount(ObjectInspector inspector) {
+    int result = 1;
+    switch (inspector.getCategory()) {
+      case STRUCT:
+        for(StructField field:
+            ((StructObjectInspector) inspector).getAllStructFieldRefs()) {
+          result += getColumnCount(field.getFieldObjectInspector());
+        }
+        break;
+      case LIST:
+        result += getColumnCount(
+            ((ListObjectInspector) inspector).getListElementObjectInspector());
+        break;
+      case MAP:
+        MapObjectInspector map = (MapObjectInspector) inspector;
+        result += getColumnCount(map.getMapKeyObjectInspector()) +
+            getColumnCount(map.getMapValueObjectInspector());
+        break;
+      case UNION:
+        for(ObjectInspector child:
+            ((UnionObjectInspector) inspector).getObjectInspectors()) {
+          result += getColumnCount(child);
+        }
+        break;
+      default:
+        break;
+    }
+    return result;
+  }
+
   int getEstimatedBufferSize(int bs) {
     String colNames = conf.get(IOConstants.COLUMNS);
     long availableMem = getMemoryAvailableForORC();
@@ -337,7 +469,8 @@ private class BufferedStream implements OutStream.OutputReceiver {
 
     BufferedStream(String name, int bufferSize,
                    CompressionCodec codec) throws IOException {
-      outStream = new OutStream(name, bufferSize, codec, this);
+      outStream = new OutStream(name, bufferSize, codec, this,
+          compressionPool);
     }
 
     /**
@@ -370,6 +503,14 @@ public void flush() throws IOException {
       outStream.flush();
     }
 
+    /**
+     * Start compressing the last buffer of the stream in the background.
+     * @throws IOException
+     */
+    public void startFlush() throws IOException {
+      outStream.startFlush();
+    }
+
     /**
      * Clear all of the buffers.
      * @throws IOException
@@ -401,15 +542,14 @@ public long getOutputSize() {
     }
 
     /**
-     * Write the saved compressed buffers to the OutputStream.
-     * @param out the stream to write to
-     * @throws IOException
+     * Take the saved compressed buffers, so that they can be written to the
+     * file while the stream buffers the next stripe.
+     * @return the buffers in order
      */
-    void spillTo(OutputStream out) throws IOException {
-      for(ByteBuffer buffer: output) {
-        out.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
-          buffer.remaining());
-      }
+    List<ByteBuffer> takeOutput() {
+      List<ByteBuffer> result = new ArrayList<ByteBuffer>(output);
+      output.clear();
+      return result;
     }
 
     @Override
@@ -480,6 +620,7 @@ public OutStream createStream(int column,
       case DICTIONARY_COUNT:
       case PRESENT:
       case ROW_INDEX:
+      case BLOOM_FILTER:
       case SECONDARY:
         // easily compressed using the fastest modes
         modifiers = EnumSet.of(Modifier.FASTEST, Modifier.BINARY);
@@ -522,6 +663,22 @@ public boolean buildIndex() {
       return buildIndex;
     }
 
+    /**
+     * Should the column get a bloom filter for each row group?
+     * @param column the column id
+     * @return true if the bloom filter was requested for the column
+     */
+    public boolean buildBloomFilter(int column) {
+      return bloomFilterColumns != null && bloomFilterColumns[column];
+    }
+
+    /**
+     * Get the false positive probability of the bloom filters.
+     */
+    public double getBloomFilterFpp() {
+      return bloomFilterFpp;
+    }
+
     /**
      * Is the ORC file compressed?
      * @return are the streams compressed
@@ -581,6 +738,8 @@ private abstract static class TreeWriter {
     private final OrcProto.RowIndex.Builder rowIndex;
     private final OrcProto.RowIndexEntry.Builder rowIndexEntry;
     private final PositionedOutputStream rowIndexStream;
+    protected final BloomFilter bloomFilter;
+    private final DataOutputStream bloomFilterStream;
     private boolean foundNulls;
     private OutStream isPresentOutStream;
     private final List<StripeStatistics.Builder> stripeStatsBuilders;
@@ -621,6 +780,15 @@ private abstract static class TreeWriter {
       } else {
         rowIndexStream = null;
       }
+      if (streamFactory.buildBloomFilter(id)) {
+        bloomFilter = new BloomFilter(streamFactory.getRowIndexStride(),
+            streamFactory.getBloomFilterFpp());
+        bloomFilterStream = new DataOutputStream(streamFactory.createStream(id,
+            OrcProto.Stream.Kind.BLOOM_FILTER));
+      } else {
+        bloomFilter = null;
+        bloomFilterStream = null;
+      }
     }
 
     protected OrcProto.RowIndex.Builder getRowIndex() {
@@ -732,6 +900,9 @@ void writeStripe(OrcProto.StripeFooter.Builder builder,
       }
       rowIndex.clear();
       rowIndexEntry.clear();
+      if (bloomFilterStream != null) {
+        bloomFilterStream.flush();
+      }
     }
 
     private void writeStripeStatistics(OrcProto.StripeStatistics.Builder builder,
@@ -770,12 +941,25 @@ void createRowIndexEntry() throws IOException {
       indexStatistics.reset();
       rowIndex.addEntry(rowIndexEntry);
       rowIndexEntry.clear();
+      addBloomFilterEntry();
       recordPosition(rowIndexPosition);
       for(TreeWriter child: childrenWriters) {
         child.createRowIndexEntry();
       }
     }
 
+    /**
+     * Write the bloom filter of the row group that was just finished and
+     * clear it for the next one.
+     * @throws IOException
+     */
+    void addBloomFilterEntry() throws IOException {
+      if (bloomFilter != null) {
+        bloomFilter.write(bloomFilterStream);
+        bloomFilter.reset();
+      }
+    }
+
     /**
      * Record the current position in each of this column's streams.
      * @param recorder where should the locations be recorded
@@ -858,6 +1042,9 @@ void write(Object obj) throws IOException {
       if (obj != null) {
         byte val = ((ByteObjectInspector) inspector).get(obj);
         indexStatistics.updateInteger(val);
+        if (bloomFilter != null) {
+          bloomFilter.addLong(val);
+        }
         writer.write(val);
       }
     }
@@ -933,6 +1120,9 @@ void write(Object obj) throws IOException {
           val = shortInspector.get(obj);
         }
         indexStatistics.updateInteger(val);
+        if (bloomFilter != null) {
+          bloomFilter.addLong(val);
+        }
         writer.write(val);
       }
     }
@@ -1013,6 +1203,9 @@ void write(Object obj) throws IOException {
       if (obj != null) {
         double val = ((DoubleObjectInspector) inspector).get(obj);
         indexStatistics.updateDouble(val);
+        if (bloomFilter != null) {
+          bloomFilter.addDouble(val);
+        }
         utils.writeDouble(stream, val);
       }
     }
@@ -1106,6 +1299,9 @@ void write(Object obj) throws IOException {
           directLengthOutput.write(val.getLength());
         }
         indexStatistics.updateString(val);
+        if (bloomFilter != null) {
+          bloomFilter.addText(val);
+        }
       }
     }
 
@@ -1257,6 +1453,7 @@ void createRowIndexEntry() throws IOException {
       OrcProto.RowIndexEntry base = rowIndexEntry.build();
       savedRowIndex.add(base);
       rowIndexEntry.clear();
+      addBloomFilterEntry();
       recordPosition(rowIndexPosition);
       rowIndexValueCount.add(Long.valueOf(rows.size()));
       if (strideDictionaryCheck) {
@@ -1488,6 +1685,9 @@ void write(Object obj) throws IOException {
         // Using the Writable here as it's used directly for writing as well as for stats.
         DateWritable val = ((DateObjectInspector) inspector).getPrimitiveWritableObject(obj);
         indexStatistics.updateDate(val);
+        if (bloomFilter != null) {
+          bloomFilter.addLong(val.getDays());
+        }
         writer.write(val.getDays());
       }
     }
@@ -1994,6 +2194,14 @@ private void flushStripe() throws IOException {
       OrcProto.StripeFooter.Builder builder =
           OrcProto.StripeFooter.newBuilder();
       treeWriter.writeStripe(builder, requiredIndexEntries);
+      if (compressionPool != null) {
+        // compress the last buffers of the streams in parallel
+        for(BufferedStream stream: streams.values()) {
+          if (!stream.isSuppressed()) {
+            stream.startFlush();
+          }
+        }
+      }
       long indexSize = 0;
       long dataSize = 0;
       for(Map.Entry<StreamName, BufferedStream> pair: streams.entrySet()) {
@@ -2013,7 +2221,11 @@ private void flushStripe() throws IOException {
           }
         }
       }
-      OrcProto.StripeFooter footer = builder.build();
+      final OrcProto.StripeFooter footer = builder.build();
+
+      // the previous stripe must be in the file before we know where this
+      // one starts
+      waitForStripeWrite();
 
       // Do we need to pad the file so the stripe doesn't straddle a block
       // boundary?
@@ -2064,30 +2276,94 @@ private void flushStripe() throws IOException {
       }
 
       // write out the data streams
+      final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
       for(Map.Entry<StreamName, BufferedStream> pair: streams.entrySet()) {
         BufferedStream stream = pair.getValue();
         if (!stream.isSuppressed()) {
-          stream.spillTo(rawWriter);
+          buffers.addAll(stream.takeOutput());
         }
         stream.clear();
       }
-      footer.writeTo(protobufWriter);
-      protobufWriter.flush();
-      writer.flush();
-      long footerLength = rawWriter.getPos() - start - dataSize - indexSize;
-      OrcProto.StripeInformation dirEntry =
-          OrcProto.StripeInformation.newBuilder()
-              .setOffset(start)
-              .setNumberOfRows(rowsInStripe)
-              .setIndexLength(indexSize)
-              .setDataLength(dataSize)
-              .setFooterLength(footerLength).build();
-      stripes.add(dirEntry);
+      final long stripeStart = start;
+      final long stripeRows = rowsInStripe;
+      final long stripeIndexSize = indexSize;
+      final long stripeDataSize = dataSize;
+      if (compressionPool != null) {
+        // write the stripe in the background while the next one is buffered
+        pendingStripe = compressionPool.submit(
+            new Callable<OrcProto.StripeInformation>() {
+              @Override
+              public OrcProto.StripeInformation call() throws IOException {
+                return writeStripe(buffers, footer, stripeStart, stripeRows,
+                    stripeIndexSize, stripeDataSize);
+              }
+            });
+      } else {
+        stripes.add(writeStripe(buffers, footer, stripeStart, stripeRows,
+            stripeIndexSize, stripeDataSize));
+      }
       rowCount += rowsInStripe;
       rowsInStripe = 0;
     }
   }
 
+  /**
+   * Write the streams and the footer of a stripe to the file.
+   * @param buffers the compressed buffers of the streams in order
+   * @param footer the footer of the stripe
+   * @param start the offset of the stripe in the file
+   * @param rows the number of rows in the stripe
+   * @param indexSize the number of bytes in the index streams
+   * @param dataSize the number of bytes in the data streams
+   * @return the directory entry of the stripe
+   * @throws IOException
+   */
+  private OrcProto.StripeInformation writeStripe(List<ByteBuffer> buffers,
+                                                 OrcProto.StripeFooter footer,
+                                                 long start,
+                                                 long rows,
+                                                 long indexSize,
+                                                 long dataSize
+                                                 ) throws IOException {
+    for(ByteBuffer buffer: buffers) {
+      rawWriter.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+          buffer.remaining());
+    }
+    footer.writeTo(protobufWriter);
+    protobufWriter.flush();
+    writer.flush();
+    long footerLength = rawWriter.getPos() - start - dataSize - indexSize;
+    return OrcProto.StripeInformation.newBuilder()
+        .setOffset(start)
+        .setNumberOfRows(rows)
+        .setIndexLength(indexSize)
+        .setDataLength(dataSize)
+        .setFooterLength(footerLength).build();
+  }
+
+  /**
+   * Wait until the stripe that is being written in the background is in the
+   * file and add it to the list of stripes.
+   * @throws IOException if the stripe couldn't be written
+   */
+  private void waitForStripeWrite() throws IOException {
+    if (pendingStripe != null) {
+      try {
+        stripes.add(pendingStripe.get());
+      } catch (InterruptedException ie) {
+        throw new IOException("Interrupted writing a stripe of " + path, ie);
+      } catch (ExecutionException ee) {
+        if (ee.getCause() instanceof IOException) {
+          throw (IOException) ee.getCause();
+        }
+        throw new IOException("Problem writing a stripe of " + path,
+            ee.getCause());
+      } finally {
+        pendingStripe = null;
+      }
+    }
+  }
+
   private long computeRawDataSize() {
     long result = 0;
     for (TreeWriter child : treeWriter.getChildrenWriters()) {
@@ -2285,6 +2561,7 @@ public void close() throws IOException {
     // actually close the file
     synchronized (this) {
       flushStripe();
+      waitForStripeWrite();
       int metadataLength = writeMetadata(rawWriter.getPos());
       int footerLength = writeFooter(rawWriter.getPos() - metadataLength);
       rawWriter.writeByte(writePostScript(footerLength, metadataLength));
@@ -2314,6 +2591,7 @@ public long getNumberOfRows() {
   public synchronized long writeIntermediateFooter() throws IOException {
     // flush any buffered rows
     flushStripe();
+    waitForStripeWrite();
     // write a footer
     if (stripesAtLastFlush != stripes.size()) {
       if (callback != null) {
@@ -2340,6 +2618,7 @@ public void appendStripe(byte[] stripe, int offset, int length,
         "Stripe statistics must not be null");
 
     getStream();
+    waitForStripeWrite();
     long start = rawWriter.getPos();
     long stripeLen = length;
     long availBlockSpace = blockSize - (start % blockSize);
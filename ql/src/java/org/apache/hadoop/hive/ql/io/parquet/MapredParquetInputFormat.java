@@ -14,17 +14,35 @@
 package org.apache.hadoop.hive.ql.io.parquet;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedInputFormatInterface;
+import org.apache.hadoop.hive.ql.io.HiveInputFormat;
 import org.apache.hadoop.hive.ql.io.parquet.read.DataWritableReadSupport;
 import org.apache.hadoop.hive.ql.io.parquet.read.ParquetRecordReaderWrapper;
+import org.apache.hadoop.hive.ql.io.parquet.read.ParquetRowGroupFilter;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.io.ArrayWritable;
 import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
 
+import parquet.hadoop.ParquetFileReader;
 import parquet.hadoop.ParquetInputFormat;
+import parquet.hadoop.metadata.BlockMetaData;
+import parquet.hadoop.metadata.ParquetMetadata;
 
 
 /**
@@ -75,4 +93,91 @@ public org.apache.hadoop.mapred.RecordReader<Void, ArrayWritable> getRecordReade
       throw new RuntimeException("Cannot create a RecordReaderWrapper", e);
     }
   }
+
+  /**
+   * Drop the splits whose row groups the pushed down predicate rules out
+   * using the statistics in the footers, so that no task is started for them.
+   * The footers are read on the split generation threads.
+   */
+  @Override
+  public InputSplit[] getSplits(final JobConf job, final int numSplits) throws IOException {
+    final InputSplit[] splits = super.getSplits(job, numSplits);
+    if (job.get(TableScanDesc.FILTER_EXPR_CONF_STR) == null) {
+      return splits;
+    }
+    final Map<Path, List<FileSplit>> fileSplits = new LinkedHashMap<Path, List<FileSplit>>();
+    for (final InputSplit split : splits) {
+      if (split instanceof FileSplit) {
+        final Path path = ((FileSplit) split).getPath();
+        List<FileSplit> pathSplits = fileSplits.get(path);
+        if (pathSplits == null) {
+          pathSplits = new ArrayList<FileSplit>();
+          fileSplits.put(path, pathSplits);
+        }
+        pathSplits.add((FileSplit) split);
+      }
+    }
+    final List<Callable<List<FileSplit>>> tasks =
+        new ArrayList<Callable<List<FileSplit>>>(fileSplits.size());
+    for (final Map.Entry<Path, List<FileSplit>> entry : fileSplits.entrySet()) {
+      tasks.add(new Callable<List<FileSplit>>() {
+        @Override
+        public List<FileSplit> call() throws IOException {
+          return getNeededSplits(job, entry.getKey(), entry.getValue());
+        }
+      });
+    }
+    final Set<InputSplit> neededSplits = new HashSet<InputSplit>();
+    for (final List<FileSplit> pathSplits : HiveInputFormat.runSplitTasks(job, tasks)) {
+      neededSplits.addAll(pathSplits);
+    }
+    final List<InputSplit> result = new ArrayList<InputSplit>(splits.length);
+    for (final InputSplit split : splits) {
+      if (!(split instanceof FileSplit) || neededSplits.contains(split)) {
+        result.add(split);
+      }
+    }
+    if (result.size() < splits.length) {
+      LOG.info("Parquet predicate eliminated " + (splits.length - result.size()) + " of "
+          + splits.length + " splits");
+    }
+    return result.toArray(new InputSplit[result.size()]);
+  }
+
+  /**
+   * Read the footer of a file and keep its splits that the predicate doesn't rule out.
+   */
+  private static List<FileSplit> getNeededSplits(final JobConf job, final Path path,
+      final List<FileSplit> splits) throws IOException {
+    final ParquetMetadata footer = ParquetFileReader.readFooter(job, path);
+    final ParquetRowGroupFilter filter =
+        ParquetRowGroupFilter.create(job, footer.getFileMetaData().getSchema());
+    if (filter == null) {
+      return splits;
+    }
+    final List<FileSplit> result = new ArrayList<FileSplit>(splits.size());
+    for (final FileSplit split : splits) {
+      if (isNeeded(split, footer, filter)) {
+        result.add(split);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Does the split start any row group that the predicate doesn't rule out?
+   * A split only reads the row groups whose first data page is in it.
+   */
+  private static boolean isNeeded(final FileSplit split, final ParquetMetadata footer,
+      final ParquetRowGroupFilter filter) {
+    final long splitStart = split.getStart();
+    final long splitEnd = splitStart + split.getLength();
+    for (final BlockMetaData block : footer.getBlocks()) {
+      final long firstDataPage = block.getColumns().get(0).getFirstDataPageOffset();
+      if (firstDataPage >= splitStart && firstDataPage < splitEnd && filter.isNeeded(block)) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
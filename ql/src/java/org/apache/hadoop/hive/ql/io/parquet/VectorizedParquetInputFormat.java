@@ -16,12 +16,14 @@
 import java.io.IOException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.exec.vector.VectorColumnAssign;
 import org.apache.hadoop.hive.ql.exec.vector.VectorColumnAssignFactory;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedInputFormatInterface;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
 import org.apache.hadoop.hive.ql.io.parquet.read.ParquetRecordReaderWrapper;
+import org.apache.hadoop.hive.ql.io.parquet.read.VectorizedColumnarRecordReader;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.io.ArrayWritable;
 import org.apache.hadoop.io.NullWritable;
@@ -149,6 +151,13 @@ public VectorizedParquetInputFormat(ParquetInputFormat<ArrayWritable> realInput)
   @Override
   public RecordReader<NullWritable, VectorizedRowBatch> getRecordReader(
       InputSplit split, JobConf conf, Reporter reporter) throws IOException {
+    if (HiveConf.getBoolVar(conf, HiveConf.ConfVars.HIVE_PARQUET_VECTORIZED_COLUMN_READER)) {
+      RecordReader<NullWritable, VectorizedRowBatch> reader =
+          VectorizedColumnarRecordReader.create((FileSplit) split, conf, new ProjectionPusher());
+      if (reader != null) {
+        return reader;
+      }
+    }
     try {
       return (RecordReader<NullWritable, VectorizedRowBatch>)
         new VectorizedParquetRecordReader(realInput, (FileSplit) split, conf, reporter);
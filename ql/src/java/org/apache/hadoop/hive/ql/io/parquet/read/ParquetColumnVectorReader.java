@@ -0,0 +1,319 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io.parquet.read;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampUtils;
+import org.apache.hadoop.hive.ql.io.parquet.timestamp.NanoTime;
+import org.apache.hadoop.hive.ql.io.parquet.timestamp.NanoTimeUtils;
+
+import parquet.column.ColumnDescriptor;
+import parquet.column.Dictionary;
+import parquet.column.Encoding;
+import parquet.column.ValuesType;
+import parquet.column.page.DictionaryPage;
+import parquet.column.page.Page;
+import parquet.column.page.PageReader;
+import parquet.column.statistics.Statistics;
+import parquet.column.values.ValuesReader;
+import parquet.io.api.Binary;
+import parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+/**
+ * Decodes the pages of a flat Parquet column chunk directly into column
+ * vectors, without assembling records. The levels and values of each page
+ * are decoded the same way as the column readers of Parquet do, but the
+ * values are written into the vectors in a loop per type. The string values
+ * reference the bytes of the page or of the dictionary. A page is only
+ * decompressed and decoded when some of its rows are read, so the rows of
+ * the pages that the predicate rules out can be skipped cheaply.
+ */
+class ParquetColumnVectorReader {
+  private final ColumnDescriptor descriptor;
+  private final PrimitiveTypeName typeName;
+  private final int maxDefinitionLevel;
+  private final PageReader pageReader;
+  private final Dictionary dictionary;
+  // the entries of a binary dictionary, which the vectors reference
+  private final BytesColumnVector dictionaryVector;
+
+  // the current page, until it is decoded
+  private Page page = null;
+  private ValuesReader definitionLevels;
+  private ValuesReader values;
+  // are the values of the current page dictionary ids?
+  private boolean dictionaryIds = false;
+  private int valuesLeftInPage = 0;
+
+  ParquetColumnVectorReader(final ColumnDescriptor descriptor,
+      final PageReader pageReader) throws IOException {
+    this.descriptor = descriptor;
+    this.typeName = descriptor.getType();
+    this.maxDefinitionLevel = descriptor.getMaxDefinitionLevel();
+    this.pageReader = pageReader;
+    final DictionaryPage dictionaryPage = pageReader.readDictionaryPage();
+    if (dictionaryPage != null) {
+      dictionary = dictionaryPage.getEncoding().initDictionary(descriptor, dictionaryPage);
+      dictionaryVector = typeName == PrimitiveTypeName.BINARY ? createDictionaryVector() : null;
+    } else {
+      dictionary = null;
+      dictionaryVector = null;
+    }
+  }
+
+  private BytesColumnVector createDictionaryVector() {
+    final int size = dictionary.getMaxId() + 1;
+    final BytesColumnVector entries = new BytesColumnVector(size);
+    for (int id = 0; id < size; ++id) {
+      final byte[] bytes = dictionary.decodeToBinary(id).getBytes();
+      entries.setRef(id, bytes, 0, bytes.length);
+    }
+    return entries;
+  }
+
+  ColumnDescriptor getDescriptor() {
+    return descriptor;
+  }
+
+  /**
+   * Make sure that the current page has values left.
+   */
+  void ensurePage() throws IOException {
+    if (valuesLeftInPage == 0) {
+      page = pageReader.readPage();
+      if (page == null) {
+        throw new IOException("Column " + Arrays.toString(descriptor.getPath())
+            + " has fewer values than the rows of its row group");
+      }
+      valuesLeftInPage = page.getValueCount();
+    }
+  }
+
+  /**
+   * Get the number of values that are left in the current page, which is
+   * the number of rows because the column isn't repeated.
+   */
+  int getValuesLeftInPage() {
+    return valuesLeftInPage;
+  }
+
+  /**
+   * Get the statistics of the current page if it wasn't read from yet.
+   *
+   * @return the statistics or null if some of the page's rows were read
+   */
+  Statistics getPageStatistics() {
+    return page == null ? null : page.getStatistics();
+  }
+
+  private void decodePage() throws IOException {
+    final int count = page.getValueCount();
+    final byte[] bytes = page.getBytes().toByteArray();
+    final ValuesReader repetitionLevels =
+        page.getRlEncoding().getValuesReader(descriptor, ValuesType.REPETITION_LEVEL);
+    repetitionLevels.initFromPage(count, bytes, 0);
+    definitionLevels =
+        page.getDlEncoding().getValuesReader(descriptor, ValuesType.DEFINITION_LEVEL);
+    definitionLevels.initFromPage(count, bytes, repetitionLevels.getNextOffset());
+    final Encoding encoding = page.getValueEncoding();
+    if (encoding.usesDictionary()) {
+      if (dictionary == null) {
+        throw new IOException("Column " + Arrays.toString(descriptor.getPath())
+            + " has a dictionary encoded page without a dictionary");
+      }
+      values = encoding.getDictionaryBasedValuesReader(descriptor, ValuesType.VALUES, dictionary);
+    } else {
+      values = encoding.getValuesReader(descriptor, ValuesType.VALUES);
+    }
+    values.initFromPage(count, bytes, definitionLevels.getNextOffset());
+    dictionaryIds = encoding.usesDictionary();
+    page = null;
+  }
+
+  /**
+   * Skip the next rows of the column. The pages that only have skipped rows
+   * are not decoded.
+   *
+   * @param count the number of rows to skip
+   */
+  void skip(int count) throws IOException {
+    while (count > 0) {
+      ensurePage();
+      final int rows = Math.min(count, valuesLeftInPage);
+      if (page != null && rows == valuesLeftInPage) {
+        page = null;
+      } else {
+        if (page != null) {
+          decodePage();
+        }
+        for (int row = 0; row < rows; ++row) {
+          if (definitionLevels.readInteger() == maxDefinitionLevel) {
+            values.skip();
+          }
+        }
+      }
+      count -= rows;
+      valuesLeftInPage -= rows;
+    }
+  }
+
+  /**
+   * Read the next values of the column into the vector.
+   *
+   * @param vector the vector to fill, which was reset for the batch
+   * @param offset the first row of the vector to fill
+   * @param count the number of rows to read
+   */
+  void readBatch(final ColumnVector vector, int offset, int count) throws IOException {
+    if (offset == 0 && vector instanceof BytesColumnVector) {
+      ((BytesColumnVector) vector).dictionary = dictionaryVector;
+    }
+    while (count > 0) {
+      ensurePage();
+      if (page != null) {
+        decodePage();
+      }
+      final int rows = Math.min(count, valuesLeftInPage);
+      switch (typeName) {
+      case BOOLEAN:
+        readBooleans((LongColumnVector) vector, offset, rows);
+        break;
+      case INT32:
+        readInts((LongColumnVector) vector, offset, rows);
+        break;
+      case INT64:
+        readLongs((LongColumnVector) vector, offset, rows);
+        break;
+      case INT96:
+        readTimestamps((LongColumnVector) vector, offset, rows);
+        break;
+      case FLOAT:
+        readFloats((DoubleColumnVector) vector, offset, rows);
+        break;
+      case DOUBLE:
+        readDoubles((DoubleColumnVector) vector, offset, rows);
+        break;
+      case BINARY:
+        readBinaries((BytesColumnVector) vector, offset, rows);
+        break;
+      default:
+        throw new IOException("Unsupported type " + typeName + " of column "
+            + Arrays.toString(descriptor.getPath()));
+      }
+      offset += rows;
+      count -= rows;
+      valuesLeftInPage -= rows;
+    }
+  }
+
+  /**
+   * Read the definition level of the next row and mark the row as null if
+   * it has no value.
+   *
+   * @return is the value null?
+   */
+  private boolean readNull(final ColumnVector vector, final int row) {
+    if (definitionLevels.readInteger() == maxDefinitionLevel) {
+      vector.isNull[row] = false;
+      return false;
+    }
+    vector.isNull[row] = true;
+    vector.noNulls = false;
+    return true;
+  }
+
+  private void readBooleans(final LongColumnVector vector, final int offset, final int rows) {
+    for (int row = offset; row < offset + rows; ++row) {
+      if (!readNull(vector, row)) {
+        vector.vector[row] = values.readBoolean() ? 1 : 0;
+      }
+    }
+  }
+
+  private void readInts(final LongColumnVector vector, final int offset, final int rows) {
+    for (int row = offset; row < offset + rows; ++row) {
+      if (!readNull(vector, row)) {
+        vector.vector[row] = values.readInteger();
+      }
+    }
+  }
+
+  private void readLongs(final LongColumnVector vector, final int offset, final int rows) {
+    for (int row = offset; row < offset + rows; ++row) {
+      if (!readNull(vector, row)) {
+        vector.vector[row] = values.readLong();
+      }
+    }
+  }
+
+  private void readTimestamps(final LongColumnVector vector, final int offset, final int rows) {
+    for (int row = offset; row < offset + rows; ++row) {
+      if (!readNull(vector, row)) {
+        vector.vector[row] = TimestampUtils.getTimeNanoSec(
+            NanoTimeUtils.getTimestamp(NanoTime.fromBinary(values.readBytes())));
+      }
+    }
+  }
+
+  private void readFloats(final DoubleColumnVector vector, final int offset, final int rows) {
+    for (int row = offset; row < offset + rows; ++row) {
+      if (!readNull(vector, row)) {
+        vector.vector[row] = values.readFloat();
+      }
+    }
+  }
+
+  private void readDoubles(final DoubleColumnVector vector, final int offset, final int rows) {
+    for (int row = offset; row < offset + rows; ++row) {
+      if (!readNull(vector, row)) {
+        vector.vector[row] = values.readDouble();
+      }
+    }
+  }
+
+  private void readBinaries(final BytesColumnVector vector, final int offset, final int rows) {
+    if (dictionaryIds && vector.dictionary == dictionaryVector) {
+      if (vector.dictionaryIds == null || vector.dictionaryIds.length < vector.isNull.length) {
+        vector.dictionaryIds = new int[vector.isNull.length];
+      }
+      final int[] ids = vector.dictionaryIds;
+      for (int row = offset; row < offset + rows; ++row) {
+        if (!readNull(vector, row)) {
+          final int id = values.readValueDictionaryId();
+          ids[row] = id;
+          vector.setRef(row, dictionaryVector.vector[id], dictionaryVector.start[id],
+              dictionaryVector.length[id]);
+        }
+      }
+      return;
+    }
+    // the rows of the batch don't all come from the same dictionary
+    vector.dictionary = null;
+    for (int row = offset; row < offset + rows; ++row) {
+      if (!readNull(vector, row)) {
+        final Binary binary = values.readBytes();
+        final ByteBuffer buffer = binary.toByteBuffer();
+        vector.setRef(row, buffer.array(), buffer.arrayOffset() + buffer.position(),
+            buffer.remaining());
+      }
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io.parquet.read;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.io.orc.RecordReaderImpl;
+import org.apache.hadoop.hive.ql.io.sarg.PredicateLeaf;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument.TruthValue;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgumentFactory;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.serde2.io.DateWritable;
+
+import parquet.column.ColumnDescriptor;
+import parquet.column.statistics.Statistics;
+import parquet.hadoop.metadata.BlockMetaData;
+import parquet.schema.MessageType;
+import parquet.schema.OriginalType;
+import parquet.schema.PrimitiveType;
+
+/**
+ * Decides which row groups of a Parquet file may have rows that match the
+ * predicate that Hive pushed down to the table scan, by evaluating the leaves
+ * of the search argument on the minimum and maximum of the column chunks.
+ * The same evaluation on the statistics of a page tells whether its rows
+ * can be skipped.
+ */
+public class ParquetRowGroupFilter {
+  private static final Log LOG = LogFactory.getLog(ParquetRowGroupFilter.class);
+
+  private final SearchArgument sarg;
+  private final List<PredicateLeaf> leaves;
+  private final List<ColumnDescriptor> fileColumns;
+  // the index of the column chunk that each leaf reads or -1 if the leaf
+  // can't be evaluated on the statistics
+  private final int[] leafColumns;
+  private final PrimitiveType[] leafTypes;
+
+  public ParquetRowGroupFilter(final SearchArgument sarg, final MessageType fileSchema) {
+    this.sarg = sarg;
+    this.leaves = sarg.getLeaves();
+    this.leafColumns = new int[leaves.size()];
+    this.leafTypes = new PrimitiveType[leaves.size()];
+    Arrays.fill(leafColumns, -1);
+    final List<ColumnDescriptor> columns = fileSchema.getColumns();
+    this.fileColumns = columns;
+    for (int leaf = 0; leaf < leafColumns.length; ++leaf) {
+      final String name = leaves.get(leaf).getColumnName();
+      for (int column = 0; column < columns.size(); ++column) {
+        final String[] path = columns.get(column).getPath();
+        if (path.length == 1 && path[0].equalsIgnoreCase(name)
+            && columns.get(column).getMaxRepetitionLevel() == 0) {
+          leafColumns[leaf] = column;
+          leafTypes[leaf] = fileSchema.getType(path).asPrimitiveType();
+        }
+      }
+    }
+  }
+
+  /**
+   * Create the filter for the predicate that was pushed down in the
+   * configuration.
+   *
+   * @param conf the configuration of the split
+   * @param fileSchema the schema of the file
+   * @return the filter or null if there is no predicate
+   */
+  public static ParquetRowGroupFilter create(final Configuration conf, final MessageType fileSchema) {
+    final String serializedPushdown = conf.get(TableScanDesc.FILTER_EXPR_CONF_STR);
+    if (serializedPushdown == null) {
+      LOG.debug("No Parquet pushdown predicate");
+      return null;
+    }
+    final SearchArgument sarg = SearchArgumentFactory.create(
+        Utilities.deserializeExpression(serializedPushdown));
+    LOG.info("Parquet pushdown predicate: " + sarg);
+    return new ParquetRowGroupFilter(sarg, fileSchema);
+  }
+
+  /**
+   * Keep the row groups that may have rows that match the predicate.
+   *
+   * @param blocks the row groups of the file, in order
+   * @return the row groups that must be read
+   */
+  public List<BlockMetaData> filter(final List<BlockMetaData> blocks) {
+    final List<BlockMetaData> result = new ArrayList<BlockMetaData>(blocks.size());
+    for (final BlockMetaData block : blocks) {
+      if (isNeeded(block)) {
+        result.add(block);
+      }
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Skipping " + (blocks.size() - result.size()) + " of " + blocks.size()
+          + " row groups");
+    }
+    return result;
+  }
+
+  /**
+   * May the row group have rows that match the predicate?
+   */
+  public boolean isNeeded(final BlockMetaData block) {
+    final TruthValue[] values = new TruthValue[leaves.size()];
+    for (int leaf = 0; leaf < values.length; ++leaf) {
+      if (leafColumns[leaf] == -1) {
+        values[leaf] = TruthValue.YES_NO_NULL;
+      } else {
+        values[leaf] = evaluate(leaves.get(leaf), leafTypes[leaf],
+            block.getColumns().get(leafColumns[leaf]).getStatistics(), block.getRowCount());
+      }
+    }
+    return sarg.evaluate(values).isNeeded();
+  }
+
+  /**
+   * Does the predicate read the column?
+   */
+  public boolean isFiltered(final ColumnDescriptor column) {
+    final int index = fileColumns.indexOf(column);
+    for (final int leafColumn : leafColumns) {
+      if (leafColumn != -1 && leafColumn == index) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Can the rows of a page be skipped, because the values of the column rule
+   * out the predicate no matter what the other columns have?
+   *
+   * @param column the column of the page
+   * @param stats the statistics of the page
+   * @param rows the number of rows in the page
+   */
+  public boolean canSkip(final ColumnDescriptor column, final Statistics stats, final long rows) {
+    final int index = fileColumns.indexOf(column);
+    final TruthValue[] values = new TruthValue[leaves.size()];
+    for (int leaf = 0; leaf < values.length; ++leaf) {
+      if (leafColumns[leaf] == -1 || leafColumns[leaf] != index) {
+        values[leaf] = TruthValue.YES_NO_NULL;
+      } else {
+        values[leaf] = evaluate(leaves.get(leaf), leafTypes[leaf], stats, rows);
+      }
+    }
+    return !sarg.evaluate(values).isNeeded();
+  }
+
+  /**
+   * Evaluate a leaf on the statistics of a column chunk or a page.
+   *
+   * @param predicate the leaf to evaluate
+   * @param type the type of the column in the file
+   * @param stats the statistics of the values
+   * @param rows the number of values, including the nulls
+   * @return the truth values that the leaf may have on the values
+   */
+  static TruthValue evaluate(final PredicateLeaf predicate, final PrimitiveType type,
+      final Statistics stats, final long rows) {
+    if (stats == null || stats.isEmpty()) {
+      // the writer didn't record statistics
+      return TruthValue.YES_NO_NULL;
+    }
+    if (stats.getNumNulls() == rows) {
+      return predicate.getOperator() == PredicateLeaf.Operator.IS_NULL ?
+          TruthValue.YES : TruthValue.NULL;
+    }
+    final Object min = getStatsValue(predicate, type, stats.genericGetMin());
+    final Object max = getStatsValue(predicate, type, stats.genericGetMax());
+    if (min == null || max == null) {
+      return TruthValue.YES_NO_NULL;
+    }
+    return RecordReaderImpl.evaluatePredicateRange(predicate, min, max);
+  }
+
+  /**
+   * Convert the minimum or maximum of a column to the type that the
+   * predicate compares with.
+   *
+   * @return the value or null if the column's statistics can't be used
+   */
+  private static Object getStatsValue(final PredicateLeaf predicate, final PrimitiveType type,
+      final Object value) {
+    switch (type.getPrimitiveTypeName()) {
+    case INT32:
+      if (type.getOriginalType() == OriginalType.DATE) {
+        return predicate.getType() == PredicateLeaf.Type.DATE ?
+            new DateWritable((Integer) value) : null;
+      }
+      return predicate.getType() == PredicateLeaf.Type.INTEGER ?
+          Long.valueOf(((Integer) value).longValue()) : null;
+    case INT64:
+      return predicate.getType() == PredicateLeaf.Type.INTEGER && type.getOriginalType() == null ?
+          (Long) value : null;
+    case FLOAT:
+      return predicate.getType() == PredicateLeaf.Type.FLOAT ?
+          Double.valueOf(((Float) value).doubleValue()) : null;
+    case DOUBLE:
+      return predicate.getType() == PredicateLeaf.Type.FLOAT ? (Double) value : null;
+    default:
+      // older writers compared binary values as signed bytes, so their
+      // minimum and maximum strings can't be trusted
+      return null;
+    }
+  }
+}
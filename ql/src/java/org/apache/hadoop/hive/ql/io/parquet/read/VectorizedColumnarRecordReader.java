@@ -0,0 +1,384 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io.parquet.read;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.ql.io.IOConstants;
+import org.apache.hadoop.hive.ql.io.parquet.ProjectionPusher;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+
+import parquet.column.ColumnDescriptor;
+import parquet.column.page.PageReadStore;
+import parquet.column.statistics.Statistics;
+import parquet.hadoop.ParquetFileReader;
+import parquet.hadoop.metadata.BlockMetaData;
+import parquet.hadoop.metadata.ParquetMetadata;
+import parquet.schema.MessageType;
+import parquet.schema.OriginalType;
+import parquet.schema.PrimitiveType;
+import parquet.schema.PrimitiveType.PrimitiveTypeName;
+import parquet.schema.Type;
+import parquet.schema.Type.Repetition;
+
+/**
+ * A vectorized reader for Parquet files that reads the projected columns a
+ * row group at a time and decodes their pages directly into the column
+ * vectors of the batches. The row groups that the pushed down predicate rules
+ * out are not read, and neither are the rows of the pages whose statistics
+ * rule it out.
+ *
+ * Only flat columns of the primitive types are supported. For the other
+ * projections {@link #create} returns null and the caller uses the row reader.
+ */
+public class VectorizedColumnarRecordReader
+    implements RecordReader<NullWritable, VectorizedRowBatch> {
+  private static final Log LOG = LogFactory.getLog(VectorizedColumnarRecordReader.class);
+
+  private final FileSplit split;
+  private final VectorizedRowBatchCtx rbCtx;
+  private final ParquetFileReader reader;
+  // the row groups of the split that are read
+  private final List<BlockMetaData> blocks;
+  // the columns of the file that are read and the columns of the batch they
+  // are read into
+  private final List<ColumnDescriptor> columns;
+  private final int[] batchColumns;
+  // the projected columns that the file doesn't have
+  private final int[] missingColumns;
+  private final long totalRows;
+  // the filter of the pushed down predicate or null
+  private final ParquetRowGroupFilter filter;
+  private ParquetColumnVectorReader[] columnReaders;
+  // the readers of the columns that the predicate reads
+  private final List<ParquetColumnVectorReader> filteredReaders =
+      new ArrayList<ParquetColumnVectorReader>();
+  private int nextBlock = 0;
+  private long rowsLeftInBlock = 0;
+  private long rowsRead = 0;
+  private boolean addPartitionCols = true;
+
+  private VectorizedColumnarRecordReader(final FileSplit split,
+      final JobConf conf,
+      final JobConf jobConf,
+      final Path path,
+      final List<BlockMetaData> blocks,
+      final List<ColumnDescriptor> columns,
+      final List<Integer> batchColumns,
+      final List<Integer> missingColumns,
+      final ParquetRowGroupFilter filter) throws IOException {
+    this.split = split;
+    this.filter = filter;
+    this.blocks = blocks;
+    this.columns = columns;
+    this.batchColumns = toArray(batchColumns);
+    this.missingColumns = toArray(missingColumns);
+    long rows = 0;
+    for (final BlockMetaData block : blocks) {
+      rows += block.getRowCount();
+    }
+    this.totalRows = rows;
+    this.columnReaders = new ParquetColumnVectorReader[columns.size()];
+    try {
+      rbCtx = new VectorizedRowBatchCtx();
+      rbCtx.init(conf, split);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    reader = columns.isEmpty() || blocks.isEmpty() ? null :
+        new ParquetFileReader(jobConf, path, blocks, columns);
+  }
+
+  private static int[] toArray(final List<Integer> list) {
+    final int[] result = new int[list.size()];
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = list.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Create a reader for the split, if it can decode all of the projected
+   * columns.
+   *
+   * @param split the split to read
+   * @param conf the configuration of the job
+   * @param pusher pushes the projection and the filter of the table scan
+   * @return the reader or null if the split has to be read through the row
+   *    reader
+   * @throws IOException if the footer cannot be read from the file
+   */
+  public static VectorizedColumnarRecordReader create(final FileSplit split,
+      final JobConf conf,
+      final ProjectionPusher pusher) throws IOException {
+    final Path path = split.getPath();
+    final JobConf jobConf = pusher.pushProjectionsAndFilters(conf, path.getParent());
+    final String columnNames = jobConf.get(IOConstants.COLUMNS);
+    final String columnTypes = jobConf.get(IOConstants.COLUMNS_TYPES);
+    if (columnNames == null || columnTypes == null) {
+      return null;
+    }
+    final List<String> names = DataWritableReadSupport.getColumns(columnNames);
+    final List<TypeInfo> types = TypeInfoUtils.getTypeInfosFromTypeString(columnTypes);
+    if (types.size() < names.size()) {
+      return null;
+    }
+
+    final ParquetMetadata footer = ParquetFileReader.readFooter(jobConf, path);
+    final MessageType fileSchema = footer.getFileMetaData().getSchema();
+    final boolean indexAccess =
+        jobConf.getBoolean(DataWritableReadSupport.PARQUET_COLUMN_INDEX_ACCESS, false);
+    final List<ColumnDescriptor> columns = new ArrayList<ColumnDescriptor>();
+    final List<Integer> batchColumns = new ArrayList<Integer>();
+    final List<Integer> missingColumns = new ArrayList<Integer>();
+    for (final Integer id : ColumnProjectionUtils.getReadColumnIDs(jobConf)) {
+      if (id >= names.size()) {
+        continue;
+      }
+      final Type fileType = findField(fileSchema, names.get(id), id, indexAccess);
+      if (fileType == null) {
+        missingColumns.add(id);
+      } else if (fileType.isPrimitive() && !fileType.isRepetition(Repetition.REPEATED)
+          && isSupported(types.get(id), fileType.asPrimitiveType())) {
+        columns.add(fileSchema.getColumnDescription(new String[] {fileType.getName()}));
+        batchColumns.add(id);
+      } else {
+        LOG.info("Using the row reader for column " + names.get(id) + " of type "
+            + types.get(id) + " stored as " + fileType);
+        return null;
+      }
+    }
+
+    final long splitStart = split.getStart();
+    final long splitLength = split.getLength();
+    List<BlockMetaData> blocks = new ArrayList<BlockMetaData>();
+    for (final BlockMetaData block : footer.getBlocks()) {
+      final long firstDataPage = block.getColumns().get(0).getFirstDataPageOffset();
+      if (firstDataPage >= splitStart && firstDataPage < splitStart + splitLength) {
+        blocks.add(block);
+      }
+    }
+    final ParquetRowGroupFilter filter = ParquetRowGroupFilter.create(jobConf, fileSchema);
+    if (filter != null) {
+      blocks = filter.filter(blocks);
+    }
+    return new VectorizedColumnarRecordReader(split, conf, jobConf, path, blocks, columns,
+        batchColumns, missingColumns, filter);
+  }
+
+  private static Type findField(final MessageType fileSchema, final String name,
+      final int id, final boolean indexAccess) {
+    if (indexAccess) {
+      return id < fileSchema.getFieldCount() ? fileSchema.getType(id) : null;
+    }
+    for (final Type field : fileSchema.getFields()) {
+      if (field.getName().equalsIgnoreCase(name)) {
+        return field;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Can the column of the file be decoded into the vector of the Hive type?
+   */
+  static boolean isSupported(final TypeInfo hiveType, final PrimitiveType fileType) {
+    if (hiveType.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+      return false;
+    }
+    final PrimitiveTypeName typeName = fileType.getPrimitiveTypeName();
+    switch (((PrimitiveTypeInfo) hiveType).getPrimitiveCategory()) {
+    case BOOLEAN:
+      return typeName == PrimitiveTypeName.BOOLEAN;
+    case BYTE:
+    case SHORT:
+    case INT:
+      return typeName == PrimitiveTypeName.INT32;
+    case LONG:
+      return typeName == PrimitiveTypeName.INT32 || typeName == PrimitiveTypeName.INT64;
+    case FLOAT:
+      return typeName == PrimitiveTypeName.FLOAT;
+    case DOUBLE:
+      return typeName == PrimitiveTypeName.FLOAT || typeName == PrimitiveTypeName.DOUBLE;
+    case STRING:
+    case BINARY:
+      return typeName == PrimitiveTypeName.BINARY
+          && fileType.getOriginalType() != OriginalType.DECIMAL;
+    case TIMESTAMP:
+      return typeName == PrimitiveTypeName.INT96;
+    default:
+      return false;
+    }
+  }
+
+  private void readNextBlock() throws IOException {
+    final BlockMetaData block = blocks.get(nextBlock++);
+    rowsLeftInBlock = block.getRowCount();
+    if (reader != null) {
+      final PageReadStore pages = reader.readNextRowGroup();
+      if (pages == null) {
+        throw new IOException("Expected " + totalRows + " rows in " + split.getPath()
+            + ", but read only " + rowsRead);
+      }
+      filteredReaders.clear();
+      for (int i = 0; i < columnReaders.length; ++i) {
+        columnReaders[i] =
+            new ParquetColumnVectorReader(columns.get(i), pages.getPageReader(columns.get(i)));
+        if (filter != null && filter.isFiltered(columns.get(i))) {
+          filteredReaders.add(columnReaders[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Skip the rows of the pages of the predicate columns whose statistics
+   * rule out the predicate and find how many rows can be read before one of
+   * those columns starts a new page.
+   *
+   * @param maxRows the most rows that will be read
+   * @return the number of rows to read next
+   */
+  private long skipFilteredPages(long maxRows) throws IOException {
+    boolean skipped = true;
+    while (skipped && rowsLeftInBlock > 0) {
+      skipped = false;
+      for (final ParquetColumnVectorReader columnReader : filteredReaders) {
+        columnReader.ensurePage();
+        final long rows = Math.min(columnReader.getValuesLeftInPage(), rowsLeftInBlock);
+        final Statistics stats = columnReader.getPageStatistics();
+        if (stats != null && filter.canSkip(columnReader.getDescriptor(), stats, rows)) {
+          for (final ParquetColumnVectorReader other : columnReaders) {
+            other.skip((int) rows);
+          }
+          rowsLeftInBlock -= rows;
+          rowsRead += rows;
+          skipped = true;
+          break;
+        }
+      }
+    }
+    long result = Math.min(maxRows, rowsLeftInBlock);
+    if (rowsLeftInBlock > 0) {
+      for (final ParquetColumnVectorReader columnReader : filteredReaders) {
+        result = Math.min(result, columnReader.getValuesLeftInPage());
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public boolean next(final NullWritable key, final VectorizedRowBatch batch) throws IOException {
+    if (rowsRead == totalRows) {
+      return false;
+    }
+    // Check and update partition cols if necessary. Ideally, this should be done
+    // in CreateValue as the partition is constant per split. But since Hive uses
+    // CombineHiveRecordReader and
+    // as this does not call CreateValue for each new RecordReader it creates, this check is
+    // required in next()
+    if (addPartitionCols) {
+      try {
+        rbCtx.addPartitionColsToBatch(batch);
+      } catch (HiveException e) {
+        throw new IOException("Cannot add the partition columns of " + split.getPath(), e);
+      }
+      addPartitionCols = false;
+    }
+    for (final int column : batchColumns) {
+      if (batch.cols[column] != null) {
+        batch.cols[column].reset();
+      }
+    }
+    for (final int column : missingColumns) {
+      final ColumnVector vector = batch.cols[column];
+      if (vector != null) {
+        vector.noNulls = false;
+        vector.isNull[0] = true;
+        vector.isRepeating = true;
+      }
+    }
+    final int maxSize = batch.getMaxSize();
+    int size = 0;
+    while (size < maxSize && rowsRead < totalRows) {
+      if (rowsLeftInBlock == 0) {
+        readNextBlock();
+      }
+      final int rows = (int) skipFilteredPages(maxSize - size);
+      if (rows == 0) {
+        continue;
+      }
+      for (int i = 0; i < columnReaders.length; ++i) {
+        final ColumnVector vector = batch.cols[batchColumns[i]];
+        if (vector != null) {
+          columnReaders[i].readBatch(vector, size, rows);
+        }
+      }
+      size += rows;
+      rowsLeftInBlock -= rows;
+      rowsRead += rows;
+    }
+    batch.size = size;
+    batch.selectedInUse = false;
+    return size > 0;
+  }
+
+  @Override
+  public NullWritable createKey() {
+    return NullWritable.get();
+  }
+
+  @Override
+  public VectorizedRowBatch createValue() {
+    try {
+      return rbCtx.createVectorizedRowBatch();
+    } catch (HiveException e) {
+      throw new RuntimeException("Error creating a batch", e);
+    }
+  }
+
+  @Override
+  public long getPos() throws IOException {
+    return split.getStart() + (long) (getProgress() * split.getLength());
+  }
+
+  @Override
+  public float getProgress() throws IOException {
+    return totalRows == 0 ? 1f : (float) rowsRead / totalRows;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (reader != null) {
+      reader.close();
+    }
+  }
+}
@@ -131,6 +131,11 @@ public class Hive {
   private HiveConf conf = null;
   private IMetaStoreClient metaStoreClient;
   private UserGroupInformation owner;
+  // the results of the metastore calls, while hive.metadata.cache.scope keeps them
+  private volatile MetaDataCache metaDataCache = null;
+  // the thread that compiles a query and reads the cache; HiveServer2 shares the Hive object
+  // of a session with the threads that run its queries, which must not read the cache
+  private volatile Thread metaDataCacheThread = null;
 
   private static ThreadLocal<Hive> hiveDB = new ThreadLocal<Hive>() {
     @Override
@@ -233,6 +238,53 @@ private Hive(HiveConf c) throws HiveException {
   }
 
 
+  /**
+   * Start keeping the tables, partitions and column statistics that the
+   * compilation of a query fetches, as hive.metadata.cache.scope says.
+   */
+  public void startMetaDataCache() {
+    String scope = HiveConf.getVar(conf, ConfVars.HIVE_METADATA_CACHE_SCOPE);
+    if (scope.equals("none")) {
+      metaDataCache = null;
+    } else if (metaDataCache == null || scope.equals("query")) {
+      metaDataCache = new MetaDataCache(
+          HiveConf.getIntVar(conf, ConfVars.HIVE_METADATA_CACHE_MAX_ENTRIES));
+    }
+    metaDataCacheThread = Thread.currentThread();
+  }
+
+  /**
+   * Stop keeping the metadata at the end of the compilation of a query,
+   * unless the cache lasts for the session. Outside of compilation the calls
+   * go to the metastore, but the changes still clear a session cache.
+   */
+  public void endMetaDataCache() {
+    if (metaDataCacheThread == Thread.currentThread()) {
+      metaDataCacheThread = null;
+    }
+    if (!HiveConf.getVar(conf, ConfVars.HIVE_METADATA_CACHE_SCOPE).equals("session")) {
+      metaDataCache = null;
+    }
+  }
+
+  /**
+   * @return the cache to read the metadata from, or null if the current
+   *         thread isn't compiling a query
+   */
+  private MetaDataCache getMetaDataCache() {
+    return metaDataCacheThread == Thread.currentThread() ? metaDataCache : null;
+  }
+
+  /**
+   * Forget the cached metadata, because this session changes it.
+   */
+  private void invalidateMetaDataCache() {
+    MetaDataCache cache = metaDataCache;
+    if (cache != null) {
+      cache.clear();
+    }
+  }
+
   private boolean isCurrentUserOwner() throws HiveException {
     try {
       return owner == null || owner.equals(UserGroupInformation.getCurrentUser());
@@ -321,6 +373,7 @@ public void dropDatabase(String name, boolean deleteData, boolean ignoreUnknownD
   public void dropDatabase(String name, boolean deleteData, boolean ignoreUnknownDb, boolean cascade)
       throws HiveException, NoSuchObjectException {
     try {
+      invalidateMetaDataCache();
       getMSC().dropDatabase(name, deleteData, ignoreUnknownDb, cascade);
     } catch (NoSuchObjectException e) {
       throw e;
@@ -449,6 +502,7 @@ public void alterTable(String tblName, Table newTbl)
         newTbl.getParameters().remove(hive_metastoreConstants.DDL_TIME);
       }
       newTbl.checkValidity();
+      invalidateMetaDataCache();
       getMSC().alter_table(names[0], names[1], newTbl.getTTable());
     } catch (MetaException e) {
       throw new HiveException("Unable to alter table. " + e.getMessage(), e);
@@ -523,6 +577,7 @@ public void alterPartition(String dbName, String tblName, Partition newPart)
         newPart.getParameters().remove(hive_metastoreConstants.DDL_TIME);
       }
       newPart.checkValidity();
+      invalidateMetaDataCache();
       getMSC().alter_partition(dbName, tblName, newPart.getTPartition());
 
     } catch (MetaException e) {
@@ -556,6 +611,7 @@ public void alterPartitions(String tblName, List<Partition> newParts)
         }
         newTParts.add(tmpPart.getTPartition());
       }
+      invalidateMetaDataCache();
       getMSC().alter_partitions(names[0], names[1], newTParts);
     } catch (MetaException e) {
       throw new HiveException("Unable to alter partition. " + e.getMessage(), e);
@@ -598,6 +654,7 @@ public void renamePartition(Table tbl, Map<String, String> oldPartSpec, Partitio
           pvals.add(val);
         }
       }
+      invalidateMetaDataCache();
       getMSC().renamePartition(tbl.getDbName(), tbl.getTableName(), pvals,
           newPart.getTPartition());
 
@@ -667,6 +724,7 @@ public void createTable(Table tbl, boolean ifNotExists) throws HiveException {
           tTbl.setPrivileges(principalPrivs);
         }
       }
+      invalidateMetaDataCache();
       getMSC().createTable(tTbl);
     } catch (AlreadyExistsException e) {
       if (!ifNotExists) {
@@ -864,6 +922,7 @@ public void createIndex(String tableName, String indexName, String indexHandlerC
 
       indexHandler.analyzeIndexDefinition(baseTbl, indexDesc, tt);
 
+      invalidateMetaDataCache();
       this.getMSC().createIndex(indexDesc, tt);
 
     } catch (Exception e) {
@@ -892,6 +951,7 @@ public boolean dropIndex(String baseTableName, String index_name, boolean delete
 
   public boolean dropIndex(String db_name, String tbl_name, String index_name, boolean deleteData) throws HiveException {
     try {
+      invalidateMetaDataCache();
       return getMSC().dropIndex(db_name, tbl_name, index_name, deleteData);
     } catch (NoSuchObjectException e) {
       throw new HiveException("Partition or table doesn't exist. " + e.getMessage(), e);
@@ -977,6 +1037,7 @@ public void dropTable(String dbName, String tableName, boolean deleteData,
   public void dropTable(String dbName, String tableName, boolean deleteData,
       boolean ignoreUnknownTab, boolean ifPurge) throws HiveException {
     try {
+      invalidateMetaDataCache();
       getMSC().dropTable(dbName, tableName, deleteData, ignoreUnknownTab, ifPurge);
     } catch (NoSuchObjectException e) {
       if (!ignoreUnknownTab) {
@@ -1057,7 +1118,7 @@ public Table getTable(final String dbName, final String tableName,
     // Get the table from metastore
     org.apache.hadoop.hive.metastore.api.Table tTable = null;
     try {
-      tTable = getMSC().getTable(dbName, tableName);
+      tTable = getMSCTable(dbName, tableName);
     } catch (NoSuchObjectException e) {
       if (throwException) {
         LOG.error("Table " + tableName + " not found: " + e.getMessage());
@@ -1099,6 +1160,24 @@ public Table getTable(final String dbName, final String tableName,
     return new Table(tTable);
   }
 
+  private org.apache.hadoop.hive.metastore.api.Table getMSCTable(String dbName, String tableName)
+      throws TException {
+    MetaDataCache cache = getMetaDataCache();
+    if (cache == null) {
+      return getMSC().getTable(dbName, tableName);
+    }
+    List<Object> key = MetaDataCache.getKey("getTable", dbName, tableName);
+    org.apache.hadoop.hive.metastore.api.Table tTable =
+        (org.apache.hadoop.hive.metastore.api.Table) cache.get(key);
+    if (tTable == null) {
+      long generation = cache.getGeneration();
+      tTable = getMSC().getTable(dbName, tableName);
+      cache.put(key, MetaDataCache.copy(tTable), generation);
+      return tTable;
+    }
+    return MetaDataCache.copy(tTable);
+  }
+
   /**
    * Get all table names for the current database.
    * @return List of table names
@@ -1604,6 +1683,7 @@ public void loadTable(Path loadPath, String tableName, boolean replace,
    */
   public Partition createPartition(Table tbl, Map<String, String> partSpec) throws HiveException {
     try {
+      invalidateMetaDataCache();
       return new Partition(tbl, getMSC().add_partition(
           Partition.createMetaPartitionObject(tbl, partSpec, null)));
     } catch (Exception e) {
@@ -1623,6 +1703,7 @@ public List<Partition> createPartitions(AddPartitionDesc addPartitionDesc) throw
     List<Partition> out = new ArrayList<Partition>();
     try {
       // TODO: normally, the result is not necessary; might make sense to pass false
+      invalidateMetaDataCache();
       for (org.apache.hadoop.hive.metastore.api.Partition outPart
           : getMSC().add_partitions(in, addPartitionDesc.isIfNotExists(), true)) {
         out.add(new Partition(tbl, outPart));
@@ -1727,6 +1808,7 @@ public Partition getPartition(Table tbl, Map<String, String> partSpec,
         if (tpart == null) {
           LOG.debug("creating partition for table " + tbl.getTableName()
                     + " with partition spec : " + partSpec);
+          invalidateMetaDataCache();
           tpart = getMSC().appendPartition(tbl.getDbName(), tbl.getTableName(), pvals);
         }
         else {
@@ -1773,6 +1855,7 @@ public boolean dropPartition(String tblName, List<String> part_vals, boolean del
   public boolean dropPartition(String db_name, String tbl_name,
       List<String> part_vals, boolean deleteData) throws HiveException {
     try {
+      invalidateMetaDataCache();
       return getMSC().dropPartition(db_name, tbl_name, part_vals, deleteData);
     } catch (NoSuchObjectException e) {
       throw new HiveException("Partition or table doesn't exist.", e);
@@ -1800,6 +1883,7 @@ public List<Partition> dropPartitions(String dbName, String tblName,
         partExprs.add(new ObjectPair<Integer, byte[]>(partSpec.getPrefixLength(),
             Utilities.serializeExpressionToKryo(partSpec.getPartSpec())));
       }
+      invalidateMetaDataCache();
       List<org.apache.hadoop.hive.metastore.api.Partition> tParts = getMSC().dropPartitions(
           dbName, tblName, partExprs, deleteData, ignoreProtection, ifExists);
       return convertFromMetastore(tbl, tParts, null);
@@ -1884,13 +1968,23 @@ public Set<Partition> getAllPartitionsOf(Table tbl) throws HiveException {
       return Sets.newHashSet(new Partition(tbl));
     }
 
+    // Most tables are small enough to get all the partitions in one call. Only when there
+    // are more, list the names and get the partitions in batches, so that the metastore
+    // never has to build and send all the partitions of a large table at once.
+    int maxParts = Math.min(Short.MAX_VALUE - 1,
+        HiveConf.getIntVar(conf, HiveConf.ConfVars.METASTORE_BATCH_RETRIEVE_TABLE_PARTITION_MAX));
     List<org.apache.hadoop.hive.metastore.api.Partition> tParts;
     try {
-      tParts = getMSC().listPartitions(tbl.getDbName(), tbl.getTableName(), (short)-1);
+      tParts = getMSC().listPartitions(tbl.getDbName(), tbl.getTableName(),
+          (short) (maxParts + 1));
     } catch (Exception e) {
       LOG.error(StringUtils.stringifyException(e));
       throw new HiveException(e);
     }
+    if (tParts.size() > maxParts) {
+      List<String> names = getPartitionNames(tbl.getDbName(), tbl.getTableName(), (short) -1);
+      return new LinkedHashSet<Partition>(getPartitionsByNames(tbl, names));
+    }
     Set<Partition> parts = new LinkedHashSet<Partition>(tParts.size());
     for (org.apache.hadoop.hive.metastore.api.Partition tpart : tParts) {
       parts.add(new Partition(tbl, tpart));
@@ -2002,7 +2096,7 @@ public List<Partition> getPartitionsByNames(Table tbl, List<String> partNames)
     try {
       for (int i = 0; i < nBatches; ++i) {
         List<org.apache.hadoop.hive.metastore.api.Partition> tParts =
-          getMSC().getPartitionsByNames(tbl.getDbName(), tbl.getTableName(),
+          getMSCPartitionsByNames(tbl.getDbName(), tbl.getTableName(),
           partNames.subList(i*batchSize, (i+1)*batchSize));
         if (tParts != null) {
           for (org.apache.hadoop.hive.metastore.api.Partition tpart: tParts) {
@@ -2013,7 +2107,7 @@ public List<Partition> getPartitionsByNames(Table tbl, List<String> partNames)
 
       if (nParts > nBatches * batchSize) {
         List<org.apache.hadoop.hive.metastore.api.Partition> tParts =
-          getMSC().getPartitionsByNames(tbl.getDbName(), tbl.getTableName(),
+          getMSCPartitionsByNames(tbl.getDbName(), tbl.getTableName(),
           partNames.subList(nBatches*batchSize, nParts));
         if (tParts != null) {
           for (org.apache.hadoop.hive.metastore.api.Partition tpart: tParts) {
@@ -2027,6 +2121,27 @@ public List<Partition> getPartitionsByNames(Table tbl, List<String> partNames)
     return partitions;
   }
 
+  @SuppressWarnings("unchecked")
+  private List<org.apache.hadoop.hive.metastore.api.Partition> getMSCPartitionsByNames(
+      String dbName, String tblName, List<String> partNames) throws TException {
+    MetaDataCache cache = getMetaDataCache();
+    if (cache == null) {
+      return getMSC().getPartitionsByNames(dbName, tblName, partNames);
+    }
+    List<Object> key = MetaDataCache.getKey("getPartitionsByNames", dbName, tblName, partNames);
+    List<org.apache.hadoop.hive.metastore.api.Partition> tParts =
+        (List<org.apache.hadoop.hive.metastore.api.Partition>) cache.get(key);
+    if (tParts == null) {
+      long generation = cache.getGeneration();
+      tParts = getMSC().getPartitionsByNames(dbName, tblName, partNames);
+      if (tParts != null) {
+        cache.put(key, MetaDataCache.copyPartitions(tParts), generation);
+      }
+      return tParts;
+    }
+    return MetaDataCache.copyPartitions(tParts);
+  }
+
   /**
    * Get a list of Partitions by filter.
    * @param tbl The table containing the partitions.
@@ -2072,6 +2187,7 @@ private static List<Partition> convertFromMetastore(Table tbl,
    * @param result the resulting list of partitions
    * @return whether the resulting list contains partitions which may or may not match the expr
    */
+  @SuppressWarnings("unchecked")
   public boolean getPartitionsByExpr(Table tbl, ExprNodeGenericFuncDesc expr, HiveConf conf,
       List<Partition> result) throws HiveException, TException {
     assert result != null;
@@ -2079,8 +2195,27 @@ public boolean getPartitionsByExpr(Table tbl, ExprNodeGenericFuncDesc expr, Hive
     String defaultPartitionName = HiveConf.getVar(conf, ConfVars.DEFAULTPARTITIONNAME);
     List<org.apache.hadoop.hive.metastore.api.Partition> msParts =
         new ArrayList<org.apache.hadoop.hive.metastore.api.Partition>();
+    MetaDataCache cache = getMetaDataCache();
+    List<Object> key = null;
+    long generation = 0;
+    if (cache != null) {
+      key = MetaDataCache.getKey("listPartitionsByExpr", tbl.getDbName(), tbl.getTableName(),
+          exprBytes, defaultPartitionName);
+      generation = cache.getGeneration();
+      Object[] cached = (Object[]) cache.get(key);
+      if (cached != null) {
+        msParts.addAll(MetaDataCache.copyPartitions(
+            (List<org.apache.hadoop.hive.metastore.api.Partition>) cached[0]));
+        convertFromMetastore(tbl, msParts, result);
+        return (Boolean) cached[1];
+      }
+    }
     boolean hasUnknownParts = getMSC().listPartitionsByExpr(tbl.getDbName(),
         tbl.getTableName(), exprBytes, defaultPartitionName, (short)-1, msParts);
+    if (key != null) {
+      cache.put(key, new Object[] {MetaDataCache.copyPartitions(msParts), hasUnknownParts},
+          generation);
+    }
     convertFromMetastore(tbl, msParts, result);
     return hasUnknownParts;
   }
@@ -2616,6 +2751,7 @@ public void exchangeTablePartitions(Map<String, String> partitionSpecs,
       String sourceDb, String sourceTable, String destDb,
       String destinationTableName) throws HiveException {
     try {
+      invalidateMetaDataCache();
       getMSC().exchange_partition(partitionSpecs, sourceDb, sourceTable, destDb,
         destinationTableName);
     } catch (Exception ex) {
@@ -2720,6 +2856,7 @@ public List<Index> getIndexes(String dbName, String tblName, short max) throws H
 
   public boolean updateTableColumnStatistics(ColumnStatistics statsObj) throws HiveException {
     try {
+      invalidateMetaDataCache();
       return getMSC().updateTableColumnStatistics(statsObj);
     } catch (Exception e) {
       LOG.debug(StringUtils.stringifyException(e));
@@ -2729,6 +2866,7 @@ public boolean updateTableColumnStatistics(ColumnStatistics statsObj) throws Hiv
 
   public boolean updatePartitionColumnStatistics(ColumnStatistics statsObj) throws HiveException {
     try {
+      invalidateMetaDataCache();
       return getMSC().updatePartitionColumnStatistics(statsObj);
     } catch (Exception e) {
       LOG.debug(StringUtils.stringifyException(e));
@@ -2738,6 +2876,7 @@ public boolean updatePartitionColumnStatistics(ColumnStatistics statsObj) throws
 
   public boolean setPartitionColumnStatistics(SetPartitionsStatsRequest request) throws HiveException {
     try {
+      invalidateMetaDataCache();
       return getMSC().setPartitionColumnStatistics(request);
     } catch (Exception e) {
       LOG.debug(StringUtils.stringifyException(e));
@@ -2745,20 +2884,49 @@ public boolean setPartitionColumnStatistics(SetPartitionsStatsRequest request) t
     }
   }
 
+  @SuppressWarnings("unchecked")
   public List<ColumnStatisticsObj> getTableColumnStatistics(
       String dbName, String tableName, List<String> colNames) throws HiveException {
     try {
-      return getMSC().getTableColumnStatistics(dbName, tableName, colNames);
+      MetaDataCache cache = getMetaDataCache();
+      if (cache == null) {
+        return getMSC().getTableColumnStatistics(dbName, tableName, colNames);
+      }
+      List<Object> key = MetaDataCache.getKey("getTableColumnStatistics", dbName, tableName,
+          colNames);
+      List<ColumnStatisticsObj> stats = (List<ColumnStatisticsObj>) cache.get(key);
+      if (stats == null) {
+        long generation = cache.getGeneration();
+        stats = getMSC().getTableColumnStatistics(dbName, tableName, colNames);
+        cache.put(key, MetaDataCache.copyStats(stats), generation);
+        return stats;
+      }
+      return MetaDataCache.copyStats(stats);
     } catch (Exception e) {
       LOG.debug(StringUtils.stringifyException(e));
       throw new HiveException(e);
     }
   }
 
+  @SuppressWarnings("unchecked")
   public Map<String, List<ColumnStatisticsObj>> getPartitionColumnStatistics(String dbName,
       String tableName, List<String> partNames, List<String> colNames) throws HiveException {
-      try {
-      return getMSC().getPartitionColumnStatistics(dbName, tableName, partNames, colNames);
+    try {
+      MetaDataCache cache = getMetaDataCache();
+      if (cache == null) {
+        return getMSC().getPartitionColumnStatistics(dbName, tableName, partNames, colNames);
+      }
+      List<Object> key = MetaDataCache.getKey("getPartitionColumnStatistics", dbName, tableName,
+          partNames, colNames);
+      Map<String, List<ColumnStatisticsObj>> stats =
+          (Map<String, List<ColumnStatisticsObj>>) cache.get(key);
+      if (stats == null) {
+        long generation = cache.getGeneration();
+        stats = getMSC().getPartitionColumnStatistics(dbName, tableName, partNames, colNames);
+        cache.put(key, MetaDataCache.copyStats(stats), generation);
+        return stats;
+      }
+      return MetaDataCache.copyStats(stats);
     } catch (Exception e) {
       LOG.debug(StringUtils.stringifyException(e));
       throw new HiveException(e);
@@ -2768,7 +2936,22 @@ public Map<String, List<ColumnStatisticsObj>> getPartitionColumnStatistics(Strin
   public AggrStats getAggrColStatsFor(String dbName, String tblName,
     List<String> colNames, List<String> partName) {
     try {
-      return getMSC().getAggrColStatsFor(dbName, tblName, colNames, partName);
+      MetaDataCache cache = getMetaDataCache();
+      if (cache == null) {
+        return getMSC().getAggrColStatsFor(dbName, tblName, colNames, partName);
+      }
+      List<Object> key = MetaDataCache.getKey("getAggrColStatsFor", dbName, tblName, colNames,
+          partName);
+      AggrStats stats = (AggrStats) cache.get(key);
+      if (stats == null) {
+        long generation = cache.getGeneration();
+        stats = getMSC().getAggrColStatsFor(dbName, tblName, colNames, partName);
+        if (stats != null) {
+          cache.put(key, MetaDataCache.copy(stats), generation);
+        }
+        return stats;
+      }
+      return MetaDataCache.copy(stats);
     } catch (Exception e) {
       LOG.debug(StringUtils.stringifyException(e));
       return null;
@@ -2778,6 +2961,7 @@ public AggrStats getAggrColStatsFor(String dbName, String tblName,
   public boolean deleteTableColumnStatistics(String dbName, String tableName, String colName)
     throws HiveException {
     try {
+      invalidateMetaDataCache();
       return getMSC().deleteTableColumnStatistics(dbName, tableName, colName);
     } catch(Exception e) {
       LOG.debug(StringUtils.stringifyException(e));
@@ -2788,6 +2972,7 @@ public boolean deleteTableColumnStatistics(String dbName, String tableName, Stri
   public boolean deletePartitionColumnStatistics(String dbName, String tableName, String partName,
     String colName) throws HiveException {
       try {
+        invalidateMetaDataCache();
         return getMSC().deletePartitionColumnStatistics(dbName, tableName, partName, colName);
       } catch(Exception e) {
         LOG.debug(StringUtils.stringifyException(e));
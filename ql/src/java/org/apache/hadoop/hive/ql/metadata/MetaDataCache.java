@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.hadoop.hive.ql.metadata;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.metastore.api.AggrStats;
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsObj;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+
+/**
+ * Keeps the results of the metastore calls that the compiler makes again and
+ * again for the same objects, such as getting a table or its column
+ * statistics. The entries are keyed by the name of the call and its
+ * arguments. The objects are copied in and out, because the callers change
+ * the objects they get. The methods are synchronized, because HiveServer2
+ * shares the Hive object of a session, and its cache, with the threads that
+ * run the queries of the session, and even a get reorders the entries.
+ */
+final class MetaDataCache {
+  private final Map<List<Object>, Object> entries;
+  // incremented by each clear, so that a result read before it isn't put after it
+  private long generation = 0;
+
+  MetaDataCache(final int maxEntries) {
+    entries = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Make the key of a call.
+   *
+   * @param call the name of the call
+   * @param dbName the database of the table that the call reads
+   * @param tableName the table that the call reads
+   * @param args the other arguments of the call, which are copied
+   */
+  static List<Object> getKey(String call, String dbName, String tableName, Object... args) {
+    List<Object> key = new ArrayList<Object>(args.length + 3);
+    key.add(call);
+    key.add(dbName.toLowerCase());
+    key.add(tableName.toLowerCase());
+    for (Object arg : args) {
+      if (arg instanceof List) {
+        key.add(new ArrayList<Object>((List<?>) arg));
+      } else if (arg instanceof byte[]) {
+        key.add(ByteBuffer.wrap(((byte[]) arg).clone()));
+      } else {
+        key.add(arg);
+      }
+    }
+    return key;
+  }
+
+  synchronized Object get(List<Object> key) {
+    return entries.get(key);
+  }
+
+  synchronized void put(List<Object> key, Object value) {
+    entries.put(key, value);
+  }
+
+  /**
+   * @return the generation to pass to {@link #put(List, Object, long)} for a
+   *         result that is about to be read from the metastore
+   */
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Put a result unless the cache was cleared since it was read.
+   *
+   * @param generation the generation of the cache before the result was read
+   */
+  synchronized void put(List<Object> key, Object value, long generation) {
+    if (generation == this.generation) {
+      entries.put(key, value);
+    }
+  }
+
+  synchronized void clear() {
+    entries.clear();
+    ++generation;
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  static Table copy(Table table) {
+    return new Table(table);
+  }
+
+  static List<Partition> copyPartitions(List<Partition> partitions) {
+    List<Partition> result = new ArrayList<Partition>(partitions.size());
+    for (Partition partition : partitions) {
+      result.add(new Partition(partition));
+    }
+    return result;
+  }
+
+  static List<ColumnStatisticsObj> copyStats(List<ColumnStatisticsObj> stats) {
+    List<ColumnStatisticsObj> result = new ArrayList<ColumnStatisticsObj>(stats.size());
+    for (ColumnStatisticsObj obj : stats) {
+      result.add(new ColumnStatisticsObj(obj));
+    }
+    return result;
+  }
+
+  static Map<String, List<ColumnStatisticsObj>> copyStats(
+      Map<String, List<ColumnStatisticsObj>> stats) {
+    Map<String, List<ColumnStatisticsObj>> result =
+        new LinkedHashMap<String, List<ColumnStatisticsObj>>();
+    for (Map.Entry<String, List<ColumnStatisticsObj>> entry : stats.entrySet()) {
+      result.put(entry.getKey(), copyStats(entry.getValue()));
+    }
+    return result;
+  }
+
+  static AggrStats copy(AggrStats stats) {
+    return new AggrStats(stats);
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.metadata;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * The partitions of a table, which are retrieved from the metastore in
+ * batches while they are iterated. Only the names of the partitions are
+ * listed up front, so neither the metastore nor the client has to keep all
+ * the partitions of a large table in memory at once. An unpartitioned table
+ * has a single partition that describes the table.
+ */
+public class PartitionIterable implements Iterable<Partition> {
+  private final Hive db;
+  private final Table table;
+  private final int batchSize;
+  // the names of the partitions or null if the table isn't partitioned
+  private final List<String> partitionNames;
+  private final Partition tablePartition;
+
+  /**
+   * Iterate over all the partitions of the table.
+   *
+   * @param db the metastore to get the partitions from
+   * @param table the table
+   * @param batchSize the number of partitions to get in each call
+   */
+  public PartitionIterable(Hive db, Table table, int batchSize) throws HiveException {
+    this(db, table, null, batchSize);
+  }
+
+  /**
+   * Iterate over the partitions of the table that match a partial
+   * specification.
+   *
+   * @param db the metastore to get the partitions from
+   * @param table the table
+   * @param partialPartitionSpec the partial specification or null for all
+   *          the partitions
+   * @param batchSize the number of partitions to get in each call
+   */
+  public PartitionIterable(Hive db, Table table, Map<String, String> partialPartitionSpec,
+      int batchSize) throws HiveException {
+    if (batchSize < 1) {
+      throw new HiveException("Invalid partition batch size " + batchSize);
+    }
+    this.db = db;
+    this.table = table;
+    this.batchSize = batchSize;
+    if (!table.isPartitioned()) {
+      partitionNames = null;
+      tablePartition = new Partition(table);
+    } else if (partialPartitionSpec == null) {
+      partitionNames = db.getPartitionNames(table.getDbName(), table.getTableName(), (short) -1);
+      tablePartition = null;
+    } else {
+      partitionNames = db.getPartitionNames(table.getDbName(), table.getTableName(),
+          partialPartitionSpec, (short) -1);
+      tablePartition = null;
+    }
+  }
+
+  /**
+   * Get the number of partitions, without retrieving them.
+   */
+  public int size() {
+    return partitionNames == null ? 1 : partitionNames.size();
+  }
+
+  /**
+   * Iterate over the partitions. A failure to get the next batch of
+   * partitions from the metastore is thrown as a RuntimeException whose
+   * cause is the HiveException.
+   */
+  @Override
+  public Iterator<Partition> iterator() {
+    if (partitionNames == null) {
+      return Collections.singletonList(tablePartition).iterator();
+    }
+    return new Iterator<Partition>() {
+      private int nextBatch = 0;
+      private Iterator<Partition> batch = Collections.<Partition>emptyList().iterator();
+
+      @Override
+      public boolean hasNext() {
+        // skip the batches whose partitions were dropped after they were listed
+        while (!batch.hasNext() && nextBatch < partitionNames.size()) {
+          int end = Math.min(nextBatch + batchSize, partitionNames.size());
+          List<String> names = partitionNames.subList(nextBatch, end);
+          nextBatch = end;
+          try {
+            batch = db.getPartitionsByNames(table, names).iterator();
+          } catch (HiveException e) {
+            throw new RuntimeException("Cannot get partitions of " + table.getTableName(), e);
+          }
+        }
+        return batch.hasNext();
+      }
+
+      @Override
+      public Partition next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return batch.next();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
@@ -41,6 +41,7 @@
 import org.apache.hadoop.hive.ql.metadata.Hive;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.metadata.Partition;
+import org.apache.hadoop.hive.ql.metadata.PartitionIterable;
 import org.apache.hadoop.hive.ql.metadata.Table;
 import org.codehaus.jackson.map.ObjectMapper;
 
@@ -193,21 +194,23 @@ private Map<String, Object> makeOneTableStatus(Table tbl, Hive db,
     }
     if(tbl.getTableType() != TableType.VIRTUAL_VIEW) {
       //tbl.getPath() is null for views
-      putFileSystemsStats(builder, makeTableStatusLocations(tbl, db, par),
+      putFileSystemsStats(builder, makeTableStatusLocations(tbl, db, conf, par),
         conf, tbl.getPath());
     }
 
     return builder.build();
   }
 
-  private List<Path> makeTableStatusLocations(Table tbl, Hive db, Partition par)
+  private List<Path> makeTableStatusLocations(Table tbl, Hive db, HiveConf conf,
+      Partition par)
       throws HiveException {
     // output file system information
     Path tblPath = tbl.getPath();
     List<Path> locations = new ArrayList<Path>();
     if (tbl.isPartitioned()) {
       if (par == null) {
-        for (Partition curPart : db.getPartitions(tbl)) {
+        for (Partition curPart : new PartitionIterable(db, tbl,
+            conf.getIntVar(HiveConf.ConfVars.METASTORE_BATCH_RETRIEVE_MAX))) {
           if (curPart.getLocation() != null) {
             locations.add(new Path(curPart.getLocation()));
           }
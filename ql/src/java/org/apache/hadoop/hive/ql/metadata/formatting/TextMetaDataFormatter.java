@@ -41,6 +41,7 @@
 import org.apache.hadoop.hive.ql.metadata.Hive;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.metadata.Partition;
+import org.apache.hadoop.hive.ql.metadata.PartitionIterable;
 import org.apache.hadoop.hive.ql.metadata.Table;
 import org.apache.hadoop.hive.ql.session.SessionState;
 
@@ -234,7 +235,8 @@ public void showTableStatus(DataOutputStream outStream,
         List<Path> locations = new ArrayList<Path>();
         if (isPartitioned) {
           if (par == null) {
-            for (Partition curPart : db.getPartitions(tbl)) {
+            for (Partition curPart : new PartitionIterable(db, tbl,
+                conf.getIntVar(HiveConf.ConfVars.METASTORE_BATCH_RETRIEVE_MAX))) {
               if (curPart.getLocation() != null) {
                 locations.add(new Path(curPart.getLocation()));
               }
@@ -489,6 +489,16 @@ public int getMapJoinConversionPos(JoinOperator joinOp, OptimizeTezProcContext c
 
     long maxSize = context.conf.getLongVar(
         HiveConf.ConfVars.HIVECONVERTJOINNOCONDITIONALTASKTHRESHOLD);
+    if (joinOp.getParentOperators().size() == 2
+        && context.conf.getBoolVar(HiveConf.ConfVars.HIVEMAPJOINUSEOPTIMIZEDTABLE)
+        && context.conf.getBoolVar(HiveConf.ConfVars.HIVEMAPJOINUSEHYBRIDGRACE)
+        && !context.conf.getBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_ENABLED)) {
+      // The hashtable partitions that don't fit in memory will be spilled at runtime.
+      // The vectorized map join loads the whole hashtable, and the Vectorizer only runs
+      // after this, so the bigger tables are only allowed when nothing is vectorized.
+      maxSize = (long) (maxSize * context.conf.getFloatVar(
+          HiveConf.ConfVars.HIVEHYBRIDGRACEHASHJOINMAXSIZEFACTOR));
+    }
 
     int bigTablePosition = -1;
 
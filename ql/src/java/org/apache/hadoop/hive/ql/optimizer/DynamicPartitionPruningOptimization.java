@@ -31,6 +31,7 @@
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
 import org.apache.hadoop.hive.ql.exec.FilterOperator;
+import org.apache.hadoop.hive.ql.exec.FunctionRegistry;
 import org.apache.hadoop.hive.ql.exec.GroupByOperator;
 import org.apache.hadoop.hive.ql.exec.Operator;
 import org.apache.hadoop.hive.ql.exec.OperatorFactory;
@@ -63,12 +64,19 @@
 import org.apache.hadoop.hive.ql.plan.OperatorDesc;
 import org.apache.hadoop.hive.ql.plan.PlanUtils;
 import org.apache.hadoop.hive.ql.plan.SelectDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 
 /**
  * This optimization looks for expressions of the kind "x IN (RS[n])". If such
  * an expression made it to a table scan operator and x is a partition column we
  * can use an existing join to dynamically prune partitions. This class sets up
- * the infrastructure for that.
+ * the infrastructure for that. If x is any other column and semijoin reduction
+ * is enabled, the join is used to restrict the range of x instead, which lets
+ * the input format skip data during split generation.
  */
 public class DynamicPartitionPruningOptimization implements NodeProcessor {
 
@@ -207,6 +215,11 @@ public Object process(Node nd, Stack<Node> stack, NodeProcessorCtx procCtx, Obje
             // all partitions have been statically removed
             LOG.debug("No partition pruning necessary.");
           }
+        } else if (table != null && ts.getChildOperators().size() == 1
+            && isRangeFilterCandidate(ctx, parseContext)) {
+          // the range is applied to the whole scan, so it must not feed other branches
+          LOG.info("Semijoin reduction: " + table.getCompleteName() + "." + column);
+          generateRangeEventOperatorPlan(ctx, parseContext, ts, column);
         } else {
           LOG.debug("Column " + column + " is not a partition column");
         }
@@ -321,6 +334,112 @@ private void generateEventOperatorPlan(DynamicListContext ctx, ParseContext pars
     OperatorFactory.getAndMakeChild(eventDesc, groupByOp);
   }
 
+  /**
+   * A key range can only be applied to the column itself (not an expression
+   * over it), and only for types the search argument can compare.
+   */
+  private boolean isRangeFilterCandidate(DynamicListContext ctx, ParseContext parseContext) {
+    if (!parseContext.getConf().getBoolVar(ConfVars.TEZ_DYNAMIC_SEMIJOIN_REDUCTION)
+        || !(ctx.parent.getChildren().get(0) instanceof ExprNodeColumnDesc)) {
+      return false;
+    }
+    TypeInfo type = ctx.parent.getChildren().get(0).getTypeInfo();
+    if (type.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+      return false;
+    }
+    switch (((PrimitiveTypeInfo) type).getPrimitiveCategory()) {
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case STRING:
+    case DATE:
+    case TIMESTAMP:
+    case DECIMAL:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Like generateEventOperatorPlan, but instead of the distinct keys the event
+   * carries their min and max, computed by a map-side group by without keys.
+   */
+  private void generateRangeEventOperatorPlan(DynamicListContext ctx, ParseContext parseContext,
+      TableScanOperator ts, String column) throws SemanticException {
+
+    // we will put a fork in the plan at the source of the reduce sink
+    Operator<? extends OperatorDesc> parentOfRS = ctx.generator.getParentOperators().get(0);
+
+    // we need the expr that generated the key of the reduce sink
+    ExprNodeDesc key = ctx.generator.getConf().getKeyCols().get(ctx.desc.getKeyIndex());
+
+    // the column of the target table
+    ExprNodeDesc partKey = ctx.parent.getChildren().get(0);
+
+    List<ExprNodeDesc> keyExprs = new ArrayList<ExprNodeDesc>();
+    keyExprs.add(key);
+
+    ArrayList<String> outputNames = new ArrayList<String>();
+    outputNames.add(HiveConf.getColumnInternalName(0));
+
+    // project the relevant key column
+    SelectDesc select = new SelectDesc(keyExprs, outputNames);
+    SelectOperator selectOp =
+        (SelectOperator) OperatorFactory.getAndMakeChild(select, parentOfRS);
+
+    // compute min and max of the key
+    float groupByMemoryUsage =
+        HiveConf.getFloatVar(parseContext.getConf(), HiveConf.ConfVars.HIVEMAPAGGRHASHMEMORY);
+    float memoryThreshold =
+        HiveConf.getFloatVar(parseContext.getConf(),
+            HiveConf.ConfVars.HIVEMAPAGGRMEMORYTHRESHOLD);
+
+    ExprNodeDesc aggParam =
+        new ExprNodeColumnDesc(key.getTypeInfo(), outputNames.get(0), null, false);
+    List<ObjectInspector> aggParamOIs = new ArrayList<ObjectInspector>();
+    aggParamOIs.add(
+        TypeInfoUtils.getStandardWritableObjectInspectorFromTypeInfo(key.getTypeInfo()));
+
+    ArrayList<AggregationDesc> aggs = new ArrayList<AggregationDesc>();
+    ArrayList<String> aggOutputNames = new ArrayList<String>();
+    List<ExprNodeDesc> rangeExprs = new ArrayList<ExprNodeDesc>();
+    Map<String, ExprNodeDesc> colMap = new HashMap<String, ExprNodeDesc>();
+    for (String udaf : new String[] { "min", "max" }) {
+      ArrayList<ExprNodeDesc> params = new ArrayList<ExprNodeDesc>();
+      params.add(aggParam);
+      GenericUDAFEvaluator evaluator =
+          FunctionRegistry.getGenericUDAFEvaluator(udaf, aggParamOIs, false, false);
+      aggs.add(new AggregationDesc(udaf, evaluator, params, false,
+          GenericUDAFEvaluator.Mode.PARTIAL1));
+      String outputName = HiveConf.getColumnInternalName(aggOutputNames.size());
+      aggOutputNames.add(outputName);
+      ExprNodeDesc rangeExpr = new ExprNodeColumnDesc(key.getTypeInfo(), outputName, null, false);
+      rangeExprs.add(rangeExpr);
+      colMap.put(outputName, rangeExpr);
+    }
+
+    GroupByDesc groupBy =
+        new GroupByDesc(GroupByDesc.Mode.HASH, aggOutputNames, new ArrayList<ExprNodeDesc>(),
+            aggs, false, groupByMemoryUsage, memoryThreshold, null, false, 0, false);
+
+    GroupByOperator groupByOp =
+        (GroupByOperator) OperatorFactory.getAndMakeChild(groupBy, selectOp);
+    groupByOp.setColumnExprMap(colMap);
+
+    // finally add the event broadcast operator
+    DynamicPruningEventDesc eventDesc = new DynamicPruningEventDesc();
+    eventDesc.setTableScan(ts);
+    eventDesc.setTable(PlanUtils.getReduceValueTableDesc(PlanUtils
+        .getFieldSchemasFromColumnList(rangeExprs, "key")));
+    eventDesc.setTargetColumnName(column);
+    eventDesc.setPartKey(partKey);
+    eventDesc.setRangeFilter(true);
+
+    OperatorFactory.getAndMakeChild(eventDesc, groupByOp);
+  }
+
   private Map<Node, Object> walkExprTree(ExprNodeDesc pred, NodeProcessorCtx ctx)
       throws SemanticException {
 
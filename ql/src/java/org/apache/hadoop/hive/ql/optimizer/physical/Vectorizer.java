@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hive.ql.optimizer.physical;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -39,10 +40,13 @@
 import org.apache.hadoop.hive.ql.exec.vector.VectorExtractOperator;
 import org.apache.hadoop.hive.ql.exec.vector.VectorExpressionDescriptor;
 import org.apache.hadoop.hive.ql.exec.vector.VectorGroupByOperator;
+import org.apache.hadoop.hive.ql.exec.vector.VectorPTFFunction;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizationContext;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizationContextRegion;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedInputFormatInterface;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorAggregateExpression;
+import org.apache.hadoop.hive.ql.io.VectorizedTextInputFormat;
+import org.apache.hadoop.hive.ql.io.avro.AvroContainerInputFormat;
 import org.apache.hadoop.hive.ql.lib.DefaultGraphWalker;
 import org.apache.hadoop.hive.ql.lib.DefaultRuleDispatcher;
 import org.apache.hadoop.hive.ql.lib.Dispatcher;
@@ -68,6 +72,7 @@
 import org.apache.hadoop.hive.ql.plan.MapWork;
 import org.apache.hadoop.hive.ql.plan.MapredWork;
 import org.apache.hadoop.hive.ql.plan.OperatorDesc;
+import org.apache.hadoop.hive.ql.plan.PTFDesc;
 import org.apache.hadoop.hive.ql.plan.PartitionDesc;
 import org.apache.hadoop.hive.ql.plan.ReduceWork;
 import org.apache.hadoop.hive.ql.plan.SMBJoinDesc;
@@ -75,6 +80,10 @@
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.hive.ql.plan.TezWork;
 import org.apache.hadoop.hive.ql.plan.VectorGroupByDesc;
+import org.apache.hadoop.hive.ql.plan.ptf.PTFExpressionDef;
+import org.apache.hadoop.hive.ql.plan.ptf.PTFQueryInputDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFunctionDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowTableFunctionDef;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
 import org.apache.hadoop.hive.ql.udf.UDFAcos;
 import org.apache.hadoop.hive.ql.udf.UDFAsin;
@@ -330,8 +339,21 @@ private boolean validateMapWork(MapWork mapWork, boolean isTez) throws SemanticE
       LOG.info("Validating MapWork...");
 
       // Validate the input format
+      boolean textAvroEnabled = HiveConf.getBoolVar(pctx.getConf(),
+          HiveConf.ConfVars.HIVE_VECTORIZATION_TEXT_AVRO_ENABLED);
       for (String path : mapWork.getPathToPartitionInfo().keySet()) {
         PartitionDesc pd = mapWork.getPathToPartitionInfo().get(path);
+        if (isVectorizedText(pd)) {
+          if (!textAvroEnabled) {
+            LOG.info("Vectorized text input is disabled");
+            return false;
+          }
+          continue;
+        }
+        if (pd.getInputFileFormatClass() == AvroContainerInputFormat.class && !textAvroEnabled) {
+          LOG.info("Vectorized Avro input is disabled");
+          return false;
+        }
         List<Class<?>> interfaceList =
             Arrays.asList(pd.getInputFileFormatClass().getInterfaces());
         if (!interfaceList.contains(VectorizedInputFormatInterface.class)) {
@@ -360,9 +382,28 @@ private boolean validateMapWork(MapWork mapWork, boolean isTez) throws SemanticE
       return true;
     }
 
+    private boolean isVectorizedText(PartitionDesc pd) throws SemanticException {
+      try {
+        return VectorizedTextInputFormat.isVectorizable(pd);
+      } catch (IOException e) {
+        throw new SemanticException(e);
+      }
+    }
+
     private void vectorizeMapWork(MapWork mapWork) throws SemanticException {
       LOG.info("Vectorizing MapWork...");
       mapWork.setVectorMode(true);
+      // read the text partitions a batch at a time
+      for (PartitionDesc pd : mapWork.getPathToPartitionInfo().values()) {
+        if (isVectorizedText(pd)) {
+          pd.setInputFileFormatClass(VectorizedTextInputFormat.class);
+        }
+      }
+      for (PartitionDesc pd : mapWork.getAliasToPartnInfo().values()) {
+        if (isVectorizedText(pd)) {
+          pd.setInputFileFormatClass(VectorizedTextInputFormat.class);
+        }
+      }
       Map<Rule, NodeProcessor> opRules = new LinkedHashMap<Rule, NodeProcessor>();
       MapWorkVectorizationNodeProcessor vnp = new MapWorkVectorizationNodeProcessor(mapWork);
       addMapWorkRules(opRules, vnp);
@@ -921,6 +962,9 @@ boolean validateReduceWorkOperator(Operator<? extends OperatorDesc> op) {
       case FILESINK:
         ret = validateFileSinkOperator((FileSinkOperator) op);
         break;
+      case PTF:
+        ret = validatePTFOperator((PTFOperator) op);
+        break;
       case LIMIT:
       case EVENT:
         ret = true;
@@ -1065,6 +1109,64 @@ private boolean validateFileSinkOperator(FileSinkOperator op) {
    return true;
   }
 
+  private boolean validatePTFOperator(PTFOperator op) {
+    if (!HiveConf.getBoolVar(physicalContext.getConf(),
+        HiveConf.ConfVars.HIVE_VECTORIZATION_PTF_ENABLED)) {
+      return false;
+    }
+    PTFDesc desc = op.getConf();
+    // Only a single windowing function over the output of the reduce-side EXTRACT.
+    if (desc.isMapSide() || !(desc.getFuncDef() instanceof WindowTableFunctionDef)
+        || !(desc.getFuncDef().getInput() instanceof PTFQueryInputDef)) {
+      LOG.info("Cannot vectorize PTF operator that is not a reduce-side windowing function");
+      return false;
+    }
+    List<Operator<? extends OperatorDesc>> parents = op.getParentOperators();
+    if (parents == null || parents.size() != 1 || !(parents.get(0) instanceof ExtractOperator)) {
+      LOG.info("Cannot vectorize PTF operator that does not follow an EXTRACT");
+      return false;
+    }
+    if (desc.getLlInfo() != null && desc.getLlInfo().getLeadLagExprs() != null
+        && !desc.getLlInfo().getLeadLagExprs().isEmpty()) {
+      LOG.info("Cannot vectorize PTF operator with lead/lag in expressions");
+      return false;
+    }
+    WindowTableFunctionDef tDef = (WindowTableFunctionDef) desc.getFuncDef();
+    if (tDef.getRankLimit() != -1) {
+      LOG.info("Cannot vectorize PTF operator with a rank limit");
+      return false;
+    }
+    if (tDef.getPartition() == null || tDef.getOrder() == null) {
+      return false;
+    }
+    List<PTFExpressionDef> keys = new ArrayList<PTFExpressionDef>();
+    keys.addAll(tDef.getPartition().getExpressions());
+    keys.addAll(tDef.getOrder().getExpressions());
+    for (PTFExpressionDef key : keys) {
+      ExprNodeDesc expr = key.getExprNode();
+      if (!validateExprNodeDesc(expr)
+          || VectorizationContext.isDecimalFamily(expr.getTypeString())) {
+        LOG.info("Cannot vectorize PTF partition or order key " + expr.getExprString());
+        return false;
+      }
+    }
+    for (WindowFunctionDef wFnDef : tDef.getWindowFunctions()) {
+      boolean hasArgs = wFnDef.getArgs() != null && !wFnDef.getArgs().isEmpty();
+      if (hasArgs) {
+        for (PTFExpressionDef arg : wFnDef.getArgs()) {
+          if (!validateExprNodeDesc(arg.getExprNode())) {
+            return false;
+          }
+        }
+      }
+      if (VectorPTFFunction.create(wFnDef, hasArgs ? 0 : -1) == null) {
+        LOG.info("Cannot vectorize window function " + wFnDef.getName());
+        return false;
+      }
+    }
+    return true;
+  }
+
   private boolean validateExprNodeDesc(List<ExprNodeDesc> descs) {
     return validateExprNodeDesc(descs, VectorExpressionDescriptor.Mode.PROJECTION);
   }
@@ -1263,6 +1365,7 @@ Operator<? extends OperatorDesc> vectorizeOperator(Operator<? extends OperatorDe
       case LIMIT:
       case EXTRACT:
       case EVENT:
+      case PTF:
         vectorOp = OperatorFactory.getVectorOperator(op.getConf(), vContext);
         break;
       default:
@@ -431,6 +431,12 @@ public void processAppMasterEvent(GenTezProcContext procCtx, AppMasterEventOpera
     List<ExprNodeDesc> keys = work.getEventSourcePartKeyExprMap().get(sourceName);
     keys.add(eventDesc.getPartKey());
 
+    // store whether the event is a key range in map-work
+    if (!work.getEventSourceRangeFilterMap().containsKey(sourceName)) {
+      work.getEventSourceRangeFilterMap().put(sourceName, new LinkedList<Boolean>());
+    }
+    work.getEventSourceRangeFilterMap().get(sourceName).add(eventDesc.isRangeFilter());
+
   }
 
   /**
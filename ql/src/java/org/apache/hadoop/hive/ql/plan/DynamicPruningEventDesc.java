@@ -36,6 +36,10 @@ public class DynamicPruningEventDesc extends AppMasterEventDesc {
   // the partition column we're interested in
   private ExprNodeDesc partKey;
 
+  // whether the event carries the min and max of the join key, to restrict the
+  // range of a non-partition column (semijoin reduction)
+  private boolean rangeFilter;
+
   public TableScanOperator getTableScan() {
     return tableScan;
   }
@@ -71,4 +75,12 @@ public String getPartKeyString() {
   public ExprNodeDesc getPartKey() {
     return this.partKey;
   }
+
+  public boolean isRangeFilter() {
+    return rangeFilter;
+  }
+
+  public void setRangeFilter(boolean rangeFilter) {
+    this.rangeFilter = rangeFilter;
+  }
 }
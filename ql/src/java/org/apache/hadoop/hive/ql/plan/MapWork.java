@@ -127,6 +127,9 @@ public class MapWork extends BaseWork {
       new LinkedHashMap<String, List<String>>();
   private Map<String, List<ExprNodeDesc>> eventSourcePartKeyExprMap =
       new LinkedHashMap<String, List<ExprNodeDesc>>();
+  // whether the event carries a key range for semijoin reduction rather than partition values
+  private Map<String, List<Boolean>> eventSourceRangeFilterMap =
+      new LinkedHashMap<String, List<Boolean>>();
 
   private boolean doSplitsGrouping = true;
 
@@ -588,6 +591,14 @@ public void setEventSourcePartKeyExprMap(Map<String, List<ExprNodeDesc>> map) {
     this.eventSourcePartKeyExprMap = map;
   }
 
+  public Map<String, List<Boolean>> getEventSourceRangeFilterMap() {
+    return eventSourceRangeFilterMap;
+  }
+
+  public void setEventSourceRangeFilterMap(Map<String, List<Boolean>> map) {
+    this.eventSourceRangeFilterMap = map;
+  }
+
   public void setDoSplitsGrouping(boolean doSplitsGrouping) {
     this.doSplitsGrouping = doSplitsGrouping;
   }
@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.mr.ExecMapperContext;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinBytesTableContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectSerDeContext;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainerSerDe;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.CollectDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.JoinCondDesc;
+import org.apache.hadoop.hive.ql.plan.JoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
+import org.apache.hadoop.hive.ql.plan.PlanUtils;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.InspectableObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+/**
+ * Tests MapJoinOperator with a hybrid grace hashtable that spills partitions, against
+ * the same join with a hashtable that fits in memory.
+ */
+public class TestMapJoinOperator {
+
+  private static final int NUM_SMALL_ROWS = 3000;
+  private static final int NUM_SMALL_KEYS = 1000;
+  private static final int NUM_BIG_ROWS = 1200;
+
+  /**
+   * Each partition takes one 64KB write buffer and 8KB of refs, so with 16 partitions about
+   * half of them have to be spilled to fit in this.
+   */
+  private static final long HYBRID_MEMORY = 512 * 1024;
+
+  /** Small table rows: every key three times, and a null key. */
+  private static List<Object[]> getSmallRows() {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i = 0; i < NUM_SMALL_ROWS; ++i) {
+      rows.add(new Object[] {i % NUM_SMALL_KEYS, "s" + i});
+    }
+    rows.add(new Object[] {null, "snull"});
+    return rows;
+  }
+
+  /** Big table rows: keys that match, keys that don't, and nulls. */
+  private static List<Object[]> getBigRows() {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i = 0; i < NUM_BIG_ROWS; ++i) {
+      rows.add(new Object[] {i % 100 == 7 ? null : i - 100, "b" + i});
+    }
+    return rows;
+  }
+
+  private static List<Object> toWritables(Object[] row) {
+    return Arrays.<Object>asList(row[0] == null ? null : new IntWritable((Integer) row[0]),
+        new Text((String) row[1]));
+  }
+
+  private static ObjectInspector getRowInspector() {
+    List<ObjectInspector> fields = new ArrayList<ObjectInspector>();
+    fields.add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+    fields.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+    return ObjectInspectorFactory.getStandardStructObjectInspector(
+        Arrays.asList("key", "value"), fields);
+  }
+
+  private static ObjectInspector getStructInspector(ObjectInspector field) {
+    return ObjectInspectorFactory.getStandardStructObjectInspector(
+        Arrays.asList("_col0"), Arrays.asList(field));
+  }
+
+  private static ExprNodeDesc column(String name) {
+    return new ExprNodeColumnDesc(name.equals("key")
+        ? TypeInfoFactory.intTypeInfo : TypeInfoFactory.stringTypeInfo, name, "t", false);
+  }
+
+  /** Joins big (key, value) with small (key, value) on key, without the small table key. */
+  private static MapJoinDesc getDesc(int joinType) {
+    Map<Byte, List<ExprNodeDesc>> keys = new HashMap<Byte, List<ExprNodeDesc>>();
+    Map<Byte, List<ExprNodeDesc>> values = new HashMap<Byte, List<ExprNodeDesc>>();
+    Map<Byte, List<ExprNodeDesc>> filters = new HashMap<Byte, List<ExprNodeDesc>>();
+    for (byte pos = 0; pos < 2; ++pos) {
+      keys.put(pos, Arrays.asList(column("key")));
+      filters.put(pos, new ArrayList<ExprNodeDesc>());
+    }
+    values.put((byte) 0, Arrays.asList(column("key"), column("value")));
+    values.put((byte) 1, Arrays.asList(column("value")));
+
+    // the hashtable keys are sent like on tez
+    HiveConf tezConf = new HiveConf();
+    HiveConf.setVar(tezConf, HiveConf.ConfVars.HIVE_EXECUTION_ENGINE, "tez");
+    TableDesc keyTableDesc = PlanUtils.getMapJoinKeyTableDesc(tezConf,
+        PlanUtils.getFieldSchemasFromColumnList(keys.get((byte) 0), "joinkey"));
+    List<TableDesc> valueTableDescs = new ArrayList<TableDesc>();
+    for (byte pos = 0; pos < 2; ++pos) {
+      valueTableDescs.add(PlanUtils.getMapJoinValueTableDesc(
+          PlanUtils.getFieldSchemasFromColumnList(values.get(pos), "mapjoinvalue")));
+    }
+    JoinCondDesc[] conds = new JoinCondDesc[] {new JoinCondDesc(0, 1, joinType)};
+    return new MapJoinDesc(keys, keyTableDesc, values, valueTableDescs, valueTableDescs,
+        Arrays.asList("_col0", "_col1", "_col2"), 0, conds, filters,
+        joinType == JoinDesc.INNER_JOIN, null);
+  }
+
+  /**
+   * Loads the small table rows into an optimized hashtable, which is partitioned and
+   * spills if hybridMemory is positive.
+   */
+  private static class SmallTableLoader implements HashTableLoader {
+    private final Configuration hconf;
+    private final long hybridMemory;
+    private MapJoinBytesTableContainer table;
+    private int numSpilled;
+
+    SmallTableLoader(Configuration hconf, long hybridMemory) {
+      this.hconf = hconf;
+      this.hybridMemory = hybridMemory;
+    }
+
+    @Override
+    public void init(ExecMapperContext context, Configuration hconf, MapJoinOperator joinOp) {
+    }
+
+    @Override
+    public void load(MapJoinTableContainer[] mapJoinTables,
+        MapJoinTableContainerSerDe[] mapJoinTableSerdes) throws HiveException {
+      MapJoinObjectSerDeContext keyContext = mapJoinTableSerdes[1].getKeyContext();
+      MapJoinObjectSerDeContext valueContext = mapJoinTableSerdes[1].getValueContext();
+      SerDe keySerDe = keyContext.getSerDe();
+      SerDe valueSerDe = valueContext.getSerDe();
+      ObjectInspector keyInspector =
+          getStructInspector(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+      ObjectInspector valueInspector =
+          getStructInspector(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+      try {
+        table = hybridMemory > 0
+            ? new MapJoinBytesTableContainer(hconf, valueContext, -1, hybridMemory)
+            : new MapJoinBytesTableContainer(hconf, valueContext, -1);
+        for (Object[] row : getSmallRows()) {
+          List<Object> writables = toWritables(row);
+          table.putRow(keyContext, keySerDe.serialize(writables.subList(0, 1), keyInspector),
+              valueContext, valueSerDe.serialize(writables.subList(1, 2), valueInspector));
+        }
+      } catch (SerDeException e) {
+        throw new HiveException(e);
+      }
+      table.seal();
+      for (int i = 0; i < table.getNumPartitions(); ++i) {
+        numSpilled += table.isPartitionSpilled(i) ? 1 : 0;
+      }
+      mapJoinTables[1] = table;
+    }
+  }
+
+  private static HiveConf getConf() {
+    HiveConf hconf = new HiveConf();
+    HiveConf.setIntVar(hconf, HiveConf.ConfVars.HIVEHYBRIDGRACEHASHJOINPARTITIONS, 16);
+    HiveConf.setIntVar(hconf, HiveConf.ConfVars.HIVEHASHTABLETHRESHOLD, 16 * 1024);
+    HiveConf.setIntVar(hconf, HiveConf.ConfVars.HIVEHASHTABLEWBSIZE, 1024 * 1024);
+    return hconf;
+  }
+
+  /** Runs the join over the big table rows, and returns the sorted output rows. */
+  private static List<String> runJoin(int joinType, SmallTableLoader loader) throws Exception {
+    MapJoinOperator op = new MapJoinOperator();
+    op.setConf(getDesc(joinType));
+    CollectOperator collect = (CollectOperator) OperatorFactory.getAndMakeChild(
+        new CollectDesc(Integer.MAX_VALUE), op);
+    op.initialize(loader.hconf,
+        new ObjectInspector[] {getRowInspector(), getRowInspector()});
+    op.loader = loader;
+
+    for (Object[] row : getBigRows()) {
+      op.processOp(toWritables(row), 0);
+    }
+    op.close(false);
+
+    List<String> result = new ArrayList<String>();
+    InspectableObject io = new InspectableObject();
+    for (collect.retrieve(io); io.o != null; collect.retrieve(io)) {
+      result.add(io.o.toString());
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  /** The expected output, from a nested loop join. */
+  private static List<String> getExpected(int joinType) {
+    List<String> result = new ArrayList<String>();
+    for (Object[] big : getBigRows()) {
+      boolean matched = false;
+      for (Object[] small : getSmallRows()) {
+        if (big[0] != null && big[0].equals(small[0])) {
+          matched = true;
+          result.add(Arrays.asList(big[0], big[1], small[1]).toString());
+        }
+      }
+      if (!matched && joinType == JoinDesc.LEFT_OUTER_JOIN) {
+        result.add(Arrays.asList(big[0], big[1], null).toString());
+      }
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  private void verifyHybridJoin(int joinType) throws Exception {
+    HiveConf hconf = getConf();
+    List<String> expected = getExpected(joinType);
+
+    List<String> inMemory = runJoin(joinType, new SmallTableLoader(hconf, 0));
+    assertEquals(expected, inMemory);
+
+    SmallTableLoader hybridLoader = new SmallTableLoader(hconf, HYBRID_MEMORY);
+    List<String> hybrid = runJoin(joinType, hybridLoader);
+    // both the rows joined right away and the rows joined after reloading are covered
+    assertTrue(hybridLoader.numSpilled > 0);
+    assertTrue(hybridLoader.numSpilled < hybridLoader.table.getNumPartitions());
+    assertEquals(expected, hybrid);
+  }
+
+  @Test
+  public void testHybridInnerJoin() throws Exception {
+    verifyHybridJoin(JoinDesc.INNER_JOIN);
+  }
+
+  @Test
+  public void testHybridLeftOuterJoin() throws Exception {
+    verifyHybridJoin(JoinDesc.LEFT_OUTER_JOIN);
+  }
+}
@@ -36,12 +36,17 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.Driver;
+import org.apache.hadoop.hive.ql.exec.vector.util.FakeCaptureOutputOperator;
 import org.apache.hadoop.hive.ql.io.IOContext;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.parse.TypeCheckProcFactory;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
 import org.apache.hadoop.hive.ql.plan.CollectDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.FilterDesc;
+import org.apache.hadoop.hive.ql.plan.GroupByDesc;
 import org.apache.hadoop.hive.ql.plan.MapredWork;
 import org.apache.hadoop.hive.ql.plan.OperatorDesc;
 import org.apache.hadoop.hive.ql.plan.PartitionDesc;
@@ -53,6 +58,7 @@
 import org.apache.hadoop.hive.ql.processors.CommandProcessorFactory;
 import org.apache.hadoop.hive.ql.processors.CommandProcessorResponse;
 import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.serde2.objectinspector.InspectableObject;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
@@ -60,6 +66,7 @@
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.InputSplit;
@@ -398,6 +405,73 @@ public void testMapOperator() throws Throwable {
     }
   }
 
+  public void testGroupByHashSpill() throws Throwable {
+    GroupByOperator op = runGroupByHashSpill(100);
+    assertTrue(op.numSpills > 1);
+  }
+
+  public void testGroupByHashSpillMultiPassMerge() throws Throwable {
+    // more runs than are merged at once
+    GroupByOperator op = runGroupByHashSpill(2);
+    assertTrue(op.numSpills > 2);
+    assertTrue(op.numIntermediateMerges > 0);
+  }
+
+  /**
+   * Sums the values of 1000 keys in a hash group by that spills, and checks that each
+   * key is forwarded once with its sum.
+   */
+  private GroupByOperator runGroupByHashSpill(int mergeFactor) throws Throwable {
+    ObjectInspector longOI = PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+    StructObjectInspector rowOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+        Arrays.asList("key", "value"), Arrays.asList(longOI, longOI));
+
+    ArrayList<ExprNodeDesc> keys = new ArrayList<ExprNodeDesc>();
+    keys.add(new ExprNodeColumnDesc(TypeInfoFactory.longTypeInfo, "key", "", false));
+    ArrayList<ExprNodeDesc> params = new ArrayList<ExprNodeDesc>();
+    params.add(new ExprNodeColumnDesc(TypeInfoFactory.longTypeInfo, "value", "", false));
+    GenericUDAFEvaluator sum = FunctionRegistry.getGenericUDAFEvaluator("sum",
+        Arrays.asList(longOI), false, false);
+    ArrayList<AggregationDesc> aggs = new ArrayList<AggregationDesc>();
+    aggs.add(new AggregationDesc("sum", sum, params, false, GenericUDAFEvaluator.Mode.PARTIAL1));
+    // room for a few hundred hash table entries
+    float memoryUsage = 100000f / Runtime.getRuntime().maxMemory();
+    GroupByDesc desc = new GroupByDesc(GroupByDesc.Mode.HASH,
+        new ArrayList<String>(Arrays.asList("_col0", "_col1")), keys, aggs, false,
+        memoryUsage, 1.0f, null, false, 0, false);
+
+    Operator<GroupByDesc> op = OperatorFactory.get(GroupByDesc.class);
+    op.setConf(desc);
+    FakeCaptureOutputOperator out = FakeCaptureOutputOperator.addCaptureOutputChild(op);
+    final Map<Long, Long> sums = new HashMap<Long, Long>();
+    out.setOutputInspector(new FakeCaptureOutputOperator.OutputInspector() {
+      @Override
+      public void inspectRow(Object row, int tag) throws HiveException {
+        Object[] fields = (Object[]) row;
+        long key = ((LongWritable) fields[0]).get();
+        assertNull("key " + key + " forwarded twice",
+            sums.put(key, ((LongWritable) fields[1]).get()));
+      }
+    });
+
+    JobConf hconf = new JobConf(TestOperators.class);
+    HiveConf.setBoolVar(hconf, HiveConf.ConfVars.HIVEGROUPBYHASHSPILL, true);
+    HiveConf.setIntVar(hconf, HiveConf.ConfVars.HIVEGROUPBYHASHSPILLMERGEFACTOR, mergeFactor);
+    op.initialize(hconf, new ObjectInspector[] {rowOI});
+    int numKeys = 1000;
+    for (int i = 0; i < 10 * numKeys; i++) {
+      op.processOp(Arrays.asList(new LongWritable(i % numKeys), new LongWritable(i)), 0);
+    }
+    op.close(false);
+
+    assertEquals(numKeys, sums.size());
+    for (long key = 0; key < numKeys; key++) {
+      // sum of key, key + numKeys, ..., key + 9 * numKeys
+      assertEquals(Long.valueOf(10 * key + 45 * numKeys), sums.get(key));
+    }
+    return (GroupByOperator) op;
+  }
+
   @Test
   public void testFetchOperatorContextQuoting() throws Exception {
     JobConf conf = new JobConf();
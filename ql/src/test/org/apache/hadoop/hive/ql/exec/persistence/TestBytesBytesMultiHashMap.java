@@ -119,6 +119,46 @@ public void testExpand() throws Exception {
     assertEquals(1 << 18, map.getCapacity());
   }
 
+  @Test
+  public void testVisitAll() throws Exception {
+    BytesBytesMultiHashMap map = new BytesBytesMultiHashMap(CAPACITY, LOAD_FACTOR, WB_SIZE);
+    UniqueKeysKvSource kv = new UniqueKeysKvSource();
+    for (int i = 0; i < 20; ++i) {
+      map.put(kv);
+    }
+    FixedKeyKvSource kv2 = new FixedKeyKvSource(kv.keys.get(3), 0, 100);
+    for (int i = 0; i < 3; ++i) {
+      map.put(kv2);
+    }
+    final HashSet<ByteBuffer> visited = new HashSet<ByteBuffer>();
+    final int[] count = new int[1];
+    map.visitAll(new BytesBytesMultiHashMap.KvVisitor() {
+      @Override
+      public void visit(byte[] key, int keyLength, WriteBuffers.ByteSegmentRef value,
+          byte stateByte) {
+        ByteBuffer kvBytes = ByteBuffer.allocate(keyLength + value.getLength());
+        kvBytes.put(key, 0, keyLength).put(value.copy());
+        kvBytes.flip();
+        visited.add(kvBytes);
+        ++count[0];
+      }
+    });
+    assertEquals(23, count[0]);
+    for (int i = 0; i < kv.keys.size(); ++i) {
+      assertTrue(visited.contains(concat(kv.keys.get(i), kv.values.get(i))));
+    }
+    for (byte[] value : kv2.values) {
+      assertTrue(visited.contains(concat(kv2.key, value)));
+    }
+  }
+
+  private static ByteBuffer concat(byte[] key, byte[] value) {
+    ByteBuffer result = ByteBuffer.allocate(key.length + value.length);
+    result.put(key).put(value);
+    result.flip();
+    return result;
+  }
+
   private void verifyResults(BytesBytesMultiHashMap map, byte[] key, byte[]... values) {
     List<WriteBuffers.ByteSegmentRef> results = new ArrayList<WriteBuffers.ByteSegmentRef>(0);
     byte state = map.getValueRefs(key, key.length, results);
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.exec.tez;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.OperatorFactory;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.MapWork;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+/**
+ * Unit tests for the key range filter that the dynamic partition pruner adds to a scan.
+ */
+public class TestDynamicPartitionPruner {
+
+  private static final ObjectInspector LONG_OI =
+      PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+
+  private static ExprNodeDesc column(TypeInfo type) {
+    return new ExprNodeColumnDesc(type, "key", "t", false);
+  }
+
+  private static List<Object> longs(Long... values) {
+    List<Object> result = new ArrayList<Object>();
+    for (Long value : values) {
+      result.add(value == null ? null : new LongWritable(value));
+    }
+    return result;
+  }
+
+  private static void verifyRange(ExprNodeGenericFuncDesc filter, ExprNodeDesc key,
+      Object min, Object max) {
+    assertTrue(filter.getGenericUDF() instanceof GenericUDFBetween);
+    List<ExprNodeDesc> args = filter.getChildren();
+    assertEquals(4, args.size());
+    assertEquals(Boolean.FALSE, ((ExprNodeConstantDesc) args.get(0)).getValue());
+    assertTrue(key.isSame(args.get(1)));
+    assertEquals(key.getTypeInfo(), args.get(2).getTypeInfo());
+    assertEquals(min, ((ExprNodeConstantDesc) args.get(2)).getValue());
+    assertEquals(key.getTypeInfo(), args.get(3).getTypeInfo());
+    assertEquals(max, ((ExprNodeConstantDesc) args.get(3)).getValue());
+  }
+
+  private static MapWork getWork(TableScanDesc scanDesc) {
+    MapWork work = new MapWork();
+    work.getAliasToWork().put("t", OperatorFactory.get(scanDesc));
+    return work;
+  }
+
+  @Test
+  public void testNoValues() throws Exception {
+    assertNull(DynamicPartitionPruner.makeRangeFilter(Collections.<Object>emptyList(), LONG_OI,
+        column(TypeInfoFactory.longTypeInfo)));
+  }
+
+  @Test
+  public void testOnlyNulls() throws Exception {
+    assertNull(DynamicPartitionPruner.makeRangeFilter(longs(null, null), LONG_OI,
+        column(TypeInfoFactory.longTypeInfo)));
+  }
+
+  @Test
+  public void testSameType() throws Exception {
+    ExprNodeDesc key = column(TypeInfoFactory.longTypeInfo);
+    ExprNodeGenericFuncDesc filter = DynamicPartitionPruner.makeRangeFilter(
+        longs(7L, null, -3L, 12L, null, 5L), LONG_OI, key);
+    verifyRange(filter, key, -3L, 12L);
+  }
+
+  @Test
+  public void testSingleValue() throws Exception {
+    ExprNodeDesc key = column(TypeInfoFactory.longTypeInfo);
+    ExprNodeGenericFuncDesc filter = DynamicPartitionPruner.makeRangeFilter(
+        longs(null, 4L, 4L), LONG_OI, key);
+    verifyRange(filter, key, 4L, 4L);
+  }
+
+  @Test
+  public void testConversion() throws Exception {
+    // bigint join keys on the other side of an int column
+    ExprNodeDesc key = column(TypeInfoFactory.intTypeInfo);
+    ExprNodeGenericFuncDesc filter = DynamicPartitionPruner.makeRangeFilter(
+        longs(100L, -20L), LONG_OI, key);
+    verifyRange(filter, key, -20, 100);
+
+    // string join keys on the other side of a bigint column
+    key = column(TypeInfoFactory.longTypeInfo);
+    filter = DynamicPartitionPruner.makeRangeFilter(
+        Arrays.<Object>asList(new Text("15"), new Text("8")),
+        PrimitiveObjectInspectorFactory.writableStringObjectInspector, key);
+    verifyRange(filter, key, 8L, 15L);
+  }
+
+  @Test
+  public void testLossyConversion() throws Exception {
+    // the max doesn't fit in an int, so the range would drop rows
+    assertNull(DynamicPartitionPruner.makeRangeFilter(longs(1L, 5000000000L), LONG_OI,
+        column(TypeInfoFactory.intTypeInfo)));
+  }
+
+  @Test
+  public void testApplyToScan() throws Exception {
+    ExprNodeDesc key = column(TypeInfoFactory.longTypeInfo);
+    TableScanDesc scanDesc = new TableScanDesc("t");
+    MapWork work = getWork(scanDesc);
+
+    assertTrue(DynamicPartitionPruner.applyRangeFilter(work, longs(2L, 9L), LONG_OI, key));
+    verifyRange(scanDesc.getFilterExpr(), key, 2L, 9L);
+  }
+
+  @Test
+  public void testApplyToScanWithFilter() throws Exception {
+    ExprNodeDesc key = column(TypeInfoFactory.longTypeInfo);
+    List<ExprNodeDesc> args = new ArrayList<ExprNodeDesc>();
+    args.add(column(TypeInfoFactory.longTypeInfo));
+    args.add(new ExprNodeConstantDesc(TypeInfoFactory.longTypeInfo, 0L));
+    ExprNodeGenericFuncDesc existing =
+        ExprNodeGenericFuncDesc.newInstance(new GenericUDFOPEqualOrGreaterThan(), args);
+    TableScanDesc scanDesc = new TableScanDesc("t");
+    scanDesc.setFilterExpr(existing);
+    MapWork work = getWork(scanDesc);
+
+    assertTrue(DynamicPartitionPruner.applyRangeFilter(work, longs(2L, 9L), LONG_OI, key));
+    ExprNodeGenericFuncDesc filter = scanDesc.getFilterExpr();
+    assertTrue(filter.getGenericUDF() instanceof GenericUDFOPAnd);
+    assertSame(existing, filter.getChildren().get(0));
+    verifyRange((ExprNodeGenericFuncDesc) filter.getChildren().get(1), key, 2L, 9L);
+  }
+
+  @Test
+  public void testNoRangeLeavesScan() throws Exception {
+    ExprNodeDesc key = column(TypeInfoFactory.longTypeInfo);
+    TableScanDesc scanDesc = new TableScanDesc("t");
+    MapWork work = getWork(scanDesc);
+
+    assertFalse(DynamicPartitionPruner.applyRangeFilter(work, longs((Long) null), LONG_OI, key));
+    assertNull(scanDesc.getFilterExpr());
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.hadoop.hive.ql.exec.vector.expressions.IdentityExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorAggregateExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.junit.Test;
+
+/**
+ * Unit test for the open addressing hash table of the vectorized group by.
+ */
+public class TestVectorGroupByHashTable {
+
+  private static final int NUM_KEYS = 10000;
+
+  @Test
+  public void testSingleLongKey() throws HiveException {
+    VectorHashKeyWrapperBatch kwb = VectorHashKeyWrapperBatch.compileKeyWrapperBatch(
+        new VectorExpression[] { new IdentityExpression(0, "bigint") });
+    Assert.assertTrue(kwb.isSingleLongKey());
+    verify(kwb, 1);
+  }
+
+  @Test
+  public void testMultipleKeys() throws HiveException {
+    VectorHashKeyWrapperBatch kwb = VectorHashKeyWrapperBatch.compileKeyWrapperBatch(
+        new VectorExpression[] {
+            new IdentityExpression(0, "bigint"), new IdentityExpression(1, "bigint") });
+    Assert.assertFalse(kwb.isSingleLongKey());
+    verify(kwb, 2);
+  }
+
+  private void verify(VectorHashKeyWrapperBatch kwb, int numCols) throws HiveException {
+    VectorGroupByHashTable table = VectorGroupByHashTable.create(kwb);
+    Map<Long, VectorAggregationBufferRow> expected =
+        new HashMap<Long, VectorAggregationBufferRow>();
+    VectorAggregationBufferRow nullRow = null;
+
+    // insert every key twice, the second time the probe has to find the first entry
+    for (int pass = 0; pass < 2; ++pass) {
+      for (int start = -1; start < NUM_KEYS; start += VectorizedRowBatch.DEFAULT_SIZE) {
+        VectorizedRowBatch batch = createBatch(numCols, start);
+        kwb.evaluateBatch(batch);
+        VectorHashKeyWrapper[] kws = kwb.getVectorHashKeyWrappers();
+        for (int i = 0; i < batch.size; ++i) {
+          long key = start + i;
+          VectorAggregationBufferRow row = table.get(kws[i]);
+          if (pass == 0) {
+            Assert.assertNull(row);
+            row = new VectorAggregationBufferRow(
+                new VectorAggregateExpression.AggregationBuffer[0]);
+            table.put(kws[i], row);
+            if (key < 0) {
+              nullRow = row;
+            } else {
+              expected.put(key, row);
+            }
+          } else {
+            Assert.assertSame(key < 0 ? nullRow : expected.get(key), row);
+          }
+        }
+      }
+    }
+    Assert.assertEquals(NUM_KEYS + 1, table.size());
+
+    // flush a part of the table, then all of it; every key comes out exactly once
+    final Map<Long, VectorAggregationBufferRow> flushed =
+        new HashMap<Long, VectorAggregationBufferRow>();
+    final VectorAggregationBufferRow[] flushedNull = new VectorAggregationBufferRow[1];
+    VectorGroupByHashTable.Visitor visitor = new VectorGroupByHashTable.Visitor() {
+      @Override
+      public void visit(VectorHashKeyWrapper key, VectorAggregationBufferRow aggregationBuffers) {
+        if (key.getIsLongNull(0)) {
+          Assert.assertNull(flushedNull[0]);
+          flushedNull[0] = aggregationBuffers;
+        } else {
+          Assert.assertNull(flushed.put(key.getLongValue(0), aggregationBuffers));
+        }
+      }
+    };
+    table.flush(NUM_KEYS / 10, visitor);
+    Assert.assertEquals(NUM_KEYS + 1 - NUM_KEYS / 10, table.size());
+    for (Map.Entry<Long, VectorAggregationBufferRow> e : expected.entrySet()) {
+      VectorHashKeyWrapper kw = kwb.allocateKeyWrapper();
+      for (int col = 0; col < numCols; ++col) {
+        kw.assignLong(col, e.getKey());
+      }
+      kw.setHashKey();
+      if (!flushed.containsKey(e.getKey())) {
+        Assert.assertSame(e.getValue(), table.get(kw));
+      } else {
+        Assert.assertNull(table.get(kw));
+      }
+    }
+
+    table.flush(table.size(), visitor);
+    Assert.assertEquals(0, table.size());
+    Assert.assertEquals(expected, flushed);
+    Assert.assertSame(nullRow, flushedNull[0]);
+  }
+
+  /**
+   * Creates a batch with keys start, start + 1, ... in every column; negative keys are null.
+   */
+  private static VectorizedRowBatch createBatch(int numCols, int start) {
+    VectorizedRowBatch batch = new VectorizedRowBatch(numCols);
+    batch.size = Math.min(VectorizedRowBatch.DEFAULT_SIZE, NUM_KEYS - start);
+    for (int col = 0; col < numCols; ++col) {
+      LongColumnVector lcv = new LongColumnVector();
+      batch.cols[col] = lcv;
+      for (int i = 0; i < batch.size; ++i) {
+        long key = start + i;
+        if (key < 0) {
+          lcv.noNulls = false;
+          lcv.isNull[i] = true;
+        } else {
+          lcv.vector[i] = key;
+        }
+      }
+    }
+    return batch;
+  }
+}
@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinarySerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+/**
+ * Verifies that values serialized from column vectors for the vectorized reduce sink are
+ * byte-identical to the rows LazyBinarySerDe produces.
+ */
+public class TestVectorLazyBinarySerializer {
+
+  private static final PrimitiveCategory[] CATEGORIES = {
+      PrimitiveCategory.BOOLEAN, PrimitiveCategory.BYTE, PrimitiveCategory.SHORT,
+      PrimitiveCategory.INT, PrimitiveCategory.LONG, PrimitiveCategory.FLOAT,
+      PrimitiveCategory.DOUBLE, PrimitiveCategory.STRING, PrimitiveCategory.LONG };
+  private static final long[] LONGS = { 0, 1, -1, 127, -128, Long.MAX_VALUE, Long.MIN_VALUE };
+  private static final double[] DOUBLES = { 0, 1.5, -1, 3.25, -0.125, 1e10, Double.MIN_VALUE };
+  private static final String[] STRINGS = { "", "a", "abc\u0000def", "\u0001x", "zzz", "q", "" };
+
+  @Test
+  public void testAllTypes() throws Exception {
+    // nine columns, so that the second null byte is used too
+    VectorizedRowBatch batch = createBatch();
+    verify(batch);
+  }
+
+  @Test
+  public void testNullsAndRepeating() throws Exception {
+    VectorizedRowBatch batch = createBatch();
+    for (int col = 0; col < CATEGORIES.length; ++col) {
+      batch.cols[col].noNulls = false;
+      batch.cols[col].isNull[col % LONGS.length] = true;
+    }
+    batch.cols[8].isRepeating = true;
+    verify(batch);
+
+    batch.cols[8].isNull[0] = true;
+    verify(batch);
+  }
+
+  @Test
+  public void testSupportedTypes() {
+    Assert.assertTrue(VectorLazyBinarySerializer.isSupportedType(TypeInfoFactory.doubleTypeInfo));
+    Assert.assertTrue(VectorLazyBinarySerializer.isSupportedType(TypeInfoFactory.stringTypeInfo));
+    Assert.assertFalse(VectorLazyBinarySerializer.isSupportedType(
+        TypeInfoFactory.timestampTypeInfo));
+    Assert.assertFalse(VectorLazyBinarySerializer.isSupportedType(
+        TypeInfoFactory.getListTypeInfo(TypeInfoFactory.intTypeInfo)));
+  }
+
+  private void verify(VectorizedRowBatch batch) throws Exception {
+    int[] columns = new int[CATEGORIES.length];
+    List<ObjectInspector> ois = new ArrayList<ObjectInspector>();
+    for (int col = 0; col < columns.length; ++col) {
+      columns[col] = col;
+      ois.add(PrimitiveObjectInspectorFactory.getPrimitiveWritableObjectInspector(
+          CATEGORIES[col]));
+    }
+    VectorLazyBinarySerializer ser = new VectorLazyBinarySerializer(columns, CATEGORIES);
+    Output actual = new Output(), expected = new Output();
+    for (int i = 0; i < batch.size; ++i) {
+      ser.serialize(batch, i, actual);
+      Object[] row = new Object[columns.length];
+      for (int col = 0; col < columns.length; ++col) {
+        ColumnVector cv = batch.cols[col];
+        int r = cv.isRepeating ? 0 : i;
+        row[col] = !cv.noNulls && cv.isNull[r] ? null : toWritable(CATEGORIES[col], r);
+      }
+      expected.reset();
+      LazyBinarySerDe.serializeStruct(expected, row, ois);
+      Assert.assertEquals(expected.getLength(), actual.getLength());
+      for (int b = 0; b < expected.getLength(); ++b) {
+        Assert.assertEquals(expected.getData()[b], actual.getData()[b]);
+      }
+    }
+  }
+
+  private static Object toWritable(PrimitiveCategory category, int i) {
+    switch (category) {
+    case BOOLEAN:
+      return new BooleanWritable(LONGS[i] != 0);
+    case BYTE:
+      return new ByteWritable((byte) LONGS[i]);
+    case SHORT:
+      return new ShortWritable((short) LONGS[i]);
+    case INT:
+      return new IntWritable((int) LONGS[i]);
+    case LONG:
+      return new LongWritable(LONGS[i]);
+    case FLOAT:
+      return new FloatWritable((float) DOUBLES[i]);
+    case DOUBLE:
+      return new DoubleWritable(DOUBLES[i]);
+    default:
+      return new Text(STRINGS[i]);
+    }
+  }
+
+  private static VectorizedRowBatch createBatch() {
+    VectorizedRowBatch batch = new VectorizedRowBatch(CATEGORIES.length);
+    for (int col = 0; col < CATEGORIES.length; ++col) {
+      switch (CATEGORIES[col]) {
+      case FLOAT:
+      case DOUBLE: {
+        DoubleColumnVector dcv = new DoubleColumnVector();
+        for (int i = 0; i < DOUBLES.length; ++i) {
+          // float columns hold values that are exact floats
+          dcv.vector[i] = CATEGORIES[col] == PrimitiveCategory.FLOAT
+              ? (float) DOUBLES[i] : DOUBLES[i];
+        }
+        batch.cols[col] = dcv;
+        break;
+      }
+      case STRING: {
+        BytesColumnVector bcv = new BytesColumnVector();
+        bcv.initBuffer();
+        for (int i = 0; i < STRINGS.length; ++i) {
+          Text text = new Text(STRINGS[i]);
+          bcv.setVal(i, text.getBytes(), 0, text.getLength());
+        }
+        batch.cols[col] = bcv;
+        break;
+      }
+      default: {
+        LongColumnVector lcv = new LongColumnVector();
+        for (int i = 0; i < LONGS.length; ++i) {
+          // narrow columns hold values of their type
+          switch (CATEGORIES[col]) {
+          case BOOLEAN:
+            lcv.vector[i] = LONGS[i] != 0 ? 1 : 0;
+            break;
+          case BYTE:
+            lcv.vector[i] = (byte) LONGS[i];
+            break;
+          case SHORT:
+            lcv.vector[i] = (short) LONGS[i];
+            break;
+          case INT:
+            lcv.vector[i] = (int) LONGS[i];
+            break;
+          default:
+            lcv.vector[i] = LONGS[i];
+          }
+        }
+        batch.cols[col] = lcv;
+      }
+      }
+    }
+    batch.size = LONGS.length;
+    return batch;
+  }
+}
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.apache.hadoop.hive.serde2.binarysortable.BinarySortableSerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+/**
+ * Verifies that keys serialized from column vectors for the vectorized map join are
+ * byte-identical to the keys BinarySortableSerDe produces for the hashtable.
+ */
+public class TestVectorMapJoinKeySerializer {
+
+  private static final long[] LONGS = { 0, 1, -1, 42, Long.MAX_VALUE, Long.MIN_VALUE };
+  private static final String[] STRINGS = { "", "a", "abc\u0000def", "\u0001x", "zzz", "q" };
+
+  @Test
+  public void testLongAndStringKeys() throws Exception {
+    verify(new boolean[] { false, false });
+  }
+
+  @Test
+  public void testDescendingKeys() throws Exception {
+    verify(new boolean[] { true, false });
+    verify(new boolean[] { false, true });
+  }
+
+  @Test
+  public void testIntKey() throws Exception {
+    VectorizedRowBatch batch = new VectorizedRowBatch(1);
+    LongColumnVector lcv = new LongColumnVector();
+    batch.cols[0] = lcv;
+    batch.size = 3;
+    lcv.vector[0] = -5;
+    lcv.vector[1] = 7;
+    lcv.vector[2] = Integer.MIN_VALUE;
+    VectorMapJoinKeySerializer ser = new VectorMapJoinKeySerializer(new int[] { 0 },
+        new PrimitiveCategory[] { PrimitiveCategory.INT }, new boolean[1]);
+    List<ObjectInspector> ois = new ArrayList<ObjectInspector>();
+    ois.add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+    Output actual = new Output(), expected = new Output();
+    for (int i = 0; i < batch.size; ++i) {
+      Assert.assertTrue(ser.serializeKey(batch, i, actual));
+      expected.reset();
+      BinarySortableSerDe.serializeStruct(expected,
+          new Object[] { new IntWritable((int) lcv.vector[i]) }, ois, new boolean[1]);
+      assertSameBytes(expected, actual);
+    }
+  }
+
+  @Test
+  public void testNullsAndRepeating() throws HiveException {
+    VectorizedRowBatch batch = createBatch();
+    VectorMapJoinKeySerializer ser = createSerializer(new boolean[2]);
+    Output output = new Output();
+
+    batch.cols[0].noNulls = false;
+    batch.cols[0].isNull[2] = true;
+    Assert.assertFalse(ser.serializeKey(batch, 2, output));
+    Assert.assertTrue(ser.serializeKey(batch, 3, output));
+
+    batch.cols[0].isRepeating = true;
+    batch.cols[0].isNull[0] = true;
+    Assert.assertFalse(ser.serializeKey(batch, 4, output));
+  }
+
+  @Test
+  public void testNullableKeys() throws Exception {
+    VectorizedRowBatch batch = createBatch();
+    boolean[] sortOrders = new boolean[] { false, true };
+    VectorMapJoinKeySerializer ser = createSerializer(sortOrders);
+    List<ObjectInspector> ois = Arrays.<ObjectInspector>asList(
+        PrimitiveObjectInspectorFactory.writableLongObjectInspector,
+        PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+    batch.cols[0].noNulls = false;
+    batch.cols[0].isNull[1] = true;
+    batch.cols[1].noNulls = false;
+    batch.cols[1].isNull[3] = true;
+    Output actual = new Output(), expected = new Output();
+    for (int i = 0; i < batch.size; ++i) {
+      ser.serializeNullableKey(batch, i, actual);
+      expected.reset();
+      BinarySortableSerDe.serializeStruct(expected, new Object[] {
+          batch.cols[0].isNull[i] ? null : new LongWritable(LONGS[i]),
+          batch.cols[1].isNull[i] ? null : new Text(STRINGS[i]) }, ois, sortOrders);
+      assertSameBytes(expected, actual);
+    }
+  }
+
+  @Test
+  public void testSupportedKeys() {
+    Assert.assertTrue(VectorMapJoinKeySerializer.isSupportedKey(TypeInfoFactory.longTypeInfo));
+    Assert.assertTrue(VectorMapJoinKeySerializer.isSupportedKey(TypeInfoFactory.stringTypeInfo));
+    Assert.assertFalse(VectorMapJoinKeySerializer.isSupportedKey(TypeInfoFactory.doubleTypeInfo));
+    Assert.assertFalse(VectorMapJoinKeySerializer.isSupportedKey(
+        TypeInfoFactory.getListTypeInfo(TypeInfoFactory.intTypeInfo)));
+  }
+
+  private void verify(boolean[] sortOrders) throws Exception {
+    VectorizedRowBatch batch = createBatch();
+    VectorMapJoinKeySerializer ser = createSerializer(sortOrders);
+    List<ObjectInspector> ois = Arrays.<ObjectInspector>asList(
+        PrimitiveObjectInspectorFactory.writableLongObjectInspector,
+        PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+    Output actual = new Output(), expected = new Output();
+    for (int i = 0; i < batch.size; ++i) {
+      Assert.assertTrue(ser.serializeKey(batch, i, actual));
+      expected.reset();
+      BinarySortableSerDe.serializeStruct(expected,
+          new Object[] { new LongWritable(LONGS[i]), new Text(STRINGS[i]) }, ois, sortOrders);
+      assertSameBytes(expected, actual);
+    }
+  }
+
+  private static VectorizedRowBatch createBatch() {
+    VectorizedRowBatch batch = new VectorizedRowBatch(2);
+    LongColumnVector lcv = new LongColumnVector();
+    BytesColumnVector bcv = new BytesColumnVector();
+    bcv.initBuffer();
+    batch.cols[0] = lcv;
+    batch.cols[1] = bcv;
+    for (int i = 0; i < LONGS.length; ++i) {
+      lcv.vector[i] = LONGS[i];
+      Text text = new Text(STRINGS[i]);
+      bcv.setVal(i, text.getBytes(), 0, text.getLength());
+    }
+    batch.size = LONGS.length;
+    return batch;
+  }
+
+  private static VectorMapJoinKeySerializer createSerializer(boolean[] sortOrders) {
+    return new VectorMapJoinKeySerializer(new int[] { 0, 1 },
+        new PrimitiveCategory[] { PrimitiveCategory.LONG, PrimitiveCategory.STRING }, sortOrders);
+  }
+
+  private static void assertSameBytes(Output expected, Output actual) {
+    Assert.assertEquals(expected.getLength(), actual.getLength());
+    for (int i = 0; i < expected.getLength(); ++i) {
+      Assert.assertEquals(expected.getData()[i], actual.getData()[i]);
+    }
+  }
+}
@@ -0,0 +1,354 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.HashTableLoader;
+import org.apache.hadoop.hive.ql.exec.MapJoinOperator;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.mr.ExecMapperContext;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinBytesTableContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectSerDeContext;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainerSerDe;
+import org.apache.hadoop.hive.ql.exec.vector.util.FakeCaptureOutputOperator;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.JoinCondDesc;
+import org.apache.hadoop.hive.ql.plan.JoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapWork;
+import org.apache.hadoop.hive.ql.plan.PlanUtils;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the native vectorized map join against the vectorized join that goes through
+ * the row-mode MapJoinOperator.
+ */
+public class TestVectorMapJoinOperator {
+
+  private static final String FILE_KEY = "TestVectorMapJoinOperator";
+
+  /** Small table rows: every key twice, and a null key. */
+  private static List<Object[]> getSmallRows() {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i = 0; i < 100; ++i) {
+      rows.add(new Object[] {i % 50, "s" + i});
+    }
+    rows.add(new Object[] {null, "snull"});
+    return rows;
+  }
+
+  /**
+   * The big table, as batches of rows: nulls and keys that don't match, a repeating key,
+   * a repeating null and a batch with a selection vector.
+   */
+  private static List<List<Object[]>> getBigBatches() {
+    List<List<Object[]>> batches = new ArrayList<List<Object[]>>();
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i = 0; i < 60; ++i) {
+      rows.add(new Object[] {i % 10 == 3 ? null : i - 5, "b" + i});
+    }
+    batches.add(rows);
+    rows = new ArrayList<Object[]>();
+    for (int i = 0; i < 8; ++i) {
+      rows.add(new Object[] {7, "r" + i});
+    }
+    batches.add(rows);
+    rows = new ArrayList<Object[]>();
+    for (int i = 0; i < 5; ++i) {
+      rows.add(new Object[] {null, "n" + i});
+    }
+    batches.add(rows);
+    rows = new ArrayList<Object[]>();
+    for (int i = 60; i < 80; ++i) {
+      rows.add(new Object[] {i - 15, "b" + i});
+    }
+    batches.add(rows);
+    return batches;
+  }
+
+  /**
+   * Makes a batch of the rows. The last batch only selects every other row, the rows in
+   * between have a key that would match.
+   */
+  private static VectorizedRowBatch getBatch(List<Object[]> rows, boolean last) {
+    VectorizedRowBatch batch = new VectorizedRowBatch(2);
+    LongColumnVector keys = new LongColumnVector();
+    BytesColumnVector values = new BytesColumnVector();
+    values.initBuffer();
+    batch.cols[0] = keys;
+    batch.cols[1] = values;
+    int size = 0;
+    for (Object[] row : rows) {
+      if (last) {
+        keys.vector[size] = 1;
+        values.setVal(size, "skipped".getBytes(), 0, "skipped".length());
+        batch.selected[size / 2] = size + 1;
+        ++size;
+      }
+      if (row[0] == null) {
+        keys.noNulls = false;
+        keys.isNull[size] = true;
+      } else {
+        keys.vector[size] = (Integer) row[0];
+      }
+      byte[] bytes = ((String) row[1]).getBytes();
+      values.setVal(size, bytes, 0, bytes.length);
+      ++size;
+    }
+    batch.size = last ? size / 2 : size;
+    batch.selectedInUse = last;
+
+    boolean repeating = true;
+    for (Object[] row : rows) {
+      repeating &= row[0] == null
+          ? rows.get(0)[0] == null : row[0].equals(rows.get(0)[0]);
+    }
+    if (repeating && !last) {
+      keys.isRepeating = true;
+    }
+    return batch;
+  }
+
+  private static ObjectInspector getRowInspector() {
+    List<ObjectInspector> fields = new ArrayList<ObjectInspector>();
+    fields.add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+    fields.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+    return ObjectInspectorFactory.getStandardStructObjectInspector(
+        Arrays.asList("key", "value"), fields);
+  }
+
+  private static ObjectInspector getStructInspector(ObjectInspector field) {
+    return ObjectInspectorFactory.getStandardStructObjectInspector(
+        Arrays.asList("_col0"), Arrays.asList(field));
+  }
+
+  private static ExprNodeDesc column(String name) {
+    return new ExprNodeColumnDesc(name.equals("key")
+        ? TypeInfoFactory.intTypeInfo : TypeInfoFactory.stringTypeInfo, name, "t", false);
+  }
+
+  /** Joins big (key, value) with small (key, value) on key, without the small table key. */
+  private static MapJoinDesc getDesc(int joinType) {
+    Map<Byte, List<ExprNodeDesc>> keys = new HashMap<Byte, List<ExprNodeDesc>>();
+    Map<Byte, List<ExprNodeDesc>> values = new HashMap<Byte, List<ExprNodeDesc>>();
+    Map<Byte, List<ExprNodeDesc>> filters = new HashMap<Byte, List<ExprNodeDesc>>();
+    for (byte pos = 0; pos < 2; ++pos) {
+      keys.put(pos, Arrays.asList(column("key")));
+      filters.put(pos, new ArrayList<ExprNodeDesc>());
+    }
+    values.put((byte) 0, Arrays.asList(column("key"), column("value")));
+    values.put((byte) 1, Arrays.asList(column("value")));
+
+    // the hashtable keys are sent like on tez
+    HiveConf tezConf = new HiveConf();
+    HiveConf.setVar(tezConf, HiveConf.ConfVars.HIVE_EXECUTION_ENGINE, "tez");
+    TableDesc keyTableDesc = PlanUtils.getMapJoinKeyTableDesc(tezConf,
+        PlanUtils.getFieldSchemasFromColumnList(keys.get((byte) 0), "joinkey"));
+    List<TableDesc> valueTableDescs = new ArrayList<TableDesc>();
+    for (byte pos = 0; pos < 2; ++pos) {
+      valueTableDescs.add(PlanUtils.getMapJoinValueTableDesc(
+          PlanUtils.getFieldSchemasFromColumnList(values.get(pos), "mapjoinvalue")));
+    }
+    JoinCondDesc[] conds = new JoinCondDesc[] {new JoinCondDesc(0, 1, joinType)};
+    MapJoinDesc desc = new MapJoinDesc(keys, keyTableDesc, values, valueTableDescs,
+        valueTableDescs, Arrays.asList("_col0", "_col1", "_col2"), 0, conds, filters,
+        joinType == JoinDesc.INNER_JOIN, null);
+    desc.setFilterMap(new int[2][]);
+    return desc;
+  }
+
+  /** Loads the small table rows into an optimized hashtable. */
+  private static class SmallTableLoader implements HashTableLoader {
+    private Configuration hconf;
+
+    @Override
+    public void init(ExecMapperContext context, Configuration hconf, MapJoinOperator joinOp) {
+      this.hconf = hconf;
+    }
+
+    @Override
+    public void load(MapJoinTableContainer[] mapJoinTables,
+        MapJoinTableContainerSerDe[] mapJoinTableSerdes) throws HiveException {
+      MapJoinObjectSerDeContext keyContext = mapJoinTableSerdes[1].getKeyContext();
+      MapJoinObjectSerDeContext valueContext = mapJoinTableSerdes[1].getValueContext();
+      SerDe keySerDe = keyContext.getSerDe();
+      SerDe valueSerDe = valueContext.getSerDe();
+      ObjectInspector keyInspector =
+          getStructInspector(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+      ObjectInspector valueInspector =
+          getStructInspector(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+      try {
+        MapJoinBytesTableContainer table =
+            new MapJoinBytesTableContainer(hconf, valueContext, -1);
+        for (Object[] row : getSmallRows()) {
+          List<Object> key = Arrays.<Object>asList(
+              row[0] == null ? null : new IntWritable((Integer) row[0]));
+          List<Object> value = Arrays.<Object>asList(new Text((String) row[1]));
+          table.putRow(keyContext, keySerDe.serialize(key, keyInspector),
+              valueContext, valueSerDe.serialize(value, valueInspector));
+        }
+        table.seal();
+        mapJoinTables[1] = table;
+      } catch (SerDeException e) {
+        throw new HiveException(e);
+      }
+    }
+  }
+
+  private static Object getValue(ColumnVector col, int rowIndex) {
+    int index = col.isRepeating ? 0 : rowIndex;
+    if (!col.noNulls && col.isNull[index]) {
+      return null;
+    }
+    if (col instanceof LongColumnVector) {
+      return ((LongColumnVector) col).vector[index];
+    }
+    BytesColumnVector bytes = (BytesColumnVector) col;
+    return new String(bytes.vector[index], bytes.start[index], bytes.length[index]);
+  }
+
+  @After
+  public void tearDown() {
+    Utilities.clearWorkMap();
+  }
+
+  /** Runs the join over the big table batches, and returns the sorted output rows. */
+  private static List<String> runJoin(int joinType, boolean nativeJoin) throws Exception {
+    HiveConf hconf = new HiveConf();
+    hconf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_ENABLED, nativeJoin);
+    HiveConf.setVar(hconf, HiveConf.ConfVars.PLAN, "file:///tmp/" + FILE_KEY);
+
+    Map<String, Integer> columnMap = new HashMap<String, Integer>();
+    columnMap.put("key", 0);
+    columnMap.put("value", 1);
+    VectorizationContext vContext = new VectorizationContext(columnMap, 2);
+    vContext.setFileKey(FILE_KEY);
+    final SmallTableLoader smallTableLoader = new SmallTableLoader();
+    VectorMapJoinOperator op = new VectorMapJoinOperator(vContext, getDesc(joinType)) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public void initializeOp(Configuration hconf) throws HiveException {
+        super.initializeOp(hconf);
+        loader = smallTableLoader;
+      }
+    };
+
+    // the output batch has the join output columns and no scratch columns
+    Map<String, Integer> outputColumnMap = new HashMap<String, Integer>();
+    for (int i = 0; i < 3; ++i) {
+      outputColumnMap.put("_col" + i, i);
+    }
+    String outputFileKey = op.getOuputVectorizationContext().getFileKey();
+    MapWork work = new MapWork();
+    Map<Integer, String> scratchColumnTypes = new HashMap<Integer, String>();
+    work.setScratchColumnMap(Collections.singletonMap(outputFileKey, outputColumnMap));
+    work.setScratchColumnVectorTypes(Collections.singletonMap(outputFileKey, scratchColumnTypes));
+    Utilities.setMapWork(hconf, work);
+
+    final List<String> result = new ArrayList<String>();
+    FakeCaptureOutputOperator out = FakeCaptureOutputOperator.addCaptureOutputChild(op);
+    out.setOutputInspector(new FakeCaptureOutputOperator.OutputInspector() {
+      @Override
+      public void inspectRow(Object row, int tag) throws HiveException {
+        VectorizedRowBatch batch = (VectorizedRowBatch) row;
+        for (int i = 0; i < batch.size; ++i) {
+          int rowIndex = batch.selectedInUse ? batch.selected[i] : i;
+          result.add(Arrays.asList(getValue(batch.cols[0], rowIndex),
+              getValue(batch.cols[1], rowIndex), getValue(batch.cols[2], rowIndex)).toString());
+        }
+      }
+    });
+    op.initialize(hconf, new ObjectInspector[] {getRowInspector(), getRowInspector()});
+
+    List<List<Object[]>> batches = getBigBatches();
+    for (int i = 0; i < batches.size(); ++i) {
+      op.processOp(getBatch(batches.get(i), i == batches.size() - 1), 0);
+    }
+    assertEquals(nativeJoin, op.isNativeJoin());
+    op.close(false);
+
+    Collections.sort(result);
+    return result;
+  }
+
+  /** The expected output, from a nested loop join. */
+  private static List<String> getExpected(int joinType) {
+    List<String> result = new ArrayList<String>();
+    for (List<Object[]> batch : getBigBatches()) {
+      for (Object[] big : batch) {
+        boolean matched = false;
+        for (Object[] small : getSmallRows()) {
+          if (big[0] != null && big[0].equals(small[0])) {
+            matched = true;
+            result.add(Arrays.asList(big[0], big[1], small[1]).toString());
+          }
+        }
+        if (!matched && joinType == JoinDesc.LEFT_OUTER_JOIN) {
+          result.add(Arrays.asList(big[0], big[1], null).toString());
+        }
+      }
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  private void verifyNativeJoin(int joinType) throws Exception {
+    List<String> expected = getExpected(joinType);
+    assertFalse(expected.isEmpty());
+    List<String> rowMode = runJoin(joinType, false);
+    assertEquals(expected, rowMode);
+    List<String> nativeMode = runJoin(joinType, true);
+    assertEquals(rowMode, nativeMode);
+  }
+
+  @Test
+  public void testInnerJoin() throws Exception {
+    verifyNativeJoin(JoinDesc.INNER_JOIN);
+  }
+
+  @Test
+  public void testLeftOuterJoin() throws Exception {
+    verifyNativeJoin(JoinDesc.LEFT_OUTER_JOIN);
+  }
+}
@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import junit.framework.Assert;
+
+import org.apache.hadoop.hive.ql.parse.WindowingSpec.BoundarySpec;
+import org.apache.hadoop.hive.ql.parse.WindowingSpec.Direction;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ptf.CurrentRowDef;
+import org.apache.hadoop.hive.ql.plan.ptf.PTFExpressionDef;
+import org.apache.hadoop.hive.ql.plan.ptf.RangeBoundaryDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFrameDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFunctionDef;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.junit.Test;
+
+/**
+ * Tests the window functions of the vectorized PTF operator, with partitions and groups
+ * of peers that span batches.
+ */
+public class TestVectorPTFFunction {
+
+  @Test
+  public void testRanking() {
+    // partition boundaries at rows 0 and 3 of the first batch and 1 of the second one;
+    // peers start at the rows marked in newPeers
+    boolean[][] newPartition = {
+        { true, false, false, true, false },
+        { false, true, false } };
+    boolean[][] newPeers = {
+        { true, true, false, true, false },
+        { true, true, false } };
+    long[][] rowNumbers = { { 1, 2, 3, 1, 2 }, { 3, 1, 2 } };
+    long[][] ranks = { { 1, 2, 2, 1, 1 }, { 3, 1, 1 } };
+    long[][] denseRanks = { { 1, 2, 2, 1, 1 }, { 2, 1, 1 } };
+
+    VectorPTFFunction rowNumber = create("row_number", null, null);
+    VectorPTFFunction rank = create("rank", null, null);
+    VectorPTFFunction denseRank = create("dense_rank", null, null);
+    Assert.assertEquals("int", rank.getOutputType());
+    rowNumber.setOutputColumn(0);
+    rank.setOutputColumn(1);
+    denseRank.setOutputColumn(2);
+    for (int b = 0; b < newPartition.length; ++b) {
+      VectorizedRowBatch batch = createBatch(newPartition[b].length, 3);
+      rowNumber.evaluate(batch, newPartition[b], newPeers[b]);
+      rank.evaluate(batch, newPartition[b], newPeers[b]);
+      denseRank.evaluate(batch, newPartition[b], newPeers[b]);
+      assertLongs(rowNumbers[b], batch.cols[0]);
+      assertLongs(ranks[b], batch.cols[1]);
+      assertLongs(denseRanks[b], batch.cols[2]);
+    }
+  }
+
+  @Test
+  public void testRunningAggregates() {
+    VectorPTFFunction sum = create("sum", runningFrame(), col("bigint"));
+    VectorPTFFunction max = create("max", runningFrame(), col("bigint"));
+    VectorPTFFunction count = create("count", runningFrame(), col("bigint"));
+    Assert.assertEquals("bigint", sum.getOutputType());
+    sum.setOutputColumn(1);
+    max.setOutputColumn(2);
+    count.setOutputColumn(3);
+
+    VectorizedRowBatch batch = createBatch(5, 4);
+    LongColumnVector input = (LongColumnVector) batch.cols[0];
+    input.vector = new long[] { 5, 0, 7, 2, -1 };
+    input.noNulls = false;
+    input.isNull[1] = true;
+    boolean[] newPartition = { true, false, false, true, false };
+    sum.evaluate(batch, newPartition, newPartition);
+    max.evaluate(batch, newPartition, newPartition);
+    count.evaluate(batch, newPartition, newPartition);
+    assertLongs(new long[] { 5, 5, 12, 2, 1 }, batch.cols[1]);
+    assertLongs(new long[] { 5, 5, 7, 2, 2 }, batch.cols[2]);
+    assertLongs(new long[] { 1, 1, 2, 1, 2 }, batch.cols[3]);
+
+    // the partition continues in the next batch, and starts with a null
+    batch = createBatch(2, 4);
+    input = (LongColumnVector) batch.cols[0];
+    input.vector[0] = 10;
+    input.vector[1] = 3;
+    input.noNulls = false;
+    input.isNull[0] = true;
+    newPartition = new boolean[] { false, true };
+    sum.evaluate(batch, newPartition, newPartition);
+    assertLongs(new long[] { 1, 3 }, batch.cols[1]);
+
+    // a partition that only has nulls so far has a null sum
+    batch = createBatch(1, 4);
+    batch.cols[0].noNulls = false;
+    batch.cols[0].isNull[0] = true;
+    sum.evaluate(batch, new boolean[] { true }, new boolean[] { true });
+    Assert.assertFalse(batch.cols[1].noNulls);
+    Assert.assertTrue(batch.cols[1].isNull[0]);
+  }
+
+  @Test
+  public void testLag() {
+    PTFExpressionDef amount = new PTFExpressionDef();
+    amount.setExprNode(new ExprNodeConstantDesc(2));
+    VectorPTFFunction lag = create("lag", null, col("bigint"), amount);
+    lag.setOutputColumn(1);
+
+    VectorizedRowBatch batch = createBatch(4, 2);
+    ((LongColumnVector) batch.cols[0]).vector = new long[] { 1, 2, 3, 4 };
+    boolean[] newPartition = { true, false, false, false };
+    lag.evaluate(batch, newPartition, newPartition);
+    Assert.assertTrue(batch.cols[1].isNull[0]);
+    Assert.assertTrue(batch.cols[1].isNull[1]);
+    Assert.assertEquals(1, ((LongColumnVector) batch.cols[1]).vector[2]);
+    Assert.assertEquals(2, ((LongColumnVector) batch.cols[1]).vector[3]);
+
+    // carries over to the next batch until the partition ends
+    batch = createBatch(3, 2);
+    ((LongColumnVector) batch.cols[0]).vector = new long[] { 5, 6, 7 };
+    newPartition = new boolean[] { false, true, false };
+    lag.evaluate(batch, newPartition, newPartition);
+    Assert.assertEquals(3, ((LongColumnVector) batch.cols[1]).vector[0]);
+    Assert.assertTrue(batch.cols[1].isNull[1]);
+    Assert.assertTrue(batch.cols[1].isNull[2]);
+  }
+
+  @Test
+  public void testUnsupported() {
+    // a running aggregate needs the ROWS frame
+    Assert.assertNull(VectorPTFFunction.create(windowFunction("sum", null, col("bigint")), 0));
+    Assert.assertNull(VectorPTFFunction.create(
+        windowFunction("sum", runningFrame(), col("string")), 0));
+    Assert.assertNull(VectorPTFFunction.create(windowFunction("lead", null, col("bigint")), 0));
+    WindowFunctionDef distinct = windowFunction("count", runningFrame(), col("bigint"));
+    distinct.setDistinct(true);
+    Assert.assertNull(VectorPTFFunction.create(distinct, 0));
+  }
+
+  private static VectorPTFFunction create(String name, WindowFrameDef frame,
+      PTFExpressionDef... args) {
+    VectorPTFFunction function = VectorPTFFunction.create(
+        windowFunction(name, frame, args), args == null || args.length == 0 ? -1 : 0);
+    Assert.assertNotNull(function);
+    return function;
+  }
+
+  private static WindowFunctionDef windowFunction(String name, WindowFrameDef frame,
+      PTFExpressionDef... args) {
+    WindowFunctionDef wFnDef = new WindowFunctionDef();
+    wFnDef.setName(name);
+    wFnDef.setWindowFrame(frame);
+    if (args != null) {
+      for (PTFExpressionDef arg : args) {
+        if (arg != null) {
+          wFnDef.addArg(arg);
+        }
+      }
+    }
+    return wFnDef;
+  }
+
+  private static WindowFrameDef runningFrame() {
+    RangeBoundaryDef start = new RangeBoundaryDef();
+    start.setDirection(Direction.PRECEDING);
+    start.setAmt(BoundarySpec.UNBOUNDED_AMOUNT);
+    WindowFrameDef frame = new WindowFrameDef();
+    frame.setStart(start);
+    frame.setEnd(new CurrentRowDef());
+    return frame;
+  }
+
+  private static PTFExpressionDef col(String typeName) {
+    ExprNodeDesc column = new ExprNodeColumnDesc(
+        TypeInfoFactory.getPrimitiveTypeInfo(typeName), "_col0", "", false);
+    PTFExpressionDef arg = new PTFExpressionDef();
+    arg.setExprNode(column);
+    return arg;
+  }
+
+  private static VectorizedRowBatch createBatch(int size, int numCols) {
+    VectorizedRowBatch batch = new VectorizedRowBatch(numCols);
+    for (int col = 0; col < numCols; ++col) {
+      batch.cols[col] = new LongColumnVector();
+    }
+    batch.size = size;
+    return batch;
+  }
+
+  private static void assertLongs(long[] expected, ColumnVector cv) {
+    LongColumnVector lcv = (LongColumnVector) cv;
+    for (int i = 0; i < expected.length; ++i) {
+      Assert.assertFalse(!lcv.noNulls && lcv.isNull[i]);
+      Assert.assertEquals(expected[i], lcv.vector[i]);
+    }
+  }
+}
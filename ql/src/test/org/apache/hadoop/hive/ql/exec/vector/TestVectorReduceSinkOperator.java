@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.ReduceSinkOperator;
+import org.apache.hadoop.hive.ql.io.AcidUtils;
+import org.apache.hadoop.hive.ql.io.HiveKey;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.PlanUtils;
+import org.apache.hadoop.hive.ql.plan.ReduceSinkDesc;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.junit.Test;
+
+/**
+ * Unit tests for the native serialization of the vectorized reduce sink.
+ */
+public class TestVectorReduceSinkOperator {
+
+  private static final Long[] KEYS = {1L, null, 3L, 3L, -5L, Long.MAX_VALUE, null, 0L};
+  private static final String[] VALUES = {"a", "b", null, "", "dd", null, "e", "fff"};
+
+  /**
+   * Collects copies of the keys, their hash codes and the values that an operator emits.
+   */
+  private static class Collector implements OutputCollector<Object, Object> {
+    private final List<byte[]> keys = new ArrayList<byte[]>();
+    private final List<Integer> hashCodes = new ArrayList<Integer>();
+    private final List<byte[]> values = new ArrayList<byte[]>();
+
+    @Override
+    public void collect(Object key, Object value) {
+      HiveKey hiveKey = (HiveKey) key;
+      keys.add(Arrays.copyOf(hiveKey.getBytes(), hiveKey.getLength()));
+      hashCodes.add(hiveKey.hashCode());
+      BytesWritable bytes = (BytesWritable) value;
+      values.add(Arrays.copyOf(bytes.getBytes(), bytes.getLength()));
+    }
+  }
+
+  private static ReduceSinkDesc getDesc(int tag) throws Exception {
+    ArrayList<ExprNodeDesc> keyCols = new ArrayList<ExprNodeDesc>();
+    keyCols.add(new ExprNodeColumnDesc(TypeInfoFactory.longTypeInfo, "a", "t", false));
+    ArrayList<ExprNodeDesc> valueCols = new ArrayList<ExprNodeDesc>();
+    valueCols.add(new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, "b", "t", false));
+    List<String> outputColumnNames = Arrays.asList("_col0", "_col1");
+    return PlanUtils.getReduceSinkDesc(keyCols, valueCols, outputColumnNames, true, tag, 1, -1,
+        AcidUtils.Operation.NOT_ACID);
+  }
+
+  private static ObjectInspector[] getInputInspectors() {
+    List<ObjectInspector> fields = new ArrayList<ObjectInspector>();
+    fields.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+    fields.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+    return new ObjectInspector[] {
+        ObjectInspectorFactory.getStandardStructObjectInspector(Arrays.asList("a", "b"), fields)};
+  }
+
+  private static VectorizedRowBatch getBatch() {
+    VectorizedRowBatch batch = new VectorizedRowBatch(2);
+    LongColumnVector keys = new LongColumnVector();
+    BytesColumnVector values = new BytesColumnVector();
+    values.initBuffer();
+    batch.cols[0] = keys;
+    batch.cols[1] = values;
+    for (int i = 0; i < KEYS.length; ++i) {
+      if (KEYS[i] == null) {
+        keys.noNulls = false;
+        keys.isNull[i] = true;
+      } else {
+        keys.vector[i] = KEYS[i];
+      }
+      if (VALUES[i] == null) {
+        values.noNulls = false;
+        values.isNull[i] = true;
+      } else {
+        byte[] bytes = VALUES[i].getBytes();
+        values.setVal(i, bytes, 0, bytes.length);
+      }
+    }
+    batch.size = KEYS.length;
+    return batch;
+  }
+
+  private void verifySameOutput(int descTag, int inputTag) throws Exception {
+    HiveConf hconf = new HiveConf();
+    hconf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_REDUCESINK_NATIVE_ENABLED, true);
+
+    Map<String, Integer> columnMap = new HashMap<String, Integer>();
+    columnMap.put("a", 0);
+    columnMap.put("b", 1);
+    VectorReduceSinkOperator vectorOp = new VectorReduceSinkOperator(
+        new VectorizationContext(columnMap, 2), getDesc(descTag));
+    Collector vectorOutput = new Collector();
+    vectorOp.setOutputCollector(vectorOutput);
+    vectorOp.initialize(hconf, getInputInspectors());
+    assertTrue(vectorOp.isNativeSink());
+    vectorOp.processOp(getBatch(), inputTag);
+
+    ReduceSinkOperator rowOp = new ReduceSinkOperator();
+    rowOp.setConf(getDesc(descTag));
+    Collector rowOutput = new Collector();
+    rowOp.setOutputCollector(rowOutput);
+    rowOp.initialize(hconf, getInputInspectors());
+    for (int i = 0; i < KEYS.length; ++i) {
+      Object[] row = {KEYS[i] == null ? null : new LongWritable(KEYS[i]),
+          VALUES[i] == null ? null : new Text(VALUES[i])};
+      rowOp.processOp(row, inputTag);
+    }
+
+    assertEquals(KEYS.length, vectorOutput.keys.size());
+    assertEquals(KEYS.length, rowOutput.keys.size());
+    for (int i = 0; i < KEYS.length; ++i) {
+      assertArrayEquals("key of row " + i, rowOutput.keys.get(i), vectorOutput.keys.get(i));
+      assertEquals("hash code of row " + i, rowOutput.hashCodes.get(i),
+          vectorOutput.hashCodes.get(i));
+      assertArrayEquals("value of row " + i, rowOutput.values.get(i), vectorOutput.values.get(i));
+    }
+  }
+
+  @Test
+  public void testSameOutputAsRowMode() throws Exception {
+    verifySameOutput(-1, 0);
+  }
+
+  @Test
+  public void testSameOutputAsRowModeWithTag() throws Exception {
+    verifySameOutput(1, 0);
+  }
+}
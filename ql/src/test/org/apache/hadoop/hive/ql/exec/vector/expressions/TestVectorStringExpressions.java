@@ -5419,4 +5419,92 @@ public void testRegex() throws HiveException {
     Assert.assertEquals(2,b.selected[1]);
     Assert.assertEquals(3,b.selected[2]);
   }
+
+  /**
+   * A batch with a dictionary encoded column, whose values reference the
+   * dictionary entries.
+   */
+  private VectorizedRowBatch makeDictionaryBatch(BytesColumnVector dictionary,
+      int[] ids) {
+    VectorizedRowBatch batch = new VectorizedRowBatch(1);
+    BytesColumnVector v = new BytesColumnVector();
+    batch.cols[0] = v;
+    v.dictionary = dictionary;
+    v.dictionaryIds = new int[VectorizedRowBatch.DEFAULT_SIZE];
+    for (int i = 0; i < ids.length; i++) {
+      v.dictionaryIds[i] = ids[i];
+      v.setRef(i, dictionary.vector[ids[i]], dictionary.start[ids[i]],
+          dictionary.length[ids[i]]);
+    }
+    batch.size = ids.length;
+    return batch;
+  }
+
+  @Test
+  public void testDictionaryFilters() throws HiveException {
+    BytesColumnVector dictionary = new BytesColumnVector(3);
+    dictionary.setRef(0, red, 0, red.length);
+    dictionary.setRef(1, green, 0, green.length);
+    dictionary.setRef(2, blue, 0, blue.length);
+    int[] ids = {0, 1, 2, 0, 1};
+
+    VectorizedRowBatch batch = makeDictionaryBatch(dictionary, ids);
+    VectorExpression expr = new FilterStringGroupColEqualStringScalar(0, red2);
+    expr.evaluate(batch);
+    Assert.assertEquals(2, batch.size);
+    Assert.assertTrue(batch.selectedInUse);
+    Assert.assertEquals(0, batch.selected[0]);
+    Assert.assertEquals(3, batch.selected[1]);
+
+    // the cached results are only used for the same dictionary
+    BytesColumnVector other = new BytesColumnVector(3);
+    other.setRef(0, blue, 0, blue.length);
+    other.setRef(1, red, 0, red.length);
+    other.setRef(2, green, 0, green.length);
+    batch = makeDictionaryBatch(other, ids);
+    expr.evaluate(batch);
+    Assert.assertEquals(2, batch.size);
+    Assert.assertEquals(1, batch.selected[0]);
+    Assert.assertEquals(4, batch.selected[1]);
+
+    // nulls and an existing selection
+    batch = makeDictionaryBatch(dictionary, ids);
+    BytesColumnVector v = (BytesColumnVector) batch.cols[0];
+    v.noNulls = false;
+    v.isNull[3] = true;
+    batch.selectedInUse = true;
+    batch.selected[0] = 0;
+    batch.selected[1] = 2;
+    batch.selected[2] = 3;
+    batch.size = 3;
+    expr = new FilterStringColLikeStringScalar(0, "%e%".getBytes());
+    expr.evaluate(batch);
+    Assert.assertEquals(2, batch.size);
+    Assert.assertEquals(0, batch.selected[0]);
+    Assert.assertEquals(2, batch.selected[1]);
+
+    // repeating
+    batch = makeDictionaryBatch(dictionary, ids);
+    batch.cols[0].isRepeating = true;
+    FilterStringColumnInList in = new FilterStringColumnInList(0);
+    in.setInListValues(new byte[][] {green, blue});
+    in.evaluate(batch);
+    Assert.assertEquals(0, batch.size);
+    batch = makeDictionaryBatch(dictionary, new int[] {1, 0, 0});
+    batch.cols[0].isRepeating = true;
+    in.evaluate(batch);
+    Assert.assertEquals(3, batch.size);
+    Assert.assertFalse(batch.selectedInUse);
+
+    // a column that was flattened or copied into keeps consistent ids
+    batch = makeDictionaryBatch(dictionary, new int[] {2, 0, 0});
+    v = (BytesColumnVector) batch.cols[0];
+    v.isRepeating = true;
+    v.flatten(false, null, 3);
+    Assert.assertEquals(2, v.dictionaryIds[1]);
+    v.unFlatten();
+    v.initBuffer();
+    v.setVal(1, red, 0, red.length);
+    Assert.assertNull(v.dictionary);
+  }
  }
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Test;
+
+public class TestHiveInputFormat {
+
+  /**
+   * An input format that keeps the paths it lists in the instance, the way the HBase one
+   * keeps the table and the scan. The calls wait for each other between setting and reading
+   * the paths, so that a shared instance would list the paths of the other call.
+   */
+  public static class StatefulInputFormat implements InputFormat<LongWritable, Text> {
+    static CyclicBarrier barrier;
+    private Path[] paths;
+
+    @Override
+    public InputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
+      paths = FileInputFormat.getInputPaths(job);
+      try {
+        barrier.await(10, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+      InputSplit[] splits = new InputSplit[paths.length];
+      for (int i = 0; i < paths.length; ++i) {
+        splits[i] = new FileSplit(paths[i], 0, 1, (String[]) null);
+      }
+      return splits;
+    }
+
+    @Override
+    public RecordReader<LongWritable, Text> getRecordReader(InputSplit split, JobConf job,
+        Reporter reporter) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static List<Callable<Integer>> createTasks(int count) {
+    final Random random = new Random(1);
+    List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    for (int i = 0; i < count; ++i) {
+      final int value = i;
+      final int sleep = random.nextInt(5);
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          // finish out of order
+          Thread.sleep(sleep);
+          return value;
+        }
+      });
+    }
+    return tasks;
+  }
+
+  @Test
+  public void testRunSplitTasksKeepsOrder() throws Exception {
+    for (int threads : new int[] {1, 4}) {
+      JobConf job = new JobConf();
+      HiveConf.setIntVar(job, HiveConf.ConfVars.HIVE_SPLIT_GENERATION_THREADS, threads);
+      List<Integer> results = HiveInputFormat.runSplitTasks(job, createTasks(50));
+      assertEquals(50, results.size());
+      for (int i = 0; i < 50; ++i) {
+        assertEquals(i, results.get(i).intValue());
+      }
+    }
+  }
+
+  @Test
+  public void testRunSplitTasksFailure() throws Exception {
+    for (int threads : new int[] {1, 4}) {
+      JobConf job = new JobConf();
+      HiveConf.setIntVar(job, HiveConf.ConfVars.HIVE_SPLIT_GENERATION_THREADS, threads);
+      List<Callable<Integer>> tasks = createTasks(10);
+      tasks.add(5, new Callable<Integer>() {
+        @Override
+        public Integer call() throws IOException {
+          throw new IOException("missing partition");
+        }
+      });
+      try {
+        HiveInputFormat.runSplitTasks(job, tasks);
+        fail("the failure of a task should be thrown");
+      } catch (IOException e) {
+        assertEquals("missing partition", e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testGroupsOfStatefulInputFormat() throws Exception {
+    JobConf job = new JobConf();
+    HiveConf.setIntVar(job, HiveConf.ConfVars.HIVE_SPLIT_GENERATION_THREADS, 2);
+    StatefulInputFormat.barrier = new CyclicBarrier(2);
+    TableDesc table = new TableDesc(StatefulInputFormat.class,
+        HiveIgnoreKeyTextOutputFormat.class, new Properties());
+    HiveInputFormat format = new HiveInputFormat();
+    List<Callable<List<InputSplit>>> groups = new ArrayList<Callable<List<InputSplit>>>();
+    groups.add(format.getSplitsForGroup(Arrays.asList(new Path("/t1/p=1")), null, job,
+        StatefulInputFormat.class, 1, table));
+    groups.add(format.getSplitsForGroup(Arrays.asList(new Path("/t2/p=1")), null, job,
+        StatefulInputFormat.class, 1, table));
+
+    List<List<InputSplit>> splits = HiveInputFormat.runSplitTasks(job, groups);
+    assertEquals(2, splits.size());
+    assertEquals(1, splits.get(0).size());
+    assertEquals("/t1/p=1",
+        ((HiveInputFormat.HiveInputSplit) splits.get(0).get(0)).getPath().toUri().getPath());
+    assertEquals(1, splits.get(1).size());
+    assertEquals("/t2/p=1",
+        ((HiveInputFormat.HiveInputSplit) splits.get(1).get(0)).getPath().toUri().getPath());
+  }
+}
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.SerDeUtils;
+import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.RecordReader;
+import org.junit.Test;
+
+public class TestVectorizedTextRecordReader {
+
+  /**
+   * Return the lines of a list like a line record reader.
+   */
+  private static class LineReader implements RecordReader<LongWritable, Text> {
+    private final Iterator<String> lines;
+    private long pos = 0;
+
+    LineReader(List<String> lines) {
+      this.lines = lines.iterator();
+    }
+
+    @Override
+    public boolean next(LongWritable key, Text value) throws IOException {
+      if (!lines.hasNext()) {
+        return false;
+      }
+      value.set(lines.next());
+      key.set(pos++);
+      return true;
+    }
+
+    @Override
+    public LongWritable createKey() {
+      return new LongWritable();
+    }
+
+    @Override
+    public Text createValue() {
+      return new Text();
+    }
+
+    @Override
+    public long getPos() throws IOException {
+      return pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+      return 0;
+    }
+  }
+
+  private static VectorizedTextRecordReader createReader(String columns, String types,
+      String... lines) throws Exception {
+    Properties props = new Properties();
+    props.setProperty(serdeConstants.LIST_COLUMNS, columns);
+    props.setProperty(serdeConstants.LIST_COLUMN_TYPES, types);
+    props.setProperty(serdeConstants.FIELD_DELIM, ",");
+    LazySimpleSerDe serde = new LazySimpleSerDe();
+    SerDeUtils.initializeSerDe(serde, new Configuration(), props, null);
+    StructObjectInspector oi = (StructObjectInspector) serde.getObjectInspector();
+    VectorizedRowBatchCtx rbCtx = new VectorizedRowBatchCtx(oi, oi, serde, null, null);
+    return new VectorizedTextRecordReader(rbCtx, new LineReader(Arrays.asList(lines)));
+  }
+
+  private static String getString(BytesColumnVector vector, int row) {
+    return new String(vector.vector[row], vector.start[row], vector.length[row]);
+  }
+
+  @Test
+  public void testParseFields() throws Exception {
+    VectorizedTextRecordReader reader = createReader("i,d,s,b", "int:double:string:boolean",
+        "1,1.5,abc,true",
+        "x,\\N,,FALSE",
+        "3",
+        "99999999999,2,de,t,extra");
+    VectorizedRowBatch batch = reader.createValue();
+    assertTrue(reader.next(NullWritable.get(), batch));
+    assertEquals(4, batch.size);
+    LongColumnVector i = (LongColumnVector) batch.cols[0];
+    DoubleColumnVector d = (DoubleColumnVector) batch.cols[1];
+    BytesColumnVector s = (BytesColumnVector) batch.cols[2];
+    LongColumnVector b = (LongColumnVector) batch.cols[3];
+
+    assertEquals(1, i.vector[0]);
+    assertEquals(1.5, d.vector[0], 0.0);
+    assertEquals("abc", getString(s, 0));
+    assertEquals(1, b.vector[0]);
+
+    // bad numbers and the null sequence are null, an empty string isn't
+    assertTrue(i.isNull[1]);
+    assertTrue(d.isNull[1]);
+    assertFalse(s.isNull[1]);
+    assertEquals("", getString(s, 1));
+    assertEquals(0, b.vector[1]);
+
+    // the missing fields are null
+    assertEquals(3, i.vector[2]);
+    assertTrue(d.isNull[2]);
+    assertTrue(s.isNull[2]);
+    assertTrue(b.isNull[2]);
+
+    // an int that overflows is null, as is an extended boolean literal
+    assertTrue(i.isNull[3]);
+    assertEquals(2.0, d.vector[3], 0.0);
+    assertEquals("de", getString(s, 3));
+    assertTrue(b.isNull[3]);
+
+    assertFalse(reader.next(NullWritable.get(), batch));
+    assertEquals(0, batch.size);
+  }
+
+  @Test
+  public void testDeserializeRows() throws Exception {
+    // the dates can't be parsed, so the rows are deserialized by the SerDe
+    VectorizedTextRecordReader reader = createReader("i,dt", "bigint:date",
+        "7,2014-10-01",
+        "\\N,bad");
+    VectorizedRowBatch batch = reader.createValue();
+    assertTrue(reader.next(NullWritable.get(), batch));
+    assertEquals(2, batch.size);
+    LongColumnVector i = (LongColumnVector) batch.cols[0];
+    LongColumnVector dt = (LongColumnVector) batch.cols[1];
+    assertEquals(7, i.vector[0]);
+    assertFalse(dt.isNull[0]);
+    assertTrue(i.isNull[1]);
+    assertTrue(dt.isNull[1]);
+  }
+}
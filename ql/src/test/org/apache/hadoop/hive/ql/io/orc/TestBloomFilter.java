@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.orc;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class TestBloomFilter {
+
+  @Test
+  public void testFalsePositiveRate() throws Exception {
+    BloomFilter bloomFilter = new BloomFilter(10000, 0.05);
+    for(long i=0; i < 10000; ++i) {
+      bloomFilter.addLong(i * 7919);
+    }
+    for(long i=0; i < 10000; ++i) {
+      assertTrue(bloomFilter.testLong(i * 7919));
+    }
+    int falsePositives = 0;
+    for(long i=0; i < 100000; ++i) {
+      if (bloomFilter.testLong(-1 - i)) {
+        falsePositives += 1;
+      }
+    }
+    assertTrue("false positives " + falsePositives, falsePositives < 6000);
+  }
+
+  @Test
+  public void testStrings() throws Exception {
+    BloomFilter bloomFilter = new BloomFilter(1000, 0.01);
+    for(int i=0; i < 1000; ++i) {
+      bloomFilter.addText(new Text("row " + i));
+    }
+    bloomFilter.addText(new Text("trailing \t "));
+    bloomFilter.addText(new Text("\u00fcber"));
+    for(int i=0; i < 1000; ++i) {
+      assertTrue(bloomFilter.testString("row " + i));
+    }
+    // the literals of the search arguments have no trailing whitespace
+    assertTrue(bloomFilter.testString("trailing"));
+    assertTrue(bloomFilter.testString("\u00fcber"));
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    BloomFilter bloomFilter = new BloomFilter(1000, 0.05);
+    for(int i=0; i < 1000; ++i) {
+      bloomFilter.addDouble(i / 10.0);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bloomFilter.write(new DataOutputStream(bytes));
+    BloomFilter copy = BloomFilter.read(new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(bloomFilter.getBitSize(), copy.getBitSize());
+    assertEquals(bloomFilter.getNumHashFunctions(), copy.getNumHashFunctions());
+    assertEquals(bloomFilter.toString(), copy.toString());
+    for(int i=0; i < 1000; ++i) {
+      assertTrue(copy.testDouble(i / 10.0));
+    }
+
+    bloomFilter.reset();
+    assertEquals("bloom filter bits: " + bloomFilter.getBitSize() +
+        " set: 0 hash functions: " + bloomFilter.getNumHashFunctions(),
+        bloomFilter.toString());
+  }
+}
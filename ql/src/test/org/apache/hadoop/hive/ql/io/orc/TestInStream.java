@@ -26,9 +26,11 @@
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
 public class TestInStream {
@@ -248,6 +250,83 @@ public void testDisjointBuffers() throws Exception {
     }
   }
 
+  /**
+   * A zlib codec that checks that the buffers are either both direct or both on the
+   * heap, as the direct decompressors require, and that does not need the native
+   * libraries for the direct ones.
+   */
+  static class DirectCheckingCodec implements CompressionCodec {
+    private final ZlibCodec codec = new ZlibCodec();
+    int directCalls = 0;
+
+    @Override
+    public boolean compress(ByteBuffer in, ByteBuffer out,
+                            ByteBuffer overflow) throws IOException {
+      return codec.compress(in, out, overflow);
+    }
+
+    @Override
+    public void decompress(ByteBuffer in, ByteBuffer out) throws IOException {
+      assertEquals(in.isDirect(), out.isDirect());
+      if (!in.isDirect()) {
+        codec.decompress(in, out);
+        return;
+      }
+      directCalls += 1;
+      ByteBuffer heapIn = ByteBuffer.allocate(in.remaining());
+      heapIn.put(in);
+      heapIn.flip();
+      ByteBuffer heapOut = ByteBuffer.allocate(out.remaining());
+      codec.decompress(heapIn, heapOut);
+      out.put(heapOut);
+      out.flip();
+    }
+
+    @Override
+    public CompressionCodec modify(EnumSet<Modifier> modifiers) {
+      return this;
+    }
+  }
+
+  @Test
+  public void testMixedDirectBuffers() throws Exception {
+    OutputCollector collect = new OutputCollector();
+    DirectCheckingCodec codec = new DirectCheckingCodec();
+    OutStream out = new OutStream("test", 400, codec, collect);
+    PositionCollector[] positions = new PositionCollector[1024];
+    DataOutput stream = new DataOutputStream(out);
+    for(int i=0; i < 1024; ++i) {
+      positions[i] = new PositionCollector();
+      out.getPosition(positions[i]);
+      stream.writeInt(i);
+    }
+    out.flush();
+    assertEquals(1674, collect.buffer.size());
+    // a mapped range between two ranges that were read onto the heap
+    ByteBuffer[] inBuf = new ByteBuffer[3];
+    inBuf[0] = ByteBuffer.allocate(500);
+    inBuf[1] = ByteBuffer.allocateDirect(1200);
+    inBuf[2] = ByteBuffer.allocate(500);
+    collect.buffer.setByteBuffer(inBuf[0], 0, 483);
+    collect.buffer.setByteBuffer(inBuf[1], 483, 1625 - 483);
+    collect.buffer.setByteBuffer(inBuf[2], 1625, 1674 - 1625);
+    for(int i=0; i < inBuf.length; ++i) {
+      inBuf[i].flip();
+    }
+    InStream in = InStream.create("test", inBuf,
+        new long[]{0, 483, 1625}, 1674, codec, 400);
+    DataInputStream inStream = new DataInputStream(in);
+    for(int i=0; i < 1024; ++i) {
+      assertEquals(i, inStream.readInt());
+    }
+    assertEquals(0, in.available());
+    assertTrue(codec.directCalls > 0);
+    for(int i=1023; i >= 0; --i) {
+      in.seek(positions[i]);
+      assertEquals(i, inStream.readInt());
+    }
+  }
+
   @Test
   public void testUncompressedDisjointBuffers() throws Exception {
     OutputCollector collect = new OutputCollector();
@@ -310,4 +389,67 @@ public void testUncompressedDisjointBuffers() throws Exception {
       assertEquals(i, inStream.readInt());
     }
   }
+
+  @Test
+  public void testCachedCompressed() throws Exception {
+    OutputCollector collect = new OutputCollector();
+    CompressionCodec codec = new ZlibCodec();
+    OutStream out = new OutStream("test", 300, codec, collect);
+    PositionCollector[] positions = new PositionCollector[1024];
+    for(int i=0; i < 1024; ++i) {
+      positions[i] = new PositionCollector();
+      out.getPosition(positions[i]);
+      out.write(i);
+    }
+    out.flush();
+    ByteBuffer inBuf = ByteBuffer.allocate(collect.buffer.size());
+    collect.buffer.setByteBuffer(inBuf, 0, collect.buffer.size());
+    inBuf.flip();
+    StreamName name = new StreamName(1, OrcProto.Stream.Kind.DATA);
+    OrcColumnCache.StreamData data = InStream.readFully(name,
+        InStream.create("test", new ByteBuffer[]{inBuf}, new long[]{0},
+            inBuf.remaining(), codec, 300));
+    assertEquals(1024, data.getBytes().remaining());
+
+    // the positions of the compressed stream work on the decompressed bytes
+    InStream in = InStream.create("test", data);
+    for(int i=0; i < 1024; ++i) {
+      assertEquals(i & 0xff, in.read());
+    }
+    assertEquals(-1, in.read());
+    for(int i=1023; i >= 0; --i) {
+      positions[i].reset();
+      in.seek(positions[i]);
+      assertEquals(i & 0xff, in.read());
+    }
+  }
+
+  @Test
+  public void testCachedUncompressed() throws Exception {
+    OutputCollector collect = new OutputCollector();
+    OutStream out = new OutStream("test", 100, null, collect);
+    PositionCollector[] positions = new PositionCollector[1024];
+    for(int i=0; i < 1024; ++i) {
+      positions[i] = new PositionCollector();
+      out.getPosition(positions[i]);
+      out.write(i);
+    }
+    out.flush();
+    ByteBuffer inBuf = ByteBuffer.allocate(collect.buffer.size());
+    collect.buffer.setByteBuffer(inBuf, 0, collect.buffer.size());
+    inBuf.flip();
+    StreamName name = new StreamName(1, OrcProto.Stream.Kind.DATA);
+    OrcColumnCache.StreamData data = InStream.readFully(name,
+        InStream.create("test", new ByteBuffer[]{inBuf}, new long[]{0},
+            inBuf.remaining(), null, 100));
+
+    // two readers of the same cached bytes keep their own positions
+    InStream in1 = InStream.create("test", data);
+    InStream in2 = InStream.create("test", data);
+    assertEquals(0, in1.read());
+    positions[500].reset();
+    in2.seek(positions[500]);
+    assertEquals(500 & 0xff, in2.read());
+    assertEquals(1, in1.read());
+  }
 }
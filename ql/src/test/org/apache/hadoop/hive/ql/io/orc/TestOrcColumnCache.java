@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.orc;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+public class TestOrcColumnCache {
+
+  public static class MyRow {
+    Integer i;
+    String s;
+
+    MyRow(Integer i, String s) {
+      this.i = i;
+      this.s = s;
+    }
+  }
+
+  Path workDir = new Path(System.getProperty("test.tmp.dir",
+      "target" + File.separator + "test" + File.separator + "tmp"));
+
+  Configuration conf;
+  FileSystem fs;
+  Path testFilePath;
+
+  @Rule
+  public TestName testCaseName = new TestName();
+
+  @Before
+  public void openFileSystem() throws Exception {
+    conf = new Configuration();
+    fs = FileSystem.getLocal(conf);
+    testFilePath = new Path(workDir, "TestOrcColumnCache." +
+        testCaseName.getMethodName() + ".orc");
+    fs.delete(testFilePath, false);
+  }
+
+  @Test
+  public void testReadThroughCache() throws Exception {
+    ObjectInspector inspector;
+    synchronized (TestOrcColumnCache.class) {
+      inspector = ObjectInspectorFactory.getReflectionObjectInspector
+          (MyRow.class, ObjectInspectorFactory.ObjectInspectorOptions.JAVA);
+    }
+    Writer writer = OrcFile.createWriter(testFilePath,
+                                         OrcFile.writerOptions(conf)
+                                         .inspector(inspector)
+                                         .stripeSize(10000)
+                                         .compress(CompressionKind.ZLIB)
+                                         .bufferSize(1000)
+                                         .rowIndexStride(1000));
+    for (int i = 0; i < 20000; ++i) {
+      writer.addRow(new MyRow(i % 7 == 0 ? null : i, "row " + (i % 100)));
+    }
+    writer.close();
+
+    HiveConf.setLongVar(conf, HiveConf.ConfVars.HIVE_ORC_COLUMN_CACHE_SIZE,
+        64L * 1024 * 1024);
+    OrcColumnCache cache = OrcColumnCache.getInstance(conf);
+    assertNotNull(cache);
+    long hits = cache.getHits();
+    long misses = cache.getMisses();
+
+    // the first read fills the cache, the second one is served from it
+    for (int pass = 0; pass < 2; ++pass) {
+      Reader reader = OrcFile.createReader(testFilePath,
+          OrcFile.readerOptions(conf).filesystem(fs));
+      RecordReader rows = reader.rows();
+      Object row = null;
+      int i = 0;
+      while (rows.hasNext()) {
+        row = rows.next(row);
+        OrcStruct struct = (OrcStruct) row;
+        if (i % 7 == 0) {
+          assertNull(struct.getFieldValue(0));
+        } else {
+          assertEquals(i, ((IntWritable) struct.getFieldValue(0)).get());
+        }
+        assertEquals("row " + (i % 100), ((Text) struct.getFieldValue(1)).toString());
+        i += 1;
+      }
+      assertEquals(20000, i);
+
+      // seeking uses the row index positions on the cached streams
+      rows.seekToRow(12345);
+      row = rows.next(null);
+      assertEquals(12345, ((IntWritable) ((OrcStruct) row).getFieldValue(0)).get());
+      rows.close();
+
+      if (pass == 0) {
+        assertTrue(cache.getMisses() > misses);
+        hits = cache.getHits();
+        misses = cache.getMisses();
+      } else {
+        assertTrue(cache.getHits() > hits);
+        assertEquals(misses, cache.getMisses());
+      }
+    }
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    OrcColumnCache cache = new OrcColumnCache(100);
+    Path path = new Path("/tmp/file.orc");
+    OrcColumnCache.Key key1 = new OrcColumnCache.Key(path, 1, 3, 1);
+    OrcColumnCache.Key key2 = new OrcColumnCache.Key(path, 1, 3, 2);
+    OrcColumnCache.Key key3 = new OrcColumnCache.Key(path, 1, 3, 3);
+    cache.put(key1, streams(40));
+    cache.put(key2, streams(40));
+    // make key2 the least recently used one
+    assertNotNull(cache.get(key1));
+    cache.put(key3, streams(40));
+    assertEquals(1, cache.getEvictions());
+    assertEquals(80, cache.getCurrentSize());
+    assertNull(cache.get(key2));
+    assertNotNull(cache.get(key1));
+    assertNotNull(cache.get(key3));
+
+    // another version of the file does not see the old entries
+    assertNull(cache.get(new OrcColumnCache.Key(path, 2, 3, 1)));
+
+    // too large to be cached at all
+    cache.put(key2, streams(101));
+    assertNull(cache.get(key2));
+    assertFalse(cache.getCurrentSize() > 100);
+  }
+
+  private static OrcColumnCache.StreamData[] streams(int size) {
+    return new OrcColumnCache.StreamData[] {
+        new OrcColumnCache.StreamData(new StreamName(0, OrcProto.Stream.Kind.DATA),
+            ByteBuffer.allocateDirect(size), null, null, size) };
+  }
+}
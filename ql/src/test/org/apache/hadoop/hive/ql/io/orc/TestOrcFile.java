@@ -42,6 +42,9 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.common.type.HiveDecimal;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
 import org.apache.hadoop.hive.ql.io.orc.OrcFile.Version;
 import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
 import org.apache.hadoop.hive.ql.io.sarg.SearchArgumentFactory;
@@ -1845,4 +1848,190 @@ public void testPredicatePushdown() throws Exception {
     assertTrue(!rows.hasNext());
     assertEquals(3500, rows.getRowNumber());
   }
+
+  @Test
+  public void testBloomFilterPushdown() throws Exception {
+    ObjectInspector inspector;
+    synchronized (TestOrcFile.class) {
+      inspector = ObjectInspectorFactory.getReflectionObjectInspector
+          (InnerStruct.class,
+              ObjectInspectorFactory.ObjectInspectorOptions.JAVA);
+    }
+    Writer writer = OrcFile.createWriter(testFilePath,
+        OrcFile.writerOptions(conf)
+            .inspector(inspector)
+            .stripeSize(400000L)
+            .compress(CompressionKind.ZLIB)
+            .bufferSize(10000)
+            .rowIndexStride(1000)
+            .bloomFilterColumns("int1, string1")
+            .bloomFilterFpp(0.01));
+    // scramble the values, so that the min/max of each row group is useless
+    for(int i=0; i < 3500; ++i) {
+      int value = (int) ((i * 7919L) % 3500);
+      writer.addRow(new InnerStruct(value, Integer.toHexString(10 * value)));
+    }
+    writer.close();
+    Reader reader = OrcFile.createReader(testFilePath,
+        OrcFile.readerOptions(conf).filesystem(fs));
+    assertEquals(3500, reader.getNumberOfRows());
+
+    // the value 1500 is in row 2500
+    SearchArgument[] sargs = new SearchArgument[] {
+        SearchArgumentFactory.newBuilder().startAnd()
+            .equals("int1", 1500L).end().build(),
+        SearchArgumentFactory.newBuilder().startAnd()
+            .equals("string1", Integer.toHexString(15000)).end().build(),
+        SearchArgumentFactory.newBuilder().startAnd()
+            .in("int1", 1500L, 3600L).end().build()
+    };
+    for(SearchArgument sarg: sargs) {
+      RecordReader rows = reader.rowsOptions(new Reader.Options()
+          .range(0L, Long.MAX_VALUE)
+          .include(new boolean[]{true, true, true})
+          .searchArgument(sarg, new String[]{null, "int1", "string1"}));
+      // only the third row group is read
+      assertEquals(2000L, rows.getRowNumber());
+      OrcStruct row = null;
+      int found = 0;
+      for(int i=2000; i < 3000; ++i) {
+        assertTrue(rows.hasNext());
+        row = (OrcStruct) rows.next(row);
+        if (((IntWritable) row.getFieldValue(0)).get() == 1500) {
+          assertEquals(2500, i);
+          assertEquals(Integer.toHexString(15000), row.getFieldValue(1).toString());
+          found += 1;
+        }
+      }
+      assertEquals(1, found);
+      assertTrue(!rows.hasNext());
+      rows.close();
+    }
+
+    // a value that isn't in the file skips all of the row groups
+    SearchArgument sarg = SearchArgumentFactory.newBuilder().startAnd()
+        .equals("int1", 5000L).end().build();
+    RecordReader rows = reader.rowsOptions(new Reader.Options()
+        .range(0L, Long.MAX_VALUE)
+        .include(new boolean[]{true, true, true})
+        .searchArgument(sarg, new String[]{null, "int1", "string1"}));
+    assertTrue(!rows.hasNext());
+    rows.close();
+  }
+
+  @Test
+  public void testLazyMaterialization() throws Exception {
+    ObjectInspector inspector;
+    synchronized (TestOrcFile.class) {
+      inspector = ObjectInspectorFactory.getReflectionObjectInspector
+          (InnerStruct.class,
+              ObjectInspectorFactory.ObjectInspectorOptions.JAVA);
+    }
+    // without a row index, so that all of the batches are read
+    Writer writer = OrcFile.createWriter(fs, testFilePath, conf, inspector,
+        400000L, CompressionKind.ZLIB, 10000, 0);
+    for(int i=0; i < 3500; ++i) {
+      writer.addRow(new InnerStruct(i*300, Integer.toHexString(10*i)));
+    }
+    writer.close();
+    HiveConf.setBoolVar(conf, HiveConf.ConfVars.HIVE_ORC_LAZY_MATERIALIZATION,
+        true);
+    Reader reader = OrcFile.createReader(testFilePath,
+        OrcFile.readerOptions(conf).filesystem(fs));
+    SearchArgument sarg = SearchArgumentFactory.newBuilder()
+        .startOr()
+          .equals("int1", 300 * 5L)
+          .equals("int1", 300 * 2500L)
+        .end()
+        .build();
+    RecordReader rows = reader.rowsOptions(new Reader.Options()
+        .range(0L, Long.MAX_VALUE)
+        .include(new boolean[]{true, true, true})
+        .searchArgument(sarg, new String[]{null, "int1", "string1"}));
+    VectorizedRowBatch batch = new VectorizedRowBatch(2);
+
+    // the first batch has row 5
+    assertTrue(rows.hasNext());
+    batch = rows.nextBatch(batch);
+    assertEquals(1, batch.size);
+    assertTrue(batch.selectedInUse);
+    assertEquals(5, batch.selected[0]);
+    assertEquals(1500, ((LongColumnVector) batch.cols[0]).vector[5]);
+    BytesColumnVector strings = (BytesColumnVector) batch.cols[1];
+    assertEquals(Integer.toHexString(50), new String(strings.vector[5],
+        strings.start[5], strings.length[5], "UTF-8"));
+
+    // the second batch is skipped and the third one has row 2500
+    assertTrue(rows.hasNext());
+    batch = rows.nextBatch(batch);
+    assertEquals(1, batch.size);
+    assertEquals(3072, rows.getRowNumber());
+    int row = 2500 - 2 * VectorizedRowBatch.DEFAULT_SIZE;
+    assertEquals(row, batch.selected[0]);
+    assertEquals(300 * 2500, ((LongColumnVector) batch.cols[0]).vector[row]);
+    strings = (BytesColumnVector) batch.cols[1];
+    assertEquals(Integer.toHexString(25000), new String(strings.vector[row],
+        strings.start[row], strings.length[row], "UTF-8"));
+
+    // the last batch has no rows left
+    assertTrue(rows.hasNext());
+    batch = rows.nextBatch(batch);
+    assertEquals(0, batch.size);
+    assertTrue(!rows.hasNext());
+    rows.close();
+  }
+
+  @Test
+  public void testParallelCompression() throws Exception {
+    ObjectInspector inspector;
+    synchronized (TestOrcFile.class) {
+      inspector = ObjectInspectorFactory.getReflectionObjectInspector
+          (InnerStruct.class,
+              ObjectInspectorFactory.ObjectInspectorOptions.JAVA);
+    }
+    HiveConf.setIntVar(conf,
+        HiveConf.ConfVars.HIVE_ORC_WRITER_COMPRESSION_THREADS, 4);
+    Writer writer = OrcFile.createWriter(fs, testFilePath, conf, inspector,
+        100000L, CompressionKind.ZLIB, 1000, 1000);
+    Random rand = new Random(42);
+    int[] ints = new int[50000];
+    for(int i=0; i < ints.length; ++i) {
+      ints[i] = rand.nextInt();
+      writer.addRow(new InnerStruct(ints[i], Integer.toHexString(ints[i])));
+    }
+    writer.close();
+    Reader reader = OrcFile.createReader(testFilePath,
+        OrcFile.readerOptions(conf).filesystem(fs));
+    assertEquals(ints.length, reader.getNumberOfRows());
+
+    // the stripes that were written in the background follow each other
+    int stripeCount = 0;
+    long currentOffset = -1;
+    for(StripeInformation stripe: reader.getStripes()) {
+      stripeCount += 1;
+      if (currentOffset >= 0) {
+        assertEquals(currentOffset, stripe.getOffset());
+      }
+      currentOffset = stripe.getOffset() + stripe.getLength();
+    }
+    assertTrue(stripeCount > 1);
+    assertEquals(reader.getContentLength(), currentOffset);
+
+    RecordReader rows = reader.rows();
+    OrcStruct row = null;
+    for(int i=0; i < ints.length; ++i) {
+      assertTrue(rows.hasNext());
+      row = (OrcStruct) rows.next(row);
+      assertEquals(ints[i], ((IntWritable) row.getFieldValue(0)).get());
+      assertEquals(Integer.toHexString(ints[i]),
+          row.getFieldValue(1).toString());
+    }
+    assertTrue(!rows.hasNext());
+
+    // the row index positions point at the compressed chunks
+    rows.seekToRow(31234);
+    row = (OrcStruct) rows.next(row);
+    assertEquals(ints[31234], ((IntWritable) row.getFieldValue(0)).get());
+    rows.close();
+  }
 }
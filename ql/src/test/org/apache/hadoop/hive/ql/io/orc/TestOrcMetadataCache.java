@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.orc;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+public class TestOrcMetadataCache {
+
+  public static class MyRow {
+    int x;
+    String y;
+
+    MyRow(int x, String y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  Path workDir = new Path(System.getProperty("test.tmp.dir",
+      "target" + File.separator + "test" + File.separator + "tmp"));
+
+  Configuration conf;
+  FileSystem fs;
+  Path testFilePath;
+  File cacheDir;
+
+  @Rule
+  public TestName testCaseName = new TestName();
+
+  @Before
+  public void openFileSystem() throws Exception {
+    conf = new Configuration();
+    fs = FileSystem.getLocal(conf);
+    testFilePath = new Path(workDir, "TestOrcMetadataCache." +
+        testCaseName.getMethodName() + ".orc");
+    fs.delete(testFilePath, false);
+    cacheDir = new File(fs.makeQualified(new Path(workDir,
+        "TestOrcMetadataCache." + testCaseName.getMethodName() + ".cache")).toUri().getPath());
+    fs.delete(new Path(cacheDir.getPath()), true);
+
+    ObjectInspector inspector;
+    synchronized (TestOrcMetadataCache.class) {
+      inspector = ObjectInspectorFactory.getReflectionObjectInspector
+          (MyRow.class, ObjectInspectorFactory.ObjectInspectorOptions.JAVA);
+    }
+    Writer writer = OrcFile.createWriter(testFilePath,
+        OrcFile.writerOptions(conf).inspector(inspector).stripeSize(10000)
+            .bufferSize(1000));
+    for (int i = 0; i < 10000; ++i) {
+      writer.addRow(new MyRow(i, "row " + i));
+    }
+    writer.close();
+  }
+
+  private OrcInputFormat.FileInfo readFooter(FileStatus file) throws Exception {
+    Reader reader = OrcFile.createReader(file.getPath(),
+        OrcFile.readerOptions(conf).filesystem(fs));
+    return new OrcInputFormat.FileInfo(file.getModificationTime(), file.getLen(),
+        reader.getStripes(), reader.getMetadata(), reader.getTypes(),
+        ((ReaderImpl) reader).getFileMetaInfo());
+  }
+
+  @Test
+  public void testMemoryAndDisk() throws Exception {
+    FileStatus file = fs.getFileStatus(testFilePath);
+    OrcInputFormat.FileInfo info = readFooter(file);
+    assertTrue(info.stripeInfos.size() > 1);
+
+    OrcMetadataCache cache = new OrcMetadataCache(conf, 10, 1, 1024 * 1024, cacheDir);
+    assertNull(cache.get(file, fs));
+    cache.put(file, info);
+    assertTrue(cache.getSize() > 0);
+    assertEquals(1, cache.getEntryCount());
+    assertTrue(info == cache.get(file, fs));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    // a new process reads the footer back from the local directory
+    OrcMetadataCache restarted =
+        new OrcMetadataCache(conf, 10, 1, 1024 * 1024, cacheDir);
+    OrcInputFormat.FileInfo fromDisk = restarted.get(file, fs);
+    assertNotNull(fromDisk);
+    assertEquals(1, restarted.getDiskHitCount());
+    assertEquals(info.stripeInfos.size(), fromDisk.stripeInfos.size());
+    for (int i = 0; i < info.stripeInfos.size(); ++i) {
+      assertEquals(info.stripeInfos.get(i).getOffset(),
+          fromDisk.stripeInfos.get(i).getOffset());
+      assertEquals(info.stripeInfos.get(i).getNumberOfRows(),
+          fromDisk.stripeInfos.get(i).getNumberOfRows());
+    }
+    assertEquals(info.types, fromDisk.types);
+    assertEquals(info.metadata.getStripeStatistics().size(),
+        fromDisk.metadata.getStripeStatistics().size());
+
+    // a changed file does not use the cached footers
+    FileStatus changed = new FileStatus(file.getLen(), false, 1, file.getBlockSize(),
+        file.getModificationTime() + 1, file.getPath());
+    assertNull(cache.get(changed, fs));
+    assertNull(restarted.get(changed, fs));
+
+    cache.clear();
+    assertEquals(0, cache.getEntryCount());
+    assertNull(new OrcMetadataCache(conf, 10, 1, 1024 * 1024, cacheDir).get(file, fs));
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    FileStatus file = fs.getFileStatus(testFilePath);
+    OrcInputFormat.FileInfo info = readFooter(file);
+    ByteBuffer footer = info.fileMetaInfo.footerBuffer.duplicate();
+    footer.reset();
+    int footerSize = footer.remaining();
+
+    // room for a single footer
+    OrcMetadataCache cache = new OrcMetadataCache(conf, 10, 1, footerSize + 10, null);
+    FileStatus other = new FileStatus(file.getLen(), false, 1, file.getBlockSize(),
+        file.getModificationTime(), new Path(file.getPath() + ".copy"));
+    cache.put(file, info);
+    cache.put(other, new OrcInputFormat.FileInfo(other.getModificationTime(),
+        other.getLen(), info.stripeInfos, info.metadata, info.types, info.fileMetaInfo));
+    assertEquals(1, cache.getEntryCount());
+    assertEquals(1, cache.getEvictionCount());
+    assertTrue(cache.getSize() <= footerSize);
+    assertNotNull(cache.get(other, fs));
+    assertNull(cache.get(file, fs));
+  }
+}
@@ -42,6 +42,7 @@
 import org.apache.hadoop.hive.ql.io.sarg.TestSearchArgumentImpl;
 import org.apache.hadoop.hive.serde2.io.DateWritable;
 import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
 import org.junit.Test;
 import org.mockito.MockSettings;
 import org.mockito.Mockito;
@@ -334,6 +335,63 @@ public void testPredEvalWithIntStats() throws Exception {
         RecordReaderImpl.evaluatePredicate(createIntStats(10, 100), pred));
   }
 
+  @Test
+  public void testPredEvalWithBloomFilter() throws Exception {
+    OrcProto.Type intType =
+        OrcProto.Type.newBuilder().setKind(OrcProto.Type.Kind.INT).build();
+    BloomFilter bloomFilter = new BloomFilter(1000, 0.01);
+    for(long i=10; i <= 100; i += 2) {
+      bloomFilter.addLong(i);
+    }
+    // inside of the min/max range, but not in the bloom filter
+    PredicateLeaf pred = TestSearchArgumentImpl.createPredicateLeaf(
+        PredicateLeaf.Operator.EQUALS, PredicateLeaf.Type.INTEGER, "x", 15L, null);
+    assertEquals(TruthValue.YES_NO_NULL,
+        RecordReaderImpl.evaluatePredicate(createIntStats(10, 100), pred));
+    assertEquals(TruthValue.NO_NULL, RecordReaderImpl.evaluatePredicate(
+        createIntStats(10, 100), pred, intType, bloomFilter));
+    pred = TestSearchArgumentImpl.createPredicateLeaf(
+        PredicateLeaf.Operator.EQUALS, PredicateLeaf.Type.INTEGER, "x", 16L, null);
+    assertEquals(TruthValue.YES_NO_NULL, RecordReaderImpl.evaluatePredicate(
+        createIntStats(10, 100), pred, intType, bloomFilter));
+
+    pred = TestSearchArgumentImpl.createPredicateLeaf(
+        PredicateLeaf.Operator.NULL_SAFE_EQUALS, PredicateLeaf.Type.STRING, "x", "15", null);
+    assertEquals(TruthValue.NO, RecordReaderImpl.evaluatePredicate(
+        createIntStats(10, 100), pred, intType, bloomFilter));
+
+    List<Object> args = new ArrayList<Object>();
+    args.add(15L);
+    args.add(17L);
+    pred = TestSearchArgumentImpl.createPredicateLeaf(PredicateLeaf.Operator.IN,
+        PredicateLeaf.Type.INTEGER, "x", null, args);
+    assertEquals(TruthValue.NO_NULL, RecordReaderImpl.evaluatePredicate(
+        createIntStats(10, 100), pred, intType, bloomFilter));
+    args.add(20L);
+    assertEquals(TruthValue.YES_NO_NULL, RecordReaderImpl.evaluatePredicate(
+        createIntStats(10, 100), pred, intType, bloomFilter));
+
+    // range predicates can't use the bloom filter
+    pred = TestSearchArgumentImpl.createPredicateLeaf(
+        PredicateLeaf.Operator.LESS_THAN, PredicateLeaf.Type.INTEGER, "x", 15L, null);
+    assertEquals(TruthValue.YES_NO_NULL, RecordReaderImpl.evaluatePredicate(
+        createIntStats(10, 100), pred, intType, bloomFilter));
+
+    OrcProto.Type stringType =
+        OrcProto.Type.newBuilder().setKind(OrcProto.Type.Kind.STRING).build();
+    bloomFilter = new BloomFilter(1000, 0.01);
+    bloomFilter.addText(new Text("apple  "));
+    bloomFilter.addText(new Text("zebra"));
+    pred = TestSearchArgumentImpl.createPredicateLeaf(
+        PredicateLeaf.Operator.EQUALS, PredicateLeaf.Type.STRING, "x", "apple", null);
+    assertEquals(TruthValue.YES_NO_NULL, RecordReaderImpl.evaluatePredicate(
+        createStringStats("apple", "zebra"), pred, stringType, bloomFilter));
+    pred = TestSearchArgumentImpl.createPredicateLeaf(
+        PredicateLeaf.Operator.EQUALS, PredicateLeaf.Type.STRING, "x", "mango", null);
+    assertEquals(TruthValue.NO_NULL, RecordReaderImpl.evaluatePredicate(
+        createStringStats("apple", "zebra"), pred, stringType, bloomFilter));
+  }
+
   @Test
   public void testPredEvalWithDoubleStats() throws Exception {
     PredicateLeaf pred = TestSearchArgumentImpl.createPredicateLeaf(
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.orc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgumentFactory;
+import org.junit.Test;
+
+public class TestVectorizedSargFilter {
+
+  private static final String[] COLUMNS = {null, "x", "d", "s"};
+
+  private static List<OrcProto.Type> getTypes() {
+    List<OrcProto.Type> types = new ArrayList<OrcProto.Type>();
+    types.add(OrcProto.Type.newBuilder().setKind(OrcProto.Type.Kind.STRUCT)
+        .addSubtypes(1).addSubtypes(2).addSubtypes(3)
+        .addFieldNames("x").addFieldNames("d").addFieldNames("s").build());
+    types.add(OrcProto.Type.newBuilder().setKind(OrcProto.Type.Kind.LONG)
+        .build());
+    types.add(OrcProto.Type.newBuilder().setKind(OrcProto.Type.Kind.DOUBLE)
+        .build());
+    types.add(OrcProto.Type.newBuilder().setKind(OrcProto.Type.Kind.STRING)
+        .build());
+    return types;
+  }
+
+  private static VectorizedSargFilter createFilter(SearchArgument sarg) {
+    return new VectorizedSargFilter(sarg, sarg.getLeaves(),
+        RecordReaderImpl.mapSargColumns(sarg.getLeaves(), COLUMNS, 0),
+        getTypes(), null);
+  }
+
+  private static VectorizedRowBatch createBatch(long[] x, double[] d,
+                                                String[] s) throws Exception {
+    VectorizedRowBatch batch = new VectorizedRowBatch(3);
+    LongColumnVector longs = new LongColumnVector();
+    DoubleColumnVector doubles = new DoubleColumnVector();
+    BytesColumnVector strings = new BytesColumnVector();
+    strings.initBuffer();
+    for(int row=0; row < x.length; ++row) {
+      longs.vector[row] = x[row];
+      doubles.vector[row] = d[row];
+      byte[] bytes = s[row].getBytes("UTF-8");
+      strings.setVal(row, bytes, 0, bytes.length);
+    }
+    batch.cols[0] = longs;
+    batch.cols[1] = doubles;
+    batch.cols[2] = strings;
+    batch.size = x.length;
+    return batch;
+  }
+
+  @Test
+  public void testFilter() throws Exception {
+    SearchArgument sarg = SearchArgumentFactory.newBuilder()
+        .startAnd()
+          .lessThan("x", 10L)
+          .startOr()
+            .equals("s", "b")
+            .between("d", 1.0, 2.0)
+          .end()
+        .end()
+        .build();
+    VectorizedSargFilter filter = createFilter(sarg);
+    assertTrue(filter.hasPredicateFields());
+    VectorizedRowBatch batch = createBatch(
+        new long[]{1, 5, 20, 3, 0, 7},
+        new double[]{0.5, 0.5, 1.5, 1.5, 1.5, 3.0},
+        new String[]{"a", "b ", "b", "c", "b", "b"});
+    batch.cols[0].noNulls = false;
+    batch.cols[0].isNull[4] = true;
+    // the trailing space is stripped like from the column statistics
+    assertEquals(3, filter.filter(batch));
+    assertTrue(batch.selectedInUse);
+    assertEquals(1, batch.selected[0]);
+    assertEquals(3, batch.selected[1]);
+    assertEquals(5, batch.selected[2]);
+
+    // a repeating value is evaluated once for all of the rows
+    batch = createBatch(
+        new long[]{20, 20, 20},
+        new double[]{1.5, 1.5, 1.5},
+        new String[]{"b", "b", "b"});
+    batch.cols[0].isRepeating = true;
+    assertEquals(0, filter.filter(batch));
+    batch = createBatch(
+        new long[]{2, 20, 20},
+        new double[]{1.5, 1.5, 1.5},
+        new String[]{"b", "b", "b"});
+    batch.cols[0].isRepeating = true;
+    assertEquals(3, filter.filter(batch));
+    assertTrue(!batch.selectedInUse);
+  }
+
+  @Test
+  public void testManyLeaves() throws Exception {
+    // too many leaves to remember the value of the search argument
+    SearchArgument sarg = SearchArgumentFactory.newBuilder()
+        .startOr()
+          .equals("x", 1L)
+          .equals("x", 2L)
+          .in("x", 3L, 4L)
+          .lessThanEquals("d", -1.0)
+          .isNull("d")
+          .in("s", "c", "d")
+        .end()
+        .build();
+    VectorizedSargFilter filter = createFilter(sarg);
+    VectorizedRowBatch batch = createBatch(
+        new long[]{1, 2, 3, 4, 5, 6, 7, 8},
+        new double[]{0, 0, 0, 0, -1, 0, 0, 0},
+        new String[]{"a", "a", "a", "a", "a", "d", "e", "cc"});
+    batch.cols[1].noNulls = false;
+    batch.cols[1].isNull[6] = true;
+    assertEquals(7, filter.filter(batch));
+    for(int row=0; row < 7; ++row) {
+      assertEquals(row, batch.selected[row]);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io.parquet.read;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hive.ql.io.sarg.PredicateLeaf;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument.TruthValue;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgumentFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.junit.Test;
+
+import parquet.column.ColumnDescriptor;
+import parquet.column.statistics.BinaryStatistics;
+import parquet.column.statistics.DoubleStatistics;
+import parquet.column.statistics.IntStatistics;
+import parquet.io.api.Binary;
+import parquet.schema.MessageType;
+import parquet.schema.MessageTypeParser;
+import parquet.schema.OriginalType;
+import parquet.schema.PrimitiveType;
+import parquet.schema.PrimitiveType.PrimitiveTypeName;
+import parquet.schema.Type.Repetition;
+
+public class TestParquetRowGroupFilter {
+
+  private static PredicateLeaf lessThan(final String column, final Object literal) {
+    return SearchArgumentFactory.newBuilder().startAnd().lessThan(column, literal).end().build()
+        .getLeaves().get(0);
+  }
+
+  @Test
+  public void testIntegerStatistics() throws Exception {
+    final PrimitiveType type = new PrimitiveType(Repetition.OPTIONAL, PrimitiveTypeName.INT32, "x");
+    final IntStatistics stats = new IntStatistics();
+    stats.updateStats(100);
+    stats.updateStats(200);
+    assertEquals(TruthValue.NO_NULL,
+        ParquetRowGroupFilter.evaluate(lessThan("x", 50L), type, stats, 2));
+    assertEquals(TruthValue.YES_NO_NULL,
+        ParquetRowGroupFilter.evaluate(lessThan("x", 150L), type, stats, 2));
+    assertEquals(TruthValue.YES_NULL,
+        ParquetRowGroupFilter.evaluate(lessThan("x", 250L), type, stats, 2));
+
+    // a column chunk that has only nulls
+    final IntStatistics nulls = new IntStatistics();
+    nulls.updateStats(1);
+    nulls.setNumNulls(10);
+    assertEquals(TruthValue.NULL,
+        ParquetRowGroupFilter.evaluate(lessThan("x", 50L), type, nulls, 10));
+
+    // no statistics were written
+    assertEquals(TruthValue.YES_NO_NULL,
+        ParquetRowGroupFilter.evaluate(lessThan("x", 50L), type, new IntStatistics(), 2));
+  }
+
+  @Test
+  public void testDoubleStatistics() throws Exception {
+    final PrimitiveType type =
+        new PrimitiveType(Repetition.OPTIONAL, PrimitiveTypeName.DOUBLE, "d");
+    final DoubleStatistics stats = new DoubleStatistics();
+    stats.updateStats(1.5);
+    stats.updateStats(2.5);
+    assertEquals(TruthValue.NO_NULL,
+        ParquetRowGroupFilter.evaluate(lessThan("d", 1.0), type, stats, 2));
+    assertEquals(TruthValue.YES_NO_NULL,
+        ParquetRowGroupFilter.evaluate(lessThan("d", 2.0), type, stats, 2));
+  }
+
+  @Test
+  public void testBinaryStatisticsAreIgnored() throws Exception {
+    final PrimitiveType type = new PrimitiveType(Repetition.OPTIONAL, PrimitiveTypeName.BINARY,
+        "s", OriginalType.UTF8);
+    final BinaryStatistics stats = new BinaryStatistics();
+    stats.updateStats(Binary.fromString("m"));
+    stats.updateStats(Binary.fromString("n"));
+    assertEquals(TruthValue.YES_NO_NULL,
+        ParquetRowGroupFilter.evaluate(lessThan("s", "a"), type, stats, 2));
+  }
+
+  @Test
+  public void testSupportedTypes() throws Exception {
+    final PrimitiveType int32 =
+        new PrimitiveType(Repetition.OPTIONAL, PrimitiveTypeName.INT32, "i");
+    final PrimitiveType decimal = new PrimitiveType(Repetition.OPTIONAL,
+        PrimitiveTypeName.BINARY, "dec", OriginalType.DECIMAL);
+    assertTrue(VectorizedColumnarRecordReader.isSupported(TypeInfoFactory.intTypeInfo, int32));
+    assertTrue(VectorizedColumnarRecordReader.isSupported(TypeInfoFactory.longTypeInfo, int32));
+    assertFalse(VectorizedColumnarRecordReader.isSupported(TypeInfoFactory.stringTypeInfo, int32));
+    assertFalse(VectorizedColumnarRecordReader.isSupported(TypeInfoFactory.stringTypeInfo,
+        decimal));
+  }
+
+  @Test
+  public void testPageSkipping() throws Exception {
+    final MessageType schema = MessageTypeParser.parseMessageType(
+        "message test { optional int32 x; optional binary s; optional double y; }");
+    final SearchArgument sarg = SearchArgumentFactory.newBuilder()
+        .startAnd().lessThan("x", 50L).equals("s", "a").end().build();
+    final ParquetRowGroupFilter filter = new ParquetRowGroupFilter(sarg, schema);
+    final ColumnDescriptor x = schema.getColumns().get(0);
+    final ColumnDescriptor s = schema.getColumns().get(1);
+    final ColumnDescriptor y = schema.getColumns().get(2);
+    assertTrue(filter.isFiltered(x));
+    assertTrue(filter.isFiltered(s));
+    assertFalse(filter.isFiltered(y));
+
+    final IntStatistics stats = new IntStatistics();
+    stats.updateStats(100);
+    stats.updateStats(200);
+    assertTrue(filter.canSkip(x, stats, 10));
+    stats.updateStats(10);
+    assertFalse(filter.canSkip(x, stats, 10));
+    final BinaryStatistics strings = new BinaryStatistics();
+    strings.updateStats(Binary.fromString("b"));
+    assertFalse(filter.canSkip(s, strings, 10));
+  }
+}
@@ -0,0 +1,313 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io.parquet.read;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.FileSinkOperator;
+import org.apache.hadoop.hive.ql.exec.OperatorFactory;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.io.IOConstants;
+import org.apache.hadoop.hive.ql.io.parquet.MapredParquetInputFormat;
+import org.apache.hadoop.hive.ql.io.parquet.MapredParquetOutputFormat;
+import org.apache.hadoop.hive.ql.io.parquet.ProjectionPusher;
+import org.apache.hadoop.hive.ql.io.parquet.serde.ParquetHiveSerDe;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.MapWork;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.ArrayWritable;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import parquet.column.Encoding;
+import parquet.hadoop.ParquetFileReader;
+import parquet.hadoop.ParquetInputFormat;
+import parquet.hadoop.ParquetOutputFormat;
+import parquet.hadoop.metadata.BlockMetaData;
+import parquet.hadoop.metadata.ParquetMetadata;
+
+/**
+ * Reads a Parquet file with the vectorized column reader and with the row
+ * reader and compares the rows.
+ */
+public class TestVectorizedColumnarRecordReader {
+
+  private static final int ROWS = 5000;
+  private static final String FILE_COLUMNS = "id,category,name,amount,flag,big";
+  private static final String FILE_TYPES = "int:string:string:double:boolean:bigint";
+  // the table has a column that the file doesn't have
+  private static final String TABLE_COLUMNS = FILE_COLUMNS + ",missing";
+  private static final String TABLE_TYPES = FILE_TYPES + ":string";
+  // every column but big is read
+  private static final List<Integer> PROJECTION = Arrays.asList(0, 1, 2, 3, 4, 6);
+
+  private final Path workDir = new Path(System.getProperty("test.tmp.dir",
+      "target" + File.separator + "test" + File.separator + "tmp"));
+  private FileSystem fs;
+  private Path tableDir;
+  private Path file;
+
+  @Before
+  public void setUp() throws Exception {
+    final JobConf conf = new JobConf();
+    fs = FileSystem.getLocal(conf);
+    tableDir = fs.makeQualified(new Path(workDir, "TestVectorizedColumnarRecordReader"));
+    fs.delete(tableDir, true);
+    file = new Path(tableDir, "000000_0");
+    writeFile(conf);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Utilities.clearWorkMap();
+    fs.delete(tableDir, true);
+  }
+
+  /**
+   * Write the rows with small pages and a small dictionary. The category
+   * column keeps its dictionary, while the dictionaries of the columns with
+   * distinct values grow too big and their later pages are written plain.
+   */
+  private void writeFile(final JobConf conf) throws Exception {
+    conf.setInt(ParquetOutputFormat.PAGE_SIZE, 1024);
+    conf.setInt(ParquetOutputFormat.DICTIONARY_PAGE_SIZE, 1024);
+    conf.setBoolean(ParquetOutputFormat.ENABLE_DICTIONARY, true);
+    final Properties props = new Properties();
+    props.setProperty(IOConstants.COLUMNS, FILE_COLUMNS);
+    props.setProperty(IOConstants.COLUMNS_TYPES, FILE_TYPES);
+    final FileSinkOperator.RecordWriter writer = new MapredParquetOutputFormat()
+        .getHiveRecordWriter(conf, file, ArrayWritable.class, false, props, Reporter.NULL);
+    for (int i = 0; i < ROWS; ++i) {
+      final Writable[] row = new Writable[] {
+          new IntWritable(i),
+          i % 7 == 0 ? null : new BytesWritable(("c" + i % 5).getBytes("UTF-8")),
+          i % 11 == 0 ? null : new BytesWritable(("name" + i).getBytes("UTF-8")),
+          i % 13 == 0 ? null : new DoubleWritable(i * 0.5),
+          new BooleanWritable(i % 3 == 0),
+          new LongWritable(i * 1000000007L)};
+      writer.write(new ArrayWritable(Writable.class, row));
+    }
+    writer.close(false);
+  }
+
+  /**
+   * Set up the job for a scan of the table like HiveInputFormat does.
+   *
+   * @param filter the predicate that is pushed to the scan or null
+   */
+  private JobConf createJobConf(final ExprNodeGenericFuncDesc filter) throws Exception {
+    final JobConf conf = new JobConf();
+    HiveConf.setVar(conf, HiveConf.ConfVars.PLAN, new Path(tableDir, "plan").toString());
+    conf.set(IOConstants.COLUMNS, TABLE_COLUMNS);
+    conf.set(IOConstants.COLUMNS_TYPES, TABLE_TYPES);
+    ColumnProjectionUtils.appendReadColumns(conf, PROJECTION);
+
+    final Properties props = new Properties();
+    props.setProperty(serdeConstants.SERIALIZATION_LIB, ParquetHiveSerDe.class.getName());
+    props.setProperty(IOConstants.COLUMNS, TABLE_COLUMNS);
+    props.setProperty(IOConstants.COLUMNS_TYPES, TABLE_TYPES);
+    final TableDesc table = new TableDesc(MapredParquetInputFormat.class,
+        MapredParquetOutputFormat.class, props);
+
+    final TableScanDesc scanDesc = new TableScanDesc("t");
+    scanDesc.setFilterExpr(filter);
+    final TableScanOperator scan = (TableScanOperator) OperatorFactory.get(scanDesc);
+    scan.setNeededColumnIDs(PROJECTION);
+
+    final MapWork work = new MapWork();
+    work.setVectorMode(true);
+    final LinkedHashMap<String, ArrayList<String>> pathToAliases =
+        new LinkedHashMap<String, ArrayList<String>>();
+    pathToAliases.put(tableDir.toString(), new ArrayList<String>(Arrays.asList("t")));
+    work.setPathToAliases(pathToAliases);
+    final LinkedHashMap<String, PartitionDesc> pathToPartitionInfo =
+        new LinkedHashMap<String, PartitionDesc>();
+    pathToPartitionInfo.put(tableDir.toString(),
+        new PartitionDesc(table, new LinkedHashMap<String, String>()));
+    work.setPathToPartitionInfo(pathToPartitionInfo);
+    work.getAliasToWork().put("t", scan);
+    work.setScratchColumnMap(new HashMap<String, Map<String, Integer>>());
+    work.setScratchColumnVectorTypes(new HashMap<String, Map<Integer, String>>());
+    Utilities.setMapWork(conf, work);
+    return conf;
+  }
+
+  private static ExprNodeGenericFuncDesc idLessThan(final int value) throws Exception {
+    final List<ExprNodeDesc> args = new ArrayList<ExprNodeDesc>();
+    args.add(new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "id", "t", false));
+    args.add(new ExprNodeConstantDesc(TypeInfoFactory.intTypeInfo, value));
+    return ExprNodeGenericFuncDesc.newInstance(new GenericUDFOPLessThan(), args);
+  }
+
+  private FileSplit getSplit() throws Exception {
+    return new FileSplit(file, 0, fs.getFileStatus(file).getLen(), (String[]) null);
+  }
+
+  private static String getValue(final Writable value) throws Exception {
+    if (value == null) {
+      return "null";
+    } else if (value instanceof BooleanWritable) {
+      return ((BooleanWritable) value).get() ? "1" : "0";
+    } else if (value instanceof BytesWritable) {
+      final BytesWritable bytes = (BytesWritable) value;
+      return new String(bytes.getBytes(), 0, bytes.getLength(), "UTF-8");
+    }
+    return value.toString();
+  }
+
+  private static String getValue(final ColumnVector vector, final int row) throws Exception {
+    final int index = vector.isRepeating ? 0 : row;
+    if (!vector.noNulls && vector.isNull[index]) {
+      return "null";
+    } else if (vector instanceof LongColumnVector) {
+      return Long.toString(((LongColumnVector) vector).vector[index]);
+    } else if (vector instanceof DoubleColumnVector) {
+      return Double.toString(((DoubleColumnVector) vector).vector[index]);
+    }
+    final BytesColumnVector bytes = (BytesColumnVector) vector;
+    return new String(bytes.vector[index], bytes.start[index], bytes.length[index], "UTF-8");
+  }
+
+  /**
+   * Read the projected columns of the rows with the row reader.
+   */
+  private List<List<String>> readRows(final JobConf conf) throws Exception {
+    final ParquetRecordReaderWrapper reader = new ParquetRecordReaderWrapper(
+        new ParquetInputFormat<ArrayWritable>(DataWritableReadSupport.class), getSplit(), conf,
+        Reporter.NULL);
+    final List<List<String>> rows = new ArrayList<List<String>>();
+    final Void key = reader.createKey();
+    final ArrayWritable value = reader.createValue();
+    while (reader.next(key, value)) {
+      final Writable[] writables = value.get();
+      final List<String> row = new ArrayList<String>();
+      for (final int column : PROJECTION) {
+        row.add(getValue(column < writables.length ? writables[column] : null));
+      }
+      rows.add(row);
+    }
+    reader.close();
+    return rows;
+  }
+
+  /**
+   * Read the projected columns of the rows with the vectorized reader.
+   */
+  private List<List<String>> readBatches(final JobConf conf) throws Exception {
+    final VectorizedColumnarRecordReader reader =
+        VectorizedColumnarRecordReader.create(getSplit(), conf, new ProjectionPusher());
+    assertNotNull(reader);
+    final List<List<String>> rows = new ArrayList<List<String>>();
+    final NullWritable key = reader.createKey();
+    final VectorizedRowBatch batch = reader.createValue();
+    while (reader.next(key, batch)) {
+      assertTrue(batch.size <= batch.getMaxSize());
+      for (int i = 0; i < batch.size; ++i) {
+        final List<String> row = new ArrayList<String>();
+        for (final int column : PROJECTION) {
+          row.add(getValue(batch.cols[column], i));
+        }
+        rows.add(row);
+      }
+    }
+    assertEquals(1f, reader.getProgress(), 0f);
+    reader.close();
+    return rows;
+  }
+
+  @Test
+  public void testFileHasPlainAndDictionaryPages() throws Exception {
+    final ParquetMetadata footer = ParquetFileReader.readFooter(new JobConf(), file);
+    assertEquals(1, footer.getBlocks().size());
+    final BlockMetaData block = footer.getBlocks().get(0);
+    assertEquals(ROWS, block.getRowCount());
+    assertTrue(block.getColumns().get(1).getEncodings().contains(Encoding.PLAIN_DICTIONARY));
+    assertTrue(block.getColumns().get(2).getEncodings().contains(Encoding.PLAIN));
+  }
+
+  @Test
+  public void testSameRowsAsRowReader() throws Exception {
+    final JobConf conf = createJobConf(null);
+    final List<List<String>> expected = readRows(conf);
+    assertEquals(ROWS, expected.size());
+    assertEquals(Arrays.asList("0", "null", "null", "null", "1", "null"), expected.get(0));
+    assertEquals(Arrays.asList("1", "c1", "name1", "0.5", "0", "null"), expected.get(1));
+    assertEquals(expected, readBatches(conf));
+  }
+
+  @Test
+  public void testSkipPages() throws Exception {
+    final List<List<String>> all = readRows(createJobConf(null));
+
+    // the ids are sorted, so only the first pages of the id column can match
+    final JobConf conf = createJobConf(idLessThan(300));
+    final List<List<String>> rows = readBatches(conf);
+    assertTrue("read " + rows.size() + " rows", rows.size() >= 300 && rows.size() < ROWS);
+    assertEquals(all.subList(0, rows.size()), rows);
+  }
+
+  @Test
+  public void testEliminateSplits() throws Exception {
+    final JobConf conf = new JobConf();
+    FileInputFormat.setInputPaths(conf, tableDir);
+    final MapredParquetInputFormat format = new MapredParquetInputFormat();
+    assertEquals(1, format.getSplits(conf, 1).length);
+    conf.set(TableScanDesc.FILTER_EXPR_CONF_STR, Utilities.serializeExpression(idLessThan(300)));
+    assertEquals(1, format.getSplits(conf, 1).length);
+    // the statistics of the only row group rule it out
+    conf.set(TableScanDesc.FILTER_EXPR_CONF_STR, Utilities.serializeExpression(idLessThan(0)));
+    assertEquals(0, format.getSplits(conf, 1).length);
+  }
+}
@@ -22,6 +22,7 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -475,6 +476,61 @@ public void testPartition() throws Throwable {
     }
   }
 
+  public void testPartitionIterable() throws Throwable {
+    String tableName = "table_for_testpartitioniterable";
+    hm.dropTable(MetaStoreUtils.DEFAULT_DATABASE_NAME, tableName);
+    LinkedList<String> cols = new LinkedList<String>();
+    cols.add("key");
+    cols.add("value");
+    LinkedList<String> part_cols = new LinkedList<String>();
+    part_cols.add("ds");
+    part_cols.add("hr");
+    hm.createTable(tableName, cols, part_cols, TextInputFormat.class,
+        HiveIgnoreKeyTextOutputFormat.class);
+    Table tbl = hm.getTable(MetaStoreUtils.DEFAULT_DATABASE_NAME, tableName);
+    List<String> expected = new ArrayList<String>();
+    for (int day = 1; day <= 5; ++day) {
+      HashMap<String, String> part_spec = new HashMap<String, String>();
+      part_spec.put("ds", "2008-04-0" + day);
+      part_spec.put("hr", day % 2 == 0 ? "12" : "11");
+      hm.createPartition(tbl, part_spec);
+      expected.add("ds=2008-04-0" + day + "/hr=" + part_spec.get("hr"));
+    }
+
+    // the batches don't divide the partitions evenly
+    PartitionIterable partitions = new PartitionIterable(hm, tbl, 2);
+    assertEquals(5, partitions.size());
+    List<String> names = new ArrayList<String>();
+    for (Partition part : partitions) {
+      names.add(part.getName());
+    }
+    Collections.sort(names);
+    assertEquals(expected, names);
+
+    HashMap<String, String> partial_spec = new HashMap<String, String>();
+    partial_spec.put("hr", "12");
+    partitions = new PartitionIterable(hm, tbl, partial_spec, 1);
+    names.clear();
+    for (Partition part : partitions) {
+      names.add(part.getName());
+    }
+    Collections.sort(names);
+    assertEquals(Arrays.asList("ds=2008-04-02/hr=12", "ds=2008-04-04/hr=12"), names);
+
+    assertEquals(5, hm.getAllPartitionsOf(tbl).size());
+    // more partitions than are listed in one call are got in batches
+    int maxParts = hiveConf.getIntVar(
+        HiveConf.ConfVars.METASTORE_BATCH_RETRIEVE_TABLE_PARTITION_MAX);
+    hiveConf.setIntVar(HiveConf.ConfVars.METASTORE_BATCH_RETRIEVE_TABLE_PARTITION_MAX, 3);
+    try {
+      assertEquals(5, hm.getAllPartitionsOf(tbl).size());
+    } finally {
+      hiveConf.setIntVar(HiveConf.ConfVars.METASTORE_BATCH_RETRIEVE_TABLE_PARTITION_MAX,
+          maxParts);
+    }
+    hm.dropTable(MetaStoreUtils.DEFAULT_DATABASE_NAME, tableName);
+  }
+
   /**
    * Tests creating a simple index on a simple table.
    *
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.junit.Test;
+
+public class TestMetaDataCache {
+
+  @Test
+  public void testKeys() {
+    MetaDataCache cache = new MetaDataCache(10);
+    Table table = new Table();
+    table.setTableName("t1");
+    List<String> columns = new ArrayList<String>(Arrays.asList("a", "b"));
+    cache.put(MetaDataCache.getKey("getTable", "Default", "T1", columns), table);
+    // the key doesn't change with the list the caller passed
+    columns.add("c");
+    assertSame(table,
+        cache.get(MetaDataCache.getKey("getTable", "default", "t1", Arrays.asList("a", "b"))));
+    assertNull(cache.get(MetaDataCache.getKey("getTable", "default", "t1", columns)));
+    assertNull(cache.get(MetaDataCache.getKey("getTableColumnStatistics", "default", "t1",
+        Arrays.asList("a", "b"))));
+
+    byte[] expr = new byte[] {1, 2, 3};
+    cache.put(MetaDataCache.getKey("listPartitionsByExpr", "default", "t1", expr, "__HIVE"), "p");
+    expr[0] = 0;
+    assertEquals("p", cache.get(MetaDataCache.getKey("listPartitionsByExpr", "default", "t1",
+        new byte[] {1, 2, 3}, "__HIVE")));
+  }
+
+  @Test
+  public void testEviction() {
+    MetaDataCache cache = new MetaDataCache(2);
+    cache.put(MetaDataCache.getKey("getTable", "default", "t1"), "t1");
+    cache.put(MetaDataCache.getKey("getTable", "default", "t2"), "t2");
+    // t1 is now the most recently used
+    cache.get(MetaDataCache.getKey("getTable", "default", "t1"));
+    cache.put(MetaDataCache.getKey("getTable", "default", "t3"), "t3");
+    assertEquals(2, cache.size());
+    assertEquals("t1", cache.get(MetaDataCache.getKey("getTable", "default", "t1")));
+    assertNull(cache.get(MetaDataCache.getKey("getTable", "default", "t2")));
+    cache.clear();
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testCopies() {
+    Partition partition = new Partition();
+    partition.setValues(new ArrayList<String>(Arrays.asList("1")));
+    List<Partition> copies = MetaDataCache.copyPartitions(Arrays.asList(partition));
+    assertEquals(partition, copies.get(0));
+    assertNotSame(partition, copies.get(0));
+    copies.get(0).getValues().set(0, "2");
+    assertEquals("1", partition.getValues().get(0));
+  }
+
+  @Test
+  public void testClearDuringRead() {
+    MetaDataCache cache = new MetaDataCache(10);
+    List<Object> key = MetaDataCache.getKey("getTable", "default", "t1");
+    long generation = cache.getGeneration();
+    // another thread of the session changes the metadata while the table is read
+    cache.clear();
+    cache.put(key, "t1", generation);
+    assertNull(cache.get(key));
+    cache.put(key, "t1", cache.getGeneration());
+    assertEquals("t1", cache.get(key));
+  }
+}
@@ -37,6 +37,13 @@ public abstract class AbstractEncodingAwareSerDe extends AbstractSerDe {
 
   protected Charset charset;
 
+  /**
+   * Get the charset of the serialized data.
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
   @Override
   @Deprecated
   public void initialize(Configuration conf, Properties tbl)
@@ -282,6 +282,15 @@ public void clear() {
     currentWriteOffset = currentReadOffset = currentWriteBufferIndex = currentReadBufferIndex = 0;
   }
 
+  /** @return The amount of memory allocated for the buffers. */
+  public long getMemorySize() {
+    long result = 0;
+    for (byte[] buffer : writeBuffers) {
+      result += buffer.length;
+    }
+    return result;
+  }
+
   public long getWritePoint() {
     return (currentWriteBufferIndex * (long)wbSize) + currentWriteOffset;
   }
@@ -479,7 +488,7 @@ public void writeInt(long offset, int v) {
   }
 
   // Lifted from org.apache.hadoop.util.hash.MurmurHash... but supports offset.
-  private static int murmurHash(byte[] data, int offset, int length) {
+  public static int murmurHash(byte[] data, int offset, int length) {
     int m = 0x5bd1e995;
     int r = 24;
 
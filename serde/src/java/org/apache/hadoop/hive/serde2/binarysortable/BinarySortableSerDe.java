@@ -856,7 +856,59 @@ static void serialize(ByteStream.Output buffer, Object o, ObjectInspector oi,
 
   private static void serializeBytes(
       ByteStream.Output buffer, byte[] data, int length, boolean invert) {
-    for (int i = 0; i < length; i++) {
+    serializeBytes(buffer, data, 0, length, invert);
+  }
+
+  /**
+   * Serializes the null marker of a field. A non-null marker must be followed by the
+   * field value, e.g. written with {@link #serializeLongPrimitive} or
+   * {@link #serializeBytes(ByteStream.Output, byte[], int, int, boolean)}.
+   */
+  public static void serializeNullMarker(ByteStream.Output buffer, boolean isNull,
+      boolean invert) {
+    writeByte(buffer, (byte) (isNull ? 0 : 1), invert);
+  }
+
+  /**
+   * Serializes a primitive value that is held as a long (as in vectorized long columns),
+   * producing the same bytes as {@link #serialize} would for the corresponding writable.
+   * @return false if the category is not stored as a long.
+   */
+  public static boolean serializeLongPrimitive(ByteStream.Output buffer, long v,
+      PrimitiveObjectInspector.PrimitiveCategory category, boolean invert) {
+    switch (category) {
+    case BOOLEAN:
+      writeByte(buffer, (byte) (v != 0 ? 2 : 1), invert);
+      return true;
+    case BYTE:
+      writeByte(buffer, (byte) (((byte) v) ^ 0x80), invert);
+      return true;
+    case SHORT:
+      writeByte(buffer, (byte) ((((short) v) >> 8) ^ 0x80), invert);
+      writeByte(buffer, (byte) v, invert);
+      return true;
+    case INT:
+    case DATE:
+      serializeInt(buffer, (int) v, invert);
+      return true;
+    case LONG:
+      writeByte(buffer, (byte) ((v >> 56) ^ 0x80), invert);
+      writeByte(buffer, (byte) (v >> 48), invert);
+      writeByte(buffer, (byte) (v >> 40), invert);
+      writeByte(buffer, (byte) (v >> 32), invert);
+      writeByte(buffer, (byte) (v >> 24), invert);
+      writeByte(buffer, (byte) (v >> 16), invert);
+      writeByte(buffer, (byte) (v >> 8), invert);
+      writeByte(buffer, (byte) v, invert);
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  public static void serializeBytes(
+      ByteStream.Output buffer, byte[] data, int start, int length, boolean invert) {
+    for (int i = start; i < start + length; i++) {
       if (data[i] == 0 || data[i] == 1) {
         writeByte(buffer, (byte) 1, invert);
         writeByte(buffer, (byte) (data[i] + 1), invert);
@@ -45,18 +45,99 @@ public LazyDouble(LazyDouble copy) {
 
   @Override
   public void init(ByteArrayRef bytes, int start, int length) {
-    String byteData = null;
     try {
-      byteData = Text.decode(bytes.getData(), start, length);
-      data.set(Double.parseDouble(byteData));
+      data.set(parseDouble(bytes.getData(), start, length));
       isNull = false;
     } catch (NumberFormatException e) {
       isNull = true;
-      LOG.debug("Data not in the Double data type range so converted to null. Given data is :"
-          + byteData, e);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Data not in the Double data type range so converted to null. Given data is :"
+            + LazyUtils.convertToString(bytes.getData(), start, length), e);
+      }
+    }
+  }
+
+  // the powers of ten that are exact doubles
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  /**
+   * Parses the UTF-8 bytes as if they were a string given to
+   * Double.parseDouble, without creating the string for the common decimal
+   * forms. A number whose significant digits fit in the 53 bits of a double
+   * and whose decimal exponent is at most 22 is computed with a single
+   * multiplication or division of exact values, which rounds the same way
+   * as Double.parseDouble. The other numbers are decoded and parsed by
+   * Double.parseDouble.
+   *
+   * @param bytes
+   * @param start
+   * @param length
+   *          a UTF-8 encoded string representation of a double
+   * @return the double value represented by the argument
+   * @exception NumberFormatException
+   *              if the argument could not be parsed as a double
+   */
+  public static double parseDouble(byte[] bytes, int start, int length) {
+    int end = start + length;
+    int i = start;
+    boolean negative = false;
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i] == '-';
+      ++i;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean fitsMantissa = true;
+    for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; ++i) {
+      mantissa = mantissa * 10 + (bytes[i] - '0');
+      ++digits;
+      fitsMantissa &= mantissa <= MAX_EXACT_MANTISSA;
+    }
+    if (i < end && bytes[i] == '.') {
+      for (++i; i < end && bytes[i] >= '0' && bytes[i] <= '9'; ++i) {
+        mantissa = mantissa * 10 + (bytes[i] - '0');
+        ++digits;
+        --exponent;
+        fitsMantissa &= mantissa <= MAX_EXACT_MANTISSA;
+      }
+    }
+    if (i < end && (bytes[i] == 'e' || bytes[i] == 'E') && digits > 0) {
+      ++i;
+      boolean negativeExponent = false;
+      if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+        negativeExponent = bytes[i] == '-';
+        ++i;
+      }
+      int exponentStart = i;
+      int explicit = 0;
+      for (; i < end && bytes[i] >= '0' && bytes[i] <= '9' && i - exponentStart < 4; ++i) {
+        explicit = explicit * 10 + (bytes[i] - '0');
+      }
+      if (i == exponentStart) {
+        digits = 0;
+      }
+      exponent += negativeExponent ? -explicit : explicit;
+    }
+    if (i == end && digits > 0 && digits <= 18 && fitsMantissa
+        && exponent >= -22 && exponent <= 22) {
+      double value = mantissa;
+      if (exponent >= 0) {
+        value *= POWERS_OF_TEN[exponent];
+      } else {
+        value /= POWERS_OF_TEN[-exponent];
+      }
+      return negative ? -value : value;
+    }
+    try {
+      return Double.parseDouble(Text.decode(bytes, start, length));
     } catch (CharacterCodingException e) {
-      isNull = true;
-      LOG.debug("Data not in the Double data type range so converted to null.", e);
+      throw new NumberFormatException(e.getMessage());
     }
   }
 
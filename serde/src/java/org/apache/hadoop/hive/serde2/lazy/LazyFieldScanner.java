@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.serde2.lazy;
+
+/**
+ * Finds the fields of a delimited record in a single pass over its bytes.
+ * The start of each field is stored in a caller-owned array, which is
+ * reused for every record, so no objects are created per record. Records
+ * without an escape character are scanned by a loop that only compares
+ * bytes with the separator.
+ */
+public final class LazyFieldScanner {
+
+  private LazyFieldScanner() {
+  }
+
+  /**
+   * Find the start of the fields of a record. As in LazyStruct, after the
+   * call positions[i + 1] - positions[i] - 1 is the length of field i: the
+   * missing fields at the end of the record have a length of -1 and the
+   * extra fields are ignored.
+   *
+   * @param bytes the bytes of the record
+   * @param start the first byte of the record
+   * @param length the number of bytes of the record
+   * @param separator the field separator
+   * @param isEscaped do the bytes have escaped separators?
+   * @param escapeChar the escape character
+   * @param lastColumnTakesRest does the last field extend to the end of the record?
+   * @param positions receives the start of each field, with room for fields + 1 values
+   * @param fields the number of fields to find
+   * @return the number of fields that the record has, up to fields
+   */
+  public static int findFields(byte[] bytes, int start, int length, byte separator,
+      boolean isEscaped, byte escapeChar, boolean lastColumnTakesRest, int[] positions,
+      int fields) {
+    int end = start + length;
+    int fieldStart = start;
+    int fieldEnd = start;
+    int fieldId = 0;
+    while (true) {
+      if (lastColumnTakesRest && fieldId == fields - 1) {
+        fieldEnd = end;
+      } else if (isEscaped) {
+        fieldEnd = findEscapedSeparator(bytes, fieldEnd, end, separator, escapeChar);
+      } else {
+        fieldEnd = findSeparator(bytes, fieldEnd, end, separator);
+      }
+      positions[fieldId++] = fieldStart;
+      if (fieldId >= fields || fieldEnd == end) {
+        for (int i = fieldId; i <= fields; i++) {
+          positions[i] = fieldEnd + 1;
+        }
+        return fieldId;
+      }
+      fieldStart = ++fieldEnd;
+    }
+  }
+
+  /**
+   * Is the record longer than the fields that were found?
+   */
+  public static boolean hasExtraBytes(int start, int length, int[] positions, int fields) {
+    return positions[fields] - 1 < start + length;
+  }
+
+  private static int findSeparator(byte[] bytes, int from, int end, byte separator) {
+    int i = from;
+    while (i < end && bytes[i] != separator) {
+      i++;
+    }
+    return i;
+  }
+
+  private static int findEscapedSeparator(byte[] bytes, int from, int end, byte separator,
+      byte escapeChar) {
+    int i = from;
+    while (i < end) {
+      byte b = bytes[i];
+      if (b == separator) {
+        return i;
+      }
+      if (b == escapeChar && i + 1 < end) {
+        // ignore the char after escape_char
+        i += 2;
+      } else {
+        i++;
+      }
+    }
+    return i;
+  }
+}
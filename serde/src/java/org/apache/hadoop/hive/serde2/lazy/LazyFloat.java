@@ -45,18 +45,93 @@ public LazyFloat(LazyFloat copy) {
 
   @Override
   public void init(ByteArrayRef bytes, int start, int length) {
-    String byteData = null;
     try {
-      byteData = Text.decode(bytes.getData(), start, length);
-      data.set(Float.parseFloat(byteData));
+      data.set(parseFloat(bytes.getData(), start, length));
       isNull = false;
     } catch (NumberFormatException e) {
       isNull = true;
-      LOG.debug("Data not in the Float data type range so converted to null. Given data is :"
-          + byteData, e);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Data not in the Float data type range so converted to null. Given data is :"
+            + LazyUtils.convertToString(bytes.getData(), start, length), e);
+      }
+    }
+  }
+
+  // the powers of ten that are exact floats
+  private static final float[] POWERS_OF_TEN = {
+    1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+  };
+
+  private static final long MAX_EXACT_MANTISSA = 1L << 24;
+
+  /**
+   * Parses the UTF-8 bytes as if they were a string given to
+   * Float.parseFloat, without creating the string for the common decimal
+   * forms. See {@link LazyDouble#parseDouble(byte[], int, int)}; the
+   * significant digits must fit in the 24 bits of a float and the decimal
+   * exponent must be at most 10.
+   *
+   * @param bytes
+   * @param start
+   * @param length
+   *          a UTF-8 encoded string representation of a float
+   * @return the float value represented by the argument
+   * @exception NumberFormatException
+   *              if the argument could not be parsed as a float
+   */
+  public static float parseFloat(byte[] bytes, int start, int length) {
+    int end = start + length;
+    int i = start;
+    boolean negative = false;
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i] == '-';
+      ++i;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    for (; i < end && bytes[i] >= '0' && bytes[i] <= '9' && digits < 10; ++i) {
+      mantissa = mantissa * 10 + (bytes[i] - '0');
+      ++digits;
+    }
+    if (i < end && bytes[i] == '.') {
+      for (++i; i < end && bytes[i] >= '0' && bytes[i] <= '9' && digits < 10; ++i) {
+        mantissa = mantissa * 10 + (bytes[i] - '0');
+        ++digits;
+        --exponent;
+      }
+    }
+    if (i < end && (bytes[i] == 'e' || bytes[i] == 'E') && digits > 0) {
+      ++i;
+      boolean negativeExponent = false;
+      if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+        negativeExponent = bytes[i] == '-';
+        ++i;
+      }
+      int exponentStart = i;
+      int explicit = 0;
+      for (; i < end && bytes[i] >= '0' && bytes[i] <= '9' && i - exponentStart < 3; ++i) {
+        explicit = explicit * 10 + (bytes[i] - '0');
+      }
+      if (i == exponentStart) {
+        digits = 0;
+      }
+      exponent += negativeExponent ? -explicit : explicit;
+    }
+    if (i == end && digits > 0 && mantissa <= MAX_EXACT_MANTISSA
+        && exponent >= -10 && exponent <= 10) {
+      float value = mantissa;
+      if (exponent >= 0) {
+        value *= POWERS_OF_TEN[exponent];
+      } else {
+        value /= POWERS_OF_TEN[-exponent];
+      }
+      return negative ? -value : value;
+    }
+    try {
+      return Float.parseFloat(Text.decode(bytes, start, length));
     } catch (CharacterCodingException e) {
-      isNull = true;
-      LOG.debug("Data not in the Float data type range so converted to null.", e);
+      throw new NumberFormatException(e.getMessage());
     }
   }
 
@@ -174,10 +174,21 @@ public byte getEscapeChar() {
     public boolean[] getNeedsEscape() {
       return needsEscape;
     }
+
+    public boolean isExtendedBooleanLiteral() {
+      return extendedBooleanLiteral;
+    }
   }
 
   SerDeParameters serdeParams = null;
 
+  /**
+   * Get the parameters that the SerDe was initialized with.
+   */
+  public SerDeParameters getSerdeParams() {
+    return serdeParams;
+  }
+
   /**
    * Initialize the SerDe given the parameters. serialization.format: separator
    * char or byte code (only supports byte-value up to 127) columns:
@@ -107,48 +107,12 @@ private void parse() {
       initLazyFields(oi.getAllStructFieldRefs());
     }
 
-    int structByteEnd = start + length;
-    int fieldId = 0;
-    int fieldByteBegin = start;
-    int fieldByteEnd = start;
-    byte[] bytes = this.bytes.getData();
-
-    // Go through all bytes in the byte[]
-    while (fieldByteEnd <= structByteEnd) {
-      if (fieldByteEnd == structByteEnd || bytes[fieldByteEnd] == separator) {
-        // Reached the end of a field?
-        if (lastColumnTakesRest && fieldId == fields.length - 1) {
-          fieldByteEnd = structByteEnd;
-        }
-        startPosition[fieldId] = fieldByteBegin;
-        fieldId++;
-        if (fieldId == fields.length || fieldByteEnd == structByteEnd) {
-          // All fields have been parsed, or bytes have been parsed.
-          // We need to set the startPosition of fields.length to ensure we
-          // can use the same formula to calculate the length of each field.
-          // For missing fields, their starting positions will all be the same,
-          // which will make their lengths to be -1 and uncheckedGetField will
-          // return these fields as NULLs.
-          for (int i = fieldId; i <= fields.length; i++) {
-            startPosition[i] = fieldByteEnd + 1;
-          }
-          break;
-        }
-        fieldByteBegin = fieldByteEnd + 1;
-        fieldByteEnd++;
-      } else {
-        if (isEscaped && bytes[fieldByteEnd] == escapeChar
-            && fieldByteEnd + 1 < structByteEnd) {
-          // ignore the char after escape_char
-          fieldByteEnd += 2;
-        } else {
-          fieldByteEnd++;
-        }
-      }
-    }
+    int fieldId = LazyFieldScanner.findFields(this.bytes.getData(), start, length, separator,
+        isEscaped, escapeChar, lastColumnTakesRest, startPosition, fields.length);
 
     // Extra bytes at the end?
-    if (!extraFieldWarned && fieldByteEnd < structByteEnd) {
+    if (!extraFieldWarned
+        && LazyFieldScanner.hasExtraBytes(start, length, startPosition, fields.length)) {
       extraFieldWarned = true;
       LOG.warn("Extra bytes detected at the end of the row! Ignoring similar "
           + "problems.");
@@ -468,4 +468,66 @@ public void testLazyLongWrite() throws Throwable {
     }
   }
 
+  public void testParseDoubleAndFloat() throws Throwable {
+    String[] tests = {"0", "-0", "1.", ".5", "+1.25", "3.14159", "0.1", "-123.456e-7",
+        "1e22", "1e23", "1.7976931348623157e308", "9007199254740993", "16777217",
+        "123456789012345678901234", "0.30000000000000004", "1.5d", " 2", "NaN",
+        "-Infinity", "", ".", "-", "e5", "1e", "1.2.3", "abc"};
+    for (String v : tests) {
+      byte[] bytes = v.getBytes("UTF-8");
+      Double expectedDouble;
+      try {
+        expectedDouble = Double.parseDouble(v);
+      } catch (NumberFormatException e) {
+        expectedDouble = null;
+      }
+      try {
+        assertEquals(v, expectedDouble, Double.valueOf(LazyDouble.parseDouble(bytes, 0, bytes.length)));
+      } catch (NumberFormatException e) {
+        assertNull(v, expectedDouble);
+      }
+      Float expectedFloat;
+      try {
+        expectedFloat = Float.parseFloat(v);
+      } catch (NumberFormatException e) {
+        expectedFloat = null;
+      }
+      try {
+        assertEquals(v, expectedFloat, Float.valueOf(LazyFloat.parseFloat(bytes, 0, bytes.length)));
+      } catch (NumberFormatException e) {
+        assertNull(v, expectedFloat);
+      }
+    }
+  }
+
+  public void testFindFields() throws Throwable {
+    byte[] bytes = "xa,b\\,c,,d".getBytes("UTF-8");
+    int[] positions = new int[6];
+    // the first byte isn't part of the record
+    assertEquals(4, LazyFieldScanner.findFields(bytes, 1, bytes.length - 1, (byte) ',', false,
+        (byte) '\\', false, positions, 4));
+    assertEquals(1, positions[0]);
+    assertEquals(3, positions[1]);
+    assertEquals(6, positions[2]);
+    assertEquals(8, positions[3]);
+    assertEquals(9, positions[4]);
+    assertTrue(LazyFieldScanner.hasExtraBytes(1, bytes.length - 1, positions, 4));
+
+    // an escaped separator doesn't end the field
+    assertEquals(4, LazyFieldScanner.findFields(bytes, 1, bytes.length - 1, (byte) ',', true,
+        (byte) '\\', false, positions, 5));
+    assertEquals(3, positions[1]);
+    assertEquals(8, positions[2]);
+    assertEquals(9, positions[3]);
+    // the missing field has a length of -1
+    assertEquals(-1, positions[5] - positions[4] - 1);
+
+    // the last column takes the rest of the record
+    assertEquals(2, LazyFieldScanner.findFields(bytes, 1, bytes.length - 1, (byte) ',', false,
+        (byte) '\\', true, positions, 2));
+    assertEquals(3, positions[1]);
+    assertEquals(bytes.length + 1, positions[2]);
+    assertFalse(LazyFieldScanner.hasExtraBytes(1, bytes.length - 1, positions, 2));
+  }
+
 }